@@ -0,0 +1,147 @@
+package org.example.springai.advisor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.springai.config.RagProperties;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 上下文组装：按相关度顺序把分片写入同一个预分配的StringBuilder，累计token数不超过rag.context.max-tokens
+ * 第一个放不下的分片在剩余预算足够时按句子截断，之后的分片全部丢弃，丢弃的分片ID随结果返回
+ */
+@Component
+public class ContextPacker {
+
+    private static final String SEPARATOR = System.lineSeparator();
+
+    private final RagProperties.ContextPacking settings;
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+    private final int separatorTokens;
+    private final DistributionSummary contextTokens;
+    private final Counter droppedChunks;
+
+    @Autowired
+    public ContextPacker(RagProperties ragProperties, MeterRegistry meterRegistry) {
+        this.settings = ragProperties.getContext();
+        this.separatorTokens = tokenCountEstimator.estimate(SEPARATOR);
+        this.contextTokens = DistributionSummary.builder("rag.context.tokens").register(meterRegistry);
+        this.droppedChunks = meterRegistry.counter("rag.context.chunks.dropped");
+    }
+
+    public PackedContext pack(List<Document> documents) {
+        return pack(documents, document -> "");
+    }
+
+    /**
+     * @param header 每个分片正文前的标题（如文件名），与正文一起计入预算
+     */
+    public PackedContext pack(List<Document> documents, Function<Document, String> header) {
+        int budget = settings.getMaxTokens();
+        int capacity = 0;
+        for (Document document : documents) {
+            capacity += header.apply(document).length() + textOf(document).length() + SEPARATOR.length();
+        }
+        StringBuilder buffer = new StringBuilder(capacity);
+        List<Document> included = new ArrayList<>(documents.size());
+        List<String> droppedIds = new ArrayList<>();
+        String truncatedId = null;
+        int used = 0;
+
+        for (int i = 0; i < documents.size(); i++) {
+            Document document = documents.get(i);
+            String prefix = header.apply(document);
+            String text = textOf(document);
+            int separator = buffer.isEmpty() ? 0 : separatorTokens;
+            int prefixTokens = prefix.isEmpty() ? 0 : tokenCountEstimator.estimate(prefix);
+            int cost = separator + prefixTokens + tokenCountEstimator.estimate(text);
+            if (used + cost <= budget) {
+                append(buffer, prefix, text);
+                used += cost;
+                included.add(document);
+                continue;
+            }
+            // 预算不够：剩余预算足够时截断当前分片，之后的分片都丢弃
+            int remaining = budget - used - separator - prefixTokens;
+            String truncated = remaining >= settings.getMinTruncatedTokens() ? truncate(text, remaining) : "";
+            if (!truncated.isEmpty()) {
+                append(buffer, prefix, truncated);
+                used += separator + prefixTokens + tokenCountEstimator.estimate(truncated);
+                included.add(document);
+                truncatedId = document.getId();
+            } else {
+                droppedIds.add(document.getId());
+            }
+            for (int j = i + 1; j < documents.size(); j++) {
+                droppedIds.add(documents.get(j).getId());
+            }
+            break;
+        }
+        contextTokens.record(used);
+        droppedChunks.increment(droppedIds.size());
+        return new PackedContext(buffer.toString(), included, droppedIds, truncatedId, used);
+    }
+
+    /**
+     * 截取不超过maxTokens的最长前缀（二分查找），再回退到前缀后半段中最后一个句末标点，避免半句话
+     */
+    String truncate(String text, int maxTokens) {
+        int low = 0;
+        int high = text.length();
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (tokenCountEstimator.estimate(text.substring(0, mid)) <= maxTokens) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        int end = low;
+        if (end > 0 && Character.isHighSurrogate(text.charAt(end - 1))) {
+            end--;
+        }
+        for (int i = end - 1; i >= end / 2; i--) {
+            if (isSentenceEnd(text.charAt(i))) {
+                end = i + 1;
+                break;
+            }
+        }
+        return text.substring(0, end).strip();
+    }
+
+    private static void append(StringBuilder buffer, String prefix, String text) {
+        if (!buffer.isEmpty()) {
+            buffer.append(SEPARATOR);
+        }
+        buffer.append(prefix).append(text);
+    }
+
+    private static String textOf(Document document) {
+        return document.getText() == null ? "" : document.getText();
+    }
+
+    private static boolean isSentenceEnd(char c) {
+        return c == '。' || c == '！' || c == '？' || c == '；' || c == '.' || c == '!' || c == '?' || c == '\n';
+    }
+
+    /**
+     * 组装结果
+     *
+     * @param text        拼好的上下文
+     * @param documents   写入上下文的分片（按原顺序，最后一个可能被截断）
+     * @param droppedIds  因预算不足丢弃的分片ID
+     * @param truncatedId 被截断的分片ID，没有截断时为null
+     * @param tokens      上下文的token数（估算）
+     */
+    public record PackedContext(String text, List<Document> documents, List<String> droppedIds, String truncatedId,
+                                int tokens) {
+    }
+}
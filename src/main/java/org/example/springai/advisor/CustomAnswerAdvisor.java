@@ -6,14 +6,23 @@ import org.springframework.ai.chat.client.advisor.api.AdvisorChain;
 import org.springframework.ai.chat.client.advisor.api.BaseAdvisor;
 import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
 import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.prompt.PromptTemplate;
 import org.springframework.ai.document.Document;
 
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 public class CustomAnswerAdvisor implements BaseAdvisor {
+    /**
+     * 因上下文token预算不足被丢弃的分片ID，同时写入请求上下文和ChatResponse的metadata
+     */
+    public static final String CONTEXT_DROPPED = "rag_context_dropped";
+    /**
+     * 拼入prompt的上下文token数
+     */
+    public static final String CONTEXT_TOKENS = "rag_context_tokens";
+
     private static final PromptTemplate DEFAULT_PROMPT_TEMPLATE = new PromptTemplate("""
 			{query}
 
@@ -27,24 +36,36 @@ public class CustomAnswerAdvisor implements BaseAdvisor {
 			reply to the user comment. If the answer is not in the context, inform
 			the user that you can't answer the question.
 			""");
+
+    private final ContextPacker contextPacker;
+
+    public CustomAnswerAdvisor(ContextPacker contextPacker) {
+        this.contextPacker = contextPacker;
+    }
+
     @Override
     public ChatClientRequest before(ChatClientRequest chatClientRequest, AdvisorChain advisorChain) {
         if(chatClientRequest.context().get(QuestionAnswerAdvisor.RETRIEVED_DOCUMENTS) != null){
             List<Document> documents = (List<Document>) chatClientRequest.context().get(QuestionAnswerAdvisor.RETRIEVED_DOCUMENTS);
-            String documentContext = documents.stream()
-                    .map(document -> {
-                        String fileName = (String)document.getMetadata().get("fileName");
-                        return "文件名：" + fileName + System.lineSeparator() + document.getText();
-                    })
-                    .collect(Collectors.joining(System.lineSeparator()));
+            // 按相关度顺序填满token预算，放不下的分片截断或丢弃
+            ContextPacker.PackedContext packed = contextPacker.pack(documents,
+                    document -> "文件名：" + document.getMetadata().get("fileName") + System.lineSeparator());
+            String documentContext = packed.text();
         UserMessage userMessage = chatClientRequest.prompt().getUserMessage();
+        // QuestionAnswerAdvisor已经把全部候选拼进了用户消息，有原始问题时用原始问题，避免上下文重复
+        Object originalQuery = chatClientRequest.context().get(MmrRerankAdvisor.ORIGINAL_QUERY);
+        String query = originalQuery != null ? originalQuery.toString() : userMessage.getText();
         String augmentedUserText = DEFAULT_PROMPT_TEMPLATE
-                .render(Map.of("query", userMessage.getText(), "question_answer_context", documentContext))
+                .render(Map.of("query", query, "question_answer_context", documentContext))
                 + "回答时请给出参考文件的来源，文件名会通过fileName提供给你,显示格式为：\n ----- 参考文件：xxx.txt ";
         // 4. Update ChatClientRequest with augmented prompt.
+        // RETRIEVED_DOCUMENTS只保留实际写入上下文的分片，语义缓存记录的来源与回答一致
         return chatClientRequest.mutate()
                 .prompt(chatClientRequest.prompt().augmentUserMessage(augmentedUserText))
                 .context(chatClientRequest.context())
+                .context(QuestionAnswerAdvisor.RETRIEVED_DOCUMENTS, packed.documents())
+                .context(CONTEXT_DROPPED, packed.droppedIds())
+                .context(CONTEXT_TOKENS, packed.tokens())
                 .build();
         }
         return chatClientRequest;
@@ -52,7 +73,18 @@ public class CustomAnswerAdvisor implements BaseAdvisor {
 
     @Override
     public ChatClientResponse after(ChatClientResponse chatClientResponse, AdvisorChain advisorChain) {
-        return chatClientResponse;
+        ChatResponse chatResponse = chatClientResponse.chatResponse();
+        Object dropped = chatClientResponse.context().get(CONTEXT_DROPPED);
+        if (chatResponse == null || dropped == null) {
+            return chatClientResponse;
+        }
+        // 丢弃的分片随响应metadata返回，调用方可以据此提示答案可能不完整
+        ChatResponse withContextMetadata = ChatResponse.builder()
+                .from(chatResponse)
+                .metadata(CONTEXT_DROPPED, dropped)
+                .metadata(CONTEXT_TOKENS, chatClientResponse.context().get(CONTEXT_TOKENS))
+                .build();
+        return chatClientResponse.mutate().chatResponse(withContextMetadata).build();
     }
 
     @Override
@@ -0,0 +1,283 @@
+package org.example.springai.advisor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.example.springai.config.RagProperties;
+import org.example.springai.embedding.CachingEmbeddingModel;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.AdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.BaseAdvisor;
+import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 检索后重排：QuestionAnswerAdvisor多召回一些候选，这里去掉近似重复的分片，再按MMR（最大边际相关）选出topN个分片交给CustomAnswerAdvisor
+ * 相似度使用向量缓存中已有的向量（入库和提问时已经算过），不额外调用模型；任一向量不在缓存中时改用字符二元组的Jaccard相似度
+ * 每次请求节省的prompt token数写入上下文（TOKENS_SAVED）和rag.rerank.tokens.saved指标
+ */
+@Slf4j
+@Component
+public class MmrRerankAdvisor implements BaseAdvisor {
+
+    /**
+     * 用户原始问题，QuestionAnswerAdvisor会改写用户消息，后续advisor从这里取问题
+     */
+    public static final String ORIGINAL_QUERY = "rag_original_query";
+    /**
+     * 本次请求保留的分片数，未设置时使用rerank.top-n
+     */
+    public static final String TOP_N = "rag_rerank_top_n";
+    /**
+     * 本次请求重排节省的prompt token数
+     */
+    public static final String TOKENS_SAVED = "rag_rerank_tokens_saved";
+
+    private final RagProperties.Rerank settings;
+    private final EmbeddingModel embeddingModel;
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+    private final DistributionSummary tokensSaved;
+    private final Counter duplicatesRemoved;
+
+    @Autowired
+    public MmrRerankAdvisor(RagProperties ragProperties, EmbeddingModel embeddingModel, MeterRegistry meterRegistry) {
+        this.settings = ragProperties.getRerank();
+        this.embeddingModel = embeddingModel;
+        this.tokensSaved = DistributionSummary.builder("rag.rerank.tokens.saved").register(meterRegistry);
+        this.duplicatesRemoved = meterRegistry.counter("rag.rerank.duplicates.removed");
+    }
+
+    public boolean isEnabled() {
+        return settings.isEnabled();
+    }
+
+    public int defaultTopN() {
+        return settings.getTopN();
+    }
+
+    /**
+     * 检索阶段的召回数量：不少于配置的候选数，请求的topN较大时按配置的候选倍数放大
+     */
+    public int candidateCount(int topN) {
+        int multiplier = Math.max(1, settings.getCandidates() / Math.max(1, settings.getTopN()));
+        return Math.max(settings.getCandidates(), topN * multiplier);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public ChatClientRequest before(ChatClientRequest chatClientRequest, AdvisorChain advisorChain) {
+        if (!settings.isEnabled()
+                || !(chatClientRequest.context().get(QuestionAnswerAdvisor.RETRIEVED_DOCUMENTS) instanceof List<?> retrieved)
+                || retrieved.isEmpty()) {
+            return chatClientRequest;
+        }
+        List<Document> candidates = (List<Document>) retrieved;
+        Object originalQuery = chatClientRequest.context().get(ORIGINAL_QUERY);
+        String query = originalQuery != null ? originalQuery.toString() : chatClientRequest.prompt().getUserMessage().getText();
+
+        int topN = chatClientRequest.context().get(TOP_N) instanceof Integer requested ? requested : settings.getTopN();
+        List<Document> selected = rerank(query, candidates, topN);
+        int saved = estimateTokens(candidates) - estimateTokens(selected);
+        tokensSaved.record(saved);
+        log.debug("重排完成：候选={}, 保留={}, 节省token={}", candidates.size(), selected.size(), saved);
+
+        Map<String, Object> context = new HashMap<>(chatClientRequest.context());
+        context.put(QuestionAnswerAdvisor.RETRIEVED_DOCUMENTS, selected);
+        context.put(TOKENS_SAVED, saved);
+        return chatClientRequest.mutate().context(context).build();
+    }
+
+    @Override
+    public ChatClientResponse after(ChatClientResponse chatClientResponse, AdvisorChain advisorChain) {
+        return chatClientResponse;
+    }
+
+    /**
+     * 在QuestionAnswerAdvisor之后、CustomAnswerAdvisor之前执行
+     */
+    @Override
+    public int getOrder() {
+        return Integer.MAX_VALUE - 2;
+    }
+
+    /**
+     * MMR贪心选择：每轮选 lambda * 与问题的相关度 - (1 - lambda) * 与已选分片的最大相似度 最高的候选，
+     * 与已选分片相似度超过去重阈值的候选直接丢弃
+     */
+    List<Document> rerank(String query, List<Document> candidates, int topN) {
+        int count = candidates.size();
+        double[] relevance = new double[count];
+        double[][] similarity = new double[count][count];
+        double duplicateThreshold;
+
+        float[] queryVector = cachedVector(query);
+        float[][] vectors = queryVector == null ? null : cachedVectors(candidates);
+        if (vectors != null) {
+            normalize(queryVector);
+            for (int i = 0; i < count; i++) {
+                relevance[i] = dot(queryVector, vectors[i]);
+                for (int j = 0; j < i; j++) {
+                    similarity[i][j] = similarity[j][i] = dot(vectors[i], vectors[j]);
+                }
+            }
+            duplicateThreshold = settings.getDuplicateThreshold();
+        } else {
+            // 没有向量时用检索顺序作为相关度，检索结果本身已按相关度排序
+            List<Set<String>> shingles = candidates.stream().map(document -> shingles(document.getText())).toList();
+            for (int i = 0; i < count; i++) {
+                relevance[i] = 1.0 - (double) i / count;
+                for (int j = 0; j < i; j++) {
+                    similarity[i][j] = similarity[j][i] = jaccard(shingles.get(i), shingles.get(j));
+                }
+            }
+            duplicateThreshold = settings.getLexicalDuplicateThreshold();
+        }
+
+        double lambda = settings.getLambda();
+        boolean[] used = new boolean[count];
+        double[] maxSimilarity = new double[count];
+        List<Document> selected = new ArrayList<>(Math.min(count, topN));
+        int duplicates = 0;
+        while (selected.size() < topN) {
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < count; i++) {
+                if (used[i]) {
+                    continue;
+                }
+                if (!selected.isEmpty() && maxSimilarity[i] >= duplicateThreshold) {
+                    used[i] = true;
+                    duplicates++;
+                    continue;
+                }
+                double score = lambda * relevance[i] - (1 - lambda) * maxSimilarity[i];
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            used[best] = true;
+            selected.add(candidates.get(best));
+            for (int i = 0; i < count; i++) {
+                maxSimilarity[i] = Math.max(maxSimilarity[i], similarity[i][best]);
+            }
+        }
+        duplicatesRemoved.increment(duplicates);
+        return selected;
+    }
+
+    private float[] cachedVector(String text) {
+        if (!(embeddingModel instanceof CachingEmbeddingModel cachingEmbeddingModel) || text == null) {
+            return null;
+        }
+        float[] vector = cachingEmbeddingModel.peek(text);
+        return vector == null ? null : vector.clone();
+    }
+
+    /**
+     * 分片向量：进程内向量库按文本向量化，Chroma按带metadata的格式化内容向量化，两种都尝试
+     */
+    private float[][] cachedVectors(List<Document> candidates) {
+        float[][] vectors = new float[candidates.size()][];
+        for (int i = 0; i < candidates.size(); i++) {
+            Document document = candidates.get(i);
+            float[] vector = cachedVector(document.getText());
+            if (vector == null) {
+                Map<String, Object> metadata = new HashMap<>(document.getMetadata());
+                // 检索时附加的distance不参与入库时的向量化
+                metadata.remove("distance");
+                vector = cachedVector(Document.builder().id(document.getId()).text(document.getText())
+                        .metadata(metadata).build().getFormattedContent(MetadataMode.EMBED));
+            }
+            if (vector == null) {
+                return null;
+            }
+            vectors[i] = normalize(vector);
+        }
+        return vectors;
+    }
+
+    private int estimateTokens(List<Document> documents) {
+        int tokens = 0;
+        for (Document document : documents) {
+            tokens += document.getText() == null ? 0 : tokenCountEstimator.estimate(document.getText());
+        }
+        return tokens;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+        if (norm > 0) {
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = (float) (vector[i] / norm);
+            }
+        }
+        return vector;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return 0;
+        }
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * 去掉空白后的字符二元组集合，中英文都适用
+     */
+    private static Set<String> shingles(String text) {
+        Set<String> shingles = new HashSet<>();
+        if (text == null) {
+            return shingles;
+        }
+        String compact = text.replaceAll("\\s+", "").toLowerCase();
+        if (compact.length() == 1) {
+            shingles.add(compact);
+        }
+        for (int i = 0; i + 1 < compact.length(); i++) {
+            shingles.add(compact.substring(i, i + 2));
+        }
+        return shingles;
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        if (a.isEmpty() && b.isEmpty()) {
+            return 1.0;
+        }
+        Set<String> smaller = a.size() <= b.size() ? a : b;
+        Set<String> larger = smaller == a ? b : a;
+        int intersection = 0;
+        for (String shingle : smaller) {
+            if (larger.contains(shingle)) {
+                intersection++;
+            }
+        }
+        return (double) intersection / (a.size() + b.size() - intersection);
+    }
+}
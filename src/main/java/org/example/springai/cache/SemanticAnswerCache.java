@@ -0,0 +1,204 @@
+package org.example.springai.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.example.springai.config.RagProperties;
+import org.example.springai.ingest.CollectionChangedEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 语义答案缓存：按知识库缓存（问题向量, 答案, 来源文档ID）
+ * 新问题与缓存问题的余弦相似度超过阈值时直接返回缓存答案，不再调用大模型
+ * 每个知识库有条目上限（LRU淘汰）和过期时间，知识库内容变更时整体失效
+ */
+@Slf4j
+@Component
+public class SemanticAnswerCache {
+
+    private final RagProperties.AnswerCache settings;
+    private final Clock clock;
+    private final Map<String, CollectionCache> collections = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Counter invalidations;
+
+    @Autowired
+    public SemanticAnswerCache(RagProperties ragProperties, MeterRegistry meterRegistry) {
+        this(ragProperties.getAnswerCache(), meterRegistry, Clock.systemUTC());
+    }
+
+    SemanticAnswerCache(RagProperties.AnswerCache settings, MeterRegistry meterRegistry, Clock clock) {
+        this.settings = settings;
+        this.clock = clock;
+        this.hits = meterRegistry.counter("rag.answer.cache.hits");
+        this.misses = meterRegistry.counter("rag.answer.cache.misses");
+        this.evictions = meterRegistry.counter("rag.answer.cache.evictions");
+        this.invalidations = meterRegistry.counter("rag.answer.cache.invalidations");
+        Gauge.builder("rag.answer.cache.size", this, SemanticAnswerCache::size).register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return settings.isEnabled();
+    }
+
+    /**
+     * 知识库当前的版本号，回答前读取，写入缓存时校验，避免回答期间知识库变更后写入过期答案
+     */
+    public long generation(String collectionName) {
+        return cacheFor(collectionName).generation();
+    }
+
+    /**
+     * 查找与问题向量最相似且超过阈值的缓存答案
+     */
+    public Optional<CachedAnswer> lookup(String collectionName, float[] questionEmbedding) {
+        float[] query = normalize(questionEmbedding);
+        CollectionCache cache = cacheFor(collectionName);
+        Instant expireBefore = clock.instant().minus(settings.getTtl());
+        synchronized (cache) {
+            Entry best = null;
+            double bestScore = settings.getSimilarityThreshold();
+            Iterator<Entry> iterator = cache.entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.createdAt().isBefore(expireBefore)) {
+                    iterator.remove();
+                    evictions.increment();
+                    continue;
+                }
+                if (entry.embedding().length != query.length) {
+                    continue;
+                }
+                double score = dot(query, entry.embedding());
+                if (score >= bestScore) {
+                    best = entry;
+                    bestScore = score;
+                }
+            }
+            if (best == null) {
+                misses.increment();
+                return Optional.empty();
+            }
+            // 访问顺序的LinkedHashMap，get会把命中的条目移到队尾
+            cache.entries.get(best.question());
+            hits.increment();
+            log.debug("语义缓存命中：collection={}, 相似度={}, 缓存问题={}", collectionName, bestScore, best.question());
+            return Optional.of(new CachedAnswer(best.question(), best.answer(), best.sourceDocumentIds(), bestScore));
+        }
+    }
+
+    /**
+     * 写入答案；知识库版本号与回答前读取的不一致时丢弃
+     */
+    public void put(String collectionName, long generation, String question, float[] questionEmbedding,
+                    String answer, List<String> sourceDocumentIds) {
+        CollectionCache cache = cacheFor(collectionName);
+        synchronized (cache) {
+            if (cache.generation() != generation) {
+                return;
+            }
+            cache.entries.put(question, new Entry(question, normalize(questionEmbedding), answer,
+                    List.copyOf(sourceDocumentIds), clock.instant()));
+        }
+    }
+
+    public void invalidate(String collectionName) {
+        CollectionCache cache = collections.get(collectionName);
+        if (cache == null) {
+            return;
+        }
+        synchronized (cache) {
+            cache.entries.clear();
+            cache.generation++;
+        }
+        invalidations.increment();
+        log.info("知识库内容已变更，清空语义答案缓存：{}", collectionName);
+    }
+
+    @EventListener
+    public void onCollectionChanged(CollectionChangedEvent event) {
+        invalidate(event.collectionName());
+    }
+
+    private CollectionCache cacheFor(String collectionName) {
+        return collections.computeIfAbsent(collectionName, name -> new CollectionCache());
+    }
+
+    private int size() {
+        int size = 0;
+        for (CollectionCache cache : collections.values()) {
+            synchronized (cache) {
+                size += cache.entries.size();
+            }
+        }
+        return size;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = Math.sqrt(dot(vector, vector));
+        float[] normalized = new float[vector.length];
+        if (norm == 0) {
+            return normalized;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * 命中的缓存答案
+     *
+     * @param similarity 与缓存问题的余弦相似度
+     */
+    public record CachedAnswer(String question, String answer, List<String> sourceDocumentIds, double similarity) {
+    }
+
+    private record Entry(String question, float[] embedding, String answer, List<String> sourceDocumentIds,
+                         Instant createdAt) {
+    }
+
+    /**
+     * 单个知识库的缓存，所有访问都在该对象上同步
+     */
+    private class CollectionCache {
+        private long generation;
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > settings.getMaxEntriesPerCollection()) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        synchronized long generation() {
+            return generation;
+        }
+    }
+}
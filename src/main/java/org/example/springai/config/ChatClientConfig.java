@@ -1,11 +1,18 @@
 package org.example.springai.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import io.modelcontextprotocol.client.McpSyncClient;
 import org.example.springai.controller.WeatherController;
+import org.example.springai.execution.AdmissionController;
+import org.example.springai.execution.BlockingCallExecutor;
+import org.example.springai.memory.CompactingChatMemory;
+import org.example.springai.memory.ConversationSummaryAdvisor;
+import org.example.springai.memory.TieredChatMemoryRepository;
 import org.example.springai.tools.ChatTool;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.PromptChatMemoryAdvisor;
 import org.springframework.ai.chat.client.advisor.SimpleLoggerAdvisor;
+import org.springframework.ai.chat.client.advisor.api.Advisor;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.memory.MessageWindowChatMemory;
 import org.springframework.ai.mcp.SyncMcpToolCallbackProvider;
@@ -27,12 +34,23 @@ public class ChatClientConfig {
     @Value("${ai.type}")
     private String apiType;
 
-    // 业务记忆存储
+    // 业务记忆存储（内存 + 数据库两层，见TieredChatMemoryRepository），开启压缩时较早的对话总结为摘要
     @Bean
-    public ChatMemory chatMemory() {
+    public ChatMemory chatMemory(TieredChatMemoryRepository chatMemoryRepository,
+                                 RagProperties ragProperties,
+                                 OpenAiChatModel openAiChatModel,
+                                 BlockingCallExecutor blockingCallExecutor,
+                                 AdmissionController admissionController,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${spring.ai.openai.chat.options.model:default}") String chatModel) {
+        if (ragProperties.getMemory().getCompaction().isEnabled()) {
+            return new CompactingChatMemory(chatMemoryRepository, openAiChatModel, blockingCallExecutor,
+                    admissionController, chatModel, ragProperties.getMemory(), meterRegistry);
+        }
         return MessageWindowChatMemory
                 .builder()
-                .maxMessages(20)
+                .chatMemoryRepository(chatMemoryRepository)
+                .maxMessages(ragProperties.getMemory().getMaxMessages())
                 .build();
     }
 
@@ -48,8 +66,8 @@ public class ChatClientConfig {
                             ##角色
                             你是一个幽默风趣且学识渊博的个人聊天小助手
                             """)
-                    .defaultAdvisors(PromptChatMemoryAdvisor.builder(chatMemory).build(),
-                            new SimpleLoggerAdvisor())
+                    .defaultAdvisors(memoryAdvisors(chatMemory))
+                    .defaultAdvisors(new SimpleLoggerAdvisor())
                     .defaultTools(chatTool,weatherController)
                     .build();
 
@@ -77,8 +95,8 @@ public class ChatClientConfig {
                             - 保持专业、简洁、准确的回答风格
                             - 如遇多个相关文档，整合信息给出综合回答
                             """)
-                    .defaultAdvisors(PromptChatMemoryAdvisor.builder(chatMemory).build(),
-                            new SimpleLoggerAdvisor())
+                    .defaultAdvisors(memoryAdvisors(chatMemory))
+                    .defaultAdvisors(new SimpleLoggerAdvisor())
                     .defaultTools(chatTool,weatherController)
                     .build();
 
@@ -90,8 +108,8 @@ public class ChatClientConfig {
                                     ChatMemory chatMemory,
                                     McpSyncClient mcpSyncClient
                                     ) {
-        ChatClient.Builder builder = ChatClient.builder(openAiChatModel).defaultAdvisors(PromptChatMemoryAdvisor.builder(chatMemory).build(),
-                new SimpleLoggerAdvisor());
+        ChatClient.Builder builder = ChatClient.builder(openAiChatModel).defaultAdvisors(memoryAdvisors(chatMemory))
+                .defaultAdvisors(new SimpleLoggerAdvisor());
         if(mcpSyncClient != null){
             builder.defaultToolCallbacks(SyncMcpToolCallbackProvider.syncToolCallbacks(List.of(mcpSyncClient)));
         }
@@ -99,4 +117,13 @@ public class ChatClientConfig {
 
     }
 
+    // PromptChatMemoryAdvisor不渲染摘要消息，开启压缩时由ConversationSummaryAdvisor把摘要拼入系统提示词
+    private static List<Advisor> memoryAdvisors(ChatMemory chatMemory) {
+        Advisor memoryAdvisor = PromptChatMemoryAdvisor.builder(chatMemory).build();
+        if (chatMemory instanceof CompactingChatMemory compactingChatMemory) {
+            return List.of(new ConversationSummaryAdvisor(compactingChatMemory), memoryAdvisor);
+        }
+        return List.of(memoryAdvisor);
+    }
+
 }
@@ -1,28 +1,62 @@
 package org.example.springai.config;
 
 import lombok.extern.slf4j.Slf4j;
+import org.example.springai.ingest.ProgressTrackingEmbeddingModel;
+import org.example.springai.vectorstore.FlatVectorStore;
+import org.example.springai.vectorstore.HnswVectorStore;
+import org.example.springai.vectorstore.HybridVectorStore;
+import org.example.springai.vectorstore.LocalVectorStore;
 import org.springframework.ai.chroma.vectorstore.ChromaApi;
 import org.springframework.ai.chroma.vectorstore.ChromaVectorStore;
+import org.springframework.ai.document.Document;
 import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
 
 /**
- * ChromaVectorStore工厂类，用于根据collection名称动态获取ChromaVectorStore实例
- * 使用单例模式，每个collection创建一个对应的ChromaVectorStore实例
+ * ChromaVectorStore工厂类，用于根据collection名称动态获取向量库实例
+ * 每个collection在注册表中对应一个实例，并发的首次请求只创建一次（single-flight）
+ * 按rag.collections.{collectionName}.backend配置，知识库也可以使用进程内的HnswVectorStore或FlatVectorStore
+ * 启用混合检索时，返回的向量库外面再包一层HybridVectorStore（向量 + BM25）
+ * 注册表按rag.vector-store.max-cached-collections限制数量，超出时淘汰最久未使用的实例，空闲超过idle-timeout的实例也会淘汰；
+ * 淘汰前写出进程内索引快照，下次访问时从快照恢复
+ * getVectorStore返回的是按名称转发的句柄，每次调用都作用于注册表中当前的实例，调用期间实例不会被淘汰
  */
 @Slf4j
 @Component
-public class ChromaVectorStoreFactory {
+public class ChromaVectorStoreFactory implements DisposableBean {
 
     // 注入ChromaApi
     private final ChromaApi chromaApi;
     // 注入EmbeddingModel
     private final EmbeddingModel embeddingModel;
+    private final RagProperties ragProperties;
     // 注入默认的collection名称
     @Value("${spring.ai.vector-store.chroma.collection-name:coffee_collection}")
     private String defaultCollectionName;
@@ -33,56 +67,169 @@ public class ChromaVectorStoreFactory {
     @Value("${spring.ai.vector-store.chroma.database-name:default_database}")
     private String defaultDatabaseName;
 
-    // 用于存储collection名称和对应的ChromaVectorStore实例
-    private final Map<String, ChromaVectorStore> vectorStoreMap = new ConcurrentHashMap<>();
+    // collection名称到向量库实例的注册表
+    private final Map<String, Registration> registry = new ConcurrentHashMap<>();
+    // 定期把进程内索引快照到磁盘，并淘汰空闲实例
+    private final ScheduledExecutorService snapshotExecutor;
+    // 混合检索中执行向量检索的线程池，满载时由调用线程执行（退化为串行）
+    private final ThreadPoolExecutor hybridSearchExecutor;
 
     /**
      * 构造函数，注入依赖
      */
     @Autowired
-    public ChromaVectorStoreFactory(ChromaApi chromaApi, EmbeddingModel embeddingModel) {
+    public ChromaVectorStoreFactory(ChromaApi chromaApi, EmbeddingModel embeddingModel, RagProperties ragProperties) {
         this.chromaApi = chromaApi;
-        this.embeddingModel = embeddingModel;
+        // 包装一层，用于把向量化进度上报给当前线程上的入库任务
+        this.embeddingModel = new ProgressTrackingEmbeddingModel(embeddingModel);
+        this.ragProperties = ragProperties;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("rag-index-snapshot-");
+        threadFactory.setDaemon(true);
+        this.snapshotExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        long interval = ragProperties.getVectorStore().getSnapshotInterval().toMillis();
+        this.snapshotExecutor.scheduleWithFixedDelay(() -> {
+            snapshotAll();
+            evictIdle();
+        }, interval, interval, TimeUnit.MILLISECONDS);
+        CustomizableThreadFactory searchThreadFactory = new CustomizableThreadFactory("rag-hybrid-search-");
+        searchThreadFactory.setDaemon(true);
+        // 向量检索主要在等待向量化和Chroma的HTTP响应，线程数按CPU数的2倍
+        int searchThreads = Runtime.getRuntime().availableProcessors() * 2;
+        this.hybridSearchExecutor = new ThreadPoolExecutor(searchThreads, searchThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(256), searchThreadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.hybridSearchExecutor.allowCoreThreadTimeOut(true);
     }
 
     /**
-     * 根据collection名称获取ChromaVectorStore实例
-     * 
-     * @param collectionName collection名称，如果为null或空则返回默认的ChromaVectorStore
-     * @return ChromaVectorStore实例
+     * 根据collection名称获取向量库，入库和检索流程只依赖VectorStore接口
+     * 实例在第一次调用时才创建
+     *
+     * @param collectionName collection名称，如果为null或空则返回默认的向量库
+     * @return VectorStore实例
      */
-    public ChromaVectorStore getChromaVectorStore(String collectionName) {
-        // 如果collectionName为null或空，返回默认的ChromaVectorStore
-        if (collectionName == null || collectionName.isEmpty()) {
-            return getDefaultChromaVectorStore();
-        }
+    public VectorStore getVectorStore(String collectionName) {
+        return new RegisteredVectorStore(resolveName(collectionName));
+    }
 
-        // 如果map中已经存在对应的ChromaVectorStore实例，直接返回
-        if (vectorStoreMap.containsKey(collectionName)) {
-            return vectorStoreMap.get(collectionName);
+    /**
+     * 在注册表中当前的实例上执行操作（需要具体实现类型时使用，如平铺索引的量化报告），执行期间实例不会被淘汰
+     */
+    public <T> T withVectorStore(String collectionName, Function<VectorStore, T> action) {
+        String name = resolveName(collectionName);
+        while (true) {
+            Registration registration = registry.computeIfAbsent(name, Registration::new);
+            registration.lastAccessNanos = System.nanoTime();
+            registration.lock.readLock().lock();
+            try {
+                // 拿到锁之前已被淘汰或删除，重新从注册表获取
+                if (!registration.removed) {
+                    return action.apply(registration.get());
+                }
+            } finally {
+                registration.lock.readLock().unlock();
+                evictOverflow();
+            }
         }
+    }
 
-        // 如果map中不存在对应的ChromaVectorStore实例，创建一个新的并存储到map中
-        ChromaVectorStore vectorStore = createChromaVectorStore(collectionName);
-        vectorStoreMap.put(collectionName, vectorStore);
-        return vectorStore;
+    /**
+     * 删除知识库时释放对应的向量库实例，进程内索引同时删除快照
+     * 等待正在进行的调用结束后再删除
+     */
+    public void dropCollection(String collectionName) {
+        // 名称会拼进索引目录，删除磁盘文件前先校验
+        RagProperties.checkCollectionName(collectionName);
+        Registration registration = registry.get(collectionName);
+        if (registration != null) {
+            registration.lock.writeLock().lock();
+            try {
+                registry.remove(collectionName, registration);
+                registration.removed = true;
+            } finally {
+                registration.lock.writeLock().unlock();
+            }
+        }
+        // 未加载或创建失败的知识库也要删除磁盘上的索引
+        HybridVectorStore hybridVectorStore = registration != null ? registration.hybrid : null;
+        if (hybridVectorStore != null) {
+            hybridVectorStore.drop();
+        } else {
+            HybridVectorStore.dropIndex(keywordIndexDirectory(collectionName));
+        }
+        LocalVectorStore localVectorStore = registration != null ? registration.local : null;
+        if (localVectorStore != null) {
+            localVectorStore.drop();
+        } else if (ragProperties.resolveBackend(collectionName) != RagProperties.Backend.CHROMA) {
+            createLocalVectorStore(collectionName).drop();
+        }
+        log.info("向量库实例已删除：{}", collectionName);
     }
 
     /**
-     * 获取默认的ChromaVectorStore实例
-     * 
-     * @return 默认的ChromaVectorStore实例
+     * 启动后并行预热Chroma中已有的知识库，首个用户请求不再承担创建实例（远程校验collection、加载本地索引）的延迟
      */
-    private ChromaVectorStore getDefaultChromaVectorStore() {
-        // 如果map中已经存在默认的ChromaVectorStore实例，直接返回
-        if (vectorStoreMap.containsKey(defaultCollectionName)) {
-            return vectorStoreMap.get(defaultCollectionName);
+    @EventListener(ApplicationReadyEvent.class)
+    public void prewarm() {
+        RagProperties.VectorStoreSettings settings = ragProperties.getVectorStore();
+        if (!settings.isPrewarm()) {
+            return;
+        }
+        List<String> names;
+        try {
+            names = chromaApi.listCollections(defaultTenantName, defaultDatabaseName).stream()
+                    .map(ChromaApi.Collection::name)
+                    .limit(settings.getMaxCachedCollections())
+                    .toList();
+        } catch (Exception e) {
+            log.warn("获取知识库列表失败，跳过向量库预热", e);
+            return;
         }
+        if (names.isEmpty()) {
+            return;
+        }
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("rag-vector-store-prewarm-");
+        threadFactory.setDaemon(true);
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(settings.getPrewarmParallelism(), names.size()), threadFactory);
+        long start = System.nanoTime();
+        CompletableFuture<?>[] futures = names.stream()
+                .map(name -> CompletableFuture.runAsync(() -> withVectorStore(name, store -> store), executor)
+                        .exceptionally(e -> {
+                            log.warn("预热向量库失败：{}", name, e);
+                            return null;
+                        }))
+                .toArray(CompletableFuture[]::new);
+        // 不阻塞启动线程，预热完成后关闭线程池
+        CompletableFuture.allOf(futures).whenComplete((ignored, e) -> {
+            executor.shutdown();
+            log.info("向量库预热完成：{}个知识库，耗时{}ms", names.size(), (System.nanoTime() - start) / 1_000_000);
+        });
+    }
+
+    private String resolveName(String collectionName) {
+        return RagProperties.checkCollectionName(
+                collectionName == null || collectionName.isEmpty() ? defaultCollectionName : collectionName);
+    }
 
-        // 如果map中不存在默认的ChromaVectorStore实例，创建一个新的并存储到map中
-        ChromaVectorStore vectorStore = createChromaVectorStore(defaultCollectionName);
-        vectorStoreMap.put(defaultCollectionName, vectorStore);
-        return vectorStore;
+    /**
+     * 创建知识库对应的向量库：后端实例，启用混合检索时再包一层HybridVectorStore
+     */
+    private VectorStore createVectorStore(Registration registration) {
+        String name = registration.name;
+        VectorStore vectorStore;
+        if (ragProperties.resolveBackend(name) == RagProperties.Backend.CHROMA) {
+            vectorStore = createChromaVectorStore(name);
+        } else {
+            registration.local = createLocalVectorStore(name);
+            vectorStore = registration.local;
+        }
+        RagProperties.HybridSearch hybridSearch = ragProperties.resolveHybridSearch(name);
+        if (!hybridSearch.isEnabled()) {
+            return vectorStore;
+        }
+        registration.hybrid = new HybridVectorStore(name, vectorStore, hybridSearch, keywordIndexDirectory(name),
+                hybridSearchExecutor);
+        return registration.hybrid;
     }
 
     /**
@@ -102,9 +249,186 @@ public class ChromaVectorStoreFactory {
         ChromaVectorStore chromaVectorStore = ChromaVectorStore.builder(chromaApi, embeddingModel).tenantName(defaultTenantName).databaseName(defaultDatabaseName).collectionName(collectionName).build();
         try {
             chromaVectorStore.afterPropertiesSet();
-        }catch (Exception e){
-            log.error("创建ChromaVectorStore实例失败",e);
+        } catch (Exception e) {
+            // 抛出后注册项以失败结束并移出注册表，下次调用重新创建，不缓存未初始化完成的实例
+            log.error("创建ChromaVectorStore实例失败：{}", collectionName, e);
+            throw new IllegalStateException("创建ChromaVectorStore实例失败：" + collectionName, e);
         }
         return chromaVectorStore;
     }
+
+    /**
+     * 创建进程内向量库，存在快照时从快照恢复
+     */
+    private LocalVectorStore createLocalVectorStore(String collectionName) {
+        if (ragProperties.resolveBackend(collectionName) == RagProperties.Backend.FLAT) {
+            return new FlatVectorStore(collectionName, embeddingModel, ragProperties.getVectorStore().getFlat(),
+                    ragProperties.resolveQuantization(collectionName),
+                    Path.of(ragProperties.getDataDir(), "flat", collectionName));
+        }
+        return new HnswVectorStore(collectionName, embeddingModel, ragProperties.resolveHnsw(collectionName),
+                Path.of(ragProperties.getDataDir(), "hnsw", collectionName));
+    }
+
+    private Path keywordIndexDirectory(String collectionName) {
+        return Path.of(ragProperties.getDataDir(), "bm25", collectionName);
+    }
+
+
+    /**
+     * 数量超过上限时按最近访问时间淘汰，正在创建或正在使用的实例跳过
+     */
+    private void evictOverflow() {
+        int maxCachedCollections = ragProperties.getVectorStore().getMaxCachedCollections();
+        if (registry.size() <= maxCachedCollections) {
+            return;
+        }
+        List<Registration> candidates = new ArrayList<>(registry.values());
+        candidates.sort(Comparator.comparingLong(registration -> registration.lastAccessNanos));
+        for (Registration registration : candidates) {
+            if (registry.size() <= maxCachedCollections) {
+                break;
+            }
+            evict(registration, "超出数量上限");
+        }
+    }
+
+    private void evictIdle() {
+        long idleNanos = ragProperties.getVectorStore().getIdleTimeout().toNanos();
+        long now = System.nanoTime();
+        registry.values().forEach(registration -> {
+            if (now - registration.lastAccessNanos > idleNanos) {
+                evict(registration, "空闲超时");
+            }
+        });
+    }
+
+    private void evict(Registration registration, String reason) {
+        if (!registration.store.isDone() || !registration.lock.writeLock().tryLock()) {
+            return;
+        }
+        try {
+            if (registration.removed) {
+                return;
+            }
+            // 先写快照再移出注册表，之后创建的新实例从最新的快照恢复
+            snapshot(registration);
+            registry.remove(registration.name, registration);
+            registration.removed = true;
+        } finally {
+            registration.lock.writeLock().unlock();
+        }
+        log.info("淘汰向量库实例：{}，原因：{}", registration.name, reason);
+    }
+
+    private void snapshotAll() {
+        registry.values().forEach(this::snapshot);
+    }
+
+    private void snapshot(Registration registration) {
+        if (registration.local != null) {
+            try {
+                registration.local.snapshot();
+            } catch (RuntimeException e) {
+                log.error("写入向量索引快照失败：{}", registration.name, e);
+            }
+        }
+        if (registration.hybrid != null) {
+            try {
+                registration.hybrid.snapshot();
+            } catch (RuntimeException e) {
+                log.error("写入BM25索引快照失败：{}", registration.name, e);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        snapshotExecutor.shutdownNow();
+        hybridSearchExecutor.shutdownNow();
+        snapshotAll();
+    }
+
+    /**
+     * 注册表中的一项：实例只由第一个调用get的线程创建，其他线程等待同一个结果
+     * 调用方持有读锁，淘汰和删除持有写锁
+     */
+    private final class Registration {
+        private final String name;
+        private final CompletableFuture<VectorStore> store = new CompletableFuture<>();
+        private final AtomicBoolean creating = new AtomicBoolean();
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private volatile long lastAccessNanos = System.nanoTime();
+        private volatile boolean removed;
+        // 需要快照和删除的组件
+        private volatile LocalVectorStore local;
+        private volatile HybridVectorStore hybrid;
+
+        private Registration(String name) {
+            this.name = name;
+        }
+
+        private VectorStore get() {
+            if (creating.compareAndSet(false, true)) {
+                try {
+                    store.complete(createVectorStore(this));
+                } catch (RuntimeException e) {
+                    // 创建失败不缓存，下次调用重新创建
+                    registry.remove(name, this);
+                    removed = true;
+                    store.completeExceptionally(e);
+                }
+            }
+            try {
+                return store.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+    }
+
+    /**
+     * getVectorStore返回的句柄，每次调用都转发到注册表中当前的实例
+     */
+    private final class RegisteredVectorStore implements VectorStore {
+        private final String collectionName;
+
+        private RegisteredVectorStore(String collectionName) {
+            this.collectionName = collectionName;
+        }
+
+        @Override
+        public String getName() {
+            return collectionName;
+        }
+
+        @Override
+        public void add(List<Document> documents) {
+            withVectorStore(collectionName, store -> {
+                store.add(documents);
+                return null;
+            });
+        }
+
+        @Override
+        public void delete(List<String> idList) {
+            withVectorStore(collectionName, store -> {
+                store.delete(idList);
+                return null;
+            });
+        }
+
+        @Override
+        public void delete(Filter.Expression filterExpression) {
+            withVectorStore(collectionName, store -> {
+                store.delete(filterExpression);
+                return null;
+            });
+        }
+
+        @Override
+        public List<Document> similaritySearch(SearchRequest request) {
+            return withVectorStore(collectionName, store -> store.similaritySearch(request));
+        }
+    }
 }
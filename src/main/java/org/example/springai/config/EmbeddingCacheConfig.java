@@ -0,0 +1,55 @@
+package org.example.springai.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.springai.embedding.AdmittingEmbeddingModel;
+import org.example.springai.embedding.CachingEmbeddingModel;
+import org.example.springai.embedding.CoalescingEmbeddingModel;
+import org.example.springai.embedding.SplittingEmbeddingModel;
+import org.example.springai.execution.AdmissionController;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.openai.OpenAiEmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.nio.file.Path;
+
+/**
+ * 向量模型装饰配置：在自动配置的OpenAiEmbeddingModel外依次包装按条数上限拆分（SplittingEmbeddingModel）、请求合并（CoalescingEmbeddingModel）、
+ * 准入控制（AdmittingEmbeddingModel）和缓存（CachingEmbeddingModel），并声明为@Primary
+ * 这样ChromaVectorStoreFactory、RagService以及所有按类型注入EmbeddingModel的地方都会使用装饰后的实现
+ * 缓存在最外层，命中缓存的请求不扣令牌、不进入合并窗口
+ */
+@Configuration
+public class EmbeddingCacheConfig {
+
+    @Value("${spring.ai.openai.embedding.options.model:text-embedding-v4}")
+    private String embeddingModelName;
+
+    @Bean
+    @Primary
+    public EmbeddingModel cachingEmbeddingModel(OpenAiEmbeddingModel openAiEmbeddingModel,
+                                                RagProperties ragProperties,
+                                                AdmissionController admissionController,
+                                                MeterRegistry meterRegistry) {
+        // 最内层拆分，任何路径发往远程服务的请求都不超过服务的条数上限
+        EmbeddingModel embeddingModel = new SplittingEmbeddingModel(openAiEmbeddingModel,
+                ragProperties.getEmbeddingLimits().getMaxTextsPerRequest());
+        RagProperties.EmbeddingCoalescer coalescer = ragProperties.getEmbeddingCoalescer();
+        if (coalescer.isEnabled()) {
+            embeddingModel = new CoalescingEmbeddingModel(embeddingModel, coalescer.getWindow(),
+                    coalescer.getMaxBatchSize(), meterRegistry);
+        }
+        if (ragProperties.getAdmission().isEnabled()) {
+            embeddingModel = new AdmittingEmbeddingModel(embeddingModel, admissionController, embeddingModelName);
+        }
+        RagProperties.EmbeddingCache cache = ragProperties.getEmbeddingCache();
+        if (cache.isEnabled()) {
+            embeddingModel = new CachingEmbeddingModel(embeddingModel, embeddingModelName,
+                    Path.of(ragProperties.getDataDir(), "embedding-cache"),
+                    cache.getHeapEntries(), cache.getSegmentSize().toBytes(), cache.getMaxSegments(), meterRegistry);
+        }
+        return embeddingModel;
+    }
+}
@@ -0,0 +1,32 @@
+package org.example.springai.config;
+
+import org.example.springai.http.HttpDependencyRegistry;
+import org.example.springai.http.ResilienceExchangeFilter;
+import org.example.springai.http.ResilienceInterceptor;
+import org.springframework.boot.web.client.RestClientCustomizer;
+import org.springframework.boot.web.reactive.function.client.WebClientCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.JdkClientHttpConnector;
+
+/**
+ * ChromaApi和OpenAI模型客户端都通过Spring Boot提供的RestClient.Builder/WebClient.Builder创建，
+ * 在这里统一换成共享的JDK HttpClient，并加上按依赖的超时、舱壁和熔断
+ */
+@Configuration
+public class HttpTransportConfig {
+
+    @Bean
+    public RestClientCustomizer resilientRestClientCustomizer(HttpDependencyRegistry registry) {
+        return builder -> builder
+                .requestFactory(registry.requestFactory())
+                .requestInterceptor(new ResilienceInterceptor(registry));
+    }
+
+    @Bean
+    public WebClientCustomizer resilientWebClientCustomizer(HttpDependencyRegistry registry) {
+        return builder -> builder
+                .clientConnector(new JdkClientHttpConnector(registry.httpClient()))
+                .filter(new ResilienceExchangeFilter(registry));
+    }
+}
@@ -0,0 +1,793 @@
+package org.example.springai.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * RAG相关配置，对应application.yml中的rag前缀
+ * 全局默认值放在ingestion下，按知识库覆盖的配置放在collections.{collectionName}下
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rag")
+public class RagProperties {
+
+    private static final Pattern COLLECTION_NAME = Pattern.compile("[A-Za-z0-9._-]{3,63}");
+
+    /**
+     * 本地数据目录，存放哈希索引、向量缓存等需要持久化的本地数据
+     */
+    private String dataDir = "data/rag";
+
+    /**
+     * 全局入库默认配置
+     */
+    private Ingestion ingestion = new Ingestion();
+
+    /**
+     * 向量缓存配置
+     */
+    private EmbeddingCache embeddingCache = new EmbeddingCache();
+
+    /**
+     * 并发向量化请求合并配置
+     */
+    private EmbeddingCoalescer embeddingCoalescer = new EmbeddingCoalescer();
+
+    /**
+     * 向量模型服务的请求限制
+     */
+    private EmbeddingLimits embeddingLimits = new EmbeddingLimits();
+
+    /**
+     * 语义答案缓存配置
+     */
+    private AnswerCache answerCache = new AnswerCache();
+
+    /**
+     * 向量库后端配置
+     */
+    private VectorStoreSettings vectorStore = new VectorStoreSettings();
+
+    /**
+     * 混合检索（向量 + BM25关键词）配置
+     */
+    private HybridSearch hybridSearch = new HybridSearch();
+
+    /**
+     * 检索后重排（去重 + MMR）配置
+     */
+    private Rerank rerank = new Rerank();
+
+    /**
+     * 问答上下文组装配置
+     */
+    private ContextPacking context = new ContextPacking();
+
+    /**
+     * 跨知识库并行检索配置
+     */
+    private Federation federation = new Federation();
+
+    /**
+     * 知识库目录配置
+     */
+    private CatalogSettings catalog = new CatalogSettings();
+
+    /**
+     * Chroma、大模型调用的HTTP传输层配置
+     */
+    private Http http = new Http();
+
+    /**
+     * 阻塞式大模型调用的执行方式和按模型的并发限制
+     */
+    private Execution execution = new Execution();
+
+    /**
+     * 准入控制：按会话、IP和模型的令牌桶限流（按估算的prompt token计费）
+     */
+    private Admission admission = new Admission();
+
+    /**
+     * 合并进行中的相同问答请求
+     */
+    private Coalescing coalescing = new Coalescing();
+
+    /**
+     * 会话记忆：内存层（有上限、空闲淘汰）+ 数据库层（后台批量写入）
+     */
+    private MemorySettings memory = new MemorySettings();
+
+    /**
+     * 按知识库（collection）覆盖的配置
+     */
+    private Map<String, CollectionSettings> collections = new HashMap<>();
+
+    /**
+     * 解析某个知识库最终生效的入库配置（知识库配置优先，未配置的项使用全局默认值）
+     */
+    public IngestionSettings resolveIngestion(String collectionName) {
+        CollectionSettings overrides = collectionName == null ? null : collections.get(collectionName);
+        if (overrides == null) {
+            return new IngestionSettings(ingestion.getChunkSize(), ingestion.getChunkOverlap(), ingestion.getBatchSize());
+        }
+        return new IngestionSettings(
+                overrides.getChunkSize() != null ? overrides.getChunkSize() : ingestion.getChunkSize(),
+                overrides.getChunkOverlap() != null ? overrides.getChunkOverlap() : ingestion.getChunkOverlap(),
+                overrides.getBatchSize() != null ? overrides.getBatchSize() : ingestion.getBatchSize());
+    }
+
+    /**
+     * 知识库使用的向量库后端，未单独配置时使用vector-store.default-backend
+     */
+    public Backend resolveBackend(String collectionName) {
+        CollectionSettings overrides = collectionName == null ? null : collections.get(collectionName);
+        return overrides != null && overrides.getBackend() != null ? overrides.getBackend() : vectorStore.getDefaultBackend();
+    }
+
+    /**
+     * 知识库的HNSW参数，知识库配置了hnsw时整体使用知识库的配置
+     */
+    public Hnsw resolveHnsw(String collectionName) {
+        CollectionSettings overrides = collectionName == null ? null : collections.get(collectionName);
+        return overrides != null && overrides.getHnsw() != null ? overrides.getHnsw() : vectorStore.getHnsw();
+    }
+
+    /**
+     * 知识库的混合检索参数，知识库配置了hybrid-search时整体使用知识库的配置
+     */
+    public HybridSearch resolveHybridSearch(String collectionName) {
+        CollectionSettings overrides = collectionName == null ? null : collections.get(collectionName);
+        return overrides != null && overrides.getHybridSearch() != null ? overrides.getHybridSearch() : hybridSearch;
+    }
+
+    /**
+     * 知识库使用的向量量化方式，未单独配置时使用vector-store.flat.quantization
+     */
+    public Quantization resolveQuantization(String collectionName) {
+        CollectionSettings overrides = collectionName == null ? null : collections.get(collectionName);
+        return overrides != null && overrides.getQuantization() != null
+                ? overrides.getQuantization() : vectorStore.getFlat().getQuantization();
+    }
+
+    /**
+     * 校验知识库名称：3~63位字母、数字、.、_、-，不能包含".."
+     * 名称会用作进程内索引、BM25索引和哈希索引的目录/文件名，使用磁盘前必须先校验
+     */
+    public static String checkCollectionName(String collectionName) {
+        if (collectionName == null || !COLLECTION_NAME.matcher(collectionName).matches() || collectionName.contains("..")) {
+            throw new IllegalArgumentException("知识库名称不合法（3~63位字母、数字、.、_、-，不能包含..）：" + collectionName);
+        }
+        return collectionName;
+    }
+
+    public enum Backend {
+        /**
+         * 远程Chroma服务
+         */
+        CHROMA,
+        /**
+         * 进程内HNSW索引
+         */
+        HNSW,
+        /**
+         * 进程内平铺索引（内存映射文件 + 精确扫描）
+         */
+        FLAT
+    }
+
+    public enum ExecutionMode {
+        /**
+         * 固定大小的平台线程池
+         */
+        PLATFORM,
+        /**
+         * 每个调用一个虚拟线程，需要Java 21+，低版本JVM回退到平台线程池
+         */
+        VIRTUAL
+    }
+
+    public enum Quantization {
+        /**
+         * 不量化，直接扫描float32向量
+         */
+        NONE,
+        /**
+         * int8标量量化，内存约为float32的1/4
+         */
+        INT8,
+        /**
+         * 乘积量化，每个子空间1字节
+         */
+        PQ
+    }
+
+    @Data
+    public static class Ingestion {
+        /**
+         * 每个分片的最大token数
+         */
+        private int chunkSize = 512;
+        /**
+         * 相邻分片之间重叠的token数
+         */
+        private int chunkOverlap = 64;
+        /**
+         * 每批写入向量库的分片数量，向量化请求由SplittingEmbeddingModel按服务条数上限拆分
+         */
+        private int batchSize = 32;
+        /**
+         * 同一知识库同时进行的写入批次上限（向量化+写库）
+         */
+        private int writeParallelism = 4;
+        /**
+         * 异步入库线程数
+         */
+        private int workerThreads = 2;
+        /**
+         * 等待执行的入库任务上限，队列满时上传接口返回429
+         */
+        private int queueCapacity = 16;
+        /**
+         * 上传文件的临时目录（异步任务落盘、需要随机访问的格式落盘）
+         */
+        private String tempDir = System.getProperty("java.io.tmpdir") + "/rag-upload";
+        /**
+         * 已结束任务的状态保留时长
+         */
+        private Duration jobRetention = Duration.ofHours(1);
+        /**
+         * 需要随机访问、必须先落盘才能解析的文件扩展名
+         */
+        private Set<String> randomAccessExtensions = new HashSet<>(Set.of(
+                "pdf", "docx", "xlsx", "pptx", "doc", "xls", "ppt", "odt", "ods", "odp", "epub", "zip"));
+        /**
+         * 单个上传文件落盘的大小上限
+         */
+        private DataSize maxSpillSize = DataSize.ofMegabytes(512);
+        /**
+         * 批量入库配置
+         */
+        private Bulk bulk = new Bulk();
+    }
+
+    @Data
+    public static class Bulk {
+        /**
+         * 并行解析文件的线程数（ForkJoinPool并行度）
+         */
+        private int parseParallelism = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        /**
+         * 多个文件的分片合并后每批写入向量库的数量，向量化请求由SplittingEmbeddingModel按服务条数上限拆分
+         */
+        private int batchSize = 128;
+        /**
+         * 同时进行的写入批次数
+         */
+        private int writeParallelism = 4;
+        /**
+         * 单次批量入库的文件数量上限
+         */
+        private int maxFiles = 10000;
+        /**
+         * 允许按服务器目录批量入库的根目录，为空时禁用目录入库
+         */
+        private List<String> allowedRoots = new ArrayList<>();
+    }
+
+    @Data
+    public static class EmbeddingCache {
+        /**
+         * 是否启用向量缓存
+         */
+        private boolean enabled = true;
+        /**
+         * 堆内LRU缓存的最大条目数
+         */
+        private int heapEntries = 10000;
+        /**
+         * 磁盘缓存单个段文件大小
+         */
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+        /**
+         * 磁盘缓存段文件数量上限，超过后复用最老的段
+         */
+        private int maxSegments = 16;
+    }
+
+    @Data
+    public static class EmbeddingCoalescer {
+        /**
+         * 是否合并并发的向量化请求
+         */
+        private boolean enabled = true;
+        /**
+         * 合并窗口：第一个请求到达后最多等待的时间，越大合并越多、尾延迟越高
+         */
+        private Duration window = Duration.ofMillis(5);
+        /**
+         * 单次合并调用的文本条数上限，达到后立即发出；不小于该值的请求直接透传
+         */
+        private int maxBatchSize = 10;
+    }
+
+    @Data
+    public static class EmbeddingLimits {
+        /**
+         * 单次向量化请求的文本条数上限（DashScope为10），超出的请求拆成多次调用，与入库的batch-size无关
+         */
+        private int maxTextsPerRequest = 10;
+    }
+
+    @Data
+    public static class AnswerCache {
+        /**
+         * 是否启用语义答案缓存
+         */
+        private boolean enabled = true;
+        /**
+         * 问题向量余弦相似度阈值，不低于该值视为同一问题
+         */
+        private double similarityThreshold = 0.95;
+        /**
+         * 每个知识库缓存的答案数量上限，超过后淘汰最久未命中的
+         */
+        private int maxEntriesPerCollection = 1000;
+        /**
+         * 缓存答案的有效期
+         */
+        private Duration ttl = Duration.ofHours(6);
+    }
+
+    @Data
+    public static class HybridSearch {
+        /**
+         * 是否在向量检索的同时执行BM25关键词检索并融合结果
+         */
+        private boolean enabled = true;
+        /**
+         * 向量检索结果在RRF融合中的权重
+         */
+        private double vectorWeight = 1.0;
+        /**
+         * 关键词检索结果在RRF融合中的权重，产品编码、报错信息较多的知识库可以调高
+         */
+        private double keywordWeight = 1.0;
+        /**
+         * RRF平滑常数k，文档得分为 权重 / (k + 排名)，越大排名靠后的结果影响越大
+         */
+        private int rrfK = 60;
+        /**
+         * 每一路召回topK的倍数作为融合候选
+         */
+        private int candidateMultiplier = 2;
+    }
+
+    @Data
+    public static class Rerank {
+        /**
+         * 是否在检索后去重并按MMR重排
+         */
+        private boolean enabled = true;
+        /**
+         * 检索阶段召回的候选分片数
+         */
+        private int candidates = 12;
+        /**
+         * 重排后交给大模型的分片数
+         */
+        private int topN = 4;
+        /**
+         * MMR中相关度的权重（0~1），越小越偏向多样性
+         */
+        private double lambda = 0.7;
+        /**
+         * 向量余弦相似度不低于该值的分片视为重复
+         */
+        private double duplicateThreshold = 0.95;
+        /**
+         * 没有缓存向量时，字符二元组Jaccard相似度不低于该值的分片视为重复
+         */
+        private double lexicalDuplicateThreshold = 0.8;
+    }
+
+    @Data
+    public static class ContextPacking {
+        /**
+         * 拼入prompt的检索上下文token上限
+         */
+        private int maxTokens = 3000;
+        /**
+         * 放不下的分片剩余预算不少于该值时截断写入，否则整段丢弃
+         */
+        private int minTruncatedTokens = 64;
+    }
+
+    @Data
+    public static class Federation {
+        /**
+         * 每个知识库的检索时限，从请求开始计时，超时的知识库跳过
+         */
+        private Duration collectionDeadline = Duration.ofSeconds(2);
+        /**
+         * 单次请求检索的知识库数量上限
+         */
+        private int maxCollections = 16;
+        /**
+         * 并行检索线程数
+         */
+        private int threads = Runtime.getRuntime().availableProcessors() * 2;
+        /**
+         * 等待执行的检索任务上限，队列满时新的知识库直接跳过
+         */
+        private int queueCapacity = 256;
+    }
+
+    @Data
+    public static class CatalogSettings {
+        /**
+         * 后台从Chroma刷新知识库列表的间隔
+         */
+        private Duration refreshInterval = Duration.ofSeconds(60);
+    }
+
+    @Data
+    public static class Http {
+        /**
+         * 建立连接的超时
+         */
+        private Duration connectTimeout = Duration.ofSeconds(3);
+        /**
+         * 是否优先使用HTTP/2
+         */
+        private boolean http2 = true;
+        /**
+         * 空闲连接保活时长
+         */
+        private Duration keepAlive = Duration.ofMinutes(5);
+        /**
+         * 连接池保留的空闲连接上限
+         */
+        private int maxIdleConnections = 64;
+        /**
+         * 下游依赖，按配置顺序匹配，第一个匹配的生效
+         */
+        private Map<String, DependencySettings> dependencies = new LinkedHashMap<>();
+    }
+
+    @Data
+    public static class Execution {
+        /**
+         * 执行方式：platform / virtual
+         */
+        private ExecutionMode mode = ExecutionMode.VIRTUAL;
+        /**
+         * 平台线程池大小（mode为platform或JVM不支持虚拟线程时使用）
+         */
+        private int platformThreads = 200;
+        /**
+         * 平台线程池的等待队列长度，队列满时直接拒绝
+         */
+        private int platformQueueCapacity = 1000;
+        /**
+         * 未单独配置的模型使用的并发限制
+         */
+        private ModelLimit defaultLimit = new ModelLimit();
+        /**
+         * 按模型名覆盖的并发限制
+         */
+        private Map<String, ModelLimit> models = new HashMap<>();
+
+        public ModelLimit resolveLimit(String model) {
+            ModelLimit limit = model == null ? null : models.get(model);
+            return limit != null ? limit : defaultLimit;
+        }
+    }
+
+    @Data
+    public static class MemorySettings {
+        /**
+         * 每个会话保留的消息条数（MessageWindowChatMemory窗口）
+         */
+        private int maxMessages = 20;
+        /**
+         * 内存中保留的会话数上限，超出时淘汰最久未访问的会话
+         */
+        private int maxConversations = 10000;
+        /**
+         * 会话超过该时长未访问时从内存淘汰，再次访问时从数据库加载
+         */
+        private Duration idleTimeout = Duration.ofMinutes(30);
+        /**
+         * 是否写入数据库，关闭时只保留内存层
+         */
+        private boolean persistent = true;
+        /**
+         * 后台写入数据库的间隔
+         */
+        private Duration flushInterval = Duration.ofSeconds(1);
+        /**
+         * 每次写入的会话数上限，待写入的会话达到该数量时立即写入
+         */
+        private int flushBatchSize = 200;
+        /**
+         * 待写入数据库的会话数上限，数据库不可用时写入失败的会话一直保留，超出后新会话只保留在内存层
+         */
+        private int maxPending = 50000;
+        /**
+         * 历史压缩：较早的对话异步总结为一条摘要，最近的对话原样保留
+         */
+        private Compaction compaction = new Compaction();
+    }
+
+    @Data
+    public static class Compaction {
+        /**
+         * 是否开启历史压缩，关闭时按max-messages窗口截断
+         */
+        private boolean enabled = false;
+        /**
+         * 会话历史（含摘要）的估算token数超过该值时触发压缩
+         */
+        private int triggerTokens = 2000;
+        /**
+         * 压缩时原样保留的最近消息条数
+         */
+        private int keepRecentMessages = 6;
+        /**
+         * 摘要的目标长度（token），写入摘要提示词
+         */
+        private int summaryMaxTokens = 400;
+        /**
+         * 生成摘要使用的模型，为空时使用默认对话模型
+         */
+        private String model;
+    }
+
+    @Data
+    public static class Coalescing {
+        /**
+         * 同一知识库相同问题（无会话历史、默认检索条件）正在回答时，是否共享同一次检索和模型调用
+         */
+        private boolean enabled = true;
+    }
+
+    @Data
+    public static class Admission {
+        /**
+         * 是否启用准入控制
+         */
+        private boolean enabled = true;
+        /**
+         * 每个会话（conversationId）的令牌桶
+         */
+        private BucketSettings conversation = new BucketSettings(8000, 200);
+        /**
+         * 每个客户端IP的令牌桶
+         */
+        private BucketSettings ip = new BucketSettings(30000, 1000);
+        /**
+         * 未单独配置的模型使用的令牌桶，对应上游的每分钟token配额
+         */
+        private BucketSettings defaultModel = new BucketSettings(200000, 15000);
+        /**
+         * 按模型名覆盖的令牌桶
+         */
+        private Map<String, BucketSettings> models = new HashMap<>();
+        /**
+         * 每个请求在用户输入之外额外计入的token数（系统提示词、会话记忆等）
+         */
+        private int requestOverheadTokens = 300;
+        /**
+         * 每个模型排队等待令牌的请求数上限
+         */
+        private int maxQueuedPerModel = 500;
+        /**
+         * 交互式请求（对话、问答）等待令牌的最长时间
+         */
+        private Duration interactiveMaxWait = Duration.ofSeconds(10);
+        /**
+         * 批量请求（入库向量化）等待令牌的最长时间
+         */
+        private Duration bulkMaxWait = Duration.ofMinutes(10);
+        /**
+         * 保留的会话和IP令牌桶数量上限，超过时回收已补满的桶，仍超出时回收剩余令牌最多的桶
+         */
+        private int maxClients = 10000;
+
+        public BucketSettings resolveModel(String model) {
+            BucketSettings bucket = model == null ? null : models.get(model);
+            return bucket != null ? bucket : defaultModel;
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BucketSettings {
+        /**
+         * 桶容量，即允许的突发token数
+         */
+        private long capacity;
+        /**
+         * 每秒补充的token数
+         */
+        private long refillPerSecond;
+    }
+
+    @Data
+    public static class ModelLimit {
+        /**
+         * 同时调用该模型的请求数上限
+         */
+        private int maxConcurrentCalls = 16;
+        /**
+         * 排队等待调用的请求数上限，超过时直接拒绝
+         */
+        private int maxQueued = 200;
+        /**
+         * 排队等待的最长时间，超时拒绝
+         */
+        private Duration maxWait = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class DependencySettings {
+        /**
+         * 依赖的地址，按主机和端口匹配请求
+         */
+        private String url;
+        /**
+         * 请求路径需包含的片段，用于区分同一主机上的不同依赖（如对话和向量接口），为空时不限制
+         */
+        private String pathContains;
+        /**
+         * 读超时（等待响应的时间）
+         */
+        private Duration readTimeout = Duration.ofSeconds(30);
+        /**
+         * 舱壁：同时进行的调用数上限
+         */
+        private int maxConcurrentCalls = 32;
+        /**
+         * 舱壁已满时最多等待的时间，超过后快速失败
+         */
+        private Duration maxWait = Duration.ofMillis(50);
+        /**
+         * 熔断：滑动窗口内失败率达到该值时打开
+         */
+        private double failureRateThreshold = 0.5;
+        /**
+         * 熔断统计的最近调用次数
+         */
+        private int slidingWindowSize = 20;
+        /**
+         * 窗口内调用数不少于该值才计算失败率
+         */
+        private int minimumCalls = 10;
+        /**
+         * 熔断打开后拒绝调用的时长，之后放行试探调用
+         */
+        private Duration openDuration = Duration.ofSeconds(30);
+        /**
+         * 半开状态放行的试探调用数
+         */
+        private int halfOpenCalls = 3;
+    }
+
+    @Data
+    public static class VectorStoreSettings {
+        /**
+         * 默认向量库后端
+         */
+        private Backend defaultBackend = Backend.CHROMA;
+        /**
+         * 进程内索引的快照间隔，有写入时才会写出
+         */
+        private Duration snapshotInterval = Duration.ofSeconds(30);
+        /**
+         * 同时保留的向量库实例上限，超过后淘汰最久未使用的实例（进程内索引淘汰前写出快照）
+         */
+        private int maxCachedCollections = 64;
+        /**
+         * 实例空闲超过该时长后淘汰
+         */
+        private Duration idleTimeout = Duration.ofMinutes(30);
+        /**
+         * 启动后是否预热Chroma中已有的知识库
+         */
+        private boolean prewarm = true;
+        /**
+         * 预热的并行度
+         */
+        private int prewarmParallelism = 8;
+        /**
+         * 默认HNSW参数
+         */
+        private Hnsw hnsw = new Hnsw();
+        /**
+         * 平铺索引参数
+         */
+        private Flat flat = new Flat();
+    }
+
+    @Data
+    public static class Flat {
+        /**
+         * 删除标记占比超过该值时，快照前重写向量文件
+         */
+        private double compactRatio = 0.3;
+        /**
+         * 默认量化方式；量化后先用字节码粗排，再用内存映射文件中的原始向量精排
+         */
+        private Quantization quantization = Quantization.NONE;
+        /**
+         * 粗排候选数为topK的倍数，越大召回越高、精排开销越大
+         */
+        private int rescoreMultiplier = 4;
+        /**
+         * PQ子空间数（每个向量编码后的字节数），需能整除向量维度，否则取不大于它的最大约数
+         */
+        private int pqSubspaces = 128;
+        /**
+         * 向量数达到该值后才训练量化器，之前直接精确扫描
+         */
+        private int minTrainingVectors = 1000;
+        /**
+         * 训练量化器时抽样的向量数上限
+         */
+        private int trainingSampleSize = 5000;
+    }
+
+    @Data
+    public static class Hnsw {
+        /**
+         * 每个节点在上层的邻居数，第0层为2M；越大召回越高、内存和构建耗时越大
+         */
+        private int m = 16;
+        /**
+         * 构建时的候选队列宽度
+         */
+        private int efConstruction = 200;
+        /**
+         * 检索时的候选队列宽度（不小于topK）
+         */
+        private int efSearch = 64;
+        /**
+         * 删除标记占比超过该值时，快照前重建索引
+         */
+        private double compactRatio = 0.3;
+    }
+
+    @Data
+    public static class CollectionSettings {
+        private Integer chunkSize;
+        private Integer chunkOverlap;
+        private Integer batchSize;
+        private Backend backend;
+        private Hnsw hnsw;
+        private Quantization quantization;
+        private HybridSearch hybridSearch;
+    }
+
+    /**
+     * 某个知识库最终生效的入库配置
+     */
+    public record IngestionSettings(int chunkSize, int chunkOverlap, int batchSize) {
+    }
+}
@@ -1,15 +1,41 @@
 package org.example.springai.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
+import org.example.springai.execution.AdmissionController;
+import org.example.springai.execution.BlockingCallExecutor;
+import org.example.springai.execution.RateLimitedException;
+import org.example.springai.http.DependencyUnavailableException;
+import org.example.springai.ingest.DocumentIngestionPipeline;
+import org.example.springai.ingest.IngestionJob;
+import org.example.springai.ingest.IngestionJobService;
+import org.example.springai.ingest.StreamingUploadIngestor;
+import org.example.springai.model.FederatedSearchResult;
+import org.example.springai.model.IngestionResult;
+import org.example.springai.model.RetrievalOptions;
+import org.example.springai.service.KnowledgeBaseCatalog;
 import org.example.springai.service.RagService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
-import java.io.File;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 @Slf4j
 @RestController
@@ -17,19 +43,35 @@ import java.util.UUID;
 public class RagController {
 
     private final RagService ragService;
+    private final IngestionJobService ingestionJobService;
+    private final StreamingUploadIngestor streamingUploadIngestor;
+    private final KnowledgeBaseCatalog knowledgeBaseCatalog;
+    private final BlockingCallExecutor blockingCallExecutor;
+    private final AdmissionController admissionController;
 
     @Autowired
-    public RagController(RagService ragService) {
+    public RagController(RagService ragService, IngestionJobService ingestionJobService,
+                         StreamingUploadIngestor streamingUploadIngestor, KnowledgeBaseCatalog knowledgeBaseCatalog,
+                         BlockingCallExecutor blockingCallExecutor, AdmissionController admissionController) {
         this.ragService = ragService;
+        this.ingestionJobService = ingestionJobService;
+        this.streamingUploadIngestor = streamingUploadIngestor;
+        this.knowledgeBaseCatalog = knowledgeBaseCatalog;
+        this.blockingCallExecutor = blockingCallExecutor;
+        this.admissionController = admissionController;
     }
     
-    // 新增接口：获取知识库列表
+    // 新增接口：获取知识库列表，读取内存中的目录；列表未变化时返回304
     @GetMapping("/knowledge-bases")
-    public Object getKnowledgeBases() {
+    public Object getKnowledgeBases(WebRequest webRequest) {
+        KnowledgeBaseCatalog.Catalog catalog = knowledgeBaseCatalog.catalog();
+        if (webRequest.checkNotModified(catalog.etag())) {
+            return null;
+        }
         return Map.of(
                 "success", true,
-                "data", ragService.getKnowledgeBaseList(),
-                "total", ragService.getKnowledgeBaseList().size()
+                "data", catalog.knowledgeBases(),
+                "total", catalog.knowledgeBases().size()
         );
     }
     
@@ -55,56 +97,241 @@ public class RagController {
         }
     }
 
-    // 原有接口：添加文本内容，增加知识库参数
+    // 原有接口：添加文本内容，增加知识库参数；传documentId时替换该文档上一次入库的内容，否则只追加
     @PostMapping("/add-doc")
     public String addDocument(@RequestBody Map<String, String> request) {
         String content = request.get("content");
         String collectionName = request.getOrDefault("collectionName", "coffee_collection");
-        Map<String, Object> metadata = Map.of(
-                "title", request.getOrDefault("title", "默认标题")
-        );
-        ragService.loadDocumentToVectorStore(content, metadata, collectionName);
-        return "文档已成功添加到向量库";
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("title", request.getOrDefault("title", "默认标题"));
+        putDocumentId(metadata, request.get("documentId"));
+        IngestionResult result = ragService.loadDocumentToVectorStore(content, metadata, collectionName);
+        return "文档已成功添加到向量库（复用分片：" + result.getReusedChunks()
+                + "，新增分片：" + result.getAddedChunks() + "，删除分片：" + result.getDeletedChunks() + "）";
     }
 
-    // 新增接口：上传文件（PDF/Word等）并解析入库，增加知识库参数
+    // 新增接口：上传文件（PDF/Word等）并异步解析入库，立即返回任务ID；传documentId时替换该文档上一次入库的内容
     @PostMapping("/upload-file")
-    public String uploadFile(
+    public ResponseEntity<Map<String, Object>> uploadFile(
             @RequestParam("file") MultipartFile file,
             @RequestParam(value = "tag", defaultValue = "通用文档") String tag,
-            @RequestParam(value = "collectionName", defaultValue = "coffee_collection") String collectionName) {
+            @RequestParam(value = "collectionName", defaultValue = "coffee_collection") String collectionName,
+            @RequestParam(value = "documentId", required = false) String documentId) {
+        Map<String, Object> response = new HashMap<>();
         try {
-            // 1. 临时保存上传的文件
-            String tempPath = "D:\\AgentFramework\\rag\\tmp\\" + UUID.randomUUID() + "_" + file.getOriginalFilename();
-            File tempFile = new File(tempPath);
-            tempFile.getParentFile().mkdirs();
-            file.transferTo(tempFile);
-
-            // 2. 解析文件并入库（自定义元数据：文件名、标签）
-            Map<String, Object> metadata = Map.of(
+            // 自定义元数据：文件名、标签
+            Map<String, Object> metadata = new HashMap<>(Map.of(
                     "fileName", Objects.requireNonNull(file.getOriginalFilename()),
                     "fileType", Objects.requireNonNull(file.getContentType()),
                     "tag", tag
-            );
-            ragService.loadFileToVectorStore(tempPath, metadata, collectionName);
+            ));
+            putDocumentId(metadata, documentId);
+            IngestionJob job = ingestionJobService.submitUpload(file, metadata, collectionName);
+            response.put("success", true);
+            response.put("message", "文件已提交入库：" + file.getOriginalFilename());
+            response.put("jobId", job.getId());
+            return ResponseEntity.accepted().body(response);
+        } catch (RejectedExecutionException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "5").body(response);
+        } catch (Exception e) {
+            log.error("文件处理失败：", e);
+            response.put("success", false);
+            response.put("message", "文件处理失败：" + e.getMessage());
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
 
-            // 3. 删除临时文件
-            tempFile.delete();
-            return "文件解析并入库成功：" + file.getOriginalFilename();
+    // 新增接口：上传文件并同步解析入库，输入流直接交给Tika解析，只有需要随机访问的格式才落临时文件
+    @PostMapping("/upload-file/stream")
+    public ResponseEntity<Map<String, Object>> uploadFileStreaming(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "tag", defaultValue = "通用文档") String tag,
+            @RequestParam(value = "collectionName", defaultValue = "coffee_collection") String collectionName,
+            @RequestParam(value = "documentId", required = false) String documentId) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            Map<String, Object> metadata = new HashMap<>(Map.of(
+                    "fileName", Objects.requireNonNull(file.getOriginalFilename()),
+                    "fileType", Objects.requireNonNull(file.getContentType()),
+                    "tag", tag
+            ));
+            putDocumentId(metadata, documentId);
+            IngestionResult result = streamingUploadIngestor.ingest(file, metadata, collectionName);
+            response.put("success", true);
+            response.put("message", "文件解析并入库成功：" + file.getOriginalFilename());
+            response.put("data", result);
+            return ResponseEntity.ok(response);
         } catch (Exception e) {
             log.error("文件处理失败：", e);
-            return "文件处理失败：" + e.getMessage();
+            response.put("success", false);
+            response.put("message", "文件处理失败：" + e.getMessage());
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+
+    // 新增接口：上传ZIP压缩包批量入库，压缩包内文件并行解析，返回任务ID
+    @PostMapping("/bulk-upload")
+    public ResponseEntity<Map<String, Object>> bulkUpload(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "tag", defaultValue = "通用文档") String tag,
+            @RequestParam(value = "collectionName", defaultValue = "coffee_collection") String collectionName) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            IngestionJob job = ingestionJobService.submitBulkZip(file, Map.of("tag", tag), collectionName);
+            response.put("success", true);
+            response.put("message", "压缩包已提交批量入库：" + file.getOriginalFilename());
+            response.put("jobId", job.getId());
+            return ResponseEntity.accepted().body(response);
+        } catch (RejectedExecutionException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "5").body(response);
+        } catch (Exception e) {
+            log.error("批量入库提交失败：", e);
+            response.put("success", false);
+            response.put("message", "批量入库提交失败：" + e.getMessage());
+            return ResponseEntity.internalServerError().body(response);
         }
     }
 
-    // 原有接口：RAG问答，增加知识库参数和会话ID
+    // 新增接口：按服务器目录批量入库（目录需在rag.ingestion.bulk.allowed-roots范围内），返回任务ID
+    @PostMapping("/bulk-ingest")
+    public ResponseEntity<Map<String, Object>> bulkIngest(@RequestBody Map<String, String> request) {
+        Map<String, Object> response = new HashMap<>();
+        String directory = request.get("directory");
+        if (directory == null || directory.isBlank()) {
+            response.put("success", false);
+            response.put("message", "目录不能为空");
+            return ResponseEntity.badRequest().body(response);
+        }
+        try {
+            String collectionName = request.getOrDefault("collectionName", "coffee_collection");
+            Map<String, Object> metadata = Map.of("tag", request.getOrDefault("tag", "通用文档"));
+            IngestionJob job = ingestionJobService.submitBulkDirectory(Path.of(directory), metadata, collectionName);
+            response.put("success", true);
+            response.put("message", "目录已提交批量入库：" + directory);
+            response.put("jobId", job.getId());
+            return ResponseEntity.accepted().body(response);
+        } catch (RejectedExecutionException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "5").body(response);
+        }
+    }
+
+    // 新增接口：查询入库任务进度
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<Map<String, Object>> getJob(@PathVariable String jobId) {
+        return ingestionJobService.getJob(jobId)
+                .map(job -> ResponseEntity.ok(Map.<String, Object>of("success", true, "data", job)))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("success", false, "message", "任务不存在：" + jobId)));
+    }
+
+    // 新增接口：取消入库任务
+    @PostMapping("/jobs/{jobId}/cancel")
+    public ResponseEntity<Map<String, Object>> cancelJob(@PathVariable String jobId) {
+        return ingestionJobService.cancel(jobId)
+                .map(job -> ResponseEntity.ok(Map.<String, Object>of("success", true, "message", "已请求取消任务", "data", job)))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("success", false, "message", "任务不存在：" + jobId)));
+    }
+
+    // 原有接口：RAG问答，增加知识库参数和会话ID；检索数量、相似度阈值和metadata过滤条件下推到向量库
+    // collectionName传多个（逗号分隔）或*时跨知识库检索，超时跳过的知识库放在X-Rag-Skipped-Collections响应头中
+    // 先经过准入控制（按会话、IP和模型限流），模型调用在BlockingCallExecutor上执行，等待期间不占用Tomcat线程
+    // 命中语义缓存或合并到进行中的相同请求时没有调用模型，归还模型桶的令牌
     @GetMapping("/ask")
-    public String askQuestion(@RequestParam String question, 
+    public CompletableFuture<ResponseEntity<String>> askQuestion(@RequestParam String question,
                             @RequestParam(value = "collectionName", defaultValue = "coffee_collection") String collectionName,
-                            @RequestParam(value = "conversationId", defaultValue = "") String conversationId) {
+                            @RequestParam(value = "conversationId", defaultValue = "") String conversationId,
+                            @RequestParam(value = "topK", required = false) Integer topK,
+                            @RequestParam(value = "similarityThreshold", required = false) Double similarityThreshold,
+                            @RequestParam(value = "tag", required = false) String tag,
+                            @RequestParam(value = "fileName", required = false) String fileName,
+                            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                            HttpServletRequest request) {
         // 可以将conversationId用于会话管理，如会话历史存储、上下文维护等
         System.out.println("Received conversationId in rag/ask: " + conversationId);
-        return ragService.ragAnswerWithAdvisor(question, collectionName,conversationId);
+        RetrievalOptions options = new RetrievalOptions(topK, similarityThreshold, tag, fileName, from, to);
+        return admissionController.admitRag(conversationId, request.getRemoteAddr(), question)
+                .thenCompose(admitted -> blockingCallExecutor.submit(() -> {
+                    try {
+                        if (RagService.isFederated(collectionName)) {
+                            FederatedSearchResult result = ragService.ragAnswerFederated(question, collectionName, conversationId, options);
+                            return ResponseEntity.ok()
+                                    .header("X-Rag-Skipped-Collections", String.join(",", result.getSkippedCollections().keySet()))
+                                    .body(result.getAnswer());
+                        }
+                        return ResponseEntity.ok(ragService.ragAnswerWithAdvisor(question, collectionName, conversationId, options,
+                                () -> admissionController.refundRag(question)));
+                    } catch (IllegalArgumentException e) {
+                        return ResponseEntity.badRequest().body(e.getMessage());
+                    }
+                }));
+    }
+
+    // 新增接口：流式RAG问答（SSE），事件依次为sources、token（多个）、done，出错时为error
+    @GetMapping(value = "/ask/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> askQuestionStream(@RequestParam String question,
+                            @RequestParam(value = "collectionName", defaultValue = "coffee_collection") String collectionName,
+                            @RequestParam(value = "conversationId", defaultValue = "") String conversationId,
+                            @RequestParam(value = "topK", required = false) Integer topK,
+                            @RequestParam(value = "similarityThreshold", required = false) Double similarityThreshold,
+                            @RequestParam(value = "tag", required = false) String tag,
+                            @RequestParam(value = "fileName", required = false) String fileName,
+                            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                            HttpServletRequest request) {
+        RetrievalOptions options = new RetrievalOptions(topK, similarityThreshold, tag, fileName, from, to);
+        if (RagService.isFederated(collectionName)) {
+            return Flux.just(errorEvent("流式问答只支持单个知识库，多个知识库请使用/rag/ask"));
+        }
+        return Mono.fromFuture(admissionController.admitRag(conversationId, request.getRemoteAddr(), question))
+                // 获得令牌的回调在准入调度线程上执行，切换到boundedElastic再检索和调用模型
+                .publishOn(Schedulers.boundedElastic())
+                .thenMany(Flux.defer(() -> ragService.ragAnswerStream(question, collectionName, conversationId, options,
+                        () -> admissionController.refundRag(question))))
+                .onErrorResume(e -> e instanceof IllegalArgumentException || e instanceof RateLimitedException
+                                || e instanceof DependencyUnavailableException,
+                        e -> Flux.just(errorEvent(e.getMessage())));
+    }
+
+    private static ServerSentEvent<Object> errorEvent(String message) {
+        return ServerSentEvent.builder((Object) Map.of("message", message)).event("error").build();
+    }
+
+    // 只有调用方给出稳定的文档ID才按文档增量替换，标题和文件名不作为文档标识
+    private static void putDocumentId(Map<String, Object> metadata, String documentId) {
+        if (documentId != null && !documentId.isBlank()) {
+            metadata.put(DocumentIngestionPipeline.DOCUMENT_ID, documentId);
+        }
+    }
+
+    // 新增接口：只检索不问答，返回命中的分片，参数与/ask一致
+    @GetMapping("/search")
+    public ResponseEntity<Map<String, Object>> search(@RequestParam String question,
+                            @RequestParam(value = "collectionName", defaultValue = "coffee_collection") String collectionName,
+                            @RequestParam(value = "topK", required = false) Integer topK,
+                            @RequestParam(value = "similarityThreshold", required = false) Double similarityThreshold,
+                            @RequestParam(value = "tag", required = false) String tag,
+                            @RequestParam(value = "fileName", required = false) String fileName,
+                            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        RetrievalOptions options = new RetrievalOptions(topK, similarityThreshold, tag, fileName, from, to);
+        try {
+            if (RagService.isFederated(collectionName)) {
+                FederatedSearchResult result = ragService.federatedSearch(question, collectionName, options);
+                return ResponseEntity.ok(Map.of("success", true, "data", result.getDocuments(),
+                        "collections", result.getSearchedCollections(), "skipped", result.getSkippedCollections()));
+            }
+            return ResponseEntity.ok(Map.of("success", true, "data", ragService.retrieve(question, collectionName, options)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+        }
     }
     
     // 新增接口：删除知识库
@@ -124,4 +351,16 @@ public class RagController {
             );
         }
     }
+
+    // 新增接口：向量量化报告（仅flat后端）
+    @GetMapping("/knowledge-bases/{collectionName}/quantization-report")
+    public ResponseEntity<Map<String, Object>> quantizationReport(@PathVariable String collectionName,
+                                                                  @RequestParam(defaultValue = "10") int k,
+                                                                  @RequestParam(defaultValue = "100") int queries) {
+        try {
+            return ResponseEntity.ok(Map.of("success", true, "data", ragService.quantizationReport(collectionName, k, queries)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+        }
+    }
 }
@@ -0,0 +1,36 @@
+package org.example.springai.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.springai.execution.RateLimitedException;
+import org.example.springai.http.DependencyUnavailableException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.Map;
+
+/**
+ * 依赖熔断或舱壁已满时直接返回503，不占用请求线程等待超时；单个会话或IP超过限流速率时返回429
+ */
+@Slf4j
+@RestControllerAdvice
+public class RestExceptionHandler {
+
+    @ExceptionHandler(DependencyUnavailableException.class)
+    public ResponseEntity<Map<String, Object>> handleDependencyUnavailable(DependencyUnavailableException e) {
+        log.warn("快速失败：{}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "5")
+                .body(Map.of("success", false, "message", e.getMessage(), "dependency", e.getDependency()));
+    }
+
+    @ExceptionHandler(RateLimitedException.class)
+    public ResponseEntity<Map<String, Object>> handleRateLimited(RateLimitedException e) {
+        log.warn("限流拒绝：{}", e.getClientKey());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfter().toSeconds())))
+                .body(Map.of("success", false, "message", e.getMessage()));
+    }
+}
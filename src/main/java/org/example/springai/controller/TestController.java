@@ -1,5 +1,8 @@
 package org.example.springai.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
+import org.example.springai.execution.AdmissionController;
+import org.example.springai.execution.BlockingCallExecutor;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
@@ -8,10 +11,13 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.awt.*;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 public class TestController {
@@ -20,6 +26,12 @@ public class TestController {
     @Autowired
     ChatClient chatClient;
 
+    @Autowired
+    BlockingCallExecutor blockingCallExecutor;
+
+    @Autowired
+    AdmissionController admissionController;
+
 //    public TestController(ChatClient.Builder chatClientBuilder) {
 //        this.chatClient = chatClientBuilder.build();
 //    }
@@ -29,29 +41,36 @@ public class TestController {
         return "Hello Spring Ai!";
     }
 
+    // 先经过准入控制（按会话、IP和模型限流），模型调用在BlockingCallExecutor上执行，等待期间不占用Tomcat线程
     @RequestMapping("/text")
-    public String index(@RequestParam(value = "message", defaultValue = "讲个笑话") String message,
-                       @RequestParam(value = "conversationId", defaultValue = "") String conversationId) {
+    public CompletableFuture<String> index(@RequestParam(value = "message", defaultValue = "讲个笑话") String message,
+                       @RequestParam(value = "conversationId", defaultValue = "") String conversationId,
+                       HttpServletRequest request) {
         // 可以将conversationId用于会话管理，如会话历史存储、上下文维护等
         System.out.println("Received conversationId: " + conversationId);
         
-        return chatClient.prompt()
-                .user(message + "/no_think")
-                .system(p->{
-                    p.param("current_data", LocalDateTime.now().toString());
-                    p.param("chat_memory_conversation_id", conversationId);
-                })
-                .call()
-                .content();
+        return admissionController.admitChat(conversationId, request.getRemoteAddr(), message, 0)
+                .thenCompose(admitted -> blockingCallExecutor.submit(() -> chatClient.prompt()
+                        .user(message + "/no_think")
+                        .system(p->{
+                            p.param("current_data", LocalDateTime.now().toString());
+                            p.param("chat_memory_conversation_id", conversationId);
+                        })
+                        .call()
+                        .content()));
     }
 
     @RequestMapping(value = "/stream")
-    public Flux<String> index1(@RequestParam(value = "message", defaultValue = "讲个笑话") String message) {
-        return chatClient.prompt()
-                // 用户提示词
-                .user(message)
-                .system(p->p.param("current_data", LocalDateTime.now().toString()))
-                .stream()
-                .content();
+    public Flux<String> index1(@RequestParam(value = "message", defaultValue = "讲个笑话") String message,
+                               HttpServletRequest request) {
+        return Mono.fromFuture(admissionController.admitChat(null, request.getRemoteAddr(), message, 0))
+                // 获得令牌的回调在准入调度线程上执行，切换到boundedElastic再发起调用
+                .publishOn(Schedulers.boundedElastic())
+                .thenMany(Flux.defer(() -> chatClient.prompt()
+                        // 用户提示词
+                        .user(message)
+                        .system(p->p.param("current_data", LocalDateTime.now().toString()))
+                        .stream()
+                        .content()));
     }
 }
@@ -0,0 +1,43 @@
+package org.example.springai.embedding;
+
+import org.example.springai.execution.AdmissionController;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.List;
+
+/**
+ * 向量化请求经过准入控制的EmbeddingModel装饰器，放在缓存之内、请求合并之外：
+ * 命中缓存的请求不扣令牌，在调用线程上等待令牌，入库线程（BULK）让位给问答时的问题向量化
+ */
+public class AdmittingEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final AdmissionController admissionController;
+    private final String model;
+
+    public AdmittingEmbeddingModel(EmbeddingModel delegate, AdmissionController admissionController, String model) {
+        this.delegate = delegate;
+        this.admissionController = admissionController;
+        this.model = model;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        admissionController.acquireEmbedding(model, request.getInstructions());
+        return delegate.call(request);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        admissionController.acquireEmbedding(model, List.of(document.getText()));
+        return delegate.embed(document);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+}
@@ -0,0 +1,209 @@
+package org.example.springai.embedding;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.embedding.EmbeddingResponseMetadata;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 带缓存的EmbeddingModel装饰器，缓存键为（模型, 维度, 内容哈希）
+ * 第一级为堆内LRU，第二级为内存映射的磁盘段文件（MappedEmbeddingStore），两级都未命中才调用远程模型
+ * 同一批请求中只有未命中的文本会发给远程模型
+ */
+@Slf4j
+public class CachingEmbeddingModel implements EmbeddingModel, DisposableBean {
+
+    private final EmbeddingModel delegate;
+    private final String defaultModel;
+    private final Path cacheDir;
+    private final long segmentBytes;
+    private final int maxSegments;
+    private final Map<String, float[]> heapCache;
+    // 每个（模型, 维度）组合一个磁盘缓存目录
+    private final Map<String, MappedEmbeddingStore> diskStores = new ConcurrentHashMap<>();
+
+    private final Counter heapHits;
+    private final Counter diskHits;
+    private final Counter misses;
+    private final Counter heapEvictions;
+    private final Counter diskEvictions;
+
+    public CachingEmbeddingModel(EmbeddingModel delegate, String defaultModel, Path cacheDir, int heapEntries,
+                                 long segmentBytes, int maxSegments, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.defaultModel = defaultModel;
+        this.cacheDir = cacheDir;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        this.heapHits = meterRegistry.counter("rag.embedding.cache.hits", "tier", "heap");
+        this.diskHits = meterRegistry.counter("rag.embedding.cache.hits", "tier", "disk");
+        this.misses = meterRegistry.counter("rag.embedding.cache.misses");
+        this.heapEvictions = meterRegistry.counter("rag.embedding.cache.evictions", "tier", "heap");
+        this.diskEvictions = meterRegistry.counter("rag.embedding.cache.evictions", "tier", "disk");
+        this.heapCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+                if (size() > heapEntries) {
+                    heapEvictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        Gauge.builder("rag.embedding.cache.size", this, model -> model.heapSize()).tag("tier", "heap").register(meterRegistry);
+        Gauge.builder("rag.embedding.cache.size", this, model -> model.diskSize()).tag("tier", "disk").register(meterRegistry);
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        EmbeddingOptions options = request.getOptions();
+        String model = options != null && options.getModel() != null ? options.getModel() : defaultModel;
+        String dimensions = options != null && options.getDimensions() != null ? String.valueOf(options.getDimensions()) : "default";
+        MappedEmbeddingStore diskStore = diskStore(model, dimensions);
+
+        List<String> texts = request.getInstructions();
+        float[][] vectors = new float[texts.size()][];
+        byte[][] hashes = new byte[texts.size()][];
+        List<Integer> missIndexes = new ArrayList<>();
+        List<String> missTexts = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            hashes[i] = sha256(texts.get(i));
+            String key = model + "|" + dimensions + "|" + HexFormat.of().formatHex(hashes[i]);
+            float[] vector = heapGet(key);
+            if (vector != null) {
+                heapHits.increment();
+            } else if (diskStore != null && (vector = diskStore.get(hashes[i])) != null) {
+                diskHits.increment();
+                heapPut(key, vector);
+            } else {
+                misses.increment();
+                missIndexes.add(i);
+                missTexts.add(texts.get(i));
+            }
+            vectors[i] = vector;
+        }
+
+        EmbeddingResponseMetadata metadata = new EmbeddingResponseMetadata();
+        if (!missTexts.isEmpty()) {
+            EmbeddingResponse response = delegate.call(new EmbeddingRequest(missTexts, options));
+            List<Embedding> results = response.getResults();
+            for (int j = 0; j < results.size(); j++) {
+                Embedding embedding = results.get(j);
+                int position = embedding.getIndex() != null ? embedding.getIndex() : j;
+                int i = missIndexes.get(position);
+                vectors[i] = embedding.getOutput();
+                heapPut(model + "|" + dimensions + "|" + HexFormat.of().formatHex(hashes[i]), vectors[i]);
+                if (diskStore != null) {
+                    diskStore.put(hashes[i], vectors[i]);
+                }
+            }
+            metadata = response.getMetadata();
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(texts.size());
+        for (int i = 0; i < vectors.length; i++) {
+            embeddings.add(new Embedding(vectors[i], i));
+        }
+        return new EmbeddingResponse(embeddings, metadata);
+    }
+
+    /**
+     * 只查缓存、不调用远程模型，用于复用已有的向量（默认模型和维度），两级都未命中时返回null
+     */
+    public float[] peek(String text) {
+        byte[] hash = sha256(text);
+        String key = defaultModel + "|default|" + HexFormat.of().formatHex(hash);
+        float[] vector = heapGet(key);
+        if (vector == null) {
+            MappedEmbeddingStore diskStore = diskStore(defaultModel, "default");
+            vector = diskStore == null ? null : diskStore.get(hash);
+        }
+        return vector;
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText());
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    private float[] heapGet(String key) {
+        synchronized (heapCache) {
+            return heapCache.get(key);
+        }
+    }
+
+    private void heapPut(String key, float[] vector) {
+        synchronized (heapCache) {
+            heapCache.put(key, vector);
+        }
+    }
+
+    private int heapSize() {
+        synchronized (heapCache) {
+            return heapCache.size();
+        }
+    }
+
+    private int diskSize() {
+        return diskStores.values().stream().mapToInt(MappedEmbeddingStore::size).sum();
+    }
+
+    private MappedEmbeddingStore diskStore(String model, String dimensions) {
+        String name = (model + "_" + dimensions).replaceAll("[^A-Za-z0-9._-]", "_");
+        try {
+            return diskStores.computeIfAbsent(name, key -> {
+                try {
+                    return new MappedEmbeddingStore(cacheDir.resolve(key), segmentBytes, maxSegments, diskEvictions::increment);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } catch (IllegalStateException e) {
+            // 磁盘缓存不可用时只使用堆内缓存
+            log.warn("打开向量磁盘缓存失败：{}", cacheDir.resolve(name), e);
+            return null;
+        }
+    }
+
+    private static byte[] sha256(String text) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        diskStores.values().forEach(MappedEmbeddingStore::close);
+        // 被包装的装饰器（如CoalescingEmbeddingModel）不是单独的bean，这里一起关闭
+        if (delegate instanceof DisposableBean disposable) {
+            disposable.destroy();
+        }
+    }
+}
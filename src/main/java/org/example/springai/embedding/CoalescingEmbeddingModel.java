@@ -0,0 +1,208 @@
+package org.example.springai.embedding;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 合并并发向量化请求的EmbeddingModel装饰器
+ * 并发的小请求（如问答时QuestionAnswerAdvisor对问题的单条向量化）在窗口时间内或攒够maxBatchSize条后合并成一次远程调用，
+ * 结果再按顺序拆回给各自的调用方；本身已经够大的请求（如入库批次）直接透传，超过服务条数上限的由SplittingEmbeddingModel拆分
+ */
+@Slf4j
+public class CoalescingEmbeddingModel implements EmbeddingModel, DisposableBean {
+
+    private final EmbeddingModel delegate;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService dispatcher;
+    // 每个（模型, 维度）组合一个正在收集的批次
+    private final Map<BatchKey, Batch> openBatches = new HashMap<>();
+
+    private final DistributionSummary batchSizes;
+    private final Timer queueLatency;
+
+    public CoalescingEmbeddingModel(EmbeddingModel delegate, Duration window, int maxBatchSize,
+                                    MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("rag-embed-window-"));
+        this.dispatcher = Executors.newCachedThreadPool(daemonThreads("rag-embed-batch-"));
+        this.batchSizes = DistributionSummary.builder("rag.embedding.coalesce.batch.size")
+                .description("合并后每次远程向量化的文本条数")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.queueLatency = Timer.builder("rag.embedding.coalesce.queue.latency")
+                .description("请求在合并窗口中等待的时间")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        if (texts.isEmpty() || texts.size() >= maxBatchSize) {
+            return delegate.call(request);
+        }
+
+        Pending pending = new Pending(texts, System.nanoTime());
+        BatchKey key = BatchKey.of(request.getOptions());
+        synchronized (openBatches) {
+            Batch batch = openBatches.get(key);
+            if (batch != null && batch.size + texts.size() > maxBatchSize) {
+                // 放不下时先发出当前批次，再开新批次
+                closeAndDispatch(key, batch);
+                batch = null;
+            }
+            if (batch == null) {
+                Batch newBatch = new Batch(request.getOptions());
+                newBatch.timer = scheduler.schedule(() -> onWindowElapsed(key, newBatch), windowNanos, TimeUnit.NANOSECONDS);
+                openBatches.put(key, newBatch);
+                batch = newBatch;
+            }
+            batch.add(pending);
+            if (batch.size >= maxBatchSize) {
+                closeAndDispatch(key, batch);
+            }
+        }
+        return await(pending.future);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText());
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    private void onWindowElapsed(BatchKey key, Batch batch) {
+        synchronized (openBatches) {
+            if (openBatches.get(key) == batch) {
+                closeAndDispatch(key, batch);
+            }
+        }
+    }
+
+    /**
+     * 调用方需持有openBatches锁
+     */
+    private void closeAndDispatch(BatchKey key, Batch batch) {
+        openBatches.remove(key);
+        batch.timer.cancel(false);
+        dispatcher.execute(() -> dispatch(batch));
+    }
+
+    private void dispatch(Batch batch) {
+        long now = System.nanoTime();
+        List<String> texts = new ArrayList<>(batch.size);
+        for (Pending pending : batch.pendings) {
+            queueLatency.record(now - pending.enqueuedNanos, TimeUnit.NANOSECONDS);
+            texts.addAll(pending.texts);
+        }
+        batchSizes.record(texts.size());
+
+        try {
+            EmbeddingResponse response = delegate.call(new EmbeddingRequest(texts, batch.options));
+            float[][] vectors = new float[texts.size()][];
+            List<Embedding> results = response.getResults();
+            for (int j = 0; j < results.size(); j++) {
+                Embedding embedding = results.get(j);
+                vectors[embedding.getIndex() != null ? embedding.getIndex() : j] = embedding.getOutput();
+            }
+            // 按调用方拆分结果，下标从0重新编号
+            int offset = 0;
+            for (Pending pending : batch.pendings) {
+                List<Embedding> embeddings = new ArrayList<>(pending.texts.size());
+                for (int i = 0; i < pending.texts.size(); i++) {
+                    embeddings.add(new Embedding(vectors[offset + i], i));
+                }
+                offset += pending.texts.size();
+                pending.future.complete(new EmbeddingResponse(embeddings, response.getMetadata()));
+            }
+        } catch (RuntimeException e) {
+            log.warn("合并向量化请求失败：{}条文本，{}个调用方", texts.size(), batch.pendings.size(), e);
+            batch.pendings.forEach(pending -> pending.future.completeExceptionally(e));
+        }
+    }
+
+    private static EmbeddingResponse await(CompletableFuture<EmbeddingResponse> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待向量化结果时被中断", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static CustomizableThreadFactory daemonThreads(String prefix) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(prefix);
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+        dispatcher.shutdown();
+    }
+
+    private record BatchKey(String model, Integer dimensions) {
+        static BatchKey of(EmbeddingOptions options) {
+            return options == null ? new BatchKey(null, null) : new BatchKey(options.getModel(), options.getDimensions());
+        }
+    }
+
+    private record Pending(List<String> texts, long enqueuedNanos, CompletableFuture<EmbeddingResponse> future) {
+        Pending(List<String> texts, long enqueuedNanos) {
+            this(texts, enqueuedNanos, new CompletableFuture<>());
+        }
+    }
+
+    private static class Batch {
+        private final EmbeddingOptions options;
+        private final List<Pending> pendings = new ArrayList<>();
+        private int size;
+        private ScheduledFuture<?> timer;
+
+        Batch(EmbeddingOptions options) {
+            this.options = options;
+        }
+
+        void add(Pending pending) {
+            pendings.add(pending);
+            size += pending.texts.size();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package org.example.springai.embedding;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * 基于内存映射文件的向量磁盘缓存
+ * 数据按固定大小的段文件追加写入，每条记录为：32字节内容哈希 + dims个float，向量在文件中连续存放
+ * 段文件头：magic(4) + version(4) + dims(4) + 记录数(4) + 代数(8)，记录数在记录写完后才更新，作为提交标记
+ * 重启时只扫描每条记录的哈希建立索引，向量在命中时直接从映射内存中读取，不做反序列化
+ * 段数量达到上限后复用最老的段（先清除它在索引中的记录）
+ */
+@Slf4j
+public class MappedEmbeddingStore implements Closeable {
+
+    private static final int MAGIC = 0x454D4243;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+    private static final int KEY_BYTES = 32;
+    private static final int COUNT_OFFSET = 12;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final int maxSegments;
+    private final Runnable evictionListener;
+    private final List<Segment> segments = new ArrayList<>();
+    // 内容哈希 -> 位置（高32位为段下标，低32位为段内记录下标）
+    private final Map<ByteBuffer, Long> index = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile int dimensions;
+    private Segment current;
+    private long nextGeneration;
+
+    /**
+     * @param directory        段文件目录
+     * @param segmentBytes     单个段文件大小
+     * @param maxSegments      段文件数量上限
+     * @param evictionListener 每淘汰一条记录回调一次，用于统计
+     */
+    public MappedEmbeddingStore(Path directory, long segmentBytes, int maxSegments, Runnable evictionListener) throws IOException {
+        this.directory = directory;
+        // 段内偏移使用int，单个段不能超过2GB
+        this.segmentBytes = Math.min(segmentBytes, Integer.MAX_VALUE);
+        this.maxSegments = Math.max(1, maxSegments);
+        this.evictionListener = evictionListener;
+        Files.createDirectories(directory);
+        open();
+    }
+
+    public float[] get(byte[] contentHash) {
+        Long location = index.get(ByteBuffer.wrap(contentHash));
+        if (location == null) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            // 加锁后再确认一次，避免读到正在被复用的段
+            if (!location.equals(index.get(ByteBuffer.wrap(contentHash)))) {
+                return null;
+            }
+            Segment segment = segments.get((int) (location >>> 32));
+            int record = (int) (long) location;
+            float[] vector = new float[dimensions];
+            segment.buffer.slice(segment.vectorOffset(record), dimensions * Float.BYTES).asFloatBuffer().get(vector);
+            return vector;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(byte[] contentHash, float[] vector) {
+        ByteBuffer key = ByteBuffer.wrap(contentHash.clone());
+        if (index.containsKey(key)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (dimensions == 0) {
+                dimensions = vector.length;
+            }
+            if (vector.length != dimensions || index.containsKey(key)) {
+                return;
+            }
+            if (current == null || current.count >= current.capacity()) {
+                current = nextSegment();
+            }
+            int record = current.count;
+            current.buffer.put(current.keyOffset(record), contentHash, 0, KEY_BYTES);
+            current.buffer.slice(current.vectorOffset(record), dimensions * Float.BYTES).asFloatBuffer().put(vector);
+            current.count++;
+            current.buffer.putInt(COUNT_OFFSET, current.count);
+            index.put(key, ((long) current.id << 32) | record);
+        } catch (IOException e) {
+            log.warn("写入向量磁盘缓存失败：{}", directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    private void open() throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(path -> path.getFileName().toString().endsWith(".seg")).sorted().toList();
+        }
+        for (Path file : files) {
+            if (segments.size() >= maxSegments) {
+                break;
+            }
+            Segment segment = mapSegment(file, segments.size());
+            if (segment.buffer.getInt(0) != MAGIC || segment.buffer.getInt(4) != VERSION) {
+                log.warn("忽略无法识别的段文件：{}", file);
+                continue;
+            }
+            if (dimensions == 0) {
+                dimensions = segment.buffer.getInt(8);
+            }
+            if (segment.buffer.getInt(8) != dimensions) {
+                log.warn("忽略维度不一致的段文件：{}", file);
+                continue;
+            }
+            segment.count = Math.min(segment.buffer.getInt(COUNT_OFFSET), segment.capacity());
+            segment.generation = segment.buffer.getLong(16);
+            nextGeneration = Math.max(nextGeneration, segment.generation + 1);
+            segments.add(segment);
+            byte[] key = new byte[KEY_BYTES];
+            for (int i = 0; i < segment.count; i++) {
+                segment.buffer.get(segment.keyOffset(i), key);
+                index.put(ByteBuffer.wrap(key.clone()), ((long) segment.id << 32) | i);
+            }
+            if (current == null || segment.generation > current.generation) {
+                current = segment;
+            }
+        }
+        if (!segments.isEmpty()) {
+            log.info("向量磁盘缓存已加载：{}，段数={}，记录数={}", directory, segments.size(), index.size());
+        }
+    }
+
+    /**
+     * 当前段写满后获取下一个段：未达上限时新建，否则复用代数最小（最老）的段
+     */
+    private Segment nextSegment() throws IOException {
+        Segment segment;
+        if (segments.size() < maxSegments) {
+            segment = mapSegment(directory.resolve("segment-%05d.seg".formatted(segments.size())), segments.size());
+            segments.add(segment);
+        } else {
+            segment = segments.get(0);
+            for (Segment candidate : segments) {
+                if (candidate.generation < segment.generation) {
+                    segment = candidate;
+                }
+            }
+            long segmentId = segment.id;
+            int evicted = segment.count;
+            index.values().removeIf(location -> (location >>> 32) == segmentId);
+            for (int i = 0; i < evicted; i++) {
+                evictionListener.run();
+            }
+        }
+        segment.count = 0;
+        segment.generation = nextGeneration++;
+        segment.buffer.putInt(0, MAGIC);
+        segment.buffer.putInt(4, VERSION);
+        segment.buffer.putInt(8, dimensions);
+        segment.buffer.putInt(COUNT_OFFSET, 0);
+        segment.buffer.putLong(16, segment.generation);
+        return segment;
+    }
+
+    private Segment mapSegment(Path file, int id) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // 映射在channel关闭后仍然有效
+            return new Segment(id, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            segments.forEach(segment -> segment.buffer.force());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private final class Segment {
+        private final int id;
+        private final MappedByteBuffer buffer;
+        private int count;
+        private long generation;
+
+        Segment(int id, MappedByteBuffer buffer) {
+            this.id = id;
+            this.buffer = buffer;
+        }
+
+        int capacity() {
+            return (int) ((segmentBytes - HEADER_BYTES) / recordBytes());
+        }
+
+        int keyOffset(int record) {
+            return HEADER_BYTES + record * recordBytes();
+        }
+
+        int vectorOffset(int record) {
+            return keyOffset(record) + KEY_BYTES;
+        }
+
+        private int recordBytes() {
+            return KEY_BYTES + dimensions * Float.BYTES;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.example.springai.embedding;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.embedding.EmbeddingResponseMetadata;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按向量模型服务的单次条数上限拆分请求的EmbeddingModel装饰器，放在最内层，直接包装远程模型：
+ * 入库批次、合并后的批次和TokenCountBatchingStrategy按token切出的批次都可能超过服务的条数上限（DashScope为10条），
+ * 超出时按顺序拆成多次调用，结果按原顺序拼回；上限与写库的批次大小（batch-size）相互独立
+ */
+public class SplittingEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final int maxTextsPerRequest;
+
+    public SplittingEmbeddingModel(EmbeddingModel delegate, int maxTextsPerRequest) {
+        this.delegate = delegate;
+        this.maxTextsPerRequest = Math.max(1, maxTextsPerRequest);
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        if (texts.size() <= maxTextsPerRequest) {
+            return delegate.call(request);
+        }
+        List<Embedding> embeddings = new ArrayList<>(texts.size());
+        EmbeddingResponseMetadata metadata = null;
+        for (int from = 0; from < texts.size(); from += maxTextsPerRequest) {
+            List<String> part = texts.subList(from, Math.min(texts.size(), from + maxTextsPerRequest));
+            EmbeddingResponse response = delegate.call(new EmbeddingRequest(part, request.getOptions()));
+            float[][] vectors = new float[part.size()][];
+            List<Embedding> results = response.getResults();
+            for (int j = 0; j < results.size(); j++) {
+                Embedding embedding = results.get(j);
+                vectors[embedding.getIndex() != null ? embedding.getIndex() : j] = embedding.getOutput();
+            }
+            // 下标换算为在原请求中的位置
+            for (int i = 0; i < vectors.length; i++) {
+                embeddings.add(new Embedding(vectors[i], from + i));
+            }
+            metadata = response.getMetadata();
+        }
+        return new EmbeddingResponse(embeddings, metadata);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return delegate.embed(document);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+}
@@ -0,0 +1,389 @@
+package org.example.springai.execution;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.example.springai.config.RagProperties;
+import org.example.springai.http.DependencyUnavailableException;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 准入控制：调用大模型前按估算的prompt token数从令牌桶扣减，
+ * 会话和IP各一个桶（限制单个客户端），每个模型一个桶（对应上游配额）
+ * 令牌不足的请求进入该模型的优先级队列，交互式请求先于入库向量化请求获得令牌；
+ * 客户端自身的桶需要等待过久时直接拒绝（RateLimitedException），模型排队已满或等待超时时拒绝（DependencyUnavailableException）
+ * 等待期间不占用线程，获得令牌时完成返回的future
+ */
+@Slf4j
+@Component
+public class AdmissionController implements DisposableBean {
+
+    public enum Priority {
+        /**
+         * 用户在等待的对话、问答请求
+         */
+        INTERACTIVE,
+        /**
+         * 入库等批量请求
+         */
+        BULK
+    }
+
+    private static final ThreadLocal<Priority> CURRENT_PRIORITY = new ThreadLocal<>();
+
+    private final RagProperties.Admission settings;
+    private final MeterRegistry meterRegistry;
+    private final String chatModel;
+    private final int ragContextTokens;
+    private final LongSupplier clock;
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+    private final Map<String, TokenBucket> clientBuckets = new ConcurrentHashMap<>();
+    private final Map<String, ModelQueue> modelQueues = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ScheduledExecutorService scheduler;
+    private final Counter clientsEvicted;
+
+    @Autowired
+    public AdmissionController(RagProperties ragProperties, MeterRegistry meterRegistry,
+                               @Value("${spring.ai.openai.chat.options.model:default}") String chatModel) {
+        this(ragProperties.getAdmission(), meterRegistry, chatModel, ragProperties.getContext().getMaxTokens(), System::nanoTime);
+    }
+
+    AdmissionController(RagProperties.Admission settings, MeterRegistry meterRegistry, String chatModel,
+                        int ragContextTokens, LongSupplier clock) {
+        this.settings = settings;
+        this.meterRegistry = meterRegistry;
+        this.chatModel = chatModel;
+        this.ragContextTokens = ragContextTokens;
+        this.clock = clock;
+        this.clientsEvicted = meterRegistry.counter("rag.admission.clients.evicted");
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "admission-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::evictIdleClients, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 在当前线程上绑定优先级（入库线程使用BULK），执行完action后解绑
+     */
+    public static void runWithPriority(Priority priority, Runnable action) {
+        Priority previous = CURRENT_PRIORITY.get();
+        CURRENT_PRIORITY.set(priority);
+        try {
+            action.run();
+        } finally {
+            if (previous == null) {
+                CURRENT_PRIORITY.remove();
+            } else {
+                CURRENT_PRIORITY.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 对话请求的准入：按会话和IP限流，费用为用户输入的token数 + 固定开销 + extraTokens（如检索上下文）
+     */
+    public CompletableFuture<Void> admitChat(String conversationId, String remoteAddress, String prompt, int extraTokens) {
+        List<String> clientKeys = new ArrayList<>(2);
+        if (conversationId != null && !conversationId.isBlank()) {
+            clientKeys.add("conversation:" + conversationId);
+        }
+        if (remoteAddress != null && !remoteAddress.isBlank()) {
+            clientKeys.add("ip:" + remoteAddress);
+        }
+        return admit(chatModel, chatCost(prompt, extraTokens), Priority.INTERACTIVE, clientKeys);
+    }
+
+    /**
+     * 知识库问答的准入，检索上下文按上下文预算（rag.context.max-tokens）计入
+     */
+    public CompletableFuture<Void> admitRag(String conversationId, String remoteAddress, String question) {
+        return admitChat(conversationId, remoteAddress, question, ragContextTokens);
+    }
+
+    /**
+     * 知识库问答准入后没有调用模型（语义缓存命中、加入进行中的相同请求）时，归还admitRag在模型桶扣减的令牌；
+     * 客户端桶不归还，单个客户端的请求频率照常限制
+     */
+    public void refundRag(String question) {
+        ModelQueue queue = modelQueues.get(chatModel);
+        if (!settings.isEnabled() || queue == null) {
+            return;
+        }
+        queue.bucket.refund(chatCost(question, ragContextTokens));
+        // 归还的令牌可能够排队的请求使用
+        dispatch(queue);
+    }
+
+    private long chatCost(String prompt, int extraTokens) {
+        return estimateTokens(prompt) + settings.getRequestOverheadTokens() + Math.max(0, extraTokens);
+    }
+
+    /**
+     * 向量化请求的准入，阻塞到获得令牌为止；优先级取当前线程上绑定的，未绑定时按交互式处理
+     */
+    public void acquireEmbedding(String model, List<String> texts) {
+        long cost = 0;
+        for (String text : texts) {
+            cost += estimateTokens(text);
+        }
+        Priority priority = CURRENT_PRIORITY.get() != null ? CURRENT_PRIORITY.get() : Priority.INTERACTIVE;
+        try {
+            admit(model, cost, priority, List.of()).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    public CompletableFuture<Void> admit(String model, long cost, Priority priority, List<String> clientKeys) {
+        if (!settings.isEnabled()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        ModelQueue queue = modelQueues.computeIfAbsent(model, ModelQueue::new);
+        List<TokenBucket> buckets = new ArrayList<>(clientKeys.size() + 1);
+        for (String clientKey : clientKeys) {
+            buckets.add(clientBucket(clientKey));
+        }
+        buckets.add(queue.bucket);
+        long maxWaitNanos = (priority == Priority.BULK ? settings.getBulkMaxWait() : settings.getInteractiveMaxWait()).toNanos();
+
+        Ticket ticket;
+        synchronized (queue) {
+            if (queue.tickets.isEmpty() && tryConsume(buckets, cost)) {
+                queue.waitTimers.get(priority).record(0, TimeUnit.NANOSECONDS);
+                return CompletableFuture.completedFuture(null);
+            }
+            for (int i = 0; i < clientKeys.size(); i++) {
+                long wait = buckets.get(i).nanosUntil(cost);
+                if (wait > maxWaitNanos) {
+                    queue.reject("client_rate");
+                    return CompletableFuture.failedFuture(new RateLimitedException(clientKeys.get(i), Duration.ofNanos(wait)));
+                }
+            }
+            if (queue.tickets.size() >= settings.getMaxQueuedPerModel()) {
+                queue.reject("queue_full");
+                return CompletableFuture.failedFuture(new DependencyUnavailableException(model, "准入队列已满"));
+            }
+            ticket = new Ticket(priority, sequence.incrementAndGet(), cost, buckets, clock.getAsLong(), new CompletableFuture<>());
+            queue.tickets.add(ticket);
+        }
+        scheduler.schedule(() -> expire(queue, ticket), maxWaitNanos, TimeUnit.NANOSECONDS);
+        dispatch(queue);
+        return ticket.future();
+    }
+
+    public int estimateTokens(String text) {
+        return text == null || text.isEmpty() ? 0 : tokenCountEstimator.estimate(text);
+    }
+
+    public int queueDepth(String model) {
+        ModelQueue queue = modelQueues.get(model);
+        return queue == null ? 0 : queue.depth();
+    }
+
+    /**
+     * 按优先级顺序发放令牌：客户端桶不足的请求跳过（不影响其他客户端），
+     * 模型桶不足时停止，令牌留给排在前面的请求
+     */
+    private void dispatch(ModelQueue queue) {
+        List<Ticket> granted = new ArrayList<>();
+        synchronized (queue) {
+            long nextNanos = Long.MAX_VALUE;
+            Iterator<Ticket> iterator = queue.tickets.iterator();
+            while (iterator.hasNext()) {
+                Ticket ticket = iterator.next();
+                if (ticket.future().isDone()) {
+                    iterator.remove();
+                    continue;
+                }
+                long clientWait = 0;
+                for (int i = 0; i < ticket.buckets().size() - 1; i++) {
+                    clientWait = Math.max(clientWait, ticket.buckets().get(i).nanosUntil(ticket.cost()));
+                }
+                if (clientWait > 0) {
+                    nextNanos = Math.min(nextNanos, clientWait);
+                    continue;
+                }
+                long modelWait = queue.bucket.nanosUntil(ticket.cost());
+                if (modelWait > 0) {
+                    nextNanos = Math.min(nextNanos, modelWait);
+                    break;
+                }
+                if (tryConsume(ticket.buckets(), ticket.cost())) {
+                    iterator.remove();
+                    granted.add(ticket);
+                }
+            }
+            if (!queue.tickets.isEmpty() && nextNanos != Long.MAX_VALUE && !queue.dispatchScheduled) {
+                queue.dispatchScheduled = true;
+                scheduler.schedule(() -> {
+                    synchronized (queue) {
+                        queue.dispatchScheduled = false;
+                    }
+                    dispatch(queue);
+                }, nextNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        long now = clock.getAsLong();
+        for (Ticket ticket : granted) {
+            if (ticket.future().complete(null)) {
+                queue.waitTimers.get(ticket.priority()).record(now - ticket.enqueuedNanos(), TimeUnit.NANOSECONDS);
+            } else {
+                // 发放前已超时，归还令牌
+                ticket.buckets().forEach(bucket -> bucket.refund(ticket.cost()));
+            }
+        }
+    }
+
+    /**
+     * 对所有模型队列立即发放一次令牌（测试用）
+     */
+    void dispatchAll() {
+        modelQueues.values().forEach(this::dispatch);
+    }
+
+    private void expire(ModelQueue queue, Ticket ticket) {
+        if (ticket.future().completeExceptionally(new DependencyUnavailableException(queue.model, "等待令牌超时"))) {
+            queue.reject("timeout");
+            synchronized (queue) {
+                queue.tickets.remove(ticket);
+            }
+            // 超时的请求可能挡住了后面的请求
+            dispatch(queue);
+        }
+    }
+
+    /**
+     * 新建客户端桶时在同一把锁内检查上限和插入，桶的数量不会超过max-clients：
+     * 先回收已补满的桶，仍然超出时回收剩余令牌最多的桶（最接近空闲，相当于提前重置它的限流）
+     */
+    private TokenBucket clientBucket(String clientKey) {
+        TokenBucket existing = clientBuckets.get(clientKey);
+        if (existing != null) {
+            return existing;
+        }
+        synchronized (clientBuckets) {
+            existing = clientBuckets.get(clientKey);
+            if (existing != null) {
+                return existing;
+            }
+            int maxClients = Math.max(1, settings.getMaxClients());
+            if (clientBuckets.size() >= maxClients) {
+                evictIdleClients();
+            }
+            while (clientBuckets.size() >= maxClients) {
+                clientBuckets.entrySet().stream()
+                        .max(Comparator.comparingLong(entry -> entry.getValue().availableTokens()))
+                        .ifPresent(entry -> clientBuckets.remove(entry.getKey(), entry.getValue()));
+                clientsEvicted.increment();
+            }
+            RagProperties.BucketSettings bucket = clientKey.startsWith("conversation:") ? settings.getConversation() : settings.getIp();
+            TokenBucket created = new TokenBucket(bucket.getCapacity(), bucket.getRefillPerSecond(), clock);
+            clientBuckets.put(clientKey, created);
+            return created;
+        }
+    }
+
+    int clientCount() {
+        return clientBuckets.size();
+    }
+
+    /**
+     * 已补满的桶与新建的桶等价，直接回收
+     */
+    private void evictIdleClients() {
+        clientBuckets.values().removeIf(TokenBucket::isFull);
+    }
+
+    /**
+     * 依次扣减所有桶，任一不足时归还已扣减的部分
+     */
+    private static boolean tryConsume(List<TokenBucket> buckets, long cost) {
+        for (int i = 0; i < buckets.size(); i++) {
+            if (!buckets.get(i).tryConsume(cost)) {
+                for (int j = 0; j < i; j++) {
+                    buckets.get(j).refund(cost);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+        for (ModelQueue queue : modelQueues.values()) {
+            synchronized (queue) {
+                queue.tickets.forEach(ticket -> ticket.future().completeExceptionally(
+                        new DependencyUnavailableException(queue.model, "服务正在关闭")));
+                queue.tickets.clear();
+            }
+        }
+    }
+
+    private record Ticket(Priority priority, long sequence, long cost, List<TokenBucket> buckets,
+                          long enqueuedNanos, CompletableFuture<Void> future) {
+    }
+
+    private final class ModelQueue {
+
+        private final String model;
+        private final TokenBucket bucket;
+        private final TreeSet<Ticket> tickets = new TreeSet<>(Comparator.comparing(Ticket::priority)
+                .thenComparingLong(Ticket::sequence));
+        private final Map<Priority, Timer> waitTimers = new EnumMap<>(Priority.class);
+        private boolean dispatchScheduled;
+
+        private ModelQueue(String model) {
+            this.model = model;
+            RagProperties.BucketSettings bucketSettings = settings.resolveModel(model);
+            this.bucket = new TokenBucket(bucketSettings.getCapacity(), bucketSettings.getRefillPerSecond(), clock);
+            for (Priority priority : Priority.values()) {
+                waitTimers.put(priority, Timer.builder("rag.admission.wait")
+                        .tag("model", model)
+                        .tag("priority", priority.name().toLowerCase())
+                        .publishPercentiles(0.5, 0.95, 0.99)
+                        .register(meterRegistry));
+            }
+            Gauge.builder("rag.admission.queue.depth", this, ModelQueue::depth).tag("model", model).register(meterRegistry);
+        }
+
+        synchronized int depth() {
+            return tickets.size();
+        }
+
+        private void reject(String reason) {
+            meterRegistry.counter("rag.admission.rejected", "model", model, "reason", reason).increment();
+        }
+    }
+}
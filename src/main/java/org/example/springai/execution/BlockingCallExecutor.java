@@ -0,0 +1,107 @@
+package org.example.springai.execution;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.example.springai.config.RagProperties;
+import org.example.springai.http.DependencyUnavailableException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 阻塞式大模型调用（ChatClient.call()）的执行器：接口返回CompletableFuture，调用在这里的线程上执行，
+ * Tomcat线程在等待模型回答期间被释放
+ * mode为virtual时每个调用一个虚拟线程，否则使用固定大小的平台线程池；并发由ModelConcurrencyLimiter按模型限制
+ */
+@Slf4j
+@Component
+public class BlockingCallExecutor implements DisposableBean {
+
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+    private final ModelConcurrencyLimiter limiter;
+    private final String defaultModel;
+
+    @Autowired
+    public BlockingCallExecutor(RagProperties ragProperties, MeterRegistry meterRegistry,
+                                @Value("${spring.ai.openai.chat.options.model:default}") String defaultModel) {
+        RagProperties.Execution settings = ragProperties.getExecution();
+        ExecutorService virtual = settings.getMode() == RagProperties.ExecutionMode.VIRTUAL ? newVirtualThreadExecutor() : null;
+        if (settings.getMode() == RagProperties.ExecutionMode.VIRTUAL && virtual == null) {
+            log.warn("当前JVM（{}）不支持虚拟线程，阻塞调用改用{}个平台线程执行",
+                    Runtime.version().feature(), settings.getPlatformThreads());
+        }
+        this.virtualThreads = virtual != null;
+        this.executor = virtual != null ? virtual : newPlatformExecutor(settings);
+        this.limiter = new ModelConcurrencyLimiter(settings, meterRegistry);
+        this.defaultModel = defaultModel;
+    }
+
+    /**
+     * 在默认对话模型的并发限制下执行
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> call) {
+        return submit(defaultModel, call);
+    }
+
+    /**
+     * 在指定模型的并发限制下执行；排队已满时直接抛出DependencyUnavailableException，排队超时时返回的future以该异常结束
+     */
+    public <T> CompletableFuture<T> submit(String model, Supplier<T> call) {
+        ModelConcurrencyLimiter.Limit limit = limiter.forModel(model);
+        limit.admit();
+        try {
+            return CompletableFuture.supplyAsync(() -> limit.call(call), executor);
+        } catch (RejectedExecutionException e) {
+            limit.abandon();
+            throw new DependencyUnavailableException(model, "执行线程池已满");
+        }
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public ModelConcurrencyLimiter.Limit limit(String model) {
+        return limiter.forModel(model);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 项目按Java 17编译，通过反射创建虚拟线程执行器，运行在Java 21+上时生效
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newPlatformExecutor(RagProperties.Execution settings) {
+        AtomicInteger counter = new AtomicInteger();
+        int threads = Math.max(1, settings.getPlatformThreads());
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, settings.getPlatformQueueCapacity())),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "model-call-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+}
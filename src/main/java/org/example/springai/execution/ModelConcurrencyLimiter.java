@@ -0,0 +1,113 @@
+package org.example.springai.execution;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.springai.config.RagProperties;
+import org.example.springai.http.DependencyUnavailableException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 按模型限制并发：每个模型一个信号量，外加有上限的等待队列
+ * 排队数超过maxQueued的请求在提交时直接拒绝，排队超过maxWait的请求在执行线程上拒绝，都抛出DependencyUnavailableException
+ */
+public class ModelConcurrencyLimiter {
+
+    private final RagProperties.Execution settings;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Limit> limits = new ConcurrentHashMap<>();
+
+    public ModelConcurrencyLimiter(RagProperties.Execution settings, MeterRegistry meterRegistry) {
+        this.settings = settings;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public Limit forModel(String model) {
+        return limits.computeIfAbsent(model, name -> new Limit(name, settings.resolveLimit(name), meterRegistry));
+    }
+
+    public static final class Limit {
+
+        private final String model;
+        private final int maxConcurrentCalls;
+        private final int maxPending;
+        private final long maxWaitNanos;
+        private final Semaphore permits;
+        /**
+         * 已提交未结束的请求数（排队 + 执行中）
+         */
+        private final AtomicInteger pending = new AtomicInteger();
+        private final Counter rejected;
+
+        private Limit(String model, RagProperties.ModelLimit settings, MeterRegistry meterRegistry) {
+            this.model = model;
+            this.maxConcurrentCalls = Math.max(1, settings.getMaxConcurrentCalls());
+            this.maxPending = maxConcurrentCalls + Math.max(0, settings.getMaxQueued());
+            this.maxWaitNanos = settings.getMaxWait().toNanos();
+            this.permits = new Semaphore(maxConcurrentCalls, true);
+            this.rejected = meterRegistry.counter("rag.model.calls.rejected", "model", model);
+            Gauge.builder("rag.model.calls.active", this, Limit::activeCalls).tag("model", model).register(meterRegistry);
+            Gauge.builder("rag.model.calls.queued", this, Limit::queuedCalls).tag("model", model).register(meterRegistry);
+        }
+
+        /**
+         * 提交前占用一个排队名额，队列已满时直接拒绝；占用成功后必须以call或abandon结束
+         */
+        public void admit() {
+            if (pending.incrementAndGet() > maxPending) {
+                pending.decrementAndGet();
+                rejected.increment();
+                throw new DependencyUnavailableException(model, "排队请求已满");
+            }
+        }
+
+        /**
+         * 在执行线程上等待信号量后调用，等待超过maxWait时拒绝
+         */
+        public <T> T call(Supplier<T> call) {
+            boolean acquired;
+            try {
+                acquired = permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acquired = false;
+            }
+            if (!acquired) {
+                pending.decrementAndGet();
+                rejected.increment();
+                throw new DependencyUnavailableException(model, "排队等待超时");
+            }
+            try {
+                return call.get();
+            } finally {
+                permits.release();
+                pending.decrementAndGet();
+            }
+        }
+
+        /**
+         * 已admit但没有提交成功（如执行器拒绝）时归还排队名额
+         */
+        public void abandon() {
+            pending.decrementAndGet();
+        }
+
+        public int activeCalls() {
+            return maxConcurrentCalls - permits.availablePermits();
+        }
+
+        public int queuedCalls() {
+            return Math.max(0, pending.get() - activeCalls());
+        }
+
+        public long rejectedCalls() {
+            return (long) rejected.count();
+        }
+    }
+}
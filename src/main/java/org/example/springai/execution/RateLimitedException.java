@@ -0,0 +1,26 @@
+package org.example.springai.execution;
+
+import java.time.Duration;
+
+/**
+ * 单个会话或IP超过令牌桶速率且等待时间超过上限时抛出
+ */
+public class RateLimitedException extends RuntimeException {
+
+    private final String clientKey;
+    private final Duration retryAfter;
+
+    public RateLimitedException(String clientKey, Duration retryAfter) {
+        super(clientKey + "请求过于频繁，请" + Math.max(1, retryAfter.toSeconds()) + "秒后重试");
+        this.clientKey = clientKey;
+        this.retryAfter = retryAfter;
+    }
+
+    public String getClientKey() {
+        return clientKey;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
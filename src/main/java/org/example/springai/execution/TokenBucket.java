@@ -0,0 +1,75 @@
+package org.example.springai.execution;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 令牌桶：按固定速率补充令牌，容量即允许的突发量；令牌按请求估算的prompt token数扣减
+ * 单次消耗超过容量时按容量计算，避免大请求永远无法通过
+ */
+public final class TokenBucket {
+
+    private final double capacity;
+    private final double refillPerNano;
+    private final LongSupplier clock;
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucket(long capacity, long refillPerSecond, LongSupplier clock) {
+        this.capacity = Math.max(1, capacity);
+        this.refillPerNano = Math.max(1, refillPerSecond) / 1_000_000_000.0;
+        this.clock = clock;
+        this.tokens = this.capacity;
+        this.lastRefillNanos = clock.getAsLong();
+    }
+
+    /**
+     * 令牌足够时扣减并返回true
+     */
+    public synchronized boolean tryConsume(long cost) {
+        refill();
+        double required = Math.min(cost, capacity);
+        if (tokens < required) {
+            return false;
+        }
+        tokens -= required;
+        return true;
+    }
+
+    /**
+     * 距离令牌足够支付cost还需等待的纳秒数，0表示现在就够
+     */
+    public synchronized long nanosUntil(long cost) {
+        refill();
+        double missing = Math.min(cost, capacity) - tokens;
+        return missing <= 0 ? 0 : (long) Math.ceil(missing / refillPerNano);
+    }
+
+    /**
+     * 归还已扣减但没有用上的令牌
+     */
+    public synchronized void refund(long cost) {
+        refill();
+        tokens = Math.min(capacity, tokens + Math.min(cost, capacity));
+    }
+
+    /**
+     * 令牌已补满，说明一段时间没有请求，可以回收
+     */
+    public synchronized boolean isFull() {
+        refill();
+        return tokens >= capacity;
+    }
+
+    public synchronized long availableTokens() {
+        refill();
+        return (long) tokens;
+    }
+
+    private void refill() {
+        long now = clock.getAsLong();
+        if (now > lastRefillNanos) {
+            tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * refillPerNano);
+            lastRefillNanos = now;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package org.example.springai.http;
+
+/**
+ * 依赖熔断或舱壁已满时快速失败抛出，不再等待远程调用超时
+ */
+public class DependencyUnavailableException extends RuntimeException {
+
+    private final String dependency;
+
+    public DependencyUnavailableException(String dependency, String reason) {
+        super(dependency + "暂不可用：" + reason);
+        this.dependency = dependency;
+    }
+
+    public String getDependency() {
+        return dependency;
+    }
+}
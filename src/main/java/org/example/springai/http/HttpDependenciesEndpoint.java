@@ -0,0 +1,50 @@
+package org.example.springai.http;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * actuator端点 /actuator/httpdependencies：连接池配置以及每个依赖的舱壁、熔断器状态
+ */
+@Component
+@Endpoint(id = "httpdependencies")
+public class HttpDependenciesEndpoint {
+
+    private final HttpDependencyRegistry registry;
+
+    @Autowired
+    public HttpDependenciesEndpoint(HttpDependencyRegistry registry) {
+        this.registry = registry;
+    }
+
+    @ReadOperation
+    public Map<String, Object> dependencies() {
+        Map<String, Object> transport = new LinkedHashMap<>();
+        transport.put("http2", registry.settings().isHttp2());
+        transport.put("connectTimeout", registry.settings().getConnectTimeout().toString());
+        transport.put("keepAliveSeconds", System.getProperty("jdk.httpclient.keepalive.timeout"));
+        transport.put("maxIdleConnections", System.getProperty("jdk.httpclient.connectionPoolSize"));
+
+        Map<String, Object> dependencies = new LinkedHashMap<>();
+        for (HttpDependency dependency : registry.dependencies()) {
+            Map<String, Object> state = new LinkedHashMap<>();
+            state.put("url", dependency.getUrl().toString());
+            state.put("readTimeout", dependency.getReadTimeout().toString());
+            state.put("circuitState", dependency.getCircuitBreaker().state().name());
+            state.put("failureRate", dependency.getCircuitBreaker().failureRate());
+            state.put("circuitOpenCount", dependency.getCircuitBreaker().openCount());
+            state.put("activeCalls", dependency.getBulkhead().activeCalls());
+            state.put("maxConcurrentCalls", dependency.getBulkhead().maxConcurrentCalls());
+            state.put("rejectedCalls", dependency.getBulkhead().rejectedCalls());
+            state.put("calls", dependency.getCalls());
+            state.put("failures", dependency.getFailures());
+            dependencies.put(dependency.getName(), state);
+        }
+        return Map.of("transport", transport, "dependencies", dependencies);
+    }
+}
@@ -0,0 +1,118 @@
+package org.example.springai.http;
+
+import org.example.springai.config.RagProperties;
+import org.springframework.http.client.ClientHttpRequestFactory;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个下游依赖（Chroma、对话模型、向量模型）：按主机、端口和路径匹配请求，
+ * 每个依赖有独立的读超时、舱壁和熔断器，连接池共用
+ */
+public final class HttpDependency {
+
+    private final String name;
+    private final URI url;
+    private final String pathContains;
+    private final Duration readTimeout;
+    private final ClientHttpRequestFactory requestFactory;
+    private final Bulkhead bulkhead;
+    private final CircuitBreaker circuitBreaker;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    HttpDependency(String name, RagProperties.DependencySettings settings, ClientHttpRequestFactory requestFactory) {
+        this.name = name;
+        this.url = URI.create(settings.getUrl());
+        this.pathContains = settings.getPathContains();
+        this.readTimeout = settings.getReadTimeout();
+        this.requestFactory = requestFactory;
+        this.bulkhead = new Bulkhead(settings.getMaxConcurrentCalls(), settings.getMaxWait());
+        this.circuitBreaker = new CircuitBreaker(settings.getFailureRateThreshold(), settings.getSlidingWindowSize(),
+                settings.getMinimumCalls(), settings.getOpenDuration().toNanos(), settings.getHalfOpenCalls(),
+                System::nanoTime);
+    }
+
+    public boolean matches(URI uri) {
+        return url.getHost() != null && url.getHost().equalsIgnoreCase(uri.getHost())
+                && port(url) == port(uri)
+                && (pathContains == null || pathContains.isEmpty() || (uri.getPath() != null && uri.getPath().contains(pathContains)));
+    }
+
+    /**
+     * 占用舱壁名额并通过熔断器，任一不满足时快速失败；成功返回后必须调用complete或cancel
+     */
+    public void acquire() {
+        if (!bulkhead.tryAcquire()) {
+            throw new DependencyUnavailableException(name, "并发调用数已满");
+        }
+        if (!circuitBreaker.tryAcquire()) {
+            bulkhead.release();
+            throw new DependencyUnavailableException(name, "熔断中");
+        }
+        calls.incrementAndGet();
+    }
+
+    public void complete(boolean failed) {
+        bulkhead.release();
+        if (failed) {
+            failures.incrementAndGet();
+            circuitBreaker.onFailure();
+        } else {
+            circuitBreaker.onSuccess();
+        }
+    }
+
+    public void cancel() {
+        bulkhead.release();
+        circuitBreaker.onIgnored();
+    }
+
+    /**
+     * 5xx和429视为依赖故障，其余状态码（如400）是调用方的问题，不计入熔断
+     */
+    public static boolean isFailure(int status) {
+        return status >= 500 || status == 429;
+    }
+
+    private static int port(URI uri) {
+        if (uri.getPort() != -1) {
+            return uri.getPort();
+        }
+        return "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public URI getUrl() {
+        return url;
+    }
+
+    public Duration getReadTimeout() {
+        return readTimeout;
+    }
+
+    public ClientHttpRequestFactory getRequestFactory() {
+        return requestFactory;
+    }
+
+    public Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+}
@@ -0,0 +1,92 @@
+package org.example.springai.http;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.springai.config.RagProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 共享HTTP传输层：所有RestClient/WebClient共用一个JDK HttpClient（连接池、HTTP/2），
+ * 按rag.http.dependencies把请求归到具体依赖，使用依赖自己的读超时、舱壁和熔断器
+ * 连接池参数通过jdk.httpclient.*系统属性设置，只在第一个JDK HttpClient创建前生效，已通过JVM参数设置时不覆盖
+ */
+@Slf4j
+@Component
+public class HttpDependencyRegistry {
+
+    private final RagProperties.Http settings;
+    private final HttpClient httpClient;
+    private final JdkClientHttpRequestFactory defaultRequestFactory;
+    private final List<HttpDependency> dependencies = new ArrayList<>();
+
+    @Autowired
+    public HttpDependencyRegistry(RagProperties ragProperties) {
+        this.settings = ragProperties.getHttp();
+        setIfAbsent("jdk.httpclient.keepalive.timeout", String.valueOf(settings.getKeepAlive().toSeconds()));
+        setIfAbsent("jdk.httpclient.connectionPoolSize", String.valueOf(settings.getMaxIdleConnections()));
+        // HTTPS通过ALPN协商HTTP/2，明文连接尝试h2c升级，服务端不支持时回落到HTTP/1.1
+        this.httpClient = HttpClient.newBuilder()
+                .version(settings.isHttp2() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(settings.getConnectTimeout())
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.defaultRequestFactory = new JdkClientHttpRequestFactory(httpClient);
+        settings.getDependencies().forEach((name, dependency) -> {
+            if (dependency.getUrl() == null || dependency.getUrl().isBlank()) {
+                log.warn("HTTP依赖未配置url，忽略：{}", name);
+                return;
+            }
+            JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+            requestFactory.setReadTimeout(dependency.getReadTimeout());
+            dependencies.add(new HttpDependency(name, dependency, requestFactory));
+        });
+    }
+
+    /**
+     * 请求对应的依赖，未匹配时返回null（使用默认设置，不做舱壁和熔断）
+     */
+    public HttpDependency find(URI uri) {
+        for (HttpDependency dependency : dependencies) {
+            if (dependency.matches(uri)) {
+                return dependency;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 按依赖选择读超时的请求工厂，底层共用同一个HttpClient
+     */
+    public ClientHttpRequestFactory requestFactory() {
+        return (uri, httpMethod) -> {
+            HttpDependency dependency = find(uri);
+            ClientHttpRequestFactory delegate = dependency != null ? dependency.getRequestFactory() : defaultRequestFactory;
+            return delegate.createRequest(uri, httpMethod);
+        };
+    }
+
+    public HttpClient httpClient() {
+        return httpClient;
+    }
+
+    public List<HttpDependency> dependencies() {
+        return List.copyOf(dependencies);
+    }
+
+    public RagProperties.Http settings() {
+        return settings;
+    }
+
+    private static void setIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.example.springai.http;
+
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * WebClient过滤器（流式对话）：与ResilienceInterceptor相同的舱壁和熔断逻辑，
+ * 读超时作用于等待响应头的时间，流式响应体不受限制
+ */
+public class ResilienceExchangeFilter implements ExchangeFilterFunction {
+
+    private final HttpDependencyRegistry registry;
+
+    public ResilienceExchangeFilter(HttpDependencyRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        HttpDependency dependency = registry.find(request.url());
+        if (dependency == null) {
+            return next.exchange(request);
+        }
+        return Mono.defer(() -> {
+            dependency.acquire();
+            AtomicBoolean completed = new AtomicBoolean();
+            return next.exchange(request)
+                    .timeout(dependency.getReadTimeout())
+                    .doOnNext(response -> {
+                        if (completed.compareAndSet(false, true)) {
+                            dependency.complete(HttpDependency.isFailure(response.statusCode().value()));
+                        }
+                    })
+                    .doOnError(error -> {
+                        if (completed.compareAndSet(false, true)) {
+                            dependency.complete(true);
+                        }
+                    })
+                    .doFinally(signal -> {
+                        if (completed.compareAndSet(false, true)) {
+                            if (signal == SignalType.CANCEL) {
+                                dependency.cancel();
+                            } else {
+                                dependency.complete(false);
+                            }
+                        }
+                    });
+        });
+    }
+}
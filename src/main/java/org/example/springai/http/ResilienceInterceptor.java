@@ -0,0 +1,39 @@
+package org.example.springai.http;
+
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+
+/**
+ * RestClient拦截器：调用前检查舱壁和熔断器，按响应状态码或IO异常记录结果
+ * 舱壁名额在收到响应头时释放
+ */
+public class ResilienceInterceptor implements ClientHttpRequestInterceptor {
+
+    private final HttpDependencyRegistry registry;
+
+    public ResilienceInterceptor(HttpDependencyRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        HttpDependency dependency = registry.find(request.getURI());
+        if (dependency == null) {
+            return execution.execute(request, body);
+        }
+        dependency.acquire();
+        boolean failed = true;
+        try {
+            ClientHttpResponse response = execution.execute(request, body);
+            failed = HttpDependency.isFailure(response.getStatusCode().value());
+            return response;
+        } finally {
+            dependency.complete(failed);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.example.springai.ingest;
+
+import org.example.springai.execution.AdmissionController;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 批量入库用的writer：把多个文件的分片合并成大批次，再由固定数量的写入线程并行向量化和写库
+ * 同时进行的写入批次数有上限，达到上限时提交方阻塞，解析线程因此不会无限制地堆积分片
+ * 一次批量入库使用一个实例，结束时调用close
+ */
+public class BatchMergingWriter implements DocumentWriter, AutoCloseable {
+
+    private final VectorStore vectorStore;
+    private final Semaphore collectionPermits;
+    private final int batchSize;
+    private final IngestionProgress progress;
+    private final ExecutorService writeExecutor;
+    private final Semaphore inFlight;
+    private List<Document> buffer;
+    // 当前缓冲批次写入完成时完成
+    private CompletableFuture<Void> bufferFuture = new CompletableFuture<>();
+
+    BatchMergingWriter(VectorStore vectorStore, Semaphore collectionPermits, int batchSize, int parallelism,
+                       IngestionProgress progress) {
+        this.vectorStore = vectorStore;
+        this.collectionPermits = collectionPermits;
+        this.batchSize = Math.max(1, batchSize);
+        this.progress = progress;
+        this.writeExecutor = Executors.newFixedThreadPool(Math.max(1, parallelism), new CustomizableThreadFactory("rag-bulk-write-"));
+        this.inFlight = new Semaphore(Math.max(1, parallelism));
+        this.buffer = new ArrayList<>(this.batchSize);
+    }
+
+    @Override
+    public synchronized CompletableFuture<Void> write(List<Document> documents) {
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        for (Document document : documents) {
+            if (batches.isEmpty() || batches.get(batches.size() - 1) != bufferFuture) {
+                batches.add(bufferFuture);
+            }
+            buffer.add(document);
+            if (buffer.size() >= batchSize) {
+                submitBuffer();
+            }
+        }
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * 提交缓冲区中剩余的分片，所有文件解析完成后调用
+     */
+    public synchronized void flush() {
+        if (!buffer.isEmpty()) {
+            submitBuffer();
+        }
+    }
+
+    private void submitBuffer() {
+        List<Document> batch = buffer;
+        CompletableFuture<Void> batchFuture = bufferFuture;
+        buffer = new ArrayList<>(batchSize);
+        bufferFuture = new CompletableFuture<>();
+        // 写入批次达到上限时在这里阻塞，形成背压
+        inFlight.acquireUninterruptibly();
+        try {
+            writeExecutor.execute(() -> {
+                collectionPermits.acquireUninterruptibly();
+                try {
+                    AdmissionController.runWithPriority(AdmissionController.Priority.BULK,
+                            () -> ProgressTrackingEmbeddingModel.runWithProgress(progress, () -> vectorStore.add(batch)));
+                    batchFuture.complete(null);
+                } catch (Throwable e) {
+                    batchFuture.completeExceptionally(e);
+                } finally {
+                    collectionPermits.release();
+                    inFlight.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            batchFuture.completeExceptionally(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        writeExecutor.shutdown();
+    }
+}
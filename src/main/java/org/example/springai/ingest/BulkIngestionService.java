@@ -0,0 +1,206 @@
+package org.example.springai.ingest;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.io.TikaInputStream;
+import org.example.springai.config.RagProperties;
+import org.example.springai.model.BulkIngestionResult;
+import org.example.springai.model.IngestionResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * 批量入库：ZIP压缩包或服务器目录中的文件在有界的ForkJoinPool中并行解析，
+ * 所有文件的分片合并成大批次后按配置的并行度向量化并写入目标知识库
+ */
+@Slf4j
+@Service
+public class BulkIngestionService {
+
+    private final DocumentIngestionPipeline ingestionPipeline;
+    private final StreamingUploadIngestor streamingUploadIngestor;
+    private final RagProperties ragProperties;
+    private final ForkJoinPool parsePool;
+
+    @Autowired
+    public BulkIngestionService(DocumentIngestionPipeline ingestionPipeline,
+                                StreamingUploadIngestor streamingUploadIngestor,
+                                RagProperties ragProperties) {
+        this.ingestionPipeline = ingestionPipeline;
+        this.streamingUploadIngestor = streamingUploadIngestor;
+        this.ragProperties = ragProperties;
+        this.parsePool = new ForkJoinPool(Math.max(1, ragProperties.getIngestion().getBulk().getParseParallelism()));
+    }
+
+    /**
+     * ZIP压缩包批量入库，分片的source为压缩包内的相对路径
+     */
+    public BulkIngestionResult ingestZip(Path zipFile, String zipName, Map<String, Object> customMetadata,
+                                         String collectionName, IngestionProgress progress) throws IOException {
+        try (ZipFile zip = new ZipFile(zipFile.toFile(), StandardCharsets.UTF_8)) {
+            List<BulkFile> files = zip.stream()
+                    .filter(entry -> !entry.isDirectory() && !isHidden(entry.getName()))
+                    .map(entry -> new BulkFile(entry.getName(), null, () -> zip.getInputStream(entry)))
+                    .toList();
+            return ingestAll(zipName, files, customMetadata, collectionName, progress);
+        }
+    }
+
+    /**
+     * 服务器目录批量入库，目录必须位于rag.ingestion.bulk.allowed-roots配置的根目录之下
+     */
+    public BulkIngestionResult ingestDirectory(Path directory, Map<String, Object> customMetadata,
+                                               String collectionName, IngestionProgress progress) throws IOException {
+        Path root = directory.toRealPath();
+        checkAllowed(root);
+        List<BulkFile> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk.filter(Files::isRegularFile)
+                    .filter(path -> !isHidden(root.relativize(path).toString()))
+                    .map(path -> new BulkFile(root.relativize(path).toString().replace('\\', '/'),
+                            path.toString(), () -> TikaInputStream.get(path)))
+                    .toList();
+        }
+        return ingestAll(root.toString(), files, customMetadata, collectionName, progress);
+    }
+
+    private BulkIngestionResult ingestAll(String source, List<BulkFile> files, Map<String, Object> customMetadata,
+                                          String collectionName, IngestionProgress progress) {
+        RagProperties.Bulk bulk = ragProperties.getIngestion().getBulk();
+        if (files.size() > bulk.getMaxFiles()) {
+            throw new IllegalArgumentException("文件数量超过上限：" + files.size() + " > " + bulk.getMaxFiles());
+        }
+        long start = System.nanoTime();
+        Map<String, String> failedFiles = new ConcurrentHashMap<>();
+        List<IngestionResult> results = new ArrayList<>();
+        try (BatchMergingWriter writer = ingestionPipeline.newBatchMergingWriter(collectionName,
+                bulk.getBatchSize(), bulk.getWriteParallelism(), progress)) {
+            // 1. 在解析线程池中并行解析，分片交给共享的writer合并批次
+            List<CompletableFuture<CompletableFuture<IngestionResult>>> parsed = files.stream()
+                    .map(file -> CompletableFuture.supplyAsync(
+                            () -> parse(file, customMetadata, collectionName, progress, writer), parsePool))
+                    .toList();
+            CompletableFuture.allOf(parsed.toArray(new CompletableFuture[0])).join();
+            // 2. 所有文件解析完成后提交最后一个不满的批次
+            writer.flush();
+            // 3. 等待所有文件的分片写入完成
+            for (int i = 0; i < files.size(); i++) {
+                String name = files.get(i).name();
+                try {
+                    results.add(parsed.get(i).join().join());
+                } catch (RuntimeException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    log.warn("批量入库文件失败：{}", name, cause);
+                    failedFiles.put(name, String.valueOf(cause.getMessage()));
+                }
+            }
+        }
+        if (progress.isCancelled()) {
+            throw new IngestionCancelledException("入库任务已取消");
+        }
+
+        long elapsedNanos = System.nanoTime() - start;
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        double minutes = Math.max(elapsedNanos, 1) / 60_000_000_000d;
+        BulkIngestionResult result = new BulkIngestionResult(collectionName, source, results.size(),
+                new HashMap<>(failedFiles),
+                results.stream().mapToLong(IngestionResult::getChunks).sum(),
+                results.stream().mapToLong(IngestionResult::getReusedChunks).sum(),
+                results.stream().mapToLong(IngestionResult::getAddedChunks).sum(),
+                results.stream().mapToLong(IngestionResult::getDeletedChunks).sum(),
+                results.stream().mapToLong(IngestionResult::getBytes).sum(),
+                elapsedMillis, results.size() / minutes, results);
+        log.info("批量入库完成：collection={}, source={}, 文件={}, 失败={}, 分片={}, 耗时={}ms, {} files/min",
+                collectionName, source, result.getFiles(), failedFiles.size(), result.getChunks(), elapsedMillis,
+                String.format("%.1f", result.getFilesPerMinute()));
+        return result;
+    }
+
+    /**
+     * 解析单个文件，返回该文件分片全部写入后完成的Future；解析失败时返回失败的Future，不影响其他文件
+     */
+    private CompletableFuture<IngestionResult> parse(BulkFile file, Map<String, Object> customMetadata,
+                                                     String collectionName, IngestionProgress progress,
+                                                     BatchMergingWriter writer) {
+        Map<String, Object> metadata = new HashMap<>(customMetadata);
+        metadata.put("fileName", Path.of(file.name()).getFileName().toString());
+        if (file.documentId() != null) {
+            metadata.put(DocumentIngestionPipeline.DOCUMENT_ID, file.documentId());
+        }
+        Path spillFile = null;
+        try (InputStream inputStream = file.opener().open()) {
+            InputStream parseStream = inputStream;
+            if (!(inputStream instanceof TikaInputStream) && streamingUploadIngestor.needsRandomAccess(file.name())) {
+                // 压缩包内的PDF/Office文件需要随机访问，先单独落盘
+                spillFile = streamingUploadIngestor.spill(inputStream, file.name());
+                parseStream = TikaInputStream.get(spillFile);
+            }
+            try (InputStream toParse = parseStream) {
+                return ingestionPipeline.ingest(toParse, file.name(), metadata, collectionName, progress, writer);
+            }
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        } finally {
+            if (spillFile != null) {
+                try {
+                    Files.deleteIfExists(spillFile);
+                } catch (IOException e) {
+                    log.warn("删除临时文件失败：{}", spillFile, e);
+                }
+            }
+        }
+    }
+
+    private void checkAllowed(Path directory) throws IOException {
+        for (String allowedRoot : ragProperties.getIngestion().getBulk().getAllowedRoots()) {
+            Path root = Path.of(allowedRoot);
+            if (Files.exists(root) && directory.startsWith(root.toRealPath())) {
+                return;
+            }
+        }
+        throw new IllegalArgumentException("目录不在允许批量入库的范围内：" + directory);
+    }
+
+    private static boolean isHidden(String relativePath) {
+        for (String part : relativePath.replace('\\', '/').split("/")) {
+            if (part.startsWith(".") || part.startsWith("__MACOSX")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        parsePool.shutdownNow();
+    }
+
+    @FunctionalInterface
+    private interface StreamOpener {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * @param documentId 文档ID，服务器目录中的文件为绝对路径，重新入库时增量替换；
+     *                   压缩包只有上传的文件名，不能作为文档标识，为null时只追加
+     */
+    private record BulkFile(String name, String documentId, StreamOpener opener) {
+    }
+}
@@ -0,0 +1,46 @@
+package org.example.springai.ingest;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.Set;
+
+/**
+ * Tika解析回调：把解析出的文本直接写入TextChunker，而不是先拼成完整字符串
+ * 块级元素结束时补一个换行，保证段落、表格行之间有断句位置
+ */
+public class ChunkingContentHandler extends DefaultHandler {
+
+    private static final Set<String> BLOCK_ELEMENTS = Set.of(
+            "p", "div", "h1", "h2", "h3", "h4", "h5", "h6", "li", "tr", "br", "table", "pre", "blockquote");
+
+    private final TextChunker chunker;
+
+    public ChunkingContentHandler(TextChunker chunker) {
+        this.chunker = chunker;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+        if ("td".equals(localName) || "th".equals(localName)) {
+            chunker.append(" ");
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+        if (BLOCK_ELEMENTS.contains(localName)) {
+            chunker.append("\n");
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        chunker.append(ch, start, length);
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) {
+        chunker.append(ch, start, length);
+    }
+}
@@ -0,0 +1,10 @@
+package org.example.springai.ingest;
+
+/**
+ * 知识库内容变更事件：入库写入/删除了分片或删除整个知识库时发布，
+ * 依赖知识库内容的缓存（如语义答案缓存）监听后失效
+ *
+ * @param collectionName 发生变更的知识库
+ */
+public record CollectionChangedEvent(String collectionName) {
+}
@@ -0,0 +1,169 @@
+package org.example.springai.ingest;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.example.springai.config.RagProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Pattern;
+
+/**
+ * 分片内容哈希索引：按知识库记录每个来源文件（source）当前入库的分片哈希集合
+ * 重新上传同一文件时，未变化的分片直接复用，新增的分片入库，不再出现的分片删除
+ * 每个知识库持久化为数据目录下的一个JSON文件
+ */
+@Slf4j
+@Component
+public class ContentHashIndex {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final TypeReference<Map<String, Set<String>>> INDEX_TYPE = new TypeReference<>() {
+    };
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Path indexDir;
+    // collectionName -> (source -> 分片哈希集合)
+    private final Map<String, Map<String, Set<String>>> collections = new ConcurrentHashMap<>();
+    // 同一知识库的同一来源同时只允许一个入库任务
+    // 使用信号量而不是锁：批量入库时写入在其他线程完成，需要在其他线程释放
+    private final Map<String, Semaphore> sourceLocks = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ContentHashIndex(RagProperties ragProperties) {
+        this.indexDir = Path.of(ragProperties.getDataDir(), "hash-index");
+    }
+
+    /**
+     * 计算分片内容哈希：先做Unicode规范化并合并空白，避免仅格式差异导致重复向量化
+     */
+    public static String hash(String content) {
+        String normalized = WHITESPACE.matcher(Normalizer.normalize(content, Normalizer.Form.NFKC)).replaceAll(" ").strip();
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(normalized.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 根据知识库、来源和内容哈希生成确定的文档ID，用于复用和删除分片
+     */
+    public static String documentId(String collectionName, String source, String contentHash) {
+        return UUID.nameUUIDFromBytes((collectionName + "|" + source + "|" + contentHash)
+                .getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    public Semaphore lockFor(String collectionName, String source) {
+        return sourceLocks.computeIfAbsent(collectionName + "|" + source, key -> new Semaphore(1));
+    }
+
+    /**
+     * 获取某个来源当前已入库的分片哈希
+     */
+    public Set<String> getHashes(String collectionName, String source) {
+        Map<String, Set<String>> index = load(collectionName);
+        synchronized (index) {
+            Set<String> hashes = index.get(source);
+            return hashes == null ? Set.of() : Set.copyOf(hashes);
+        }
+    }
+
+    /**
+     * 更新某个来源的分片哈希并持久化
+     */
+    public void putHashes(String collectionName, String source, Set<String> hashes) {
+        Map<String, Set<String>> index = load(collectionName);
+        synchronized (index) {
+            if (hashes.isEmpty()) {
+                index.remove(source);
+            } else {
+                index.put(source, new HashSet<>(hashes));
+            }
+            persist(collectionName, index);
+        }
+    }
+
+    /**
+     * 知识库当前的来源文件数和分片数
+     */
+    public CollectionStats stats(String collectionName) {
+        Map<String, Set<String>> index = load(collectionName);
+        synchronized (index) {
+            long chunks = 0;
+            for (Set<String> hashes : index.values()) {
+                chunks += hashes.size();
+            }
+            return new CollectionStats(index.size(), chunks);
+        }
+    }
+
+    /**
+     * 删除知识库时清空对应的索引
+     */
+    public void dropCollection(String collectionName) {
+        collections.remove(collectionName);
+        try {
+            Files.deleteIfExists(indexFile(collectionName));
+        } catch (IOException e) {
+            log.warn("删除哈希索引失败：{}", collectionName, e);
+        }
+    }
+
+    private Map<String, Set<String>> load(String collectionName) {
+        return collections.computeIfAbsent(collectionName, name -> {
+            Path file = indexFile(name);
+            if (!Files.exists(file)) {
+                return new HashMap<>();
+            }
+            try {
+                return new HashMap<>(objectMapper.readValue(file.toFile(), INDEX_TYPE));
+            } catch (IOException e) {
+                log.warn("读取哈希索引失败，将重新建立：{}", file, e);
+                return new HashMap<>();
+            }
+        });
+    }
+
+    private void persist(String collectionName, Map<String, Set<String>> index) {
+        try {
+            Files.createDirectories(indexDir);
+            Path file = indexFile(collectionName);
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            objectMapper.writeValue(tmp.toFile(), index);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入哈希索引失败：" + collectionName, e);
+        }
+    }
+
+    private Path indexFile(String collectionName) {
+        return indexDir.resolve(RagProperties.checkCollectionName(collectionName) + ".json");
+    }
+
+    /**
+     * @param documents 来源文件数
+     * @param chunks    分片数
+     */
+    public record CollectionStats(int documents, long chunks) {
+    }
+}
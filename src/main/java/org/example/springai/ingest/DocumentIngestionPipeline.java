@@ -0,0 +1,425 @@
+package org.example.springai.ingest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.example.springai.config.ChromaVectorStoreFactory;
+import org.example.springai.config.RagProperties;
+import org.example.springai.execution.AdmissionController;
+import org.example.springai.model.IngestionResult;
+import org.example.springai.utils.CountingInputStream;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 文档入库流水线：Tika流式解析 -> 按token分片（带重叠） -> 按固定批次向量化并写入向量库
+ * 任何时候内存中只保留一个分片窗口和一个批次，堆内存占用和单次向量化请求大小与文件大小无关
+ * 元数据中带documentId时按该ID增量替换（复用未变化的分片、删除不再出现的分片），否则每次入库都是新文档，只追加不删除
+ */
+@Slf4j
+@Component
+public class DocumentIngestionPipeline {
+
+    /**
+     * 文档的稳定标识，元数据中指定时重新入库会替换该文档上一次入库的分片
+     */
+    public static final String DOCUMENT_ID = "documentId";
+
+    private final ChromaVectorStoreFactory chromaVectorStoreFactory;
+    private final RagProperties ragProperties;
+    private final MeterRegistry meterRegistry;
+    private final ContentHashIndex contentHashIndex;
+    private final ApplicationEventPublisher eventPublisher;
+    // AutoDetectParser和JTokkit编码器都是线程安全的，全局共享一个实例
+    private final AutoDetectParser parser = new AutoDetectParser();
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+    // 每个知识库的并发写入许可，限制同一知识库同时进行的向量化+写库批次数
+    private final Map<String, Semaphore> collectionWritePermits = new ConcurrentHashMap<>();
+
+    @Autowired
+    public DocumentIngestionPipeline(ChromaVectorStoreFactory chromaVectorStoreFactory,
+                                     RagProperties ragProperties,
+                                     MeterRegistry meterRegistry,
+                                     ContentHashIndex contentHashIndex,
+                                     ApplicationEventPublisher eventPublisher) {
+        this.chromaVectorStoreFactory = chromaVectorStoreFactory;
+        this.ragProperties = ragProperties;
+        this.meterRegistry = meterRegistry;
+        this.contentHashIndex = contentHashIndex;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * 流式解析输入流（PDF/Word/TXT等）并入库
+     *
+     * @param inputStream    文件内容，由调用方负责关闭
+     * @param resourceName   文件名，用于Tika识别格式和写入source元数据
+     * @param customMetadata 自定义元数据（文件名、标签等）
+     * @param collectionName 知识库名称
+     */
+    public IngestionResult ingest(InputStream inputStream, String resourceName,
+                                  Map<String, Object> customMetadata, String collectionName) throws IOException {
+        return ingest(inputStream, resourceName, customMetadata, collectionName, IngestionProgress.NONE);
+    }
+
+    /**
+     * 流式解析输入流并入库，同时上报进度
+     *
+     * @throws IngestionCancelledException 任务被取消时抛出，已写入的批次不会回滚
+     */
+    public IngestionResult ingest(InputStream inputStream, String resourceName, Map<String, Object> customMetadata,
+                                  String collectionName, IngestionProgress progress) throws IOException {
+        return join(ingest(inputStream, resourceName, customMetadata, collectionName, progress, null));
+    }
+
+    /**
+     * 流式解析输入流，分片批次交给指定的writer写入（批量入库时多个文件共用一个writer合并批次）
+     * 解析在调用线程中同步完成，返回的Future在所有分片写入、旧分片删除、哈希索引更新之后完成
+     *
+     * @param writer 为null时在调用线程中直接写入向量库
+     */
+    public CompletableFuture<IngestionResult> ingest(InputStream inputStream, String resourceName,
+                                                     Map<String, Object> customMetadata, String collectionName,
+                                                     IngestionProgress progress, DocumentWriter writer) throws IOException {
+        InputStream parseStream;
+        LongSupplier bytesRead;
+        if (inputStream instanceof TikaInputStream tikaStream && tikaStream.hasFile()) {
+            // 基于文件的TikaInputStream需要原样交给Tika，PDF/Office等格式才能随机访问文件而不是再复制一份
+            parseStream = tikaStream;
+            bytesRead = () -> {
+                try {
+                    return tikaStream.getLength();
+                } catch (IOException e) {
+                    return -1;
+                }
+            };
+        } else {
+            CountingInputStream countingStream = new CountingInputStream(inputStream);
+            parseStream = countingStream;
+            bytesRead = countingStream::getCount;
+        }
+        return run(resourceName, customMetadata, collectionName, progress, writer, chunker -> {
+            Metadata tikaMetadata = new Metadata();
+            tikaMetadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, resourceName);
+            try {
+                parser.parse(parseStream, new ChunkingContentHandler(chunker), tikaMetadata, new ParseContext());
+            } catch (SAXException | TikaException e) {
+                // Tika会把回调中抛出的运行时异常包装起来，取消异常需要原样抛出
+                for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                    if (cause instanceof IngestionCancelledException cancelled) {
+                        throw cancelled;
+                    }
+                }
+                throw new IOException("文档解析失败：" + resourceName, e);
+            }
+        }, bytesRead);
+    }
+
+    /**
+     * 纯文本内容入库，与文件入库使用同样的分片和批次配置
+     */
+    public IngestionResult ingestText(String content, String source,
+                                      Map<String, Object> customMetadata, String collectionName) {
+        try {
+            return join(run(source, customMetadata, collectionName, IngestionProgress.NONE, null,
+                    chunker -> chunker.append(content), () -> content.getBytes(StandardCharsets.UTF_8).length));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 创建一个跨文件合并批次的writer，用于批量入库
+     *
+     * @param batchSize   合并后每批的分片数量
+     * @param parallelism 同时进行的写入批次数
+     */
+    public BatchMergingWriter newBatchMergingWriter(String collectionName, int batchSize, int parallelism,
+                                                    IngestionProgress progress) {
+        return new BatchMergingWriter(chromaVectorStoreFactory.getVectorStore(collectionName),
+                writePermits(collectionName), batchSize, parallelism, progress);
+    }
+
+    /**
+     * 分片入库主流程：同一知识库的同一文档串行执行，按内容哈希与该文档上一次入库结果做增量比对
+     * 没有documentId时使用一次性的文档标识，文件名或标题相同的不同文档不会互相覆盖
+     */
+    private CompletableFuture<IngestionResult> run(String source, Map<String, Object> customMetadata,
+                                                   String collectionName, IngestionProgress progress,
+                                                   DocumentWriter writer, ChunkProducer producer,
+                                                   LongSupplier bytesRead) throws IOException {
+        long start = System.nanoTime();
+        Object explicitId = customMetadata.get(DOCUMENT_ID);
+        boolean replace = explicitId != null && !explicitId.toString().isBlank();
+        String documentKey = replace ? explicitId.toString() : source + "#" + UUID.randomUUID();
+        // 一次性的文档标识不会被其他任务使用，不需要登记到共享的锁表
+        Semaphore sourceLock = replace ? contentHashIndex.lockFor(collectionName, documentKey) : new Semaphore(1);
+        sourceLock.acquireUninterruptibly();
+        try {
+            VectorStore vectorStore = chromaVectorStoreFactory.getVectorStore(collectionName);
+            DocumentWriter effectiveWriter = writer != null ? writer
+                    : directWriter(vectorStore, writePermits(collectionName), progress);
+            Map<String, Object> baseMetadata = new HashMap<>(customMetadata);
+            baseMetadata.put("source", source);
+            // 添加collectionName，用于区分不同知识库
+            baseMetadata.put("collectionName", collectionName);
+            // 入库时间（毫秒时间戳），检索时按日期范围过滤；复用的分片保留首次入库时间
+            baseMetadata.put("ingestedAt", System.currentTimeMillis());
+            RagProperties.IngestionSettings settings = ragProperties.resolveIngestion(collectionName);
+            ChunkBatcher batcher = new ChunkBatcher(vectorStore, effectiveWriter, contentHashIndex, collectionName,
+                    documentKey, settings.batchSize(), baseMetadata, progress);
+            TextChunker chunker = new TextChunker(settings.chunkSize(), settings.chunkOverlap(),
+                    tokenCountEstimator, batcher::add);
+
+            CompletableFuture<Void> completion;
+            try {
+                producer.produce(chunker);
+                chunker.finish();
+                completion = batcher.complete();
+            } catch (RuntimeException | IOException e) {
+                batcher.abort();
+                throw e;
+            }
+            return completion
+                    .whenComplete((ignored, error) -> {
+                        if (error != null) {
+                            batcher.abort();
+                        }
+                        sourceLock.release();
+                        // 失败时可能已写入部分批次，同样视为知识库已变更
+                        if (error != null || batcher.getAdded() > 0 || batcher.getDeleted() > 0) {
+                            eventPublisher.publishEvent(new CollectionChangedEvent(collectionName));
+                        }
+                    })
+                    .thenApply(ignored -> record(collectionName, source, batcher, bytesRead.getAsLong(), start));
+        } catch (RuntimeException | IOException e) {
+            sourceLock.release();
+            throw e;
+        }
+    }
+
+    private Semaphore writePermits(String collectionName) {
+        return collectionWritePermits.computeIfAbsent(collectionName,
+                name -> new Semaphore(Math.max(1, ragProperties.getIngestion().getWriteParallelism())));
+    }
+
+    /**
+     * 在调用线程中直接写入向量库的writer
+     */
+    private static DocumentWriter directWriter(VectorStore vectorStore, Semaphore permits, IngestionProgress progress) {
+        return documents -> {
+            permits.acquireUninterruptibly();
+            try {
+                // 入库的向量化请求按批量优先级准入，让位给问答
+                AdmissionController.runWithPriority(AdmissionController.Priority.BULK,
+                        () -> ProgressTrackingEmbeddingModel.runWithProgress(progress, () -> vectorStore.add(documents)));
+            } finally {
+                permits.release();
+            }
+            return CompletableFuture.completedFuture(null);
+        };
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    private IngestionResult record(String collectionName, String source, ChunkBatcher batcher,
+                                   long bytes, long startNanos) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        double seconds = Math.max(elapsedNanos, 1) / 1_000_000_000d;
+        long chunks = batcher.getChunks();
+        meterRegistry.counter("rag.ingestion.chunks", "collection", collectionName).increment(chunks);
+        meterRegistry.counter("rag.ingestion.bytes", "collection", collectionName).increment(bytes);
+        meterRegistry.counter("rag.ingestion.chunks.reused", "collection", collectionName).increment(batcher.getReused());
+        meterRegistry.counter("rag.ingestion.chunks.added", "collection", collectionName).increment(batcher.getAdded());
+        meterRegistry.counter("rag.ingestion.chunks.deleted", "collection", collectionName).increment(batcher.getDeleted());
+        Timer.builder("rag.ingestion.duration")
+                .tag("collection", collectionName)
+                .register(meterRegistry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+
+        IngestionResult result = new IngestionResult(collectionName, source, chunks, bytes,
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos), chunks / seconds, bytes / seconds,
+                batcher.getReused(), batcher.getAdded(), batcher.getDeleted());
+        log.info("入库完成：collection={}, source={}, chunks={}, 复用={}, 新增={}, 删除={}, bytes={}, 耗时={}ms, {} chunks/s, {} bytes/s",
+                collectionName, source, chunks, batcher.getReused(), batcher.getAdded(), batcher.getDeleted(),
+                bytes, result.getElapsedMillis(),
+                String.format("%.1f", result.getChunksPerSecond()), String.format("%.0f", result.getBytesPerSecond()));
+        return result;
+    }
+
+    @FunctionalInterface
+    private interface ChunkProducer {
+        void produce(TextChunker chunker) throws IOException;
+    }
+
+    /**
+     * 把分片组装成Document，凑满batchSize后交给writer写入（向量库内部调用EmbeddingModel）
+     * 与上一次入库相比内容哈希未变化的分片直接跳过，不再重复向量化
+     */
+    private static class ChunkBatcher {
+        private final VectorStore vectorStore;
+        private final DocumentWriter writer;
+        private final ContentHashIndex contentHashIndex;
+        private final String collectionName;
+        // 哈希索引和分片ID使用的文档标识
+        private final String source;
+        private final int batchSize;
+        private final Map<String, Object> baseMetadata;
+        private final IngestionProgress progress;
+        // 上一次入库时该来源的分片哈希
+        private final Set<String> previousHashes;
+        // 本次解析出的分片哈希
+        private final Set<String> currentHashes = new HashSet<>();
+        // 本次已写入向量库的新分片哈希，写入可能在其他线程完成
+        private final Set<String> storedHashes = ConcurrentHashMap.newKeySet();
+        private final List<CompletableFuture<Void>> pendingWrites = new ArrayList<>();
+        private final AtomicLong added = new AtomicLong();
+        private List<Document> batch;
+        private long chunks;
+        private long reused;
+        private long deleted;
+
+        ChunkBatcher(VectorStore vectorStore, DocumentWriter writer, ContentHashIndex contentHashIndex,
+                     String collectionName, String source, int batchSize,
+                     Map<String, Object> baseMetadata, IngestionProgress progress) {
+            this.vectorStore = vectorStore;
+            this.writer = writer;
+            this.contentHashIndex = contentHashIndex;
+            this.collectionName = collectionName;
+            this.source = source;
+            this.batchSize = Math.max(1, batchSize);
+            this.baseMetadata = baseMetadata;
+            this.progress = progress;
+            this.previousHashes = contentHashIndex.getHashes(collectionName, source);
+            this.batch = new ArrayList<>(this.batchSize);
+        }
+
+        void add(String chunk) {
+            checkCancelled();
+            progress.onChunkParsed();
+            long chunkIndex = chunks++;
+            String contentHash = ContentHashIndex.hash(chunk);
+            // 同一文档内的重复分片和上次已入库的分片都不需要再向量化
+            if (!currentHashes.add(contentHash) || previousHashes.contains(contentHash)) {
+                reused++;
+                return;
+            }
+            Map<String, Object> metadata = new HashMap<>(baseMetadata);
+            metadata.put("chunkIndex", chunkIndex);
+            metadata.put("contentHash", contentHash);
+            batch.add(new Document(ContentHashIndex.documentId(collectionName, source, contentHash), chunk, metadata));
+            if (batch.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        /**
+         * 全部分片解析完成：提交剩余批次，等所有批次写入后删除本次不再出现的旧分片并更新哈希索引
+         */
+        CompletableFuture<Void> complete() {
+            flush();
+            return CompletableFuture.allOf(pendingWrites.toArray(new CompletableFuture[0]))
+                    .thenRun(this::finish);
+        }
+
+        private void finish() {
+            List<String> staleIds = previousHashes.stream()
+                    .filter(hash -> !currentHashes.contains(hash))
+                    .map(hash -> ContentHashIndex.documentId(collectionName, source, hash))
+                    .toList();
+            if (!staleIds.isEmpty()) {
+                vectorStore.delete(staleIds);
+                deleted = staleIds.size();
+            }
+            contentHashIndex.putHashes(collectionName, source, currentHashes);
+        }
+
+        /**
+         * 入库失败或取消：旧分片保留，把已写入的新分片也记入索引，下次重新入库时可以复用
+         */
+        void abort() {
+            if (storedHashes.isEmpty()) {
+                return;
+            }
+            Set<String> hashes = new HashSet<>(previousHashes);
+            hashes.addAll(storedHashes);
+            contentHashIndex.putHashes(collectionName, source, hashes);
+        }
+
+        private void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            checkCancelled();
+            List<Document> toStore = batch;
+            batch = new ArrayList<>(batchSize);
+            pendingWrites.add(writer.write(toStore).thenRun(() -> {
+                toStore.forEach(document -> storedHashes.add((String) document.getMetadata().get("contentHash")));
+                added.addAndGet(toStore.size());
+                progress.onChunksStored(toStore.size());
+            }));
+        }
+
+        private void checkCancelled() {
+            if (progress.isCancelled()) {
+                throw new IngestionCancelledException("入库任务已取消");
+            }
+        }
+
+        long getChunks() {
+            return chunks;
+        }
+
+        long getReused() {
+            return reused;
+        }
+
+        long getAdded() {
+            return added.get();
+        }
+
+        long getDeleted() {
+            return deleted;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package org.example.springai.ingest;
+
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 分片批次写入器：负责把一批分片向量化并写入向量库
+ */
+@FunctionalInterface
+public interface DocumentWriter {
+
+    /**
+     * 写入一批分片
+     *
+     * @return 这批分片全部写入向量库后完成的Future
+     */
+    CompletableFuture<Void> write(List<Document> documents);
+}
@@ -0,0 +1,11 @@
+package org.example.springai.ingest;
+
+/**
+ * 入库任务被取消时由流水线抛出
+ */
+public class IngestionCancelledException extends RuntimeException {
+
+    public IngestionCancelledException(String message) {
+        super(message);
+    }
+}
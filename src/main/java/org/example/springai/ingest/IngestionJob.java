@@ -0,0 +1,127 @@
+package org.example.springai.ingest;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Getter;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 异步入库任务，状态和进度计数在入库线程中更新，在查询接口中读取
+ */
+@Getter
+public class IngestionJob implements IngestionProgress {
+
+    public enum Status {
+        PENDING, RUNNING, COMPLETED, FAILED, CANCELLED
+    }
+
+    private final String id;
+    private final String collectionName;
+    private final String fileName;
+    private final Instant createdAt = Instant.now();
+    private volatile Status status = Status.PENDING;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    // 单文件任务为IngestionResult，批量任务为BulkIngestionResult
+    private volatile Object result;
+    private volatile String error;
+
+    @Getter(lombok.AccessLevel.NONE)
+    private final AtomicLong chunksParsed = new AtomicLong();
+    @Getter(lombok.AccessLevel.NONE)
+    private final AtomicLong chunksEmbedded = new AtomicLong();
+    @Getter(lombok.AccessLevel.NONE)
+    private final AtomicLong chunksStored = new AtomicLong();
+    @JsonIgnore
+    private final Path tempFile;
+    @JsonIgnore
+    private volatile boolean cancelRequested;
+    @JsonIgnore
+    private volatile Future<?> future;
+
+    public IngestionJob(String id, String collectionName, String fileName, Path tempFile) {
+        this.id = id;
+        this.collectionName = collectionName;
+        this.fileName = fileName;
+        this.tempFile = tempFile;
+    }
+
+    public long getChunksParsed() {
+        return chunksParsed.get();
+    }
+
+    public long getChunksEmbedded() {
+        return chunksEmbedded.get();
+    }
+
+    public long getChunksStored() {
+        return chunksStored.get();
+    }
+
+    @JsonIgnore
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED || status == Status.CANCELLED;
+    }
+
+    @Override
+    public void onChunkParsed() {
+        chunksParsed.incrementAndGet();
+    }
+
+    @Override
+    public void onChunksEmbedded(int count) {
+        chunksEmbedded.addAndGet(count);
+    }
+
+    @Override
+    public void onChunksStored(int count) {
+        chunksStored.addAndGet(count);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelRequested;
+    }
+
+    void attach(Future<?> future) {
+        this.future = future;
+    }
+
+    void markRunning() {
+        startedAt = Instant.now();
+        status = Status.RUNNING;
+    }
+
+    void markCompleted(Object result) {
+        this.result = result;
+        finish(Status.COMPLETED);
+    }
+
+    void markFailed(String error) {
+        this.error = error;
+        finish(Status.FAILED);
+    }
+
+    void markCancelled() {
+        finish(Status.CANCELLED);
+    }
+
+    /**
+     * 请求取消：未开始的任务直接从队列中移除，运行中的任务在下一个分片处停止
+     *
+     * @return 任务还没开始执行，调用方需要负责清理
+     */
+    boolean requestCancel() {
+        cancelRequested = true;
+        Future<?> f = future;
+        return f != null && f.cancel(false);
+    }
+
+    private void finish(Status finalStatus) {
+        finishedAt = Instant.now();
+        status = finalStatus;
+    }
+}
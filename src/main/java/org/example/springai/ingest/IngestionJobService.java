@@ -0,0 +1,192 @@
+package org.example.springai.ingest;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.io.TikaInputStream;
+import org.example.springai.config.RagProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步入库任务服务：上传接口只负责落盘和提交任务，解析、向量化、写库在有界的入库线程池中执行
+ * 线程池和等待队列都有上限，队列满时直接拒绝，由接口层返回429
+ */
+@Slf4j
+@Service
+public class IngestionJobService {
+
+    private final DocumentIngestionPipeline ingestionPipeline;
+    private final BulkIngestionService bulkIngestionService;
+    private final RagProperties ragProperties;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, IngestionJob> jobs = new ConcurrentHashMap<>();
+
+    @Autowired
+    public IngestionJobService(DocumentIngestionPipeline ingestionPipeline,
+                               BulkIngestionService bulkIngestionService,
+                               RagProperties ragProperties) {
+        this.ingestionPipeline = ingestionPipeline;
+        this.bulkIngestionService = bulkIngestionService;
+        this.ragProperties = ragProperties;
+        RagProperties.Ingestion ingestion = ragProperties.getIngestion();
+        this.executor = new ThreadPoolExecutor(
+                ingestion.getWorkerThreads(), ingestion.getWorkerThreads(),
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(ingestion.getQueueCapacity()),
+                new CustomizableThreadFactory("rag-ingest-"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 提交上传文件的入库任务
+     *
+     * @throws RejectedExecutionException 入库队列已满
+     */
+    public IngestionJob submitUpload(MultipartFile file, Map<String, Object> metadata, String collectionName)
+            throws IOException {
+        return submitFile(file, collectionName, job -> {
+            try (InputStream inputStream = TikaInputStream.get(job.getTempFile())) {
+                return ingestionPipeline.ingest(inputStream, job.getFileName(), metadata, job.getCollectionName(), job);
+            }
+        });
+    }
+
+    /**
+     * 提交ZIP压缩包的批量入库任务
+     *
+     * @throws RejectedExecutionException 入库队列已满
+     */
+    public IngestionJob submitBulkZip(MultipartFile zipFile, Map<String, Object> metadata, String collectionName)
+            throws IOException {
+        return submitFile(zipFile, collectionName, job -> bulkIngestionService.ingestZip(
+                job.getTempFile(), job.getFileName(), metadata, job.getCollectionName(), job));
+    }
+
+    /**
+     * 提交服务器目录的批量入库任务
+     *
+     * @throws RejectedExecutionException 入库队列已满
+     */
+    public IngestionJob submitBulkDirectory(Path directory, Map<String, Object> metadata, String collectionName) {
+        purgeFinishedJobs();
+        IngestionJob job = new IngestionJob(UUID.randomUUID().toString(), collectionName, directory.toString(), null);
+        return submit(job, () -> bulkIngestionService.ingestDirectory(
+                directory, metadata, job.getCollectionName(), job));
+    }
+
+    private IngestionJob submitFile(MultipartFile file, String collectionName, JobWork work) throws IOException {
+        purgeFinishedJobs();
+        // 先检查容量，队列已满时不再把文件落盘
+        if (executor.getQueue().remainingCapacity() == 0) {
+            throw new RejectedExecutionException("入库队列已满，请稍后重试");
+        }
+
+        String jobId = UUID.randomUUID().toString();
+        String fileName = file.getOriginalFilename() != null ? file.getOriginalFilename() : jobId;
+        Path tempDir = Path.of(ragProperties.getIngestion().getTempDir());
+        Files.createDirectories(tempDir);
+        Path tempFile = tempDir.resolve(jobId + "_" + Path.of(fileName).getFileName());
+        file.transferTo(tempFile);
+
+        IngestionJob job = new IngestionJob(jobId, collectionName, fileName, tempFile);
+        return submit(job, () -> work.run(job));
+    }
+
+    private IngestionJob submit(IngestionJob job, Callable<Object> work) {
+        jobs.put(job.getId(), job);
+        try {
+            job.attach(executor.submit(() -> run(job, work)));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            deleteQuietly(job.getTempFile());
+            throw new RejectedExecutionException("入库队列已满，请稍后重试", e);
+        }
+        log.info("入库任务已提交：jobId={}, collection={}, file={}", job.getId(), job.getCollectionName(), job.getFileName());
+        return job;
+    }
+
+    public Optional<IngestionJob> getJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    /**
+     * 取消任务
+     *
+     * @return 任务不存在时返回空
+     */
+    public Optional<IngestionJob> cancel(String jobId) {
+        IngestionJob job = jobs.get(jobId);
+        if (job == null) {
+            return Optional.empty();
+        }
+        if (!job.isFinished() && job.requestCancel()) {
+            // 任务还在队列中，不会再被执行，这里直接清理
+            job.markCancelled();
+            deleteQuietly(job.getTempFile());
+        }
+        return Optional.of(job);
+    }
+
+    private void run(IngestionJob job, Callable<Object> work) {
+        if (job.isCancelled()) {
+            job.markCancelled();
+            deleteQuietly(job.getTempFile());
+            return;
+        }
+        job.markRunning();
+        try {
+            job.markCompleted(work.call());
+        } catch (IngestionCancelledException e) {
+            log.info("入库任务已取消：jobId={}, 已写入分片={}", job.getId(), job.getChunksStored());
+            job.markCancelled();
+        } catch (Exception e) {
+            log.error("入库任务失败：jobId={}", job.getId(), e);
+            job.markFailed(e.getMessage());
+        } finally {
+            deleteQuietly(job.getTempFile());
+        }
+    }
+
+    private void purgeFinishedJobs() {
+        Instant expireBefore = Instant.now().minus(ragProperties.getIngestion().getJobRetention());
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt().isBefore(expireBefore));
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("删除临时文件失败：{}", path, e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface JobWork {
+        Object run(IngestionJob job) throws Exception;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,35 @@
+package org.example.springai.ingest;
+
+/**
+ * 入库进度回调，异步入库任务通过它上报进度并检查是否已取消
+ */
+public interface IngestionProgress {
+
+    IngestionProgress NONE = new IngestionProgress() {
+    };
+
+    /**
+     * 解析出一个分片
+     */
+    default void onChunkParsed() {
+    }
+
+    /**
+     * 一批分片完成向量化
+     */
+    default void onChunksEmbedded(int count) {
+    }
+
+    /**
+     * 一批分片写入向量库
+     */
+    default void onChunksStored(int count) {
+    }
+
+    /**
+     * 任务是否已被取消，流水线在每个分片和每个批次之间检查
+     */
+    default boolean isCancelled() {
+        return false;
+    }
+}
@@ -0,0 +1,63 @@
+package org.example.springai.ingest;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+/**
+ * EmbeddingModel装饰器：向量库在调用线程上同步完成向量化，
+ * 因此可以通过线程上下文把向量化数量上报给当前线程正在执行的入库任务
+ */
+public class ProgressTrackingEmbeddingModel implements EmbeddingModel {
+
+    private static final ThreadLocal<IngestionProgress> CURRENT = new ThreadLocal<>();
+
+    private final EmbeddingModel delegate;
+
+    public ProgressTrackingEmbeddingModel(EmbeddingModel delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * 在当前线程上绑定入库进度，执行完action后解绑
+     */
+    public static void runWithProgress(IngestionProgress progress, Runnable action) {
+        IngestionProgress previous = CURRENT.get();
+        CURRENT.set(progress);
+        try {
+            action.run();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        EmbeddingResponse response = delegate.call(request);
+        IngestionProgress progress = CURRENT.get();
+        if (progress != null) {
+            progress.onChunksEmbedded(request.getInstructions().size());
+        }
+        return response;
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        float[] embedding = delegate.embed(document);
+        IngestionProgress progress = CURRENT.get();
+        if (progress != null) {
+            progress.onChunksEmbedded(1);
+        }
+        return embedding;
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+}
@@ -0,0 +1,90 @@
+package org.example.springai.ingest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.io.TikaInputStream;
+import org.example.springai.config.RagProperties;
+import org.example.springai.model.IngestionResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 上传文件直接入库：multipart的输入流直接交给Tika流式解析，不落临时文件
+ * 只有PDF、Office/ZIP容器等需要随机访问的格式才会通过FileChannel写入临时目录，解析结束后无论成功与否都会删除
+ */
+@Slf4j
+@Component
+public class StreamingUploadIngestor {
+
+    // 每次transferFrom最多传输的字节数
+    private static final long TRANSFER_CHUNK = 8L * 1024 * 1024;
+
+    private final DocumentIngestionPipeline ingestionPipeline;
+    private final RagProperties ragProperties;
+
+    @Autowired
+    public StreamingUploadIngestor(DocumentIngestionPipeline ingestionPipeline, RagProperties ragProperties) {
+        this.ingestionPipeline = ingestionPipeline;
+        this.ragProperties = ragProperties;
+    }
+
+    public IngestionResult ingest(MultipartFile file, Map<String, Object> metadata, String collectionName) throws IOException {
+        String fileName = file.getOriginalFilename() != null ? file.getOriginalFilename() : "upload";
+        try (InputStream inputStream = file.getInputStream()) {
+            if (!needsRandomAccess(fileName)) {
+                return ingestionPipeline.ingest(inputStream, fileName, metadata, collectionName);
+            }
+            Path spillFile = spill(inputStream, fileName);
+            try (TikaInputStream tikaStream = TikaInputStream.get(spillFile)) {
+                return ingestionPipeline.ingest(tikaStream, fileName, metadata, collectionName);
+            } finally {
+                Files.deleteIfExists(spillFile);
+            }
+        }
+    }
+
+    boolean needsRandomAccess(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        String extension = dot < 0 ? "" : fileName.substring(dot + 1).toLowerCase(Locale.ROOT);
+        return ragProperties.getIngestion().getRandomAccessExtensions().contains(extension);
+    }
+
+    /**
+     * 把输入流写入临时文件，超过大小上限时中止并删除
+     */
+    Path spill(InputStream inputStream, String fileName) throws IOException {
+        RagProperties.Ingestion ingestion = ragProperties.getIngestion();
+        Path tempDir = Path.of(ingestion.getTempDir());
+        Files.createDirectories(tempDir);
+        long maxBytes = ingestion.getMaxSpillSize().toBytes();
+        Path spillFile = Files.createTempFile(tempDir, "spill-", "_" + Path.of(fileName).getFileName());
+        try (ReadableByteChannel source = Channels.newChannel(inputStream);
+             FileChannel target = FileChannel.open(spillFile, StandardOpenOption.WRITE)) {
+            long position = 0;
+            long transferred;
+            // 多传1个字节用于判断是否超限
+            while ((transferred = target.transferFrom(source, position, Math.min(TRANSFER_CHUNK, maxBytes + 1 - position))) > 0) {
+                position += transferred;
+                if (position > maxBytes) {
+                    throw new IOException("文件超过临时落盘大小上限：" + ingestion.getMaxSpillSize());
+                }
+            }
+            log.debug("上传文件已写入临时文件：{}，{}字节", spillFile, position);
+            return spillFile;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(spillFile);
+            throw e;
+        }
+    }
+}
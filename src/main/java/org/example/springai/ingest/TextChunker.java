@@ -0,0 +1,148 @@
+package org.example.springai.ingest;
+
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Consumer;
+
+/**
+ * 流式分片器：按句子切分文本，再按token数把句子拼成分片，相邻分片之间保留指定token数的重叠
+ * 文本通过append增量写入，凑满一个分片就立即交给sink，不需要把整篇文档放在内存里
+ * 非线程安全，每次解析使用一个新实例
+ */
+public class TextChunker {
+
+    private final int chunkSize;
+    private final int chunkOverlap;
+    private final int maxSentenceChars;
+    private final TokenCountEstimator tokenCountEstimator;
+    private final Consumer<String> sink;
+
+    // 尚未遇到句子结束符的文本
+    private final StringBuilder pending = new StringBuilder();
+    // 当前分片窗口中的句子（包含上一个分片保留下来的重叠部分）
+    private final Deque<Sentence> window = new ArrayDeque<>();
+    private int windowTokens;
+    // 窗口中是否有还没输出过的句子
+    private boolean windowHasNew;
+
+    public TextChunker(int chunkSize, int chunkOverlap, TokenCountEstimator tokenCountEstimator, Consumer<String> sink) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize必须大于0");
+        }
+        if (chunkOverlap < 0 || chunkOverlap >= chunkSize) {
+            throw new IllegalArgumentException("chunkOverlap必须在[0, chunkSize)范围内");
+        }
+        this.chunkSize = chunkSize;
+        this.chunkOverlap = chunkOverlap;
+        // 没有句子结束符的超长文本（如表格）按字符数强制断句，避免pending无限增长
+        this.maxSentenceChars = chunkSize * 4;
+        this.tokenCountEstimator = tokenCountEstimator;
+        this.sink = sink;
+    }
+
+    public void append(char[] ch, int start, int length) {
+        for (int i = start; i < start + length; i++) {
+            appendChar(ch[i]);
+        }
+    }
+
+    public void append(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            appendChar(text.charAt(i));
+        }
+    }
+
+    /**
+     * 文本写入结束，输出剩余内容
+     */
+    public void finish() {
+        flushSentence();
+        if (windowHasNew) {
+            emit();
+        }
+    }
+
+    private void appendChar(char c) {
+        pending.append(c);
+        if (isSentenceEnd(c) || (pending.length() >= maxSentenceChars && !Character.isHighSurrogate(c))) {
+            flushSentence();
+        }
+    }
+
+    private static boolean isSentenceEnd(char c) {
+        return switch (c) {
+            case '。', '！', '？', '；', '\n', '.', '!', '?', ';' -> true;
+            default -> false;
+        };
+    }
+
+    private void flushSentence() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        String text = pending.toString();
+        pending.setLength(0);
+        if (text.isBlank()) {
+            // 空白只作为分隔，拼接到上一句后面，不单独计算token
+            if (!window.isEmpty() && windowHasNew) {
+                Sentence last = window.removeLast();
+                window.addLast(new Sentence(last.text() + text, last.tokens()));
+            }
+            return;
+        }
+        int tokens = tokenCountEstimator.estimate(text);
+        if (tokens > chunkSize) {
+            splitOversized(text, tokens);
+        } else {
+            acceptSentence(new Sentence(text, tokens));
+        }
+    }
+
+    /**
+     * 单句超过分片大小时，按字符比例切成若干段
+     */
+    private void splitOversized(String text, int tokens) {
+        int pieceChars = Math.max(1, (int) ((long) text.length() * chunkSize / tokens));
+        int start = 0;
+        while (start < text.length()) {
+            int end = Math.min(text.length(), start + pieceChars);
+            if (end < text.length() && Character.isHighSurrogate(text.charAt(end - 1))) {
+                end++;
+            }
+            String piece = text.substring(start, end);
+            acceptSentence(new Sentence(piece, Math.min(chunkSize, tokenCountEstimator.estimate(piece))));
+            start = end;
+        }
+    }
+
+    private void acceptSentence(Sentence sentence) {
+        if (windowHasNew && windowTokens + sentence.tokens() > chunkSize) {
+            emit();
+            // 只保留末尾不超过chunkOverlap的句子作为下一个分片的重叠部分
+            while (!window.isEmpty()
+                    && (windowTokens > chunkOverlap || windowTokens + sentence.tokens() > chunkSize)) {
+                windowTokens -= window.removeFirst().tokens();
+            }
+        }
+        window.addLast(sentence);
+        windowTokens += sentence.tokens();
+        windowHasNew = true;
+    }
+
+    private void emit() {
+        StringBuilder chunk = new StringBuilder();
+        for (Sentence sentence : window) {
+            chunk.append(sentence.text());
+        }
+        windowHasNew = false;
+        String text = chunk.toString().strip();
+        if (!text.isEmpty()) {
+            sink.accept(text);
+        }
+    }
+
+    private record Sentence(String text, int tokens) {
+    }
+}
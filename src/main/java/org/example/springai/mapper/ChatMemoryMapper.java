@@ -0,0 +1,42 @@
+package org.example.springai.mapper;
+
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.example.springai.model.ChatMemoryRow;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 会话记忆Mapper接口，表结构见sql/init.sql中的chat_memory_message
+ */
+@Mapper
+public interface ChatMemoryMapper {
+
+    /**
+     * 按序号查询会话的全部消息
+     * @param conversationId 会话ID
+     * @return 消息列表
+     */
+    List<ChatMemoryRow> findByConversationId(@Param("conversationId") String conversationId);
+
+    /**
+     * 查询所有有消息的会话ID
+     * @return 会话ID列表
+     */
+    List<String> findConversationIds();
+
+    /**
+     * 批量删除会话的全部消息
+     * @param conversationIds 会话ID
+     * @return 影响行数
+     */
+    int deleteByConversationIds(@Param("conversationIds") Collection<String> conversationIds);
+
+    /**
+     * 批量插入消息（一条多行INSERT）
+     * @param rows 消息
+     * @return 影响行数
+     */
+    int insertMessages(@Param("rows") List<ChatMemoryRow> rows);
+}
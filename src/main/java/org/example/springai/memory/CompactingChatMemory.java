@@ -0,0 +1,300 @@
+package org.example.springai.memory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.example.springai.config.RagProperties;
+import org.example.springai.execution.AdmissionController;
+import org.example.springai.execution.BlockingCallExecutor;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 滚动摘要的会话记忆：会话历史的估算token数超过trigger-tokens时，把较早的对话连同已有摘要异步总结为一条摘要消息（放在历史开头），
+ * 最近keep-recent-messages条消息原样保留；压缩在后台执行，不阻塞当前请求，摘要完成前的请求仍使用未压缩的历史
+ * 摘要生成期间会话有新消息时只替换被总结的那部分；历史被截断导致对不上时丢弃这次摘要
+ * max-messages仍作为上限（摘要消息不计入截断），摘要调用失败时退化为窗口截断
+ * 摘要以SystemMessage保存，PromptChatMemoryAdvisor只渲染用户和助手消息，摘要由ConversationSummaryAdvisor拼入系统提示词；
+ * 该advisor每次请求记录一次实际发送的历史token数（sent）和不压缩时的估算token数（uncompacted），见rag.memory.history.tokens
+ */
+@Slf4j
+public class CompactingChatMemory implements ChatMemory {
+
+    /**
+     * 摘要消息的前缀，用于从存储中识别摘要（数据库层不保存metadata）
+     */
+    static final String SUMMARY_PREFIX = "【此前对话的摘要】\n";
+
+    private static final String SUMMARY_INSTRUCTIONS = """
+            你负责压缩对话历史。根据已有摘要和新增的对话记录，输出一份更新后的摘要，供后续对话作为上下文使用。
+            要求：保留用户的身份、偏好、目标，已确认的事实、结论、数字和专有名词，以及尚未解决的问题；
+            省略寒暄和重复内容；用第三人称陈述，不要编造；直接输出摘要正文，不超过%d个token。""";
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final ChatMemoryRepository repository;
+    private final ChatModel chatModel;
+    private final BlockingCallExecutor executor;
+    private final AdmissionController admissionController;
+    private final String model;
+    private final int maxMessages;
+    private final int maxConversations;
+    private final RagProperties.Compaction settings;
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final Set<String> compacting = ConcurrentHashMap.newKeySet();
+    /**
+     * 每个会话被压缩掉的token数，用于估算不压缩时的历史长度；只保留最近访问的max-conversations个会话
+     */
+    private final Map<String, Long> savedTokens;
+    private final DistributionSummary sentTokens;
+    private final DistributionSummary uncompactedTokens;
+    private final DistributionSummary beforeCompaction;
+    private final DistributionSummary afterCompaction;
+    private final Counter compactions;
+    private final Counter failures;
+    private final Counter discarded;
+
+    public CompactingChatMemory(ChatMemoryRepository repository, ChatModel chatModel, BlockingCallExecutor executor,
+                                AdmissionController admissionController, String defaultModel,
+                                RagProperties.MemorySettings memorySettings, MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.chatModel = chatModel;
+        this.executor = executor;
+        this.admissionController = admissionController;
+        this.settings = memorySettings.getCompaction();
+        this.model = settings.getModel() != null && !settings.getModel().isBlank() ? settings.getModel() : defaultModel;
+        this.maxMessages = memorySettings.getMaxMessages();
+        this.maxConversations = memorySettings.getMaxConversations();
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        this.savedTokens = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxConversations;
+            }
+        });
+        this.sentTokens = DistributionSummary.builder("rag.memory.history.tokens").tag("stage", "sent").register(meterRegistry);
+        this.uncompactedTokens = DistributionSummary.builder("rag.memory.history.tokens").tag("stage", "uncompacted").register(meterRegistry);
+        this.beforeCompaction = DistributionSummary.builder("rag.memory.compaction.tokens").tag("stage", "before").register(meterRegistry);
+        this.afterCompaction = DistributionSummary.builder("rag.memory.compaction.tokens").tag("stage", "after").register(meterRegistry);
+        this.compactions = meterRegistry.counter("rag.memory.compactions", "result", "success");
+        this.failures = meterRegistry.counter("rag.memory.compactions", "result", "failure");
+        this.discarded = meterRegistry.counter("rag.memory.compactions", "result", "discarded");
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        List<Message> history;
+        synchronized (lock(conversationId)) {
+            history = new ArrayList<>(repository.findByConversationId(conversationId));
+            history.addAll(messages);
+            trimToWindow(history);
+            repository.saveAll(conversationId, history);
+        }
+        maybeCompact(conversationId, history);
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        return repository.findByConversationId(conversationId);
+    }
+
+    /**
+     * 读取要拼入prompt的摘要（含前缀），没有摘要时返回null；每次请求调用一次
+     * 同时记录本次发送的历史token数：摘要加上PromptChatMemoryAdvisor渲染的用户和助手消息
+     */
+    String summaryForPrompt(String conversationId) {
+        List<Message> history = repository.findByConversationId(conversationId);
+        if (history.isEmpty()) {
+            return null;
+        }
+        String summary = hasSummary(history) ? history.get(0).getText() : null;
+        long tokens = summary == null ? 0 : tokenCountEstimator.estimate(summary);
+        for (Message message : history) {
+            if (message.getMessageType() == MessageType.USER || message.getMessageType() == MessageType.ASSISTANT) {
+                tokens += estimateTokens(message);
+            }
+        }
+        Long saved = savedTokens.get(conversationId);
+        sentTokens.record(tokens);
+        uncompactedTokens.record(tokens + (saved == null ? 0 : saved));
+        return summary;
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        synchronized (lock(conversationId)) {
+            repository.deleteByConversationId(conversationId);
+            savedTokens.remove(conversationId);
+        }
+    }
+
+    /**
+     * 超过阈值且当前会话没有进行中的压缩时，在后台总结较早的消息；以BULK优先级准入，让位给用户请求
+     */
+    CompletableFuture<Void> maybeCompact(String conversationId, List<Message> history) {
+        int start = hasSummary(history) ? 1 : 0;
+        int cut = splitPoint(history, start);
+        if (cut <= start || estimateTokens(history) < settings.getTriggerTokens() || !compacting.add(conversationId)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<Message> compacted = List.copyOf(history.subList(0, cut));
+        String previousSummary = start == 1 ? history.get(0).getText().substring(SUMMARY_PREFIX.length()) : null;
+        String transcript = transcript(history.subList(start, cut));
+        long cost = tokenCountEstimator.estimate(transcript) + settings.getSummaryMaxTokens()
+                + (previousSummary == null ? 0 : tokenCountEstimator.estimate(previousSummary));
+        return admissionController.admit(model, cost, AdmissionController.Priority.BULK, List.of())
+                .thenCompose(admitted -> executor.submit(model, () -> summarize(previousSummary, transcript)))
+                .handle((summary, error) -> {
+                    try {
+                        if (error != null) {
+                            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                    ? error.getCause() : error;
+                            failures.increment();
+                            log.warn("会话历史压缩失败，继续使用未压缩的历史：conversationId={}，{}", conversationId,
+                                    cause.getMessage());
+                        } else {
+                            replacePrefix(conversationId, compacted, summary);
+                        }
+                    } finally {
+                        compacting.remove(conversationId);
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * 用摘要替换被总结的消息，保留之后新增的消息
+     */
+    private void replacePrefix(String conversationId, List<Message> compacted, String summary) {
+        if (summary == null || summary.isBlank()) {
+            failures.increment();
+            return;
+        }
+        synchronized (lock(conversationId)) {
+            List<Message> current = repository.findByConversationId(conversationId);
+            if (current.size() < compacted.size() || !samePrefix(current, compacted)) {
+                discarded.increment();
+                return;
+            }
+            List<Message> replaced = new ArrayList<>(current.size() - compacted.size() + 1);
+            replaced.add(new SystemMessage(SUMMARY_PREFIX + summary.strip()));
+            replaced.addAll(current.subList(compacted.size(), current.size()));
+            repository.saveAll(conversationId, replaced);
+
+            long before = estimateTokens(current);
+            long after = estimateTokens(replaced);
+            beforeCompaction.record(before);
+            afterCompaction.record(after);
+            savedTokens.merge(conversationId, Math.max(0, before - after), Long::sum);
+            compactions.increment();
+            log.debug("会话历史已压缩：conversationId={}，{}条消息 {} -> {} tokens", conversationId,
+                    current.size(), before, after);
+        }
+    }
+
+    private String summarize(String previousSummary, String transcript) {
+        StringBuilder input = new StringBuilder();
+        if (previousSummary != null) {
+            input.append("已有摘要：\n").append(previousSummary).append("\n\n");
+        }
+        input.append("新增的对话记录：\n").append(transcript);
+        List<Message> messages = List.of(new SystemMessage(SUMMARY_INSTRUCTIONS.formatted(settings.getSummaryMaxTokens())),
+                new UserMessage(input.toString()));
+        Prompt prompt = settings.getModel() != null && !settings.getModel().isBlank()
+                ? new Prompt(messages, ChatOptions.builder().model(settings.getModel()).build())
+                : new Prompt(messages);
+        return chatModel.call(prompt).getResult().getOutput().getText();
+    }
+
+    /**
+     * 保留最近keep-recent-messages条消息，并让保留部分从用户消息开始，避免拆开一问一答
+     * keep-recent-messages为0时至少保留最后一轮的用户消息
+     */
+    private int splitPoint(List<Message> history, int start) {
+        int cut = Math.min(history.size() - settings.getKeepRecentMessages(), history.size() - 1);
+        while (cut > start && history.get(cut).getMessageType() != MessageType.USER) {
+            cut--;
+        }
+        return cut;
+    }
+
+    /**
+     * 按max-messages截断，摘要消息始终保留在开头
+     */
+    private void trimToWindow(List<Message> history) {
+        int start = hasSummary(history) ? 1 : 0;
+        int overflow = history.size() - start - maxMessages;
+        if (overflow > 0) {
+            history.subList(start, start + overflow).clear();
+        }
+    }
+
+    private static boolean hasSummary(List<Message> history) {
+        return !history.isEmpty() && history.get(0).getMessageType() == MessageType.SYSTEM
+                && history.get(0).getText() != null && history.get(0).getText().startsWith(SUMMARY_PREFIX);
+    }
+
+    private static boolean samePrefix(List<Message> current, List<Message> prefix) {
+        for (int i = 0; i < prefix.size(); i++) {
+            if (current.get(i).getMessageType() != prefix.get(i).getMessageType()
+                    || !Objects.equals(current.get(i).getText(), prefix.get(i).getText())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String transcript(List<Message> messages) {
+        StringBuilder transcript = new StringBuilder();
+        for (Message message : messages) {
+            String role = switch (message.getMessageType()) {
+                case USER -> "用户";
+                case ASSISTANT -> "助手";
+                default -> "系统";
+            };
+            transcript.append(role).append("：").append(message.getText()).append('\n');
+        }
+        return transcript.toString();
+    }
+
+    private long estimateTokens(List<Message> messages) {
+        long tokens = 0;
+        for (Message message : messages) {
+            tokens += estimateTokens(message);
+        }
+        return tokens;
+    }
+
+    private long estimateTokens(Message message) {
+        String text = message.getText();
+        return text == null || text.isEmpty() ? 0 : tokenCountEstimator.estimate(text);
+    }
+
+    private Object lock(String conversationId) {
+        return locks[Math.floorMod(conversationId.hashCode(), LOCK_STRIPES)];
+    }
+}
@@ -0,0 +1,48 @@
+package org.example.springai.memory;
+
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.Advisor;
+import org.springframework.ai.chat.client.advisor.api.AdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.BaseAdvisor;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.SystemMessage;
+
+/**
+ * 把CompactingChatMemory的会话摘要拼入系统提示词：PromptChatMemoryAdvisor只渲染用户和助手消息，摘要消息会被过滤掉
+ * 排在PromptChatMemoryAdvisor之前执行，读到的历史与记忆advisor一致，摘要随系统提示词一起作为instructions保留
+ */
+public class ConversationSummaryAdvisor implements BaseAdvisor {
+
+    private final CompactingChatMemory chatMemory;
+
+    public ConversationSummaryAdvisor(CompactingChatMemory chatMemory) {
+        this.chatMemory = chatMemory;
+    }
+
+    @Override
+    public ChatClientRequest before(ChatClientRequest chatClientRequest, AdvisorChain advisorChain) {
+        String conversationId = chatClientRequest.context()
+                .getOrDefault(ChatMemory.CONVERSATION_ID, ChatMemory.DEFAULT_CONVERSATION_ID).toString();
+        String summary = chatMemory.summaryForPrompt(conversationId);
+        if (summary == null) {
+            return chatClientRequest;
+        }
+        return chatClientRequest.mutate()
+                .prompt(chatClientRequest.prompt().augmentSystemMessage(systemMessage -> {
+                    String text = systemMessage.getText();
+                    return new SystemMessage(text == null || text.isBlank() ? summary : text + "\n\n" + summary);
+                }))
+                .build();
+    }
+
+    @Override
+    public ChatClientResponse after(ChatClientResponse chatClientResponse, AdvisorChain advisorChain) {
+        return chatClientResponse;
+    }
+
+    @Override
+    public int getOrder() {
+        return Advisor.DEFAULT_CHAT_MEMORY_PRECEDENCE_ORDER - 1;
+    }
+}
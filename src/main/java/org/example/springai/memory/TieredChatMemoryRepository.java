@@ -0,0 +1,456 @@
+package org.example.springai.memory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.example.springai.config.RagProperties;
+import org.example.springai.mapper.ChatMemoryMapper;
+import org.example.springai.model.ChatMemoryRow;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 两层会话记忆存储：
+ * 内存层按会话保存紧凑的消息数组（类型 + 文本，不保留Message对象和metadata），数量超过上限时淘汰最久未访问的会话，空闲超时的会话定期淘汰；
+ * 数据库层（chat_memory_message表）由后台线程批量写入，同一会话在两次写入之间的多次修改只写最后一次；
+ * 不在内存中的会话在访问时从待写入队列或数据库加载；加载失败的会话标记为未加载，不写库，读取成功后与数据库中的历史合并
+ * 待写入的会话数不超过max-pending，超出时新会话只保留在内存层（rag.memory.pending.dropped）
+ * 只保存USER、ASSISTANT、SYSTEM消息，工具调用消息不进入记忆
+ */
+@Slf4j
+@Component
+public class TieredChatMemoryRepository implements ChatMemoryRepository, DisposableBean {
+
+    /**
+     * 单条INSERT的行数上限
+     */
+    private static final int INSERT_CHUNK_ROWS = 500;
+
+    private final ChatMemoryMapper mapper;
+    private final TransactionTemplate transactionTemplate;
+    private final RagProperties.MemorySettings settings;
+    private final Map<String, Conversation> hot = new ConcurrentHashMap<>();
+    /**
+     * 待写入数据库的会话，值为最新的消息快照，删除的会话为DELETED
+     */
+    private final Map<String, Conversation> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler;
+    private final Counter loads;
+    private final Counter loadFailures;
+    private final Counter pendingDropped;
+    private final Counter evictions;
+    private final Counter flushFailures;
+    private final Counter rowsWritten;
+    private final Timer flushTimer;
+
+    @Autowired
+    public TieredChatMemoryRepository(ChatMemoryMapper mapper, PlatformTransactionManager transactionManager,
+                                      RagProperties ragProperties, MeterRegistry meterRegistry) {
+        this.mapper = mapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.settings = ragProperties.getMemory();
+        this.loads = meterRegistry.counter("rag.memory.loads");
+        this.loadFailures = meterRegistry.counter("rag.memory.load.failures");
+        this.pendingDropped = meterRegistry.counter("rag.memory.pending.dropped");
+        this.evictions = meterRegistry.counter("rag.memory.evictions");
+        this.flushFailures = meterRegistry.counter("rag.memory.flush.failures");
+        this.rowsWritten = meterRegistry.counter("rag.memory.rows.written");
+        this.flushTimer = Timer.builder("rag.memory.flush").register(meterRegistry);
+        Gauge.builder("rag.memory.conversations", hot, Map::size).register(meterRegistry);
+        Gauge.builder("rag.memory.pending", pending, Map::size).register(meterRegistry);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-memory-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (settings.isPersistent()) {
+            long flushMillis = Math.max(1, settings.getFlushInterval().toMillis());
+            scheduler.scheduleWithFixedDelay(this::flushQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        }
+        long idleMillis = Math.max(1000, settings.getIdleTimeout().toMillis() / 4);
+        scheduler.scheduleWithFixedDelay(this::evictIdle, idleMillis, idleMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public List<String> findConversationIds() {
+        Set<String> ids = new LinkedHashSet<>();
+        if (settings.isPersistent()) {
+            try {
+                ids.addAll(mapper.findConversationIds());
+            } catch (RuntimeException e) {
+                loadFailures.increment();
+                log.warn("从数据库查询会话列表失败，只返回内存中的会话：{}", e.getMessage());
+            }
+        }
+        hot.forEach((id, conversation) -> {
+            if (conversation.size() > 0) {
+                ids.add(id);
+            }
+        });
+        pending.forEach((id, conversation) -> {
+            if (conversation == Conversation.DELETED || conversation.size() == 0) {
+                ids.remove(id);
+            } else {
+                ids.add(id);
+            }
+        });
+        return new ArrayList<>(ids);
+    }
+
+    @Override
+    public List<Message> findByConversationId(String conversationId) {
+        return load(conversationId).toMessages();
+    }
+
+    /**
+     * 会话是否有消息，不构造消息列表；会话同时加载到内存层
+     */
+    public boolean hasMessages(String conversationId) {
+        return load(conversationId).size() > 0;
+    }
+
+    @Override
+    public void saveAll(String conversationId, List<Message> messages) {
+        // 未加载的会话只有加载失败后新增的消息，整体写库会覆盖数据库中的历史，保持未加载状态直到读取成功
+        Conversation conversation = hot.compute(conversationId, (id, previous) -> previous != null && previous.unloaded()
+                ? Conversation.of(messages).unloadedSince(previous.loadFailedNanos)
+                : Conversation.of(messages));
+        if (settings.isPersistent() && !conversation.unloaded()) {
+            enqueue(conversationId, conversation);
+        }
+        evictOverflow();
+    }
+
+    @Override
+    public void deleteByConversationId(String conversationId) {
+        hot.put(conversationId, Conversation.EMPTY.copy());
+        if (settings.isPersistent()) {
+            pending.put(conversationId, Conversation.DELETED);
+            requestFlushIfFull();
+        }
+    }
+
+    /**
+     * 把待写入的会话全部写入数据库，写入失败的会话保留到下次重试
+     */
+    public synchronized void flush() {
+        if (!settings.isPersistent() || pending.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<String, Conversation>> snapshot = new ArrayList<>(pending.entrySet().size());
+        pending.forEach((id, conversation) -> snapshot.add(Map.entry(id, conversation)));
+        int batchSize = Math.max(1, settings.getFlushBatchSize());
+        for (int from = 0; from < snapshot.size(); from += batchSize) {
+            List<Map.Entry<String, Conversation>> batch = snapshot.subList(from, Math.min(snapshot.size(), from + batchSize));
+            long now = System.currentTimeMillis();
+            List<String> ids = new ArrayList<>(batch.size());
+            List<ChatMemoryRow> rows = new ArrayList<>();
+            for (Map.Entry<String, Conversation> entry : batch) {
+                ids.add(entry.getKey());
+                entry.getValue().appendRows(entry.getKey(), now, rows);
+            }
+            long start = System.nanoTime();
+            transactionTemplate.executeWithoutResult(status -> {
+                mapper.deleteByConversationIds(ids);
+                for (int i = 0; i < rows.size(); i += INSERT_CHUNK_ROWS) {
+                    mapper.insertMessages(rows.subList(i, Math.min(rows.size(), i + INSERT_CHUNK_ROWS)));
+                }
+            });
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            rowsWritten.increment(rows.size());
+            // 写入期间又被修改的会话保留新的快照，下次再写
+            batch.forEach(entry -> pending.remove(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    public int hotConversations() {
+        return hot.size();
+    }
+
+    public int pendingConversations() {
+        return pending.size();
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+        flushQuietly();
+    }
+
+    /**
+     * 内存层 -> 待写入队列 -> 数据库，数据库中没有的会话以空会话放入内存层，避免重复查询
+     * 数据库不可用（连接失败、表不存在）时以未加载的空会话放入内存层，对话照常进行，不在每个请求上等待数据库超时；
+     * 距上次失败超过flush-interval后再次访问时重试读取，未加载期间新增的消息在被淘汰前不会写库
+     */
+    private Conversation load(String conversationId) {
+        Conversation conversation = hot.get(conversationId);
+        if (conversation != null) {
+            if (conversation.unloaded()
+                    && System.nanoTime() - conversation.loadFailedNanos >= settings.getFlushInterval().toNanos()) {
+                conversation = retryLoad(conversationId, conversation);
+            }
+            conversation.touch();
+            return conversation;
+        }
+        Conversation pendingConversation = pending.get(conversationId);
+        if (pendingConversation != null) {
+            conversation = pendingConversation == Conversation.DELETED ? Conversation.EMPTY.copy() : pendingConversation;
+        } else if (settings.isPersistent()) {
+            loads.increment();
+            try {
+                conversation = Conversation.fromRows(mapper.findByConversationId(conversationId));
+            } catch (RuntimeException e) {
+                loadFailures.increment();
+                log.warn("从数据库加载会话记忆失败，按空会话处理：conversationId={}，{}", conversationId, e.getMessage());
+                conversation = Conversation.EMPTY.unloadedSince(System.nanoTime());
+            }
+        } else {
+            conversation = Conversation.EMPTY.copy();
+        }
+        conversation.touch();
+        // 加载期间有新的写入时以新写入的为准
+        Conversation existing = hot.putIfAbsent(conversationId, conversation);
+        evictOverflow();
+        return existing != null ? existing : conversation;
+    }
+
+    /**
+     * 重新读取未加载的会话，成功后把未加载期间新增的消息接在数据库历史之后，并放入待写入队列
+     */
+    private Conversation retryLoad(String conversationId, Conversation unloaded) {
+        loads.increment();
+        Conversation reloaded;
+        try {
+            reloaded = Conversation.fromRows(mapper.findByConversationId(conversationId)).append(unloaded);
+        } catch (RuntimeException e) {
+            loadFailures.increment();
+            log.warn("重新加载会话记忆失败：conversationId={}，{}", conversationId, e.getMessage());
+            reloaded = unloaded.unloadedSince(System.nanoTime());
+        }
+        if (!hot.replace(conversationId, unloaded, reloaded)) {
+            // 重试期间会话被修改或淘汰，以内存层当前的值为准，下次访问再重试
+            Conversation current = hot.get(conversationId);
+            return current != null ? current : unloaded;
+        }
+        if (settings.isPersistent() && !reloaded.unloaded() && unloaded.size() > 0) {
+            enqueue(conversationId, reloaded);
+        }
+        return reloaded;
+    }
+
+    /**
+     * 放入待写入队列；队列已满时新会话不再排队（已排队的会话照常更新）
+     */
+    private void enqueue(String conversationId, Conversation conversation) {
+        if (pending.size() >= settings.getMaxPending() && !pending.containsKey(conversationId)) {
+            pendingDropped.increment();
+            log.warn("待写入数据库的会话数已达上限{}，会话只保留在内存中：conversationId={}", settings.getMaxPending(),
+                    conversationId);
+            return;
+        }
+        pending.put(conversationId, conversation);
+        requestFlushIfFull();
+    }
+
+    private void requestFlushIfFull() {
+        if (pending.size() >= settings.getFlushBatchSize() && flushRequested.compareAndSet(false, true)) {
+            scheduler.execute(() -> {
+                flushRequested.set(false);
+                flushQuietly();
+            });
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            flushFailures.increment();
+            log.warn("会话记忆写入数据库失败，待写入会话数={}，稍后重试：{}", pending.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * 超出上限时一次淘汰到上限的90%，避免每次写入都排序
+     */
+    private void evictOverflow() {
+        int maxConversations = settings.getMaxConversations();
+        if (hot.size() <= maxConversations) {
+            return;
+        }
+        synchronized (hot) {
+            if (hot.size() <= maxConversations) {
+                return;
+            }
+            int target = maxConversations - maxConversations / 10;
+            List<Map.Entry<String, Conversation>> candidates = new ArrayList<>(hot.entrySet());
+            candidates.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccessNanos));
+            for (Map.Entry<String, Conversation> entry : candidates) {
+                if (hot.size() <= target) {
+                    break;
+                }
+                evict(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void evictIdle() {
+        long idleNanos = settings.getIdleTimeout().toNanos();
+        long now = System.nanoTime();
+        hot.forEach((id, conversation) -> {
+            if (now - conversation.lastAccessNanos > idleNanos) {
+                evict(id, conversation);
+            }
+        });
+    }
+
+    /**
+     * 淘汰只移出内存层，未写入的快照仍在pending中，再次访问时从pending或数据库加载；
+     * 未加载的会话淘汰后，加载失败期间新增的消息随之丢弃
+     */
+    private void evict(String conversationId, Conversation conversation) {
+        if (hot.remove(conversationId, conversation)) {
+            evictions.increment();
+        }
+    }
+
+    /**
+     * 紧凑的会话快照：消息类型和文本分别存放在数组中，创建后不再修改
+     */
+    static final class Conversation {
+
+        static final Conversation EMPTY = new Conversation(new byte[0], new String[0]);
+        static final Conversation DELETED = new Conversation(new byte[0], new String[0]);
+        private static final MessageType[] TYPES = MessageType.values();
+
+        private final byte[] types;
+        private final String[] texts;
+        /**
+         * 从数据库加载失败的时间，0表示已加载
+         */
+        private final long loadFailedNanos;
+        private volatile long lastAccessNanos = System.nanoTime();
+
+        private Conversation(byte[] types, String[] texts) {
+            this(types, texts, 0);
+        }
+
+        private Conversation(byte[] types, String[] texts, long loadFailedNanos) {
+            this.types = types;
+            this.texts = texts;
+            this.loadFailedNanos = loadFailedNanos;
+        }
+
+        static Conversation of(List<Message> messages) {
+            byte[] types = new byte[messages.size()];
+            String[] texts = new String[messages.size()];
+            int count = 0;
+            for (Message message : messages) {
+                MessageType type = message.getMessageType();
+                if (type == MessageType.TOOL) {
+                    continue;
+                }
+                types[count] = (byte) type.ordinal();
+                texts[count] = message.getText() == null ? "" : message.getText();
+                count++;
+            }
+            if (count < types.length) {
+                byte[] trimmedTypes = new byte[count];
+                String[] trimmedTexts = new String[count];
+                System.arraycopy(types, 0, trimmedTypes, 0, count);
+                System.arraycopy(texts, 0, trimmedTexts, 0, count);
+                return new Conversation(trimmedTypes, trimmedTexts);
+            }
+            return new Conversation(types, texts);
+        }
+
+        static Conversation fromRows(List<ChatMemoryRow> rows) {
+            byte[] types = new byte[rows.size()];
+            String[] texts = new String[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                types[i] = (byte) MessageType.valueOf(rows.get(i).getMessageType()).ordinal();
+                texts[i] = rows.get(i).getContent();
+            }
+            return new Conversation(types, texts);
+        }
+
+        Conversation copy() {
+            return new Conversation(types, texts);
+        }
+
+        /**
+         * 相同消息的未加载副本，记录加载失败的时间
+         */
+        Conversation unloadedSince(long failedNanos) {
+            return new Conversation(types, texts, failedNanos == 0 ? 1 : failedNanos);
+        }
+
+        boolean unloaded() {
+            return loadFailedNanos != 0;
+        }
+
+        /**
+         * 在当前消息之后追加另一个会话的消息，结果为已加载
+         */
+        Conversation append(Conversation other) {
+            byte[] mergedTypes = new byte[types.length + other.types.length];
+            String[] mergedTexts = new String[texts.length + other.texts.length];
+            System.arraycopy(types, 0, mergedTypes, 0, types.length);
+            System.arraycopy(other.types, 0, mergedTypes, types.length, other.types.length);
+            System.arraycopy(texts, 0, mergedTexts, 0, texts.length);
+            System.arraycopy(other.texts, 0, mergedTexts, texts.length, other.texts.length);
+            return new Conversation(mergedTypes, mergedTexts);
+        }
+
+        int size() {
+            return texts.length;
+        }
+
+        void touch() {
+            lastAccessNanos = System.nanoTime();
+        }
+
+        List<Message> toMessages() {
+            List<Message> messages = new ArrayList<>(texts.length);
+            for (int i = 0; i < texts.length; i++) {
+                messages.add(switch (TYPES[types[i]]) {
+                    case USER -> new UserMessage(texts[i]);
+                    case ASSISTANT -> new AssistantMessage(texts[i]);
+                    default -> new SystemMessage(texts[i]);
+                });
+            }
+            return messages;
+        }
+
+        void appendRows(String conversationId, long updatedAt, List<ChatMemoryRow> rows) {
+            for (int i = 0; i < texts.length; i++) {
+                rows.add(new ChatMemoryRow(conversationId, i, TYPES[types[i]].name(), texts[i], updatedAt));
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.example.springai.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量入库结果数据模型
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkIngestionResult {
+
+    /**
+     * 知识库名称
+     */
+    private String collectionName;
+
+    /**
+     * ZIP文件名或目录
+     */
+    private String source;
+
+    /**
+     * 成功入库的文件数量
+     */
+    private Integer files;
+
+    /**
+     * 入库失败的文件及原因
+     */
+    private Map<String, String> failedFiles;
+
+    /**
+     * 解析出的分片总数
+     */
+    private Long chunks;
+
+    /**
+     * 复用的分片数量
+     */
+    private Long reusedChunks;
+
+    /**
+     * 新增的分片数量
+     */
+    private Long addedChunks;
+
+    /**
+     * 删除的旧分片数量
+     */
+    private Long deletedChunks;
+
+    /**
+     * 读取的原始字节数
+     */
+    private Long bytes;
+
+    /**
+     * 耗时（毫秒）
+     */
+    private Long elapsedMillis;
+
+    /**
+     * 文件吞吐量（个/分钟）
+     */
+    private Double filesPerMinute;
+
+    /**
+     * 各文件的入库结果
+     */
+    private List<IngestionResult> results;
+}
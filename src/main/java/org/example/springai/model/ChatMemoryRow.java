@@ -0,0 +1,39 @@
+package org.example.springai.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 会话记忆表（chat_memory_message）的一行，对应会话中的一条消息
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatMemoryRow {
+
+    /**
+     * 会话ID
+     */
+    private String conversationId;
+
+    /**
+     * 消息在会话中的序号，从0开始
+     */
+    private Integer seq;
+
+    /**
+     * 消息类型（USER/ASSISTANT/SYSTEM）
+     */
+    private String messageType;
+
+    /**
+     * 消息内容
+     */
+    private String content;
+
+    /**
+     * 写入时间（毫秒时间戳）
+     */
+    private Long updatedAt;
+}
@@ -0,0 +1,38 @@
+package org.example.springai.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 跨知识库检索/问答结果
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class FederatedSearchResult {
+
+    /**
+     * 回答内容，只检索时为null
+     */
+    private String answer;
+
+    /**
+     * 合并后的全局topK分片，score为各知识库内归一化后的得分
+     */
+    private List<Document> documents;
+
+    /**
+     * 按时返回结果的知识库
+     */
+    private List<String> searchedCollections;
+
+    /**
+     * 超时或失败而跳过的知识库及原因
+     */
+    private Map<String, String> skippedCollections;
+}
@@ -0,0 +1,64 @@
+package org.example.springai.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 文档入库结果数据模型
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class IngestionResult {
+
+    /**
+     * 知识库名称
+     */
+    private String collectionName;
+
+    /**
+     * 文件名或文档来源
+     */
+    private String source;
+
+    /**
+     * 文档解析出的分片总数
+     */
+    private Long chunks;
+
+    /**
+     * 读取的原始字节数
+     */
+    private Long bytes;
+
+    /**
+     * 耗时（毫秒）
+     */
+    private Long elapsedMillis;
+
+    /**
+     * 分片吞吐量（个/秒）
+     */
+    private Double chunksPerSecond;
+
+    /**
+     * 字节吞吐量（字节/秒）
+     */
+    private Double bytesPerSecond;
+
+    /**
+     * 内容未变化、直接复用的分片数量（节省的向量化调用次数）
+     */
+    private Long reusedChunks;
+
+    /**
+     * 新增或内容变化后重新入库的分片数量
+     */
+    private Long addedChunks;
+
+    /**
+     * 文档中已不存在、被删除的旧分片数量
+     */
+    private Long deletedChunks;
+}
@@ -0,0 +1,44 @@
+package org.example.springai.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 知识库目录项
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class KnowledgeBaseInfo {
+
+    /**
+     * 知识库ID（collection名称）
+     */
+    private String id;
+
+    /**
+     * 显示名称
+     */
+    private String name;
+
+    /**
+     * 描述
+     */
+    private String description;
+
+    /**
+     * 已入库的来源文件数
+     */
+    private Integer documentCount;
+
+    /**
+     * 分片数
+     */
+    private Long chunkCount;
+
+    /**
+     * 向量占用内存估算（分片数 × 维度 × 4字节，未计量化和索引结构）
+     */
+    private Long vectorMemoryBytes;
+}
@@ -0,0 +1,79 @@
+package org.example.springai.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 向量量化效果报告：某种量化方式相对精确检索的召回率、检索延迟和内存占用
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class QuantizationReport {
+
+    /**
+     * 知识库名称
+     */
+    private String collectionName;
+
+    /**
+     * 量化方式：NONE / INT8 / PQ
+     */
+    private String quantization;
+
+    /**
+     * 参与检索的向量数
+     */
+    private Integer vectors;
+
+    /**
+     * 向量维度
+     */
+    private Integer dimensions;
+
+    /**
+     * 每次检索返回的结果数
+     */
+    private Integer k;
+
+    /**
+     * 测试查询数
+     */
+    private Integer queries;
+
+    /**
+     * 与精确检索topK结果的平均重合比例（recall@k）
+     */
+    private Double recallAtK;
+
+    /**
+     * 平均检索耗时（微秒）
+     */
+    private Double avgLatencyMicros;
+
+    /**
+     * P99检索耗时（微秒）
+     */
+    private Double p99LatencyMicros;
+
+    /**
+     * 检索时需要常驻内存的向量数据字节数（float32原始向量或量化字节码 + 量化参数），向量较少时量化参数占主要部分
+     */
+    private Long memoryBytes;
+
+    /**
+     * 其中量化参数（int8的每维偏移和缩放、PQ码本）占用的字节数，与向量数无关
+     */
+    private Long parameterBytes;
+
+    /**
+     * 每个向量的编码相对float32原始向量的压缩比，不含量化参数
+     */
+    private Double compressionRatio;
+
+    /**
+     * 量化器训练和编码耗时（毫秒），使用已训练的量化器时为0
+     */
+    private Long trainingMillis;
+}
@@ -0,0 +1,53 @@
+package org.example.springai.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * 检索参数：返回数量、相似度阈值和metadata过滤条件，未设置的项不生效
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RetrievalOptions {
+
+    /**
+     * 返回的分片数量
+     */
+    private Integer topK;
+
+    /**
+     * 相似度阈值（0~1），低于该值的分片不返回
+     */
+    private Double similarityThreshold;
+
+    /**
+     * 上传时填写的文档标签
+     */
+    private String tag;
+
+    /**
+     * 文件名
+     */
+    private String fileName;
+
+    /**
+     * 入库日期起（含）
+     */
+    private LocalDate from;
+
+    /**
+     * 入库日期止（含）
+     */
+    private LocalDate to;
+
+    /**
+     * 是否只使用默认检索参数（没有额外过滤条件）
+     */
+    public boolean isDefault() {
+        return topK == null && similarityThreshold == null && tag == null && fileName == null && from == null && to == null;
+    }
+}
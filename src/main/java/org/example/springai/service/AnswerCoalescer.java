@@ -0,0 +1,140 @@
+package org.example.springai.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.springai.config.RagProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * 合并进行中的相同问答请求（single-flight）：同一知识库、归一化后相同的问题正在回答时，
+ * 后到的请求不再检索和调用模型，等待并共享第一个请求的结果；流式请求共享同一个token流，后加入的订阅者先收到已生成的部分
+ * 请求结束即移除，不保留结果（相似问题的结果复用由SemanticAnswerCache负责）
+ * 后加入的请求通过onJoined拿到共享结果，由调用方写入自己的会话记忆；节省的调用数见rag.answer.coalesced指标
+ */
+@Component
+public class AnswerCoalescer {
+
+    private final boolean enabled;
+    private final Map<String, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+    private final Map<String, Flux<?>> streams = new ConcurrentHashMap<>();
+    private final Counter coalescedCalls;
+    private final Counter coalescedStreams;
+
+    @Autowired
+    public AnswerCoalescer(RagProperties ragProperties, MeterRegistry meterRegistry) {
+        this.enabled = ragProperties.getCoalescing().isEnabled();
+        this.coalescedCalls = meterRegistry.counter("rag.answer.coalesced", "mode", "call");
+        this.coalescedStreams = meterRegistry.counter("rag.answer.coalesced", "mode", "stream");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 合并键：调用方式 + 知识库 + 归一化后的问题（去掉首尾空白和结尾标点、合并连续空白、忽略大小写）
+     */
+    public static String key(String kind, String collectionName, String question) {
+        String normalized = question == null ? "" : question.strip()
+                .replaceAll("\\s+", " ")
+                .replaceAll("[?？。.!！~～\\s]+$", "")
+                .toLowerCase(Locale.ROOT);
+        return kind + '\u0000' + collectionName + '\u0000' + normalized;
+    }
+
+    /**
+     * 同步调用：相同key正在执行时阻塞等待它的结果（或异常），否则由当前线程执行
+     */
+    public <T> T call(String key, Supplier<T> call) {
+        return call(key, call, result -> { });
+    }
+
+    /**
+     * 同上，当前请求加入了进行中的调用并成功拿到结果时，先用结果调用onJoined再返回
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T call(String key, Supplier<T> call, Consumer<? super T> onJoined) {
+        if (!enabled) {
+            return call.get();
+        }
+        CompletableFuture<Object> created = new CompletableFuture<>();
+        CompletableFuture<Object> existing = calls.putIfAbsent(key, created);
+        if (existing != null) {
+            coalescedCalls.increment();
+            T result;
+            try {
+                result = (T) existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+            onJoined.accept(result);
+            return result;
+        }
+        try {
+            T result = call.get();
+            created.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, created);
+        }
+    }
+
+    /**
+     * 流式调用：相同key的流正在进行时订阅同一个流（重放已发出的元素），否则订阅时才创建上游；
+     * 上游结束或所有订阅者都取消后移除
+     */
+    public <T> Flux<T> stream(String key, Supplier<Flux<T>> source) {
+        return stream(key, source, UnaryOperator.identity());
+    }
+
+    /**
+     * 同上，后加入的订阅者订阅的是onJoined包装后的共享流，每次订阅单独包装
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Flux<T> stream(String key, Supplier<Flux<T>> source, UnaryOperator<Flux<T>> onJoined) {
+        if (!enabled) {
+            return Flux.defer(source);
+        }
+        return Flux.defer(() -> {
+            AtomicBoolean created = new AtomicBoolean();
+            Flux<T> shared = (Flux<T>) streams.computeIfAbsent(key, k -> {
+                created.set(true);
+                return share(k, source);
+            });
+            if (!created.get()) {
+                coalescedStreams.increment();
+                return onJoined.apply(shared);
+            }
+            return shared;
+        });
+    }
+
+    private <T> Flux<T> share(String key, Supplier<Flux<T>> source) {
+        AtomicReference<Flux<T>> self = new AtomicReference<>();
+        Flux<T> shared = Flux.defer(source)
+                .doFinally(signal -> streams.remove(key, self.get()))
+                .replay()
+                .refCount();
+        self.set(shared);
+        return shared;
+    }
+}
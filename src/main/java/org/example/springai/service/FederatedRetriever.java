@@ -0,0 +1,150 @@
+package org.example.springai.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.springai.config.ChromaVectorStoreFactory;
+import org.example.springai.config.RagProperties;
+import org.example.springai.model.FederatedSearchResult;
+import org.example.springai.model.RetrievalOptions;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * 跨知识库检索：对每个知识库并行检索，所有知识库共用一个从请求开始计时的时限
+ * 超时或失败的知识库跳过并记录原因；各知识库的得分先按min-max归一化再合并成全局topK
+ * （混合检索返回的是RRF得分，与余弦相似度不在一个量级，不能直接比较）
+ */
+@Slf4j
+@Component
+public class FederatedRetriever implements DisposableBean {
+
+    private final ChromaVectorStoreFactory chromaVectorStoreFactory;
+    private final RagProperties.Federation settings;
+    private final ThreadPoolExecutor executor;
+
+    @Autowired
+    public FederatedRetriever(ChromaVectorStoreFactory chromaVectorStoreFactory, RagProperties ragProperties) {
+        this.chromaVectorStoreFactory = chromaVectorStoreFactory;
+        this.settings = ragProperties.getFederation();
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("rag-federated-search-");
+        threadFactory.setDaemon(true);
+        this.executor = new ThreadPoolExecutor(settings.getThreads(), settings.getThreads(), 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(settings.getQueueCapacity()), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param candidates 每个知识库召回、合并后保留的数量（重排前的候选数），为空时使用options.topK
+     */
+    public FederatedSearchResult search(String question, List<String> collections, RetrievalOptions options,
+                                        Integer candidates) {
+        if (collections.isEmpty()) {
+            throw new IllegalArgumentException("至少需要一个知识库");
+        }
+        if (collections.size() > settings.getMaxCollections()) {
+            throw new IllegalArgumentException("单次最多检索" + settings.getMaxCollections() + "个知识库");
+        }
+        // 检索参数在调用线程上校验，参数错误直接返回400
+        Map<String, SearchRequest> requests = new LinkedHashMap<>();
+        for (String collectionName : collections) {
+            requests.put(collectionName, RagService.searchRequest(collectionName, options, candidates).query(question).build());
+        }
+        int topK = candidates != null ? candidates
+                : options.getTopK() != null ? options.getTopK() : SearchRequest.DEFAULT_TOP_K;
+        return search(requests, chromaVectorStoreFactory::getVectorStore, topK);
+    }
+
+    FederatedSearchResult search(Map<String, SearchRequest> requests,
+                                 Function<String, VectorStore> stores, int topK) {
+        long deadline = System.nanoTime() + settings.getCollectionDeadline().toNanos();
+        Map<String, Future<List<Document>>> futures = new LinkedHashMap<>();
+        Map<String, String> skipped = new LinkedHashMap<>();
+        requests.forEach((collectionName, request) -> {
+            try {
+                futures.put(collectionName, executor.submit(
+                        () -> stores.apply(collectionName).similaritySearch(request)));
+            } catch (RejectedExecutionException e) {
+                skipped.put(collectionName, "检索线程池已满");
+            }
+        });
+
+        Map<String, List<Document>> results = new LinkedHashMap<>();
+        futures.forEach((collectionName, future) -> {
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                results.put(collectionName, future.get(remaining, TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                skipped.put(collectionName, "检索超时");
+            } catch (ExecutionException e) {
+                log.warn("知识库检索失败：{}", collectionName, e.getCause());
+                skipped.put(collectionName, "检索失败：" + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                skipped.put(collectionName, "检索被中断");
+            }
+        });
+        if (!skipped.isEmpty()) {
+            log.info("跨知识库检索跳过：{}", skipped);
+        }
+        return new FederatedSearchResult(null, merge(results, topK), new ArrayList<>(results.keySet()), skipped);
+    }
+
+    /**
+     * 各知识库内按min-max把得分归一化到0~1（只有一个结果或得分相同时为1），再按归一化得分取全局topK，
+     * 归一化得分相同时按原始得分排序
+     */
+    static List<Document> merge(Map<String, List<Document>> results, int topK) {
+        List<Scored> scored = new ArrayList<>();
+        results.values().forEach(documents -> {
+            double min = Double.MAX_VALUE;
+            double max = -Double.MAX_VALUE;
+            for (Document document : documents) {
+                double score = rawScore(document);
+                min = Math.min(min, score);
+                max = Math.max(max, score);
+            }
+            for (Document document : documents) {
+                double score = rawScore(document);
+                double normalized = max > min ? (score - min) / (max - min) : 1.0;
+                scored.add(new Scored(document, normalized, score));
+            }
+        });
+        scored.sort(Comparator.comparingDouble(Scored::normalized).thenComparingDouble(Scored::raw).reversed());
+        return scored.stream()
+                .limit(topK)
+                .map(entry -> entry.document().mutate().score(entry.normalized()).build())
+                .toList();
+    }
+
+    private static double rawScore(Document document) {
+        return document.getScore() != null ? document.getScore() : 0.0;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private record Scored(Document document, double normalized, double raw) {
+    }
+}
@@ -0,0 +1,177 @@
+package org.example.springai.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.springai.config.RagProperties;
+import org.example.springai.ingest.CollectionChangedEvent;
+import org.example.springai.ingest.ContentHashIndex;
+import org.example.springai.model.KnowledgeBaseInfo;
+import org.springframework.ai.chroma.vectorstore.ChromaApi;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 知识库目录：缓存Chroma中的collection列表，后台定期刷新，创建/删除知识库时立即更新
+ * 每个知识库的文件数、分片数取自分片哈希索引，入库完成（CollectionChangedEvent）后只重算该知识库，目录中没有的知识库触发一次刷新
+ * 列表接口直接读取内存中的目录，内容不变时ETag不变
+ */
+@Slf4j
+@Component
+public class KnowledgeBaseCatalog implements DisposableBean {
+
+    private static final ContentHashIndex.CollectionStats EMPTY = new ContentHashIndex.CollectionStats(0, 0);
+
+    private final ChromaApi chromaApi;
+    private final ContentHashIndex contentHashIndex;
+    private final EmbeddingModel embeddingModel;
+    private final ScheduledExecutorService refreshExecutor;
+
+    @Value("${spring.ai.vector-store.chroma.collection-name:coffee_collection}")
+    private String defaultCollectionName;
+    @Value("${spring.ai.vector-store.chroma.tenant-name:default_tenant}")
+    private String defaultTenantName;
+    @Value("${spring.ai.vector-store.chroma.database-name:default_database}")
+    private String defaultDatabaseName;
+
+    // collection名称 -> 描述
+    private final Map<String, String> descriptions = new ConcurrentHashMap<>();
+    // collection名称 -> 文件数、分片数
+    private final Map<String, ContentHashIndex.CollectionStats> stats = new ConcurrentHashMap<>();
+    private volatile Catalog catalog;
+    // 向量维度，第一次刷新时获取，获取前内存估算为0
+    private volatile int dimensions;
+
+    @Autowired
+    public KnowledgeBaseCatalog(ChromaApi chromaApi, ContentHashIndex contentHashIndex, EmbeddingModel embeddingModel,
+                                RagProperties ragProperties) {
+        this.chromaApi = chromaApi;
+        this.contentHashIndex = contentHashIndex;
+        this.embeddingModel = embeddingModel;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("rag-catalog-refresh-");
+        threadFactory.setDaemon(true);
+        this.refreshExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        long interval = ragProperties.getCatalog().getRefreshInterval().toMillis();
+        this.refreshExecutor.scheduleWithFixedDelay(this::refreshQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        refreshExecutor.execute(this::refreshQuietly);
+    }
+
+    /**
+     * 当前目录；启动后还没有刷新过时同步刷新一次
+     */
+    public Catalog catalog() {
+        Catalog current = catalog;
+        if (current == null) {
+            synchronized (this) {
+                if (catalog == null) {
+                    refreshQuietly();
+                }
+                current = catalog;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 从Chroma重新拉取collection列表，新出现的知识库读取分片哈希索引统计数量
+     */
+    public void refresh() {
+        List<ChromaApi.Collection> collections = chromaApi.listCollections(defaultTenantName, defaultDatabaseName);
+        Map<String, String> latest = new HashMap<>();
+        if (collections != null) {
+            collections.forEach(collection -> latest.put(collection.name(),
+                    String.valueOf(collection.metadata() != null ? collection.metadata().get("description") : null)));
+        }
+        descriptions.keySet().retainAll(latest.keySet());
+        descriptions.putAll(latest);
+        stats.keySet().retainAll(latest.keySet());
+        latest.keySet().forEach(name -> stats.computeIfAbsent(name, contentHashIndex::stats));
+        if (dimensions == 0) {
+            try {
+                dimensions = embeddingModel.dimensions();
+            } catch (RuntimeException e) {
+                log.warn("获取向量维度失败，暂不估算向量内存", e);
+            }
+        }
+        rebuild();
+    }
+
+    public void onCreated(String collectionName, String description) {
+        descriptions.put(collectionName, String.valueOf(description));
+        stats.put(collectionName, contentHashIndex.stats(collectionName));
+        rebuild();
+    }
+
+    public void onDeleted(String collectionName) {
+        descriptions.remove(collectionName);
+        stats.remove(collectionName);
+        rebuild();
+    }
+
+    @EventListener
+    public void onCollectionChanged(CollectionChangedEvent event) {
+        if (descriptions.containsKey(event.collectionName())) {
+            stats.put(event.collectionName(), contentHashIndex.stats(event.collectionName()));
+            rebuild();
+        } else {
+            // 入库时自动创建的知识库还不在目录中，后台从Chroma重新拉取；已删除的知识库Chroma中也没有，不会再加入目录
+            refreshExecutor.execute(this::refreshQuietly);
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            // 刷新失败时保留上一次的目录，从未成功时返回默认知识库
+            log.warn("刷新知识库目录失败", e);
+            if (catalog == null) {
+                rebuild();
+            }
+        }
+    }
+
+    private synchronized void rebuild() {
+        List<KnowledgeBaseInfo> entries = new ArrayList<>();
+        new TreeMap<>(descriptions).forEach((name, description) -> {
+            ContentHashIndex.CollectionStats collectionStats = stats.getOrDefault(name, EMPTY);
+            entries.add(new KnowledgeBaseInfo(name, name, "Chroma collection: " + description,
+                    collectionStats.documents(), collectionStats.chunks(), collectionStats.chunks() * dimensions * 4L));
+        });
+        // 如果没有任何知识库，添加默认知识库
+        if (entries.isEmpty()) {
+            entries.add(new KnowledgeBaseInfo(defaultCollectionName, "默认知识库", "系统默认知识库", 0, 0L, 0L));
+        }
+        catalog = new Catalog(List.copyOf(entries), Integer.toHexString(entries.hashCode()));
+    }
+
+    @Override
+    public void destroy() {
+        refreshExecutor.shutdownNow();
+    }
+
+    /**
+     * @param knowledgeBases 知识库列表，按名称排序
+     * @param etag           列表内容的哈希，用于条件请求
+     */
+    public record Catalog(List<KnowledgeBaseInfo> knowledgeBases, String etag) {
+    }
+}
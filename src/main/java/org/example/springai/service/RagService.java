@@ -1,34 +1,105 @@
 package org.example.springai.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.example.springai.advisor.ContextPacker;
 import org.example.springai.advisor.CustomAnswerAdvisor;
+import org.example.springai.advisor.MmrRerankAdvisor;
+import org.example.springai.cache.SemanticAnswerCache;
 import org.example.springai.config.ChromaVectorStoreFactory;
+import org.example.springai.config.RagProperties;
+import org.example.springai.ingest.CollectionChangedEvent;
+import org.example.springai.ingest.ContentHashIndex;
+import org.example.springai.ingest.DocumentIngestionPipeline;
+import org.example.springai.memory.TieredChatMemoryRepository;
+import org.example.springai.model.FederatedSearchResult;
+import org.example.springai.model.IngestionResult;
+import org.example.springai.model.KnowledgeBaseInfo;
+import org.example.springai.model.QuantizationReport;
+import org.example.springai.model.RetrievalOptions;
+import org.example.springai.vectorstore.FlatVectorStore;
+import org.example.springai.vectorstore.HybridVectorStore;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.ChatClientResponse;
 import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.PromptTemplate;
 import org.springframework.ai.chroma.vectorstore.ChromaApi;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.openai.OpenAiChatModel;
-import org.springframework.ai.reader.tika.TikaDocumentReader;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.FileSystemResource;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+@Slf4j
 @Service
 public class RagService {
+    // 编译一次，每次问答只做渲染
+    private static final PromptTemplate RAG_PROMPT_TEMPLATE = new PromptTemplate("""
+            请基于以下上下文信息回答用户的问题，只使用上下文里的内容，不要编造信息。
+            如果上下文没有相关信息，请回答"无法从知识库中找到相关答案"。
+
+            上下文：
+            {context}
+
+            用户问题：{question}
+            """);
+
     private final ChromaApi chromaApi;
     private final EmbeddingModel embeddingModel;
     private final OpenAiChatModel chatModel;
     private final ChatClient ragChatClient;
     private final ChatClient mcpChatClient;
     private final ChromaVectorStoreFactory chromaVectorStoreFactory;
-
+    private final DocumentIngestionPipeline ingestionPipeline;
+    private final ContentHashIndex contentHashIndex;
+    private final SemanticAnswerCache semanticAnswerCache;
+    private final MmrRerankAdvisor mmrRerankAdvisor;
+    private final ContextPacker contextPacker;
+    private final FederatedRetriever federatedRetriever;
+    private final KnowledgeBaseCatalog knowledgeBaseCatalog;
+    private final AnswerCoalescer answerCoalescer;
+    private final ChatMemory chatMemory;
+    private final TieredChatMemoryRepository chatMemoryRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    // 流式问答：从请求到第一个token的耗时、整个回答的耗时
+    private final Timer timeToFirstToken;
+    private final Timer streamDuration;
 
     @Value("${spring.ai.vector-store.chroma.collection-name:coffee_collection}")
     private String defaultCollectionName;
@@ -40,8 +111,21 @@ public class RagService {
 
 
     @Autowired
-    public RagService(ChromaVectorStoreFactory chromaVectorStoreFactory, ChromaApi chromaApi, EmbeddingModel embeddingModel, OpenAiChatModel chatModel,ChatClient ragChatClient,ChatClient mcpChatClient) {
+    public RagService(ChromaVectorStoreFactory chromaVectorStoreFactory, DocumentIngestionPipeline ingestionPipeline, ContentHashIndex contentHashIndex, SemanticAnswerCache semanticAnswerCache, MmrRerankAdvisor mmrRerankAdvisor, ContextPacker contextPacker, FederatedRetriever federatedRetriever, KnowledgeBaseCatalog knowledgeBaseCatalog, AnswerCoalescer answerCoalescer, ChatMemory chatMemory, TieredChatMemoryRepository chatMemoryRepository, ApplicationEventPublisher eventPublisher, MeterRegistry meterRegistry, ChromaApi chromaApi, EmbeddingModel embeddingModel, OpenAiChatModel chatModel,ChatClient ragChatClient,ChatClient mcpChatClient) {
         this.chromaVectorStoreFactory = chromaVectorStoreFactory;
+        this.ingestionPipeline = ingestionPipeline;
+        this.contentHashIndex = contentHashIndex;
+        this.semanticAnswerCache = semanticAnswerCache;
+        this.mmrRerankAdvisor = mmrRerankAdvisor;
+        this.contextPacker = contextPacker;
+        this.federatedRetriever = federatedRetriever;
+        this.knowledgeBaseCatalog = knowledgeBaseCatalog;
+        this.answerCoalescer = answerCoalescer;
+        this.chatMemory = chatMemory;
+        this.chatMemoryRepository = chatMemoryRepository;
+        this.eventPublisher = eventPublisher;
+        this.timeToFirstToken = Timer.builder("rag.answer.ttft").publishPercentiles(0.5, 0.95, 0.99).register(meterRegistry);
+        this.streamDuration = Timer.builder("rag.answer.stream.duration").register(meterRegistry);
         this.chromaApi = chromaApi;
         this.embeddingModel = embeddingModel;
         this.chatModel = chatModel;
@@ -49,136 +133,487 @@ public class RagService {
         this.mcpChatClient = mcpChatClient;
     }
     
-    // 获取知识库列表
-    public List<Map<String, String>> getKnowledgeBaseList() {
-        List<Map<String, String>> kbList = new ArrayList<>();
-        
-        try {
-            // 调用listCollections方法获取所有collections
-            List<ChromaApi.Collection> collections = chromaApi.listCollections(defaultTenantName, defaultDatabaseName);
-
-            // 将collections转换为知识库列表
-            assert collections != null;
-            collections.forEach(collection -> {
-                Map<String, String> kb = new HashMap<>();
-                kb.put("id", collection.name());
-                kb.put("name", collection.name());
-                kb.put("description", "Chroma collection: " + collection.metadata().get("description"));
-                kbList.add(kb);
-            });
-            
-            // 如果没有任何知识库，添加默认知识库
-            if (kbList.isEmpty()) {
-                Map<String, String> defaultKb = new HashMap<>();
-                defaultKb.put("id", defaultCollectionName);
-                defaultKb.put("name", "默认知识库");
-                defaultKb.put("description", "系统默认知识库");
-                kbList.add(defaultKb);
-            }
-        } catch (Exception e) {
-            // 如果获取失败，返回默认知识库
-            Map<String, String> defaultKb = new HashMap<>();
-            defaultKb.put("id", defaultCollectionName);
-            defaultKb.put("name", "默认知识库");
-            defaultKb.put("description", "系统默认知识库");
-            kbList.add(defaultKb);
-        }
-        
-        return kbList;
+    // 获取知识库列表：读取知识库目录缓存，不再每次请求Chroma
+    public List<KnowledgeBaseInfo> getKnowledgeBaseList() {
+        return knowledgeBaseCatalog.catalog().knowledgeBases();
     }
 
     // 原有方法：加载文本内容入库，增加collectionName参数
-    public void loadDocumentToVectorStore(String content, Map<String, Object> metadata, String collectionName) {
-        // 在metadata中添加collectionName，用于区分不同知识库
-        Map<String, Object> updatedMetadata = new HashMap<>(metadata);
-        updatedMetadata.put("collectionName", collectionName);
-        
-        Document document = new Document(content, updatedMetadata);
-        chromaVectorStoreFactory.getChromaVectorStore(collectionName).add(List.of(document));
+    public IngestionResult loadDocumentToVectorStore(String content, Map<String, Object> metadata, String collectionName) {
+        // 文本同样经过分片后按批次入库，metadata中会自动添加collectionName，用于区分不同知识库
+        // 标题只作为来源名称，metadata中有documentId时才替换之前入库的同一文档
+        String source = String.valueOf(metadata.getOrDefault("title", "text"));
+        return ingestionPipeline.ingestText(content, source, metadata, collectionName);
     }
 
     // 新增方法：解析本地文件（PDF/Word等）并入库，增加collectionName参数
-    public void loadFileToVectorStore(String filePath, Map<String, Object> customMetadata, String collectionName) {
-        // 1. 创建Tika文档解析器
-        TikaDocumentReader tikaReader = new TikaDocumentReader(new FileSystemResource(new File(filePath)));
-
-        // 2. 解析文件：返回Document列表（大文件会自动分片，小文件返回1个Document）
-        List<Document> documents = tikaReader.get();
-
-        // 3. 合并自定义元数据（如文件来源、业务标签等）
-        List<Document> updatedDocuments = documents.stream()
-                .map(doc -> {
-                    // Tika自动提取的元数据：文件名、格式、大小等
-                    Map<String, Object> mergedMetadata = new HashMap<>(doc.getMetadata());
-                    // 合并自定义元数据（覆盖重复的key）
-                    mergedMetadata.putAll(customMetadata);
-                    // 添加collectionName，用于区分不同知识库
-                    mergedMetadata.put("collectionName", collectionName);
-                    return doc.mutate().metadata(mergedMetadata).build();
-                })
-                .toList();
-        // 4. 存入向量库（自动向量化）
-        chromaVectorStoreFactory.getChromaVectorStore(collectionName).add(updatedDocuments);
+    public IngestionResult loadFileToVectorStore(String filePath, Map<String, Object> customMetadata, String collectionName) {
+        Path path = Path.of(filePath);
+        // 本地文件以绝对路径作为文档ID，重新入库同一文件时增量替换
+        Map<String, Object> metadata = new HashMap<>(customMetadata);
+        metadata.putIfAbsent(DocumentIngestionPipeline.DOCUMENT_ID, path.toAbsolutePath().normalize().toString());
+        // Tika流式解析 -> 分片 -> 按批次向量化入库，自定义元数据会合并到每个分片上
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            return ingestionPipeline.ingest(inputStream, path.getFileName().toString(), metadata, collectionName);
+        } catch (IOException e) {
+            throw new UncheckedIOException("文件入库失败：" + filePath, e);
+        }
     }
 
-    // 原有RAG问答方法，增加collectionName参数
+    // 原有RAG问答方法，增加collectionName参数；同一知识库相同问题正在回答时共享同一次调用
     public String ragAnswer(String userQuestion, String collectionName) {
-        // 在查询时添加collectionName过滤条件
-        List<Document> allDocs = chromaVectorStoreFactory.getChromaVectorStore(collectionName).similaritySearch(userQuestion);
-        List<Document> relevantDocs = allDocs.stream()
-                .filter(doc -> collectionName.equals(doc.getMetadata().get("collectionName")))
-                .toList();
-                
-        String prompt = """
-                请基于以下上下文信息回答用户的问题，只使用上下文里的内容，不要编造信息。
-                如果上下文没有相关信息，请回答"无法从知识库中找到相关答案"。
-                
-                上下文：
-                %s
-                
-                用户问题：%s
-                """
-                .formatted(
-                relevantDocs.stream().map(Document::getText).reduce("", (a, b) -> a + "\n" + b),
-                userQuestion
-        );
+        return answerCoalescer.call(AnswerCoalescer.key("answer", collectionName, userQuestion),
+                () -> answer(userQuestion, collectionName));
+    }
+
+    private String answer(String userQuestion, String collectionName) {
+        // collectionName过滤条件下推到向量库，不再检索后在内存中过滤
+        List<Document> relevantDocs = retrieve(userQuestion, collectionName, new RetrievalOptions());
+        // 按相关度顺序填满token预算，超出的分片截断或丢弃
+        ContextPacker.PackedContext packed = contextPacker.pack(relevantDocs);
+        logDroppedChunks(collectionName, packed.droppedIds());
+        String prompt = RAG_PROMPT_TEMPLATE.render(Map.of("context", packed.text(), "question", userQuestion));
         return ragChatClient.prompt().user( prompt).call().content();
     }
 
+    // 检索：topK、相似度阈值和metadata过滤都转换成SearchRequest，由向量库执行
+    public List<Document> retrieve(String question, String collectionName, RetrievalOptions options) {
+        return chromaVectorStoreFactory.getVectorStore(collectionName)
+                .similaritySearch(searchRequest(collectionName, options, null).query(question).build());
+    }
+
+    /**
+     * 构造检索请求；candidates不为空时按该数量召回（重排前的候选数）
+     */
+    static SearchRequest.Builder searchRequest(String collectionName, RetrievalOptions options, Integer candidates) {
+        if (options.getTopK() != null && options.getTopK() < 1) {
+            throw new IllegalArgumentException("topK必须大于0");
+        }
+        if (options.getSimilarityThreshold() != null
+                && (options.getSimilarityThreshold() < 0 || options.getSimilarityThreshold() > 1)) {
+            throw new IllegalArgumentException("similarityThreshold必须在0~1之间");
+        }
+        if (options.getFrom() != null && options.getTo() != null && options.getFrom().isAfter(options.getTo())) {
+            throw new IllegalArgumentException("from不能晚于to");
+        }
+        SearchRequest.Builder builder = SearchRequest.builder()
+                .topK(candidates != null ? candidates
+                        : options.getTopK() != null ? options.getTopK() : SearchRequest.DEFAULT_TOP_K)
+                .filterExpression(filterExpression(collectionName, options));
+        if (options.getSimilarityThreshold() != null) {
+            builder.similarityThreshold(options.getSimilarityThreshold());
+        }
+        return builder;
+    }
+
+    /**
+     * metadata过滤条件转换为Spring AI的过滤表达式，各条件之间为AND，入库日期按系统时区换算为毫秒时间戳
+     */
+    static Filter.Expression filterExpression(String collectionName, RetrievalOptions options) {
+        FilterExpressionBuilder b = new FilterExpressionBuilder();
+        FilterExpressionBuilder.Op filter = b.eq("collectionName", collectionName);
+        if (options.getTag() != null && !options.getTag().isBlank()) {
+            filter = b.and(filter, b.eq("tag", options.getTag()));
+        }
+        if (options.getFileName() != null && !options.getFileName().isBlank()) {
+            filter = b.and(filter, b.eq("fileName", options.getFileName()));
+        }
+        if (options.getFrom() != null) {
+            filter = b.and(filter, b.gte("ingestedAt", startOfDay(options.getFrom())));
+        }
+        if (options.getTo() != null) {
+            filter = b.and(filter, b.lt("ingestedAt", startOfDay(options.getTo().plusDays(1))));
+        }
+        return filter.build();
+    }
+
+    private static long startOfDay(LocalDate date) {
+        return date.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
     public String ragAnswerWithAdvisor(String userQuestion, String collectionName, String conversationId) {
+        return ragAnswerWithAdvisor(userQuestion, collectionName, conversationId, new RetrievalOptions());
+    }
+
+    public String ragAnswerWithAdvisor(String userQuestion, String collectionName, String conversationId,
+                                       RetrievalOptions options) {
+        return ragAnswerWithAdvisor(userQuestion, collectionName, conversationId, options, () -> { });
+    }
+
+    /**
+     * 同一知识库相同问题、且没有会话历史和检索条件的请求正在回答时，共享同一次检索和模型调用
+     * 命中语义缓存或加入进行中的调用时不调用模型，先执行withoutModel（如归还准入时扣减的模型令牌）
+     */
+    public String ragAnswerWithAdvisor(String userQuestion, String collectionName, String conversationId,
+                                       RetrievalOptions options, Runnable withoutModel) {
+        if (!isCoalescable(conversationId, options)) {
+            return answerWithAdvisor(userQuestion, collectionName, conversationId, options, withoutModel);
+        }
+        // 加入进行中调用的请求没有经过PromptChatMemoryAdvisor，拿到结果后写入自己的会话
+        return answerCoalescer.call(AnswerCoalescer.key("advisor", collectionName, userQuestion),
+                () -> answerWithAdvisor(userQuestion, collectionName, conversationId, options, withoutModel),
+                answer -> {
+                    remember(conversationId, userQuestion, answer);
+                    withoutModel.run();
+                });
+    }
+
+    /**
+     * 回答只取决于知识库和问题时才能合并：使用默认检索条件，且PromptChatMemoryAdvisor要读取的会话没有历史
+     * 只判断是否有消息，不构造消息列表；会话随之加载到记忆的内存层，advisor紧接着读取时不会再查数据库
+     */
+    boolean isCoalescable(String conversationId, RetrievalOptions options) {
+        return answerCoalescer.isEnabled() && options.isDefault() && hasNoHistory(conversationId);
+    }
+
+    /**
+     * 语义缓存的读写条件与合并相同：回答带上了会话历史时不能给其他用户，其他用户的缓存答案也没有考虑本会话的上下文
+     */
+    boolean isCacheable(String conversationId, RetrievalOptions options) {
+        return semanticAnswerCache.isEnabled() && options.isDefault() && hasNoHistory(conversationId);
+    }
+
+    private boolean hasNoHistory(String conversationId) {
+        return !chatMemoryRepository.hasMessages(memoryConversationId(conversationId));
+    }
+
+    /**
+     * 没有经过PromptChatMemoryAdvisor的回答（缓存命中、合并到其他请求）与advisor一致写入本次请求的会话
+     */
+    private void remember(String conversationId, String userQuestion, String answer) {
+        if (answer != null && !answer.isEmpty()) {
+            chatMemory.add(memoryConversationId(conversationId),
+                    List.of(new UserMessage(userQuestion), new AssistantMessage(answer)));
+        }
+    }
+
+    /**
+     * 流式请求合并到其他请求时，收集共享流中的token，正常结束后写入本次请求的会话
+     */
+    Flux<ServerSentEvent<Object>> rememberStreamed(Flux<ServerSentEvent<Object>> events, String conversationId,
+                                                  String userQuestion) {
+        StringBuilder answer = new StringBuilder();
+        AtomicBoolean failed = new AtomicBoolean();
+        return events
+                .doOnNext(event -> {
+                    if ("error".equals(event.event())) {
+                        failed.set(true);
+                    } else if ("token".equals(event.event()) && event.data() instanceof Map<?, ?> data) {
+                        answer.append(data.get("text"));
+                    }
+                })
+                .doOnComplete(() -> {
+                    if (!failed.get()) {
+                        remember(conversationId, userQuestion, answer.toString());
+                    }
+                });
+    }
+
+    /**
+     * 会话记忆使用的会话ID：未传会话ID时与PromptChatMemoryAdvisor一样使用默认会话
+     */
+    static String memoryConversationId(String conversationId) {
+        return conversationId == null || conversationId.isBlank() ? ChatMemory.DEFAULT_CONVERSATION_ID : conversationId;
+    }
+
+    private String answerWithAdvisor(String userQuestion, String collectionName, String conversationId,
+                                     RetrievalOptions options, Runnable withoutModel) {
+        // 先校验检索参数，参数错误时不调用模型
+        int topN = options.getTopK() != null ? options.getTopK() : mmrRerankAdvisor.defaultTopN();
+        SearchRequest searchRequest = searchRequest(collectionName, options,
+                mmrRerankAdvisor.isEnabled() ? mmrRerankAdvisor.candidateCount(topN) : null).build();
         if(userQuestion.contains("文件")){
            return mcpChatClient.prompt()
                 .user(userQuestion)
                 .system(p -> p.param("chat_memory_conversation_id", conversationId))
+                .advisors(a -> a.param(ChatMemory.CONVERSATION_ID, memoryConversationId(conversationId)))
                 .call()
                 .content();
         }
 
-        return ragChatClient
+        // 语义缓存：相似问题直接返回缓存答案
+        float[] questionEmbedding = null;
+        long generation = 0;
+        // 带过滤条件或有会话历史的问答不读写语义缓存
+        if (isCacheable(conversationId, options)) {
+            // 向量结果会进入向量缓存，随后QuestionAnswerAdvisor检索时不会重复调用远程模型
+            questionEmbedding = embeddingModel.embed(userQuestion);
+            generation = semanticAnswerCache.generation(collectionName);
+            Optional<SemanticAnswerCache.CachedAnswer> cached = semanticAnswerCache.lookup(collectionName, questionEmbedding);
+            if (cached.isPresent()) {
+                remember(conversationId, userQuestion, cached.get().answer());
+                withoutModel.run();
+                return cached.get().answer();
+            }
+        }
+
+        // 启用重排时多召回一些候选，由MmrRerankAdvisor去重并选出topN
+        ChatClientResponse response = ragChatClient
                 .prompt()
-                .advisors(QuestionAnswerAdvisor.builder(chromaVectorStoreFactory.getChromaVectorStore(collectionName))
+                .advisors(QuestionAnswerAdvisor.builder(chromaVectorStoreFactory.getVectorStore(collectionName))
+                        .searchRequest(searchRequest)
                         .build())
-                .advisors(new CustomAnswerAdvisor())
+                .advisors(mmrRerankAdvisor, new CustomAnswerAdvisor(contextPacker))
+                .advisors(a -> a.param(MmrRerankAdvisor.ORIGINAL_QUERY, userQuestion)
+                        .param(MmrRerankAdvisor.TOP_N, topN)
+                        .param(ChatMemory.CONVERSATION_ID, memoryConversationId(conversationId)))
                 .user( u -> {
                     u.text(userQuestion).metadata("chat_memory_conversation_id", conversationId);
                 })
                 .call()
-                .content();
+                .chatClientResponse();
+        if (response.context().get(MmrRerankAdvisor.TOKENS_SAVED) instanceof Integer tokensSaved) {
+            log.info("重排节省prompt token：collection={}, tokens={}", collectionName, tokensSaved);
+        }
+        if (response.chatResponse() != null
+                && response.chatResponse().getMetadata().get(CustomAnswerAdvisor.CONTEXT_DROPPED) instanceof List<?> dropped) {
+            logDroppedChunks(collectionName, dropped);
+        }
+        String answer = response.chatResponse() != null && response.chatResponse().getResult() != null
+                ? response.chatResponse().getResult().getOutput().getText() : null;
+
+        if (questionEmbedding != null && answer != null) {
+            Object retrieved = response.context().get(QuestionAnswerAdvisor.RETRIEVED_DOCUMENTS);
+            List<String> sourceIds = retrieved instanceof List<?> documents
+                    ? documents.stream().map(document -> ((Document) document).getId()).toList()
+                    : List.of();
+            // 没有检索到任何文档的回答（如"无法找到答案"）不缓存，避免知识库补充内容前一直命中
+            if (!sourceIds.isEmpty()) {
+                semanticAnswerCache.put(collectionName, generation, userQuestion, questionEmbedding, answer, sourceIds);
+            }
+        }
+        return answer;
     }
     
+    /**
+     * 流式问答，检索流程与ragAnswerWithAdvisor相同，返回SSE事件：
+     * sources（本次回答参考的文件名，第一个token之前发送）、token（增量文本）、done（token用量和耗时）、error
+     * 命中语义缓存或订阅进行中的相同流时不调用模型，先执行withoutModel
+     */
+    public Flux<ServerSentEvent<Object>> ragAnswerStream(String userQuestion, String collectionName, String conversationId,
+                                                        RetrievalOptions options, Runnable withoutModel) {
+        // 先校验检索参数，参数错误时不调用模型
+        int topN = options.getTopK() != null ? options.getTopK() : mmrRerankAdvisor.defaultTopN();
+        SearchRequest searchRequest = searchRequest(collectionName, options,
+                mmrRerankAdvisor.isEnabled() ? mmrRerankAdvisor.candidateCount(topN) : null).build();
+        if (!isCoalescable(conversationId, options)) {
+            return streamAnswer(userQuestion, collectionName, conversationId, options, searchRequest, topN, withoutModel);
+        }
+        // 相同问题正在流式回答时订阅同一个token流
+        return answerCoalescer.stream(AnswerCoalescer.key("stream", collectionName, userQuestion),
+                () -> streamAnswer(userQuestion, collectionName, conversationId, options, searchRequest, topN, withoutModel),
+                shared -> {
+                    withoutModel.run();
+                    return rememberStreamed(shared, conversationId, userQuestion);
+                });
+    }
+
+    private Flux<ServerSentEvent<Object>> streamAnswer(String userQuestion, String collectionName, String conversationId,
+                                                      RetrievalOptions options, SearchRequest searchRequest, int topN,
+                                                      Runnable withoutModel) {
+        long start = System.nanoTime();
+
+        float[] questionEmbedding = null;
+        long generation = 0;
+        if (isCacheable(conversationId, options)) {
+            questionEmbedding = embeddingModel.embed(userQuestion);
+            generation = semanticAnswerCache.generation(collectionName);
+            Optional<SemanticAnswerCache.CachedAnswer> cached = semanticAnswerCache.lookup(collectionName, questionEmbedding);
+            if (cached.isPresent()) {
+                remember(conversationId, userQuestion, cached.get().answer());
+                withoutModel.run();
+                return Flux.just(event("token", Map.of("text", cached.get().answer())),
+                        event("done", Map.of("cached", true, "totalMillis", elapsedMillis(start))));
+            }
+        }
+        float[] cacheEmbedding = questionEmbedding;
+        long cacheGeneration = generation;
+
+        AtomicReference<List<Document>> sources = new AtomicReference<>();
+        AtomicReference<Usage> usage = new AtomicReference<>();
+        AtomicLong firstTokenNanos = new AtomicLong();
+        StringBuilder answer = new StringBuilder();
+        return ragChatClient
+                .prompt()
+                // 要求模型在最后一个chunk里返回token用量
+                .options(OpenAiChatOptions.builder().streamUsage(true).build())
+                .advisors(QuestionAnswerAdvisor.builder(chromaVectorStoreFactory.getVectorStore(collectionName))
+                        .searchRequest(searchRequest)
+                        .build())
+                .advisors(mmrRerankAdvisor, new CustomAnswerAdvisor(contextPacker))
+                .advisors(a -> a.param(MmrRerankAdvisor.ORIGINAL_QUERY, userQuestion)
+                        .param(MmrRerankAdvisor.TOP_N, topN)
+                        .param(ChatMemory.CONVERSATION_ID, memoryConversationId(conversationId)))
+                .user(u -> u.text(userQuestion).metadata("chat_memory_conversation_id", conversationId))
+                .stream()
+                .chatClientResponse()
+                .concatMap(response -> {
+                    List<ServerSentEvent<Object>> events = new ArrayList<>(2);
+                    // 检索在第一个chunk之前完成，advisor写入的上下文随每个chunk返回
+                    if (sources.get() == null) {
+                        List<Document> documents = retrievedDocuments(response);
+                        sources.set(documents);
+                        events.add(event("sources", Map.of("fileNames", documents.stream()
+                                .map(document -> document.getMetadata().get("fileName"))
+                                .filter(Objects::nonNull)
+                                .map(Object::toString)
+                                .distinct()
+                                .toList())));
+                    }
+                    ChatResponse chatResponse = response.chatResponse();
+                    if (chatResponse != null) {
+                        Usage chunkUsage = chatResponse.getMetadata().getUsage();
+                        if (chunkUsage != null && chunkUsage.getTotalTokens() != null && chunkUsage.getTotalTokens() > 0) {
+                            usage.set(chunkUsage);
+                        }
+                        String text = chatResponse.getResult() != null && chatResponse.getResult().getOutput() != null
+                                ? chatResponse.getResult().getOutput().getText() : null;
+                        if (text != null && !text.isEmpty()) {
+                            if (firstTokenNanos.compareAndSet(0, System.nanoTime())) {
+                                timeToFirstToken.record(firstTokenNanos.get() - start, TimeUnit.NANOSECONDS);
+                            }
+                            answer.append(text);
+                            events.add(event("token", Map.of("text", text)));
+                        }
+                    }
+                    return Flux.fromIterable(events);
+                })
+                .concatWith(Mono.fromSupplier(() -> {
+                    long end = System.nanoTime();
+                    streamDuration.record(end - start, TimeUnit.NANOSECONDS);
+                    List<Document> used = sources.get() != null ? sources.get() : List.of();
+                    if (cacheEmbedding != null && !used.isEmpty() && !answer.isEmpty()) {
+                        semanticAnswerCache.put(collectionName, cacheGeneration, userQuestion, cacheEmbedding,
+                                answer.toString(), used.stream().map(Document::getId).toList());
+                    }
+                    Map<String, Object> done = new LinkedHashMap<>();
+                    done.put("cached", false);
+                    done.put("timeToFirstTokenMillis", firstTokenNanos.get() == 0 ? null
+                            : TimeUnit.NANOSECONDS.toMillis(firstTokenNanos.get() - start));
+                    done.put("totalMillis", TimeUnit.NANOSECONDS.toMillis(end - start));
+                    Usage finalUsage = usage.get();
+                    if (finalUsage != null) {
+                        done.put("promptTokens", finalUsage.getPromptTokens());
+                        done.put("completionTokens", finalUsage.getCompletionTokens());
+                        done.put("totalTokens", finalUsage.getTotalTokens());
+                    }
+                    return event("done", done);
+                }))
+                .onErrorResume(e -> {
+                    log.error("流式问答失败：collection={}", collectionName, e);
+                    return Flux.just(event("error", Map.of("message", String.valueOf(e.getMessage()))));
+                });
+    }
+
+    private static List<Document> retrievedDocuments(ChatClientResponse response) {
+        if (response.context().get(QuestionAnswerAdvisor.RETRIEVED_DOCUMENTS) instanceof List<?> documents) {
+            return documents.stream().map(Document.class::cast).toList();
+        }
+        return List.of();
+    }
+
+    private static ServerSentEvent<Object> event(String name, Object data) {
+        return ServerSentEvent.builder(data).event(name).build();
+    }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * collectionName为*或逗号分隔的多个知识库时走跨知识库检索
+     */
+    public static boolean isFederated(String collectionName) {
+        return collectionName != null && (collectionName.trim().equals("*") || collectionName.contains(","));
+    }
+
+    // 解析知识库列表：*表示全部知识库，其余按逗号分隔并去重
+    public List<String> resolveCollections(String collectionNames) {
+        if (collectionNames.trim().equals("*")) {
+            return getKnowledgeBaseList().stream().map(KnowledgeBaseInfo::getId).distinct().toList();
+        }
+        return Arrays.stream(collectionNames.split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .distinct()
+                .toList();
+    }
+
+    // 跨知识库检索：并行检索各知识库，归一化得分后合并为全局topK
+    public FederatedSearchResult federatedSearch(String question, String collectionNames, RetrievalOptions options) {
+        return federatedRetriever.search(question, resolveCollections(collectionNames), options, null);
+    }
+
+    // 跨知识库问答：合并后的候选经重排和上下文组装后只调用一次大模型，超时的知识库在结果中说明
+    public FederatedSearchResult ragAnswerFederated(String userQuestion, String collectionNames, String conversationId,
+                                                    RetrievalOptions options) {
+        int topN = options.getTopK() != null ? options.getTopK() : mmrRerankAdvisor.defaultTopN();
+        FederatedSearchResult result = federatedRetriever.search(userQuestion, resolveCollections(collectionNames),
+                options, mmrRerankAdvisor.isEnabled() ? mmrRerankAdvisor.candidateCount(topN) : null);
+
+        // 检索已经完成，不再使用QuestionAnswerAdvisor，直接把候选放进RETRIEVED_DOCUMENTS交给后面的advisor
+        ChatClientResponse response = ragChatClient
+                .prompt()
+                .advisors(mmrRerankAdvisor, new CustomAnswerAdvisor(contextPacker))
+                .advisors(a -> a.param(QuestionAnswerAdvisor.RETRIEVED_DOCUMENTS, result.getDocuments())
+                        .param(MmrRerankAdvisor.ORIGINAL_QUERY, userQuestion)
+                        .param(MmrRerankAdvisor.TOP_N, topN)
+                        .param(ChatMemory.CONVERSATION_ID, memoryConversationId(conversationId)))
+                .user(u -> u.text(userQuestion).metadata("chat_memory_conversation_id", conversationId))
+                .call()
+                .chatClientResponse();
+        if (response.chatResponse() != null && response.chatResponse().getResult() != null) {
+            result.setAnswer(response.chatResponse().getResult().getOutput().getText());
+        }
+        if (response.context().get(QuestionAnswerAdvisor.RETRIEVED_DOCUMENTS) instanceof List<?> used) {
+            result.setDocuments(used.stream().map(Document.class::cast).toList());
+        }
+        return result;
+    }
+
+    private static void logDroppedChunks(String collectionName, List<?> droppedIds) {
+        if (!droppedIds.isEmpty()) {
+            log.info("上下文超出token预算，丢弃分片：collection={}, ids={}", collectionName, droppedIds);
+        }
+    }
+
     // 创建知识库
     public void createKnowledgeBase(String collectionName, String description) {
+        RagProperties.checkCollectionName(collectionName);
         // 准备metadata
         Map<String, Object> metadata = new HashMap<>();
         metadata.put("description", description);
         // 使用ChromaApi创建新的collection
         chromaApi.createCollection(defaultTenantName, defaultDatabaseName, new ChromaApi.CreateCollectionRequest(collectionName, metadata));
+        knowledgeBaseCatalog.onCreated(collectionName, description);
     }
     
     // 删除知识库
     public void deleteKnowledgeBase(String collectionName) {
+        // 释放向量库实例（进程内索引会删除快照）
+        chromaVectorStoreFactory.dropCollection(collectionName);
         // 使用ChromaApi删除指定的collection
         chromaApi.deleteCollection(defaultTenantName, defaultDatabaseName, collectionName);
+        knowledgeBaseCatalog.onDeleted(collectionName);
+        // 同时清空该知识库的分片哈希索引
+        contentHashIndex.dropCollection(collectionName);
+        // 通知依赖知识库内容的缓存失效
+        eventPublisher.publishEvent(new CollectionChangedEvent(collectionName));
+    }
+
+    // 向量量化报告：对比精确检索与int8、PQ量化的召回率、延迟和内存
+    public List<QuantizationReport> quantizationReport(String collectionName, int k, int queries) {
+        if (k < 1 || queries < 1 || queries > 1000) {
+            throw new IllegalArgumentException("k必须大于0，queries必须在1~1000之间");
+        }
+        return chromaVectorStoreFactory.withVectorStore(collectionName, store -> {
+            VectorStore vectorStore = store instanceof HybridVectorStore hybridVectorStore
+                    ? hybridVectorStore.getDelegate() : store;
+            if (!(vectorStore instanceof FlatVectorStore flatVectorStore)) {
+                throw new IllegalArgumentException("只有flat后端的知识库支持量化报告：" + collectionName);
+            }
+            return flatVectorStore.quantizationReport(k, queries);
+        });
     }
 
 }
@@ -0,0 +1,328 @@
+package org.example.springai.vectorstore;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * 知识库的BM25倒排索引：词 -> 倒排表（文档序号和词频都用int数组存放，不装箱）
+ * 删除只打标记，快照时删除比例过高则按存活文档重建；快照只保存存活文档，加载时重新分词建索引
+ */
+@Slf4j
+final class Bm25Index {
+
+    private static final String SNAPSHOT_FILE = "bm25.snapshot";
+    private static final int MAGIC = 0x424D3235;
+    private static final int VERSION = 1;
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final double COMPACT_RATIO = 0.3;
+
+    private final Path directory;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<String, Postings> postings = new HashMap<>();
+    private Map<String, Integer> ordinals = new HashMap<>();
+    private Document[] documents = new Document[64];
+    private int[] lengths = new int[64];
+    private boolean[] deleted = new boolean[64];
+    private int size;
+    private int deletedCount;
+    private long totalLength;
+    private volatile boolean dirty;
+
+    Bm25Index(Path directory) {
+        this.directory = directory;
+        load();
+    }
+
+    /**
+     * 添加文档，同ID的旧文档标记删除
+     */
+    void add(List<Document> batch) {
+        lock.writeLock().lock();
+        try {
+            for (Document document : batch) {
+                addInternal(document);
+            }
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void delete(List<String> ids) {
+        lock.writeLock().lock();
+        try {
+            for (String id : ids) {
+                dirty |= deleteInternal(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void delete(Predicate<Document> predicate) {
+        lock.writeLock().lock();
+        try {
+            for (Document document : liveDocuments()) {
+                if (predicate.test(document)) {
+                    dirty |= deleteInternal(document.getId());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * BM25检索，返回的文档score为BM25得分
+     */
+    List<Document> search(String query, int topK, Predicate<Document> filter) {
+        List<String> terms = CjkTokenizer.tokenize(query).stream().distinct().toList();
+        lock.readLock().lock();
+        try {
+            int liveCount = size - deletedCount;
+            if (terms.isEmpty() || liveCount == 0 || topK <= 0) {
+                return List.of();
+            }
+            float averageLength = (float) totalLength / liveCount;
+            float[] scores = new float[size];
+            int[] touched = new int[16];
+            int touchedCount = 0;
+            for (String term : terms) {
+                Postings list = postings.get(term);
+                if (list == null) {
+                    continue;
+                }
+                // 文档频率含已删除文档，重建前略有偏差
+                double idf = Math.log(1 + (liveCount - list.size + 0.5) / (list.size + 0.5));
+                for (int i = 0; i < list.size; i++) {
+                    int ordinal = list.documents[i];
+                    if (deleted[ordinal]) {
+                        continue;
+                    }
+                    int tf = list.frequencies[i];
+                    float norm = K1 * (1 - B + B * lengths[ordinal] / averageLength);
+                    if (scores[ordinal] == 0) {
+                        if (touchedCount == touched.length) {
+                            touched = Arrays.copyOf(touched, touchedCount * 2);
+                        }
+                        touched[touchedCount++] = ordinal;
+                    }
+                    scores[ordinal] += (float) (idf * tf * (K1 + 1) / (tf + norm));
+                }
+            }
+
+            MappedFlatIndex.TopK top = new MappedFlatIndex.TopK(topK);
+            for (int i = 0; i < touchedCount; i++) {
+                int ordinal = touched[i];
+                if (filter == null || filter.test(documents[ordinal])) {
+                    top.offer(ordinal, scores[ordinal]);
+                }
+            }
+            float[] topScores = new float[top.size()];
+            int[] topOrdinals = top.drainOrdinals(topScores);
+            List<Document> results = new ArrayList<>(topOrdinals.length);
+            for (int i = 0; i < topOrdinals.length; i++) {
+                results.add(documents[topOrdinals[i]].mutate().score((double) topScores[i]).build());
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return size - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 有未持久化的写入时写出快照，删除比例过高时先重建倒排表
+     */
+    void snapshot() {
+        if (!dirty) {
+            return;
+        }
+        List<Document> live;
+        boolean compact;
+        lock.readLock().lock();
+        try {
+            // 先清标记再复制，复制之后的写入会重新置脏
+            dirty = false;
+            live = liveDocuments();
+            compact = deletedCount > size * COMPACT_RATIO;
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (compact) {
+            rebuild();
+        }
+        try {
+            Files.createDirectories(directory);
+            Path tmp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(live.size());
+                for (Document document : live) {
+                    DocumentCodec.write(out, document);
+                }
+            }
+            Files.move(tmp, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            dirty = true;
+            throw new UncheckedIOException("写入BM25索引快照失败：" + directory, e);
+        }
+    }
+
+    /**
+     * 清空索引并删除快照
+     */
+    void drop() {
+        lock.writeLock().lock();
+        try {
+            clear();
+            dirty = false;
+            deleteSnapshot(directory);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    static void deleteSnapshot(Path directory) {
+        try {
+            Files.deleteIfExists(directory.resolve(SNAPSHOT_FILE));
+        } catch (IOException e) {
+            log.warn("删除BM25索引快照失败：{}", directory, e);
+        }
+    }
+
+    private void addInternal(Document document) {
+        deleteInternal(document.getId());
+        Map<String, Integer> frequencies = new LinkedHashMap<>();
+        List<String> tokens = CjkTokenizer.tokenize(document.getText());
+        for (String token : tokens) {
+            frequencies.merge(token, 1, Integer::sum);
+        }
+        int ordinal = size;
+        if (ordinal == documents.length) {
+            documents = Arrays.copyOf(documents, ordinal * 2);
+            lengths = Arrays.copyOf(lengths, ordinal * 2);
+            deleted = Arrays.copyOf(deleted, ordinal * 2);
+        }
+        documents[ordinal] = document;
+        lengths[ordinal] = tokens.size();
+        size++;
+        totalLength += tokens.size();
+        ordinals.put(document.getId(), ordinal);
+        frequencies.forEach((term, frequency) ->
+                postings.computeIfAbsent(term, key -> new Postings()).add(ordinal, frequency));
+    }
+
+    private boolean deleteInternal(String id) {
+        Integer ordinal = ordinals.remove(id);
+        if (ordinal == null) {
+            return false;
+        }
+        deleted[ordinal] = true;
+        deletedCount++;
+        totalLength -= lengths[ordinal];
+        return true;
+    }
+
+    private void rebuild() {
+        lock.writeLock().lock();
+        try {
+            List<Document> live = liveDocuments();
+            log.info("BM25索引删除比例过高，重建倒排表：{}, 存活文档={}, 已删除={}", directory, live.size(), deletedCount);
+            clear();
+            live.forEach(this::addInternal);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void clear() {
+        postings = new HashMap<>();
+        ordinals = new HashMap<>();
+        documents = new Document[64];
+        lengths = new int[64];
+        deleted = new boolean[64];
+        size = 0;
+        deletedCount = 0;
+        totalLength = 0;
+    }
+
+    private List<Document> liveDocuments() {
+        List<Document> live = new ArrayList<>(size - deletedCount);
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            if (!deleted[ordinal]) {
+                live.add(documents[ordinal]);
+            }
+        }
+        return live;
+    }
+
+    private void load() {
+        Path file = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("BM25索引快照格式不匹配");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                addInternal(DocumentCodec.read(in));
+            }
+            log.info("已加载BM25索引：{}, 文档数={}, 词数={}", directory, size, postings.size());
+        } catch (IOException e) {
+            // 快照损坏时从空索引开始，关键词检索对之后入库的内容生效
+            log.error("读取BM25索引快照失败，索引将为空：{}", file, e);
+            clear();
+        }
+    }
+
+    /**
+     * 倒排表：文档序号递增追加
+     */
+    private static final class Postings {
+        private int[] documents = new int[4];
+        private int[] frequencies = new int[4];
+        private int size;
+
+        void add(int ordinal, int frequency) {
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            documents[size] = ordinal;
+            frequencies[size] = frequency;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.example.springai.vectorstore;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 面向中文内容的分词：中日韩字符按相邻二元组（bigram）切分，单字成段时保留单字
+ * 字母数字按词切分并转小写；以 - _ . / : 连接的编码（如ERR-1024、v2.3.1）整体保留，同时输出各部分
+ */
+final class CjkTokenizer {
+
+    private CjkTokenizer() {
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        // 全角字母数字转半角
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC);
+        StringBuilder word = new StringBuilder();
+        StringBuilder cjk = new StringBuilder();
+        int length = normalized.length();
+        for (int i = 0; i < length; ) {
+            int codePoint = normalized.codePointAt(i);
+            int next = i + Character.charCount(codePoint);
+            if (isCjk(codePoint)) {
+                flushWord(word, tokens);
+                cjk.appendCodePoint(codePoint);
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                flushCjk(cjk, tokens);
+                word.appendCodePoint(Character.toLowerCase(codePoint));
+            } else if (isConnector(codePoint) && !word.isEmpty() && next < length
+                    && Character.isLetterOrDigit(normalized.codePointAt(next)) && !isCjk(normalized.codePointAt(next))) {
+                word.appendCodePoint(codePoint);
+            } else {
+                flushWord(word, tokens);
+                flushCjk(cjk, tokens);
+            }
+            i = next;
+        }
+        flushWord(word, tokens);
+        flushCjk(cjk, tokens);
+        return tokens;
+    }
+
+    private static void flushWord(StringBuilder word, List<String> tokens) {
+        if (word.isEmpty()) {
+            return;
+        }
+        String token = word.toString();
+        tokens.add(token);
+        int start = 0;
+        boolean compound = false;
+        for (int i = 0; i < token.length(); i++) {
+            if (isConnector(token.charAt(i))) {
+                compound = true;
+                tokens.add(token.substring(start, i));
+                start = i + 1;
+            }
+        }
+        if (compound) {
+            tokens.add(token.substring(start));
+        }
+        word.setLength(0);
+    }
+
+    private static void flushCjk(StringBuilder cjk, List<String> tokens) {
+        if (cjk.isEmpty()) {
+            return;
+        }
+        int[] codePoints = cjk.codePoints().toArray();
+        if (codePoints.length == 1) {
+            tokens.add(new String(codePoints, 0, 1));
+        }
+        for (int i = 0; i + 1 < codePoints.length; i++) {
+            tokens.add(new String(codePoints, i, 2));
+        }
+        cjk.setLength(0);
+    }
+
+    private static boolean isConnector(int codePoint) {
+        return codePoint == '-' || codePoint == '_' || codePoint == '.' || codePoint == '/' || codePoint == ':';
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL;
+    }
+}
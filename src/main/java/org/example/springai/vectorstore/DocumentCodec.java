@@ -0,0 +1,49 @@
+package org.example.springai.vectorstore;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.document.Document;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 进程内向量库快照中文档（ID、文本、metadata）的读写
+ */
+final class DocumentCodec {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private DocumentCodec() {
+    }
+
+    static void write(DataOutputStream out, Document document) throws IOException {
+        writeBytes(out, document.getId().getBytes(StandardCharsets.UTF_8));
+        writeBytes(out, (document.getText() == null ? "" : document.getText()).getBytes(StandardCharsets.UTF_8));
+        writeBytes(out, OBJECT_MAPPER.writeValueAsBytes(document.getMetadata()));
+    }
+
+    static Document read(DataInputStream in) throws IOException {
+        String id = new String(readBytes(in), StandardCharsets.UTF_8);
+        String text = new String(readBytes(in), StandardCharsets.UTF_8);
+        Map<String, Object> metadata = new LinkedHashMap<>(OBJECT_MAPPER.readValue(readBytes(in), METADATA_TYPE));
+        return Document.builder().id(id).text(text).metadata(metadata).build();
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,60 @@
+package org.example.springai.vectorstore;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 查询向量与缓冲区中一行float32（小端）向量的点积
+ * 优先使用JDK Vector API实现（需要 --add-modules jdk.incubator.vector），不可用时退化为标量实现
+ */
+@Slf4j
+abstract class DotProduct {
+
+    private static final String SIMD_IMPLEMENTATION = "org.example.springai.vectorstore.SimdDotProduct";
+
+    static final DotProduct INSTANCE = load();
+
+    /**
+     * @param buffer 向量数据
+     * @param offset 该行在buffer中的字节偏移
+     * @param query  查询向量，长度即维度
+     */
+    abstract float dot(ByteBuffer buffer, int offset, float[] query);
+
+    abstract String name();
+
+    /**
+     * 反射加载SIMD实现，未添加incubator模块或JDK版本不兼容时使用标量实现
+     */
+    private static DotProduct load() {
+        try {
+            DotProduct simd = (DotProduct) Class.forName(SIMD_IMPLEMENTATION).getDeclaredConstructor().newInstance();
+            // 试算一次，确认运行时可用
+            simd.dot(ByteBuffer.allocate(Float.BYTES * 4).order(ByteOrder.LITTLE_ENDIAN), 0, new float[4]);
+            log.info("向量点积使用JDK Vector API：{}", simd.name());
+            return simd;
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            log.info("JDK Vector API不可用（{}），向量点积使用标量实现", e.toString());
+            return new Scalar();
+        }
+    }
+
+    static final class Scalar extends DotProduct {
+
+        @Override
+        float dot(ByteBuffer buffer, int offset, float[] query) {
+            float sum = 0;
+            for (int i = 0; i < query.length; i++) {
+                sum += buffer.getFloat(offset + i * Float.BYTES) * query[i];
+            }
+            return sum;
+        }
+
+        @Override
+        String name() {
+            return "scalar";
+        }
+    }
+}
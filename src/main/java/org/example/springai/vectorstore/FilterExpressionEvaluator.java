@@ -0,0 +1,105 @@
+package org.example.springai.vectorstore;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntPredicate;
+
+/**
+ * 在JVM内对文档metadata求值Spring AI的过滤表达式（Filter.Expression），供进程内向量库使用
+ * 支持AND/OR/NOT、EQ/NE/GT/GTE/LT/LTE、IN/NIN，数值统一按BigDecimal比较，其余按字符串比较
+ */
+final class FilterExpressionEvaluator {
+
+    private FilterExpressionEvaluator() {
+    }
+
+    static boolean matches(Filter.Expression expression, Map<String, Object> metadata) {
+        return expression == null || evaluate(expression, metadata);
+    }
+
+    private static boolean evaluate(Filter.Operand operand, Map<String, Object> metadata) {
+        if (operand instanceof Filter.Group group) {
+            return evaluate(group.content(), metadata);
+        }
+        if (!(operand instanceof Filter.Expression expression)) {
+            throw new IllegalArgumentException("不支持的过滤条件：" + operand);
+        }
+        return switch (expression.type()) {
+            case AND -> evaluate(expression.left(), metadata) && evaluate(expression.right(), metadata);
+            case OR -> evaluate(expression.left(), metadata) || evaluate(expression.right(), metadata);
+            case NOT -> !evaluate(expression.left(), metadata);
+            case EQ -> equalsValue(actual(expression, metadata), expected(expression));
+            case NE -> !equalsValue(actual(expression, metadata), expected(expression));
+            case GT -> compare(expression, metadata, result -> result > 0);
+            case GTE -> compare(expression, metadata, result -> result >= 0);
+            case LT -> compare(expression, metadata, result -> result < 0);
+            case LTE -> compare(expression, metadata, result -> result <= 0);
+            case IN -> in(actual(expression, metadata), expected(expression));
+            case NIN -> !in(actual(expression, metadata), expected(expression));
+            default -> throw new IllegalArgumentException("不支持的过滤操作：" + expression.type());
+        };
+    }
+
+    private static Object actual(Filter.Expression expression, Map<String, Object> metadata) {
+        if (!(expression.left() instanceof Filter.Key key)) {
+            throw new IllegalArgumentException("过滤条件左侧必须是字段名：" + expression);
+        }
+        String name = key.key();
+        // 文本表达式中带引号的字段名，如 'file name' == 'a.txt'
+        if (name.length() > 1 && (name.startsWith("'") && name.endsWith("'") || name.startsWith("\"") && name.endsWith("\""))) {
+            name = name.substring(1, name.length() - 1);
+        }
+        return metadata.get(name);
+    }
+
+    private static Object expected(Filter.Expression expression) {
+        if (!(expression.right() instanceof Filter.Value value)) {
+            throw new IllegalArgumentException("过滤条件右侧必须是值：" + expression);
+        }
+        return value.value();
+    }
+
+    private static boolean in(Object actual, Object expected) {
+        Collection<?> values = expected instanceof Collection<?> collection ? collection : List.of(expected);
+        for (Object value : values) {
+            if (equalsValue(actual, value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean equalsValue(Object actual, Object expected) {
+        if (actual == null || expected == null) {
+            return actual == expected;
+        }
+        if (actual instanceof Number && expected instanceof Number) {
+            return toDecimal(actual).compareTo(toDecimal(expected)) == 0;
+        }
+        return Objects.equals(String.valueOf(actual), String.valueOf(expected));
+    }
+
+    /**
+     * 字段不存在时视为不满足任何大小比较
+     */
+    private static boolean compare(Filter.Expression expression, Map<String, Object> metadata, IntPredicate test) {
+        Object actual = actual(expression, metadata);
+        Object expected = expected(expression);
+        if (actual == null || expected == null) {
+            return false;
+        }
+        if (actual instanceof Number && expected instanceof Number) {
+            return test.test(toDecimal(actual).compareTo(toDecimal(expected)));
+        }
+        return test.test(String.valueOf(actual).compareTo(String.valueOf(expected)));
+    }
+
+    private static BigDecimal toDecimal(Object number) {
+        return number instanceof BigDecimal decimal ? decimal : new BigDecimal(number.toString());
+    }
+}
@@ -0,0 +1,458 @@
+package org.example.springai.vectorstore;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.springai.config.RagProperties;
+import org.example.springai.model.QuantizationReport;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 进程内平铺向量库：向量保存在内存映射文件中，每次检索精确扫描全部向量（SIMD点积 + 定长最小堆）
+ * 适合中小规模知识库，结果与暴力检索完全一致，没有近似索引的构建开销
+ * 文档和删除标记定期快照，向量文件只追加，删除比例过高时快照前重写到新文件
+ * 配置了量化时，向量数达到阈值后在快照时训练量化器，之后检索先扫描堆内字节码再精排，字节码随快照一起持久化
+ */
+@Slf4j
+public class FlatVectorStore implements LocalVectorStore {
+
+    private static final String SNAPSHOT_FILE = "documents.snapshot";
+    private static final int MAGIC = 0x464C4154;
+    private static final int VERSION = 1;
+    private static final String CODES_FILE = "codes.snapshot";
+    private static final int CODES_MAGIC = 0x51434F44;
+    private static final int CODES_VERSION = 1;
+    // 量化报告中在库内向量上叠加的噪声，避免查询向量自身总排第一
+    private static final double QUERY_NOISE = 0.05;
+
+    private final String collectionName;
+    private final EmbeddingModel embeddingModel;
+    private final RagProperties.Flat settings;
+    private final RagProperties.Quantization quantization;
+    private final Path directory;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // 第一次写入时才知道向量维度，之前为null
+    private volatile MappedFlatIndex index;
+    private volatile boolean dirty;
+
+    public FlatVectorStore(String collectionName, EmbeddingModel embeddingModel, RagProperties.Flat settings,
+                           RagProperties.Quantization quantization, Path directory) {
+        this.collectionName = collectionName;
+        this.embeddingModel = embeddingModel;
+        this.settings = settings;
+        this.quantization = quantization;
+        this.directory = directory;
+        load();
+    }
+
+    @Override
+    public String getName() {
+        return "FlatVectorStore[" + collectionName + "]";
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        List<float[]> embeddings = embeddingModel.embed(documents.stream().map(Document::getText).toList());
+        writeLock.lock();
+        try {
+            MappedFlatIndex current = index;
+            if (current == null) {
+                Files.createDirectories(directory);
+                current = new MappedFlatIndex(directory.resolve(newVectorFileName()),
+                        embeddings.get(0).length);
+            }
+            for (int i = 0; i < documents.size(); i++) {
+                current.add(documents.get(i), VectorMath.normalize(checkDimensions(current, embeddings.get(i))));
+            }
+            index = current;
+            dirty = true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入向量文件失败：" + collectionName, e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        writeLock.lock();
+        try {
+            MappedFlatIndex current = index;
+            if (current == null) {
+                return;
+            }
+            for (String id : idList) {
+                dirty |= current.delete(id);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        writeLock.lock();
+        try {
+            MappedFlatIndex current = index;
+            if (current == null) {
+                return;
+            }
+            for (Document document : current.liveDocuments()) {
+                if (FilterExpressionEvaluator.matches(filterExpression, document.getMetadata())) {
+                    dirty |= current.delete(document.getId());
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        MappedFlatIndex current = index;
+        if (current == null) {
+            return List.of();
+        }
+        float[] query = VectorMath.normalize(checkDimensions(current, embeddingModel.embed(request.getQuery())));
+        Filter.Expression filter = request.getFilterExpression();
+        MappedFlatIndex.TopK top = current.search(query, request.getTopK(), settings.getRescoreMultiplier(), filter == null ? null
+                : document -> FilterExpressionEvaluator.matches(filter, document.getMetadata()));
+
+        float[] scores = new float[top.size()];
+        int[] ordinals = top.drainOrdinals(scores);
+        List<Document> results = new ArrayList<>(ordinals.length);
+        for (int i = 0; i < ordinals.length; i++) {
+            if (scores[i] < request.getSimilarityThreshold()) {
+                break;
+            }
+            Document document = current.document(ordinals[i]);
+            Map<String, Object> metadata = new HashMap<>(document.getMetadata());
+            // 与ChromaVectorStore一致，在metadata中返回distance
+            metadata.put("distance", 1 - scores[i]);
+            results.add(Document.builder()
+                    .id(document.getId())
+                    .text(document.getText())
+                    .metadata(metadata)
+                    .score((double) scores[i])
+                    .build());
+        }
+        return results;
+    }
+
+    @Override
+    public void snapshot() {
+        if (!dirty) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            MappedFlatIndex current = index;
+            Path file = directory.resolve(SNAPSHOT_FILE);
+            if (current == null) {
+                Files.deleteIfExists(file);
+                dirty = false;
+                return;
+            }
+            if (current.deletedCount() > current.size() * settings.getCompactRatio()) {
+                log.info("平铺索引删除比例过高，重写向量文件：collection={}, 总数={}, 已删除={}",
+                        collectionName, current.size(), current.deletedCount());
+                MappedFlatIndex compacted = current.compact(directory.resolve(newVectorFileName()));
+                index = compacted;
+                // 已映射的区域在通道关闭后仍然有效，正在进行的检索不受影响
+                current.close();
+                current = compacted;
+            }
+            trainQuantizerIfNeeded(current);
+            current.force();
+            // 先写字节码再写文档快照，中途失败时加载会按向量文件名和行数校验并补齐
+            writeCodes(current);
+            Path tmp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(current.dimensions());
+                out.writeUTF(current.file().getFileName().toString());
+                int count = current.size();
+                out.writeInt(count);
+                for (int ordinal = 0; ordinal < count; ordinal++) {
+                    DocumentCodec.write(out, current.document(ordinal));
+                    out.writeBoolean(current.isDeleted(ordinal));
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+            deleteStaleVectorFiles(current.file());
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入平铺索引快照失败：" + collectionName, e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void drop() {
+        writeLock.lock();
+        try {
+            MappedFlatIndex current = index;
+            index = null;
+            dirty = false;
+            if (current != null) {
+                current.close();
+            }
+            Files.deleteIfExists(directory.resolve(SNAPSHOT_FILE));
+            Files.deleteIfExists(directory.resolve(CODES_FILE));
+            deleteStaleVectorFiles(null);
+        } catch (IOException e) {
+            log.warn("删除平铺索引文件失败：{}", directory, e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        MappedFlatIndex current = index;
+        return current == null ? 0 : current.liveCount();
+    }
+
+    private void load() {
+        Path file = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("平铺索引快照格式不匹配");
+            }
+            int dimensions = in.readInt();
+            MappedFlatIndex loaded = new MappedFlatIndex(directory.resolve(in.readUTF()), dimensions);
+            int count = in.readInt();
+            for (int ordinal = 0; ordinal < count; ordinal++) {
+                Document document = DocumentCodec.read(in);
+                loaded.restore(document, in.readBoolean());
+            }
+            loadCodes(loaded);
+            index = loaded;
+            // 配置了量化但还没有字节码（刚切换量化方式），下次快照时训练
+            dirty = quantization != RagProperties.Quantization.NONE && loaded.codes() == null
+                    && loaded.liveCount() >= settings.getMinTrainingVectors();
+            log.info("已加载平铺索引：collection={}, 文档数={}, 点积实现={}, 量化={}", collectionName, loaded.liveCount(),
+                    DotProduct.INSTANCE.name(), loaded.codes() == null ? "NONE" : loaded.codes().quantizer().kind());
+        } catch (IOException e) {
+            // 快照损坏时从空索引开始，需要重新入库
+            log.error("读取平铺索引快照失败，索引将为空：{}", file, e);
+        }
+    }
+
+    /**
+     * 对比精确检索与int8、PQ量化检索的召回率、延迟和内存占用
+     * 查询为随机抽取的库内向量加少量噪声；当前未使用的量化方式会临时训练一个量化器，不影响线上检索
+     */
+    public List<QuantizationReport> quantizationReport(int k, int queryCount) {
+        MappedFlatIndex current = index;
+        if (current == null || current.liveCount() == 0) {
+            return List.of();
+        }
+        Random random = new Random(collectionName.hashCode());
+        List<float[]> queries = new ArrayList<>();
+        for (float[] vector : current.sample(queryCount, random)) {
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] += (float) (random.nextGaussian() * QUERY_NOISE);
+            }
+            queries.add(VectorMath.normalize(vector));
+        }
+
+        List<int[]> exact = new ArrayList<>(queries.size());
+        long[] latencies = new long[queries.size()];
+        for (int i = 0; i < queries.size(); i++) {
+            long start = System.nanoTime();
+            MappedFlatIndex.TopK top = current.scan(queries.get(i), k, null);
+            latencies[i] = System.nanoTime() - start;
+            exact.add(top.drainOrdinals(new float[top.size()]));
+        }
+        long fullPrecisionBytes = (long) current.size() * current.dimensions() * Float.BYTES;
+        List<QuantizationReport> reports = new ArrayList<>();
+        reports.add(report(current, RagProperties.Quantization.NONE, k, 1.0, latencies, fullPrecisionBytes, 0, 0));
+
+        for (RagProperties.Quantization kind : List.of(RagProperties.Quantization.INT8, RagProperties.Quantization.PQ)) {
+            QuantizedCodes codes = current.codes();
+            long trainingMillis = 0;
+            if (codes == null || codes.quantizer().kind() != kind) {
+                long start = System.nanoTime();
+                codes = train(current, kind);
+                trainingMillis = (System.nanoTime() - start) / 1_000_000;
+            }
+            double recall = 0;
+            for (int i = 0; i < queries.size(); i++) {
+                long start = System.nanoTime();
+                MappedFlatIndex.TopK top = current.scanQuantized(codes, queries.get(i), k,
+                        settings.getRescoreMultiplier(), null);
+                latencies[i] = System.nanoTime() - start;
+                recall += overlap(exact.get(i), top.drainOrdinals(new float[top.size()]));
+            }
+            reports.add(report(current, kind, k, recall / queries.size(), latencies,
+                    codes.memoryBytes(), codes.quantizer().parameterBytes(), trainingMillis));
+        }
+        return reports;
+    }
+
+    private QuantizationReport report(MappedFlatIndex current, RagProperties.Quantization kind, int k, double recall,
+                                      long[] latencies, long memoryBytes, long parameterBytes, long trainingMillis) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        double avgMicros = Arrays.stream(sorted).average().orElse(0) / 1000.0;
+        double p99Micros = sorted[Math.max(0, (int) Math.ceil(sorted.length * 0.99) - 1)] / 1000.0;
+        long fullPrecisionBytes = (long) current.size() * current.dimensions() * Float.BYTES;
+        return new QuantizationReport(collectionName, kind.name(), current.liveCount(), current.dimensions(), k,
+                latencies.length, recall, avgMicros, p99Micros, memoryBytes, parameterBytes,
+                (double) fullPrecisionBytes / Math.max(1, memoryBytes - parameterBytes), trainingMillis);
+    }
+
+    private static double overlap(int[] expected, int[] actual) {
+        if (expected.length == 0) {
+            return 1.0;
+        }
+        int hits = 0;
+        for (int ordinal : actual) {
+            for (int candidate : expected) {
+                if (candidate == ordinal) {
+                    hits++;
+                    break;
+                }
+            }
+        }
+        return (double) hits / expected.length;
+    }
+
+    /**
+     * 向量数达到阈值且还没有量化器时训练并编码全部行；在写锁内执行，训练期间写入会等待，检索不受影响
+     */
+    private void trainQuantizerIfNeeded(MappedFlatIndex current) {
+        if (quantization == RagProperties.Quantization.NONE || current.codes() != null
+                || current.liveCount() < settings.getMinTrainingVectors()) {
+            return;
+        }
+        long start = System.nanoTime();
+        QuantizedCodes codes = train(current, quantization);
+        current.quantize(codes);
+        log.info("已训练向量量化器：collection={}, 方式={}, 向量数={}, 每向量字节数={}, 耗时={}ms", collectionName,
+                quantization, codes.size(), codes.codeBytes(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private QuantizedCodes train(MappedFlatIndex current, RagProperties.Quantization kind) {
+        List<float[]> sample = current.sample(settings.getTrainingSampleSize(), new Random(collectionName.hashCode()));
+        VectorQuantizer quantizer = VectorQuantizer.train(kind, sample, settings.getPqSubspaces());
+        return current.encodeRemaining(new QuantizedCodes(quantizer));
+    }
+
+    private void writeCodes(MappedFlatIndex current) throws IOException {
+        Path file = directory.resolve(CODES_FILE);
+        QuantizedCodes codes = current.codes();
+        if (codes == null) {
+            Files.deleteIfExists(file);
+            return;
+        }
+        Path tmp = directory.resolve(CODES_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(CODES_MAGIC);
+            out.writeInt(CODES_VERSION);
+            out.writeUTF(current.file().getFileName().toString());
+            VectorQuantizer.write(out, codes.quantizer());
+            int count = codes.size();
+            out.writeInt(count);
+            for (int ordinal = 0; ordinal < count; ordinal++) {
+                out.write(codes.chunkOf(ordinal), codes.offsetOf(ordinal), codes.codeBytes());
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 加载字节码快照；量化方式或向量文件对不上时忽略，缺少的行用原始向量补齐
+     */
+    private void loadCodes(MappedFlatIndex loaded) {
+        Path file = directory.resolve(CODES_FILE);
+        if (quantization == RagProperties.Quantization.NONE || !Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != CODES_MAGIC || in.readInt() != CODES_VERSION) {
+                throw new IOException("量化字节码快照格式不匹配");
+            }
+            if (!in.readUTF().equals(loaded.file().getFileName().toString())) {
+                return;
+            }
+            VectorQuantizer quantizer = VectorQuantizer.read(in);
+            if (quantizer.kind() != quantization) {
+                return;
+            }
+            QuantizedCodes codes = new QuantizedCodes(quantizer);
+            int count = Math.min(in.readInt(), loaded.size());
+            byte[] row = new byte[quantizer.codeBytes()];
+            for (int ordinal = 0; ordinal < count; ordinal++) {
+                in.readFully(row);
+                codes.appendEncoded(row);
+            }
+            loaded.quantize(loaded.encodeRemaining(codes));
+        } catch (IOException e) {
+            // 字节码可以由原始向量重新生成，这里只记录日志
+            log.warn("读取量化字节码快照失败，将重新训练：{}", file, e);
+        }
+    }
+
+    /**
+     * 删除当前使用的向量文件以外的旧文件（重写后遗留的）
+     */
+    private void deleteStaleVectorFiles(Path keep) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "vectors-*.f32")) {
+            for (Path vectorFile : files) {
+                if (!vectorFile.equals(keep)) {
+                    try {
+                        Files.deleteIfExists(vectorFile);
+                    } catch (IOException e) {
+                        // 部分平台上仍被映射的文件无法删除，下次快照时再删
+                        log.warn("删除旧向量文件失败：{}", vectorFile, e);
+                    }
+                }
+            }
+        }
+    }
+
+    private float[] checkDimensions(MappedFlatIndex current, float[] vector) {
+        if (vector.length != current.dimensions()) {
+            throw new IllegalStateException("向量维度不一致：collection=" + collectionName
+                    + "，索引维度=" + current.dimensions() + "，当前维度=" + vector.length);
+        }
+        return vector;
+    }
+
+    private static String newVectorFileName() {
+        return "vectors-" + UUID.randomUUID() + ".f32";
+    }
+}
@@ -0,0 +1,423 @@
+package org.example.springai.vectorstore;
+
+import org.springframework.ai.document.Document;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+/**
+ * HNSW图索引（余弦相似度，向量写入前已归一化）
+ * 向量存放在堆外分段（OffHeapVectors），每个节点每层的邻居是一个int数组，修改时整体替换（写时复制），
+ * 因此只允许一个写线程，检索线程无需加锁即可与写入并发
+ * 删除只打标记，检索时跳过，由HnswVectorStore在删除比例过高时重建
+ */
+final class HnswIndex {
+
+    private static final int MAGIC = 0x484E5357;
+    private static final int VERSION = 1;
+    private static final int MAX_LEVEL = 16;
+    private static final Comparator<Candidate> BY_SCORE = Comparator.comparingDouble(Candidate::score);
+
+    private final int m;
+    private final int maxConnections0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Random random = new Random(42);
+    private final OffHeapVectors vectors;
+    private final Map<String, Integer> ordinals = new ConcurrentHashMap<>();
+
+    private volatile Node[] nodes = new Node[64];
+    private volatile int size;
+    private volatile int deletedCount;
+    private volatile EntryPoint entryPoint;
+
+    HnswIndex(int dimensions, int m, int efConstruction) {
+        this.m = m;
+        this.maxConnections0 = m * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(Math.max(m, 2));
+        this.vectors = new OffHeapVectors(dimensions);
+    }
+
+    int dimensions() {
+        return vectors.dimensions();
+    }
+
+    int size() {
+        return size;
+    }
+
+    int liveCount() {
+        return size - deletedCount;
+    }
+
+    int deletedCount() {
+        return deletedCount;
+    }
+
+    /**
+     * 插入文档及其归一化向量，同ID的旧文档标记删除；只能由写线程调用
+     */
+    void add(Document document, float[] vector) {
+        delete(document.getId());
+        int ordinal = size;
+        vectors.set(ordinal, vector);
+        int level = randomLevel();
+        Node node = new Node(document, level);
+        append(node);
+        ordinals.put(document.getId(), ordinal);
+        link(ordinal, node, vector);
+    }
+
+    /**
+     * 标记删除；只能由写线程调用
+     */
+    boolean delete(String id) {
+        Integer ordinal = ordinals.remove(id);
+        if (ordinal == null) {
+            return false;
+        }
+        node(ordinal).deleted = true;
+        deletedCount++;
+        return true;
+    }
+
+    /**
+     * 近似检索：先在HNSW图上以ef宽度搜索，过滤或删除导致结果不足topK时退化为对所有存活节点的精确扫描
+     */
+    List<Candidate> search(float[] query, int topK, int ef, Predicate<Document> filter) {
+        EntryPoint entry = entryPoint;
+        if (entry == null || topK <= 0) {
+            return List.of();
+        }
+        int current = entry.node();
+        for (int level = entry.level(); level > 0; level--) {
+            current = greedy(query, current, level);
+        }
+        List<Candidate> results = new ArrayList<>(topK);
+        for (Candidate candidate : searchLayer(query, current, Math.max(ef, topK), 0)) {
+            Node node = node(candidate.node());
+            if (!node.deleted && filter.test(node.document)) {
+                results.add(candidate);
+                if (results.size() == topK) {
+                    return results;
+                }
+            }
+        }
+        if (results.size() < liveCount()) {
+            return exactSearch(query, topK, filter);
+        }
+        return results;
+    }
+
+    /**
+     * 精确扫描所有存活节点
+     */
+    List<Candidate> exactSearch(float[] query, int topK, Predicate<Document> filter) {
+        PriorityQueue<Candidate> top = new PriorityQueue<>(BY_SCORE);
+        int count = size;
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            Node node = node(ordinal);
+            if (node.deleted || !filter.test(node.document)) {
+                continue;
+            }
+            float score = vectors.dot(ordinal, query);
+            if (top.size() < topK) {
+                top.add(new Candidate(ordinal, score));
+            } else if (score > top.peek().score()) {
+                top.poll();
+                top.add(new Candidate(ordinal, score));
+            }
+        }
+        List<Candidate> results = new ArrayList<>(top);
+        results.sort(BY_SCORE.reversed());
+        return results;
+    }
+
+    Document document(int ordinal) {
+        return node(ordinal).document;
+    }
+
+    /**
+     * 所有存活的文档，用于按过滤条件删除和重建
+     */
+    List<Document> liveDocuments() {
+        List<Document> documents = new ArrayList<>(liveCount());
+        int count = size;
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            Node node = node(ordinal);
+            if (!node.deleted) {
+                documents.add(node.document);
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * 用存活节点重建一个新索引，丢弃删除标记占用的空间
+     */
+    HnswIndex compact() {
+        HnswIndex compacted = new HnswIndex(dimensions(), m, efConstruction);
+        int count = size;
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            Node node = node(ordinal);
+            if (!node.deleted) {
+                compacted.add(node.document, vectors.get(ordinal));
+            }
+        }
+        return compacted;
+    }
+
+    private void append(Node node) {
+        Node[] current = nodes;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+            current[size] = node;
+            nodes = current;
+        } else {
+            current[size] = node;
+        }
+        // volatile写，之后检索线程才能看到该节点
+        size = size + 1;
+    }
+
+    private void link(int ordinal, Node node, float[] vector) {
+        EntryPoint entry = entryPoint;
+        if (entry == null) {
+            entryPoint = new EntryPoint(ordinal, node.level);
+            return;
+        }
+        int current = entry.node();
+        for (int level = entry.level(); level > node.level; level--) {
+            current = greedy(vector, current, level);
+        }
+        for (int level = Math.min(node.level, entry.level()); level >= 0; level--) {
+            List<Candidate> candidates = searchLayer(vector, current, efConstruction, level);
+            int[] neighbors = selectNeighbors(candidates, m);
+            node.links.set(level, neighbors);
+            int maxConnections = level == 0 ? maxConnections0 : m;
+            for (int neighbor : neighbors) {
+                connect(neighbor, ordinal, level, maxConnections);
+            }
+            current = candidates.get(0).node();
+        }
+        if (node.level > entry.level()) {
+            entryPoint = new EntryPoint(ordinal, node.level);
+        }
+    }
+
+    /**
+     * 给已有节点增加一条反向边，超过上限时用启发式重新挑选邻居
+     */
+    private void connect(int ordinal, int newNeighbor, int level, int maxConnections) {
+        Node node = node(ordinal);
+        int[] current = node.links.get(level);
+        if (current.length < maxConnections) {
+            int[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = newNeighbor;
+            node.links.set(level, updated);
+            return;
+        }
+        List<Candidate> candidates = new ArrayList<>(current.length + 1);
+        for (int neighbor : current) {
+            candidates.add(new Candidate(neighbor, vectors.dot(ordinal, neighbor)));
+        }
+        candidates.add(new Candidate(newNeighbor, vectors.dot(ordinal, newNeighbor)));
+        candidates.sort(BY_SCORE.reversed());
+        node.links.set(level, selectNeighbors(candidates, maxConnections));
+    }
+
+    /**
+     * HNSW论文中的启发式邻居选择：候选按相似度从高到低，只保留与已选邻居相比更接近基准点的候选，
+     * 不足时再用被淘汰的候选补齐，保证图在聚簇数据上的连通性
+     */
+    private int[] selectNeighbors(List<Candidate> candidates, int max) {
+        List<Candidate> selected = new ArrayList<>(max);
+        List<Candidate> pruned = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (selected.size() >= max) {
+                break;
+            }
+            boolean keep = true;
+            for (Candidate chosen : selected) {
+                if (vectors.dot(candidate.node(), chosen.node()) > candidate.score()) {
+                    keep = false;
+                    break;
+                }
+            }
+            (keep ? selected : pruned).add(candidate);
+        }
+        for (int i = 0; i < pruned.size() && selected.size() < max; i++) {
+            selected.add(pruned.get(i));
+        }
+        return selected.stream().mapToInt(Candidate::node).toArray();
+    }
+
+    private int greedy(float[] query, int start, int level) {
+        int current = start;
+        float currentScore = vectors.dot(current, query);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int neighbor : node(current).links(level)) {
+                float score = vectors.dot(neighbor, query);
+                if (score > currentScore) {
+                    current = neighbor;
+                    currentScore = score;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 在某一层做宽度为ef的最佳优先搜索，返回按相似度从高到低排序的候选（包含已删除节点，由调用方过滤）
+     */
+    private List<Candidate> searchLayer(float[] query, int start, int ef, int level) {
+        BitSet visited = new BitSet(size);
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(BY_SCORE.reversed());
+        PriorityQueue<Candidate> results = new PriorityQueue<>(BY_SCORE);
+        Candidate first = new Candidate(start, vectors.dot(start, query));
+        visited.set(start);
+        candidates.add(first);
+        results.add(first);
+        while (!candidates.isEmpty()) {
+            Candidate candidate = candidates.poll();
+            if (results.size() >= ef && candidate.score() < results.peek().score()) {
+                break;
+            }
+            for (int neighbor : node(candidate.node()).links(level)) {
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                float score = vectors.dot(neighbor, query);
+                if (results.size() < ef || score > results.peek().score()) {
+                    Candidate next = new Candidate(neighbor, score);
+                    candidates.add(next);
+                    results.add(next);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(BY_SCORE.reversed());
+        return sorted;
+    }
+
+    private int randomLevel() {
+        return Math.min(MAX_LEVEL, (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier));
+    }
+
+    private Node node(int ordinal) {
+        return nodes[ordinal];
+    }
+
+    /**
+     * 写出快照：参数、入口点、每个节点的文档/删除标记/各层邻居/向量
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        int count = size;
+        EntryPoint entry = entryPoint;
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(dimensions());
+        out.writeInt(count);
+        out.writeInt(entry == null ? -1 : entry.node());
+        out.writeInt(entry == null ? -1 : entry.level());
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            Node node = node(ordinal);
+            DocumentCodec.write(out, node.document);
+            out.writeBoolean(node.deleted);
+            out.writeInt(node.level);
+            for (int level = 0; level <= node.level; level++) {
+                int[] neighbors = node.links(level);
+                out.writeInt(neighbors.length);
+                for (int neighbor : neighbors) {
+                    out.writeInt(neighbor);
+                }
+            }
+            for (float value : vectors.get(ordinal)) {
+                out.writeFloat(value);
+            }
+        }
+    }
+
+    static HnswIndex readFrom(DataInputStream in, int m, int efConstruction) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("HNSW快照格式不匹配");
+        }
+        int dimensions = in.readInt();
+        int count = in.readInt();
+        int entryNode = in.readInt();
+        int entryLevel = in.readInt();
+        HnswIndex index = new HnswIndex(dimensions, m, efConstruction);
+        float[] vector = new float[dimensions];
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            Document document = DocumentCodec.read(in);
+            boolean deleted = in.readBoolean();
+            Node node = new Node(document, in.readInt());
+            for (int level = 0; level <= node.level; level++) {
+                int[] neighbors = new int[in.readInt()];
+                for (int i = 0; i < neighbors.length; i++) {
+                    neighbors[i] = in.readInt();
+                }
+                node.links.set(level, neighbors);
+            }
+            for (int i = 0; i < dimensions; i++) {
+                vector[i] = in.readFloat();
+            }
+            index.vectors.set(ordinal, vector);
+            index.append(node);
+            if (deleted) {
+                node.deleted = true;
+                index.deletedCount++;
+            } else {
+                index.ordinals.put(document.getId(), ordinal);
+            }
+        }
+        index.entryPoint = entryNode < 0 ? null : new EntryPoint(entryNode, entryLevel);
+        return index;
+    }
+
+    record Candidate(int node, float score) {
+    }
+
+    private record EntryPoint(int node, int level) {
+    }
+
+    private static final class Node {
+        private final Document document;
+        private final int level;
+        private final AtomicReferenceArray<int[]> links;
+        private volatile boolean deleted;
+
+        Node(Document document, int level) {
+            this.document = document;
+            this.level = level;
+            this.links = new AtomicReferenceArray<>(level + 1);
+            for (int i = 0; i <= level; i++) {
+                links.set(i, new int[0]);
+            }
+        }
+
+        int[] links(int level) {
+            return level <= this.level ? links.get(level) : new int[0];
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package org.example.springai.vectorstore;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.springai.config.RagProperties;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 进程内HNSW向量库，作为Chroma之外的可选后端，检索不再经过HTTP
+ * 写入串行（向量化在锁外完成），检索无锁并发；索引定期快照到磁盘，启动时从快照恢复
+ */
+@Slf4j
+public class HnswVectorStore implements LocalVectorStore {
+
+    private static final String SNAPSHOT_FILE = "index.snapshot";
+
+    private final String collectionName;
+    private final EmbeddingModel embeddingModel;
+    private final RagProperties.Hnsw settings;
+    private final Path directory;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // 第一次写入时才知道向量维度，之前为null
+    private volatile HnswIndex index;
+    private volatile boolean dirty;
+
+    public HnswVectorStore(String collectionName, EmbeddingModel embeddingModel, RagProperties.Hnsw settings,
+                           Path directory) {
+        this.collectionName = collectionName;
+        this.embeddingModel = embeddingModel;
+        this.settings = settings;
+        this.directory = directory;
+        load();
+    }
+
+    @Override
+    public String getName() {
+        return "HnswVectorStore[" + collectionName + "]";
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        List<float[]> embeddings = embeddingModel.embed(documents.stream().map(Document::getText).toList());
+        writeLock.lock();
+        try {
+            HnswIndex current = index;
+            if (current == null) {
+                current = new HnswIndex(embeddings.get(0).length, settings.getM(), settings.getEfConstruction());
+            }
+            for (int i = 0; i < documents.size(); i++) {
+                current.add(documents.get(i), VectorMath.normalize(checkDimensions(current, embeddings.get(i))));
+            }
+            index = current;
+            dirty = true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        writeLock.lock();
+        try {
+            HnswIndex current = index;
+            if (current == null) {
+                return;
+            }
+            for (String id : idList) {
+                dirty |= current.delete(id);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        writeLock.lock();
+        try {
+            HnswIndex current = index;
+            if (current == null) {
+                return;
+            }
+            for (Document document : current.liveDocuments()) {
+                if (FilterExpressionEvaluator.matches(filterExpression, document.getMetadata())) {
+                    dirty |= current.delete(document.getId());
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        HnswIndex current = index;
+        if (current == null) {
+            return List.of();
+        }
+        float[] query = VectorMath.normalize(checkDimensions(current, embeddingModel.embed(request.getQuery())));
+        Filter.Expression filter = request.getFilterExpression();
+        List<HnswIndex.Candidate> candidates = current.search(query, request.getTopK(),
+                Math.max(settings.getEfSearch(), request.getTopK()),
+                document -> FilterExpressionEvaluator.matches(filter, document.getMetadata()));
+
+        List<Document> results = new ArrayList<>(candidates.size());
+        for (HnswIndex.Candidate candidate : candidates) {
+            if (candidate.score() < request.getSimilarityThreshold()) {
+                continue;
+            }
+            Document document = current.document(candidate.node());
+            Map<String, Object> metadata = new HashMap<>(document.getMetadata());
+            // 与ChromaVectorStore一致，在metadata中返回distance
+            metadata.put("distance", 1 - candidate.score());
+            results.add(Document.builder()
+                    .id(document.getId())
+                    .text(document.getText())
+                    .metadata(metadata)
+                    .score((double) candidate.score())
+                    .build());
+        }
+        return results;
+    }
+
+    /**
+     * 有未持久化的写入时写出快照；删除标记超过比例时先重建索引
+     */
+    @Override
+    public void snapshot() {
+        if (!dirty) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            HnswIndex current = index;
+            if (current != null && current.deletedCount() > current.size() * settings.getCompactRatio()) {
+                log.info("HNSW索引删除比例过高，重建：collection={}, 总数={}, 已删除={}",
+                        collectionName, current.size(), current.deletedCount());
+                current = current.compact();
+                index = current;
+            }
+            Files.createDirectories(directory);
+            Path file = directory.resolve(SNAPSHOT_FILE);
+            if (current == null) {
+                Files.deleteIfExists(file);
+            } else {
+                Path tmp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                    current.writeTo(out);
+                }
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            dirty = false;
+            log.debug("HNSW索引快照已写出：collection={}, 文档数={}", collectionName, current == null ? 0 : current.liveCount());
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入HNSW快照失败：" + collectionName, e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 删除知识库：清空索引并删除快照
+     */
+    @Override
+    public void drop() {
+        writeLock.lock();
+        try {
+            index = null;
+            dirty = false;
+            Files.deleteIfExists(directory.resolve(SNAPSHOT_FILE));
+        } catch (IOException e) {
+            log.warn("删除HNSW快照失败：{}", directory, e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        HnswIndex current = index;
+        return current == null ? 0 : current.liveCount();
+    }
+
+    private void load() {
+        Path file = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            index = HnswIndex.readFrom(in, settings.getM(), settings.getEfConstruction());
+            log.info("已从快照加载HNSW索引：collection={}, 文档数={}", collectionName, index.liveCount());
+        } catch (IOException e) {
+            // 快照损坏时从空索引开始，需要重新入库
+            log.error("读取HNSW快照失败，索引将为空：{}", file, e);
+        }
+    }
+
+    private float[] checkDimensions(HnswIndex current, float[] vector) {
+        if (vector.length != current.dimensions()) {
+            throw new IllegalStateException("向量维度不一致：collection=" + collectionName
+                    + "，索引维度=" + current.dimensions() + "，当前维度=" + vector.length);
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,165 @@
+package org.example.springai.vectorstore;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.springai.config.RagProperties;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
+
+/**
+ * 混合检索装饰器：向量检索与本地BM25关键词检索并行执行，按倒数排名融合（RRF）后返回
+ * 写入和删除同时作用于被包装的向量库和BM25索引，入库流程无需改动
+ * 向量检索在检索线程池执行，关键词检索在调用线程执行，总耗时取决于较慢的一路
+ */
+@Slf4j
+public class HybridVectorStore implements VectorStore {
+
+    private final String collectionName;
+    private final VectorStore delegate;
+    private final RagProperties.HybridSearch settings;
+    private final Bm25Index keywordIndex;
+    private final Executor executor;
+
+    public HybridVectorStore(String collectionName, VectorStore delegate, RagProperties.HybridSearch settings,
+                             Path directory, Executor executor) {
+        this.collectionName = collectionName;
+        this.delegate = delegate;
+        this.settings = settings;
+        this.keywordIndex = new Bm25Index(directory);
+        this.executor = executor;
+    }
+
+    @Override
+    public String getName() {
+        return "HybridVectorStore[" + collectionName + "]";
+    }
+
+    /**
+     * 被包装的向量库
+     */
+    public VectorStore getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        delegate.add(documents);
+        keywordIndex.add(documents);
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        delegate.delete(idList);
+        keywordIndex.delete(idList);
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        delegate.delete(filterExpression);
+        keywordIndex.delete(document -> FilterExpressionEvaluator.matches(filterExpression, document.getMetadata()));
+    }
+
+    /**
+     * 两路各召回topK * candidateMultiplier个候选后融合；相似度阈值只作用于向量检索
+     */
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        int candidates = request.getTopK() * Math.max(1, settings.getCandidateMultiplier());
+        SearchRequest vectorRequest = SearchRequest.from(request).topK(candidates).build();
+        CompletableFuture<List<Document>> vectorLeg = CompletableFuture.supplyAsync(
+                () -> delegate.similaritySearch(vectorRequest), executor);
+
+        Filter.Expression filter = request.getFilterExpression();
+        Predicate<Document> keywordFilter = filter == null ? null
+                : document -> FilterExpressionEvaluator.matches(filter, document.getMetadata());
+        List<Document> keywordHits;
+        try {
+            keywordHits = keywordIndex.search(request.getQuery(), candidates, keywordFilter);
+        } catch (RuntimeException e) {
+            // 关键词检索失败时退化为纯向量检索
+            log.warn("BM25检索失败：collection={}", collectionName, e);
+            keywordHits = List.of();
+        }
+
+        List<Document> vectorHits;
+        try {
+            vectorHits = vectorLeg.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return fuse(vectorHits, keywordHits, request.getTopK());
+    }
+
+    /**
+     * 有未持久化的写入时写出BM25索引快照
+     */
+    public void snapshot() {
+        keywordIndex.snapshot();
+    }
+
+    /**
+     * 删除知识库时清空BM25索引（被包装的向量库由工厂单独处理）
+     */
+    public void drop() {
+        keywordIndex.drop();
+    }
+
+    /**
+     * 删除未加载的知识库的BM25索引快照
+     */
+    public static void dropIndex(Path directory) {
+        Bm25Index.deleteSnapshot(directory);
+    }
+
+    /**
+     * RRF：每路中排名为r（从1开始）的文档得分 weight / (k + r)，多路出现的文档得分累加
+     */
+    private List<Document> fuse(List<Document> vectorHits, List<Document> keywordHits, int topK) {
+        Map<String, Fused> fused = new LinkedHashMap<>();
+        accumulate(fused, vectorHits, settings.getVectorWeight());
+        accumulate(fused, keywordHits, settings.getKeywordWeight());
+        List<Fused> ranked = new ArrayList<>(fused.values());
+        ranked.sort(Comparator.comparingDouble((Fused entry) -> entry.score).reversed());
+        List<Document> results = new ArrayList<>(Math.min(topK, ranked.size()));
+        for (Fused entry : ranked.subList(0, Math.min(topK, ranked.size()))) {
+            results.add(entry.document.mutate().score(entry.score).build());
+        }
+        return results;
+    }
+
+    private void accumulate(Map<String, Fused> fused, List<Document> hits, double weight) {
+        if (weight <= 0) {
+            return;
+        }
+        for (int rank = 0; rank < hits.size(); rank++) {
+            Document document = hits.get(rank);
+            // 同一文档优先保留向量检索返回的实例（带distance等metadata）
+            fused.computeIfAbsent(document.getId(), id -> new Fused(document)).score
+                    += weight / (settings.getRrfK() + rank + 1);
+        }
+    }
+
+    private static final class Fused {
+        private final Document document;
+        private double score;
+
+        Fused(Document document) {
+            this.document = document;
+        }
+    }
+}
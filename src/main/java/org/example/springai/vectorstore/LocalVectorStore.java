@@ -0,0 +1,24 @@
+package org.example.springai.vectorstore;
+
+import org.springframework.ai.vectorstore.VectorStore;
+
+/**
+ * 进程内向量库：数据保存在本地数据目录，由ChromaVectorStoreFactory负责定期快照和删除
+ */
+public interface LocalVectorStore extends VectorStore {
+
+    /**
+     * 有未持久化的写入时写出快照
+     */
+    void snapshot();
+
+    /**
+     * 删除知识库：清空数据并删除本地文件
+     */
+    void drop();
+
+    /**
+     * 存活的文档数
+     */
+    int size();
+}
@@ -0,0 +1,410 @@
+package org.example.springai.vectorstore;
+
+import org.springframework.ai.document.Document;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * 精确检索的平铺索引：向量按行（float32小端）连续存放在内存映射文件中，检索时顺序扫描所有行
+ * 文件按固定大小分区映射（单个MappedByteBuffer不能超过2GB），只追加写；删除只打标记
+ * 只允许一个写线程，检索线程只读取已发布的行，可与写入并发
+ * 挂上量化字节码后，检索先用字节码粗排出topK的若干倍候选，再读原始向量精排
+ */
+final class MappedFlatIndex implements AutoCloseable {
+
+    private static final long REGION_BYTES = 256L * 1024 * 1024;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final int dimensions;
+    private final int rowBytes;
+    private final int rowsPerRegion;
+    private final Map<String, Integer> ordinals = new ConcurrentHashMap<>();
+
+    private volatile ByteBuffer[] regions = new ByteBuffer[0];
+    private volatile Entry[] entries = new Entry[64];
+    private volatile int size;
+    private volatile int deletedCount;
+    private volatile QuantizedCodes codes;
+
+    MappedFlatIndex(Path file, int dimensions) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.dimensions = dimensions;
+        this.rowBytes = dimensions * Float.BYTES;
+        this.rowsPerRegion = (int) Math.max(1, REGION_BYTES / rowBytes);
+    }
+
+    Path file() {
+        return file;
+    }
+
+    int dimensions() {
+        return dimensions;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int liveCount() {
+        return size - deletedCount;
+    }
+
+    int deletedCount() {
+        return deletedCount;
+    }
+
+    QuantizedCodes codes() {
+        return codes;
+    }
+
+    /**
+     * 挂上量化字节码，之后写入的行同时编码；只能由写线程调用
+     */
+    void quantize(QuantizedCodes quantizedCodes) {
+        this.codes = quantizedCodes;
+    }
+
+    /**
+     * 追加一行，同ID的旧文档标记删除；只能由写线程调用
+     */
+    void add(Document document, float[] vector) throws IOException {
+        delete(document.getId());
+        int ordinal = size;
+        writeRow(ordinal, vector);
+        QuantizedCodes currentCodes = codes;
+        if (currentCodes != null && currentCodes.size() == ordinal) {
+            currentCodes.append(vector);
+        }
+        publish(ordinal, new Entry(document));
+        ordinals.put(document.getId(), ordinal);
+    }
+
+    /**
+     * 从快照恢复时使用：行已经在文件中，只恢复文档和删除标记
+     */
+    void restore(Document document, boolean deleted) throws IOException {
+        int ordinal = size;
+        region(ordinal / rowsPerRegion);
+        Entry entry = new Entry(document);
+        entry.deleted = deleted;
+        publish(ordinal, entry);
+        if (deleted) {
+            deletedCount++;
+        } else {
+            ordinals.put(document.getId(), ordinal);
+        }
+    }
+
+    boolean delete(String id) {
+        Integer ordinal = ordinals.remove(id);
+        if (ordinal == null) {
+            return false;
+        }
+        entries[ordinal].deleted = true;
+        deletedCount++;
+        return true;
+    }
+
+    /**
+     * 顺序扫描所有存活行，用定长最小堆保留topK，扫描过程中不为候选分配对象
+     */
+    TopK scan(float[] query, int topK, Predicate<Document> filter) {
+        TopK top = new TopK(topK);
+        DotProduct dotProduct = DotProduct.INSTANCE;
+        int count = size;
+        Entry[] currentEntries = entries;
+        ByteBuffer[] currentRegions = regions;
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            Entry entry = currentEntries[ordinal];
+            if (entry.deleted || (filter != null && !filter.test(entry.document))) {
+                continue;
+            }
+            ByteBuffer region = currentRegions[ordinal / rowsPerRegion];
+            top.offer(ordinal, dotProduct.dot(region, (ordinal % rowsPerRegion) * rowBytes, query));
+        }
+        return top;
+    }
+
+    /**
+     * 量化检索：字节码粗排topK * rescoreMultiplier个候选，再用原始向量精确打分取topK
+     * 还没有字节码的行（量化器训练前写入的）直接精确打分
+     */
+    TopK scanQuantized(QuantizedCodes quantizedCodes, float[] query, int topK, int rescoreMultiplier,
+                       Predicate<Document> filter) {
+        VectorQuantizer.Scorer scorer = quantizedCodes.quantizer().scorer(query);
+        DotProduct dotProduct = DotProduct.INSTANCE;
+        TopK candidates = new TopK(topK * Math.max(1, rescoreMultiplier));
+        int encoded = quantizedCodes.size();
+        int count = size;
+        Entry[] currentEntries = entries;
+        ByteBuffer[] currentRegions = regions;
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            Entry entry = currentEntries[ordinal];
+            if (entry.deleted || (filter != null && !filter.test(entry.document))) {
+                continue;
+            }
+            float score = ordinal < encoded
+                    ? scorer.score(quantizedCodes.chunkOf(ordinal), quantizedCodes.offsetOf(ordinal))
+                    : dotProduct.dot(currentRegions[ordinal / rowsPerRegion], (ordinal % rowsPerRegion) * rowBytes, query);
+            candidates.offer(ordinal, score);
+        }
+
+        float[] approximate = new float[candidates.size()];
+        int[] candidateOrdinals = candidates.drainOrdinals(approximate);
+        TopK top = new TopK(topK);
+        for (int ordinal : candidateOrdinals) {
+            ByteBuffer region = currentRegions[ordinal / rowsPerRegion];
+            top.offer(ordinal, dotProduct.dot(region, (ordinal % rowsPerRegion) * rowBytes, query));
+        }
+        return top;
+    }
+
+    /**
+     * 已挂量化字节码时走量化检索，否则精确扫描
+     */
+    TopK search(float[] query, int topK, int rescoreMultiplier, Predicate<Document> filter) {
+        QuantizedCodes currentCodes = codes;
+        return currentCodes == null ? scan(query, topK, filter)
+                : scanQuantized(currentCodes, query, topK, rescoreMultiplier, filter);
+    }
+
+    /**
+     * 补齐还没有字节码的行（包括已删除的，字节码按序号对齐）；与写入并发调用时只编码调用时已发布的行
+     */
+    QuantizedCodes encodeRemaining(QuantizedCodes encoded) {
+        float[] vector = new float[dimensions];
+        int count = size;
+        for (int ordinal = encoded.size(); ordinal < count; ordinal++) {
+            encoded.append(readRow(ordinal, vector));
+        }
+        return encoded;
+    }
+
+    /**
+     * 随机抽取最多limit个存活行的向量，用于训练量化器
+     */
+    List<float[]> sample(int limit, Random random) {
+        int count = size;
+        List<Integer> live = new ArrayList<>(liveCount());
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            if (!entries[ordinal].deleted) {
+                live.add(ordinal);
+            }
+        }
+        // 部分Fisher-Yates洗牌，只洗前limit个
+        int sampleSize = Math.min(limit, live.size());
+        List<float[]> sample = new ArrayList<>(sampleSize);
+        for (int i = 0; i < sampleSize; i++) {
+            int j = i + random.nextInt(live.size() - i);
+            int ordinal = live.get(j);
+            live.set(j, live.get(i));
+            sample.add(readRow(ordinal, new float[dimensions]));
+        }
+        return sample;
+    }
+
+    Document document(int ordinal) {
+        return entries[ordinal].document;
+    }
+
+    boolean isDeleted(int ordinal) {
+        return entries[ordinal].deleted;
+    }
+
+    List<Document> liveDocuments() {
+        List<Document> documents = new ArrayList<>(liveCount());
+        int count = size;
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            Entry entry = entries[ordinal];
+            if (!entry.deleted) {
+                documents.add(entry.document);
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * 把存活行复制到新文件，返回新索引
+     */
+    MappedFlatIndex compact(Path target) throws IOException {
+        MappedFlatIndex compacted = new MappedFlatIndex(target, dimensions);
+        QuantizedCodes currentCodes = codes;
+        if (currentCodes != null) {
+            // 沿用已训练的量化器，存活行在复制时重新编码
+            compacted.quantize(new QuantizedCodes(currentCodes.quantizer()));
+        }
+        float[] vector = new float[dimensions];
+        int count = size;
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            Entry entry = entries[ordinal];
+            if (!entry.deleted) {
+                compacted.add(entry.document, readRow(ordinal, vector));
+            }
+        }
+        return compacted;
+    }
+
+    /**
+     * 把映射区的修改刷到磁盘
+     */
+    void force() {
+        for (ByteBuffer region : regions) {
+            ((MappedByteBuffer) region).force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private float[] readRow(int ordinal, float[] vector) {
+        ByteBuffer region = regions[ordinal / rowsPerRegion];
+        int offset = (ordinal % rowsPerRegion) * rowBytes;
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = region.getFloat(offset + i * Float.BYTES);
+        }
+        return vector;
+    }
+
+    private void writeRow(int ordinal, float[] vector) throws IOException {
+        ByteBuffer region = region(ordinal / rowsPerRegion);
+        int offset = (ordinal % rowsPerRegion) * rowBytes;
+        for (int i = 0; i < dimensions; i++) {
+            region.putFloat(offset + i * Float.BYTES, vector[i]);
+        }
+    }
+
+    private ByteBuffer region(int index) throws IOException {
+        ByteBuffer[] current = regions;
+        if (index < current.length) {
+            return current[index];
+        }
+        ByteBuffer[] grown = Arrays.copyOf(current, index + 1);
+        for (int i = current.length; i <= index; i++) {
+            long regionBytes = (long) rowsPerRegion * rowBytes;
+            grown[i] = channel.map(FileChannel.MapMode.READ_WRITE, i * regionBytes, regionBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+        regions = grown;
+        return grown[index];
+    }
+
+    private void publish(int ordinal, Entry entry) {
+        Entry[] current = entries;
+        if (ordinal == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+            current[ordinal] = entry;
+            entries = current;
+        } else {
+            current[ordinal] = entry;
+        }
+        // volatile写，之后检索线程才能看到该行
+        size = ordinal + 1;
+    }
+
+    private static final class Entry {
+        private final Document document;
+        private volatile boolean deleted;
+
+        Entry(Document document) {
+            this.document = document;
+        }
+    }
+
+    /**
+     * 定长最小堆，堆顶是当前第topK名
+     */
+    static final class TopK {
+        private final int[] ordinals;
+        private final float[] scores;
+        private int size;
+
+        TopK(int capacity) {
+            this.ordinals = new int[Math.max(capacity, 0)];
+            this.scores = new float[Math.max(capacity, 0)];
+        }
+
+        void offer(int ordinal, float score) {
+            if (size < ordinals.length) {
+                ordinals[size] = ordinal;
+                scores[size] = score;
+                siftUp(size++);
+            } else if (size > 0 && score > scores[0]) {
+                ordinals[0] = ordinal;
+                scores[0] = score;
+                siftDown(0);
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * 按得分从高到低返回，会清空堆
+         */
+        int[] drainOrdinals(float[] scoresOut) {
+            int[] result = new int[size];
+            for (int i = size - 1; i >= 0; i--) {
+                result[i] = ordinals[0];
+                scoresOut[i] = scores[0];
+                size--;
+                ordinals[0] = ordinals[size];
+                scores[0] = scores[size];
+                siftDown(0);
+            }
+            return result;
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (scores[parent] <= scores[index]) {
+                    return;
+                }
+                swap(parent, index);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index) {
+            while (true) {
+                int left = index * 2 + 1;
+                if (left >= size) {
+                    return;
+                }
+                int smallest = left + 1 < size && scores[left + 1] < scores[left] ? left + 1 : left;
+                if (scores[index] <= scores[smallest]) {
+                    return;
+                }
+                swap(index, smallest);
+                index = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int ordinal = ordinals[a];
+            ordinals[a] = ordinals[b];
+            ordinals[b] = ordinal;
+            float score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.example.springai.vectorstore;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * 堆外连续存储的定长float向量，按固定大小分段分配DirectByteBuffer，向量按序号寻址
+ * 单线程写入，读取只使用绝对位置的get，可与写入并发
+ */
+final class OffHeapVectors {
+
+    private static final int SEGMENT_BYTES = 16 * 1024 * 1024;
+
+    private final int dimensions;
+    private final int vectorsPerSegment;
+    private volatile FloatBuffer[] segments = new FloatBuffer[0];
+
+    OffHeapVectors(int dimensions) {
+        this.dimensions = dimensions;
+        this.vectorsPerSegment = Math.max(1, SEGMENT_BYTES / (dimensions * Float.BYTES));
+    }
+
+    int dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * 写入第ordinal个向量，只能由写线程调用
+     */
+    void set(int ordinal, float[] vector) {
+        int segment = ordinal / vectorsPerSegment;
+        FloatBuffer[] current = segments;
+        if (segment >= current.length) {
+            FloatBuffer[] grown = Arrays.copyOf(current, segment + 1);
+            for (int i = current.length; i < grown.length; i++) {
+                grown[i] = ByteBuffer.allocateDirect(vectorsPerSegment * dimensions * Float.BYTES)
+                        .order(ByteOrder.nativeOrder()).asFloatBuffer();
+            }
+            segments = grown;
+            current = grown;
+        }
+        current[segment].put((ordinal % vectorsPerSegment) * dimensions, vector);
+    }
+
+    float[] get(int ordinal) {
+        float[] vector = new float[dimensions];
+        segments[ordinal / vectorsPerSegment].get((ordinal % vectorsPerSegment) * dimensions, vector);
+        return vector;
+    }
+
+    /**
+     * 向量与查询向量的点积（已归一化时即余弦相似度）
+     */
+    float dot(int ordinal, float[] query) {
+        FloatBuffer buffer = segments[ordinal / vectorsPerSegment];
+        int base = (ordinal % vectorsPerSegment) * dimensions;
+        float sum = 0;
+        for (int i = 0; i < dimensions; i++) {
+            sum += buffer.get(base + i) * query[i];
+        }
+        return sum;
+    }
+
+    float dot(int a, int b) {
+        FloatBuffer[] current = segments;
+        FloatBuffer bufferA = current[a / vectorsPerSegment];
+        FloatBuffer bufferB = current[b / vectorsPerSegment];
+        int baseA = (a % vectorsPerSegment) * dimensions;
+        int baseB = (b % vectorsPerSegment) * dimensions;
+        float sum = 0;
+        for (int i = 0; i < dimensions; i++) {
+            sum += bufferA.get(baseA + i) * bufferB.get(baseB + i);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,181 @@
+package org.example.springai.vectorstore;
+
+import org.example.springai.config.RagProperties;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 乘积量化（PQ）：向量切成m个子空间，每个子空间用k-means训练最多256个中心，向量编码为m个中心下标
+ * 查询时先算出每个子空间查询向量与所有中心的点积查找表，候选打分只需m次查表相加
+ */
+final class ProductQuantizer extends VectorQuantizer {
+
+    private static final int CENTROIDS = 256;
+    private static final int ITERATIONS = 8;
+
+    private final int dimensions;
+    private final int subspaces;
+    private final int subDimensions;
+    private final int centroids;
+    // [subspace][centroid * subDimensions + d]
+    private final float[][] codebooks;
+
+    private ProductQuantizer(int dimensions, int subspaces, int centroids, float[][] codebooks) {
+        this.dimensions = dimensions;
+        this.subspaces = subspaces;
+        this.subDimensions = dimensions / subspaces;
+        this.centroids = centroids;
+        this.codebooks = codebooks;
+    }
+
+    static ProductQuantizer train(List<float[]> sample, int requestedSubspaces) {
+        int dimensions = sample.get(0).length;
+        int subspaces = largestDivisorAtMost(dimensions, Math.max(1, requestedSubspaces));
+        int subDimensions = dimensions / subspaces;
+        int centroids = Math.min(CENTROIDS, sample.size());
+        Random random = new Random(17);
+        float[][] codebooks = new float[subspaces][];
+        for (int s = 0; s < subspaces; s++) {
+            codebooks[s] = kMeans(sample, s * subDimensions, subDimensions, centroids, random);
+        }
+        return new ProductQuantizer(dimensions, subspaces, centroids, codebooks);
+    }
+
+    @Override
+    RagProperties.Quantization kind() {
+        return RagProperties.Quantization.PQ;
+    }
+
+    @Override
+    int codeBytes() {
+        return subspaces;
+    }
+
+    @Override
+    long parameterBytes() {
+        return (long) subspaces * centroids * subDimensions * Float.BYTES;
+    }
+
+    @Override
+    void encode(float[] vector, byte[] codes, int offset) {
+        for (int s = 0; s < subspaces; s++) {
+            codes[offset + s] = (byte) nearest(codebooks[s], centroids, vector, s * subDimensions, subDimensions);
+        }
+    }
+
+    @Override
+    Scorer scorer(float[] query) {
+        float[] table = new float[subspaces * CENTROIDS];
+        for (int s = 0; s < subspaces; s++) {
+            float[] codebook = codebooks[s];
+            int start = s * subDimensions;
+            for (int c = 0; c < centroids; c++) {
+                float dot = 0;
+                for (int d = 0; d < subDimensions; d++) {
+                    dot += query[start + d] * codebook[c * subDimensions + d];
+                }
+                table[s * CENTROIDS + c] = dot;
+            }
+        }
+        return (codes, offset) -> {
+            float sum = 0;
+            for (int s = 0; s < subspaces; s++) {
+                sum += table[s * CENTROIDS + (codes[offset + s] & 0xFF)];
+            }
+            return sum;
+        };
+    }
+
+    @Override
+    void writeParameters(DataOutputStream out) throws IOException {
+        out.writeInt(dimensions);
+        out.writeInt(subspaces);
+        out.writeInt(centroids);
+        for (float[] codebook : codebooks) {
+            for (float value : codebook) {
+                out.writeFloat(value);
+            }
+        }
+    }
+
+    static ProductQuantizer readParameters(DataInputStream in) throws IOException {
+        int dimensions = in.readInt();
+        int subspaces = in.readInt();
+        int centroids = in.readInt();
+        int subDimensions = dimensions / subspaces;
+        float[][] codebooks = new float[subspaces][centroids * subDimensions];
+        for (float[] codebook : codebooks) {
+            for (int i = 0; i < codebook.length; i++) {
+                codebook[i] = in.readFloat();
+            }
+        }
+        return new ProductQuantizer(dimensions, subspaces, centroids, codebooks);
+    }
+
+    /**
+     * 单个子空间的k-means（L2距离），初始中心随机取样本
+     */
+    private static float[] kMeans(List<float[]> sample, int start, int length, int k, Random random) {
+        float[] centers = new float[k * length];
+        for (int c = 0; c < k; c++) {
+            System.arraycopy(sample.get(random.nextInt(sample.size())), start, centers, c * length, length);
+        }
+        int[] assignment = new int[sample.size()];
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            for (int i = 0; i < sample.size(); i++) {
+                assignment[i] = nearest(centers, k, sample.get(i), start, length);
+            }
+            float[] sums = new float[k * length];
+            int[] counts = new int[k];
+            for (int i = 0; i < sample.size(); i++) {
+                int c = assignment[i];
+                counts[c]++;
+                float[] vector = sample.get(i);
+                for (int d = 0; d < length; d++) {
+                    sums[c * length + d] += vector[start + d];
+                }
+            }
+            for (int c = 0; c < k; c++) {
+                if (counts[c] == 0) {
+                    // 空簇重新随机取一个样本
+                    System.arraycopy(sample.get(random.nextInt(sample.size())), start, centers, c * length, length);
+                    continue;
+                }
+                for (int d = 0; d < length; d++) {
+                    centers[c * length + d] = sums[c * length + d] / counts[c];
+                }
+            }
+        }
+        return centers;
+    }
+
+    private static int nearest(float[] centers, int k, float[] vector, int start, int length) {
+        int best = 0;
+        float bestDistance = Float.POSITIVE_INFINITY;
+        for (int c = 0; c < k; c++) {
+            float distance = 0;
+            for (int d = 0; d < length; d++) {
+                float diff = vector[start + d] - centers[c * length + d];
+                distance += diff * diff;
+            }
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    private static int largestDivisorAtMost(int value, int max) {
+        for (int candidate = Math.min(max, value); candidate > 1; candidate--) {
+            if (value % candidate == 0) {
+                return candidate;
+            }
+        }
+        return 1;
+    }
+}
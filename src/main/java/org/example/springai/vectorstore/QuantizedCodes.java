@@ -0,0 +1,85 @@
+package org.example.springai.vectorstore;
+
+import java.util.Arrays;
+
+/**
+ * 按序号存放的量化字节码，分块分配在堆上；单线程追加，检索线程只读取已发布的行
+ */
+final class QuantizedCodes {
+
+    private static final int CHUNK_BYTES = 16 * 1024 * 1024;
+
+    private final VectorQuantizer quantizer;
+    private final int codeBytes;
+    private final int rowsPerChunk;
+    private volatile byte[][] chunks = new byte[0][];
+    private volatile int size;
+
+    QuantizedCodes(VectorQuantizer quantizer) {
+        this.quantizer = quantizer;
+        this.codeBytes = quantizer.codeBytes();
+        this.rowsPerChunk = Math.max(1, CHUNK_BYTES / codeBytes);
+    }
+
+    VectorQuantizer quantizer() {
+        return quantizer;
+    }
+
+    /**
+     * 已编码的行数，序号小于该值的行都有字节码
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * 编码并追加第size行；只能由写线程调用
+     */
+    void append(float[] vector) {
+        int ordinal = size;
+        byte[] chunk = chunk(ordinal / rowsPerChunk);
+        quantizer.encode(vector, chunk, (ordinal % rowsPerChunk) * codeBytes);
+        size = ordinal + 1;
+    }
+
+    /**
+     * 从快照恢复时直接追加已编码的字节
+     */
+    void appendEncoded(byte[] codes) {
+        int ordinal = size;
+        System.arraycopy(codes, 0, chunk(ordinal / rowsPerChunk), (ordinal % rowsPerChunk) * codeBytes, codeBytes);
+        size = ordinal + 1;
+    }
+
+    byte[] chunkOf(int ordinal) {
+        return chunks[ordinal / rowsPerChunk];
+    }
+
+    int offsetOf(int ordinal) {
+        return (ordinal % rowsPerChunk) * codeBytes;
+    }
+
+    int codeBytes() {
+        return codeBytes;
+    }
+
+    /**
+     * 字节码和量化参数占用的内存
+     */
+    long memoryBytes() {
+        return (long) size * codeBytes + quantizer.parameterBytes();
+    }
+
+    private byte[] chunk(int index) {
+        byte[][] current = chunks;
+        if (index < current.length) {
+            return current[index];
+        }
+        byte[][] grown = Arrays.copyOf(current, index + 1);
+        for (int i = current.length; i <= index; i++) {
+            grown[i] = new byte[rowsPerChunk * codeBytes];
+        }
+        chunks = grown;
+        return grown[index];
+    }
+}
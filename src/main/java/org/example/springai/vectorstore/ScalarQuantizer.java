@@ -0,0 +1,105 @@
+package org.example.springai.vectorstore;
+
+import org.example.springai.config.RagProperties;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * int8标量量化：每个维度按样本中的最小值（offset）和取值范围（scale）线性映射到0~255
+ * 点积展开为 Σ q_i * offset_i + Σ (q_i * scale_i) * code_i，前一项每次查询只算一次
+ */
+final class ScalarQuantizer extends VectorQuantizer {
+
+    private final float[] offsets;
+    private final float[] scales;
+
+    private ScalarQuantizer(float[] offsets, float[] scales) {
+        this.offsets = offsets;
+        this.scales = scales;
+    }
+
+    static ScalarQuantizer train(List<float[]> sample) {
+        int dimensions = sample.get(0).length;
+        float[] min = new float[dimensions];
+        float[] max = new float[dimensions];
+        Arrays.fill(min, Float.POSITIVE_INFINITY);
+        Arrays.fill(max, Float.NEGATIVE_INFINITY);
+        for (float[] vector : sample) {
+            for (int i = 0; i < dimensions; i++) {
+                min[i] = Math.min(min[i], vector[i]);
+                max[i] = Math.max(max[i], vector[i]);
+            }
+        }
+        float[] scales = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            scales[i] = max[i] > min[i] ? (max[i] - min[i]) / 255f : 1f;
+        }
+        return new ScalarQuantizer(min, scales);
+    }
+
+    @Override
+    RagProperties.Quantization kind() {
+        return RagProperties.Quantization.INT8;
+    }
+
+    @Override
+    int codeBytes() {
+        return offsets.length;
+    }
+
+    @Override
+    long parameterBytes() {
+        return (long) offsets.length * 2 * Float.BYTES;
+    }
+
+    @Override
+    void encode(float[] vector, byte[] codes, int offset) {
+        for (int i = 0; i < vector.length; i++) {
+            // 超出训练样本范围的值截断到0~255
+            int code = Math.round((vector[i] - offsets[i]) / scales[i]);
+            codes[offset + i] = (byte) Math.max(0, Math.min(255, code));
+        }
+    }
+
+    @Override
+    Scorer scorer(float[] query) {
+        float[] weights = new float[query.length];
+        float base = 0;
+        for (int i = 0; i < query.length; i++) {
+            weights[i] = query[i] * scales[i];
+            base += query[i] * offsets[i];
+        }
+        float constant = base;
+        return (codes, offset) -> {
+            float sum = constant;
+            for (int i = 0; i < weights.length; i++) {
+                sum += weights[i] * (codes[offset + i] & 0xFF);
+            }
+            return sum;
+        };
+    }
+
+    @Override
+    void writeParameters(DataOutputStream out) throws IOException {
+        out.writeInt(offsets.length);
+        for (int i = 0; i < offsets.length; i++) {
+            out.writeFloat(offsets[i]);
+            out.writeFloat(scales[i]);
+        }
+    }
+
+    static ScalarQuantizer readParameters(DataInputStream in) throws IOException {
+        int dimensions = in.readInt();
+        float[] offsets = new float[dimensions];
+        float[] scales = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            offsets[i] = in.readFloat();
+            scales[i] = in.readFloat();
+        }
+        return new ScalarQuantizer(offsets, scales);
+    }
+}
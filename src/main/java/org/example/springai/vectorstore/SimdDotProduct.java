@@ -0,0 +1,37 @@
+package org.example.springai.vectorstore;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 基于JDK Vector API（incubator）的点积，只通过DotProduct反射加载
+ */
+final class SimdDotProduct extends DotProduct {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    float dot(ByteBuffer buffer, int offset, float[] query) {
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(query.length);
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector row = FloatVector.fromByteBuffer(SPECIES, buffer, offset + i * Float.BYTES, ByteOrder.LITTLE_ENDIAN);
+            sum = row.fma(FloatVector.fromArray(SPECIES, query, i), sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < query.length; i++) {
+            result += buffer.getFloat(offset + i * Float.BYTES) * query[i];
+        }
+        return result;
+    }
+
+    @Override
+    String name() {
+        return "simd-" + SPECIES.vectorBitSize() + "bit";
+    }
+}
@@ -0,0 +1,29 @@
+package org.example.springai.vectorstore;
+
+/**
+ * 向量工具方法
+ */
+final class VectorMath {
+
+    private VectorMath() {
+    }
+
+    /**
+     * L2归一化，归一化后点积即余弦相似度；零向量返回全零
+     */
+    static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+        float[] normalized = new float[vector.length];
+        if (norm == 0) {
+            return normalized;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+}
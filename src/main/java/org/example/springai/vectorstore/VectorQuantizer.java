@@ -0,0 +1,67 @@
+package org.example.springai.vectorstore;
+
+import org.example.springai.config.RagProperties;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 向量量化器：把float32向量编码成定长字节码，检索时先用字节码近似打分，再对少量候选用原始向量精确重排
+ */
+abstract class VectorQuantizer {
+
+    /**
+     * 量化方式
+     */
+    abstract RagProperties.Quantization kind();
+
+    /**
+     * 每个向量编码后的字节数
+     */
+    abstract int codeBytes();
+
+    /**
+     * 量化参数（缩放/码本）占用的字节数
+     */
+    abstract long parameterBytes();
+
+    abstract void encode(float[] vector, byte[] codes, int offset);
+
+    /**
+     * 为一次查询预计算打分器（如查找表），之后每个候选的打分只读字节码
+     */
+    abstract Scorer scorer(float[] query);
+
+    abstract void writeParameters(DataOutputStream out) throws IOException;
+
+    interface Scorer {
+        float score(byte[] codes, int offset);
+    }
+
+    /**
+     * 用样本向量训练量化器
+     */
+    static VectorQuantizer train(RagProperties.Quantization kind, List<float[]> sample, int pqSubspaces) {
+        return switch (kind) {
+            case INT8 -> ScalarQuantizer.train(sample);
+            case PQ -> ProductQuantizer.train(sample, pqSubspaces);
+            case NONE -> throw new IllegalArgumentException("未配置量化方式");
+        };
+    }
+
+    static void write(DataOutputStream out, VectorQuantizer quantizer) throws IOException {
+        out.writeUTF(quantizer.kind().name());
+        quantizer.writeParameters(out);
+    }
+
+    static VectorQuantizer read(DataInputStream in) throws IOException {
+        RagProperties.Quantization kind = RagProperties.Quantization.valueOf(in.readUTF());
+        return switch (kind) {
+            case INT8 -> ScalarQuantizer.readParameters(in);
+            case PQ -> ProductQuantizer.readParameters(in);
+            case NONE -> throw new IOException("量化参数格式不匹配");
+        };
+    }
+}
@@ -18,4 +18,14 @@ INSERT INTO users (user_id, username, password, status) VALUES
 ('1', 'admin', 'admin123', 'ACTIVE'),
 ('2', 'user1', 'user123', 'ACTIVE'),
 ('3', 'user2', 'user123', 'INACTIVE')
-ON DUPLICATE KEY UPDATE username=username; 
\ No newline at end of file
+ON DUPLICATE KEY UPDATE username=username;
+
+-- 创建会话记忆表（TieredChatMemoryRepository后台批量写入，每个会话保存最近的消息窗口）
+CREATE TABLE IF NOT EXISTS chat_memory_message (
+    conversation_id VARCHAR(64) NOT NULL COMMENT '会话ID',
+    seq INT NOT NULL COMMENT '消息序号',
+    message_type VARCHAR(16) NOT NULL COMMENT '消息类型',
+    content MEDIUMTEXT NOT NULL COMMENT '消息内容',
+    updated_at BIGINT NOT NULL COMMENT '写入时间（毫秒）',
+    PRIMARY KEY (conversation_id, seq)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='会话记忆表';
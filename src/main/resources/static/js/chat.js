@@ -503,11 +503,14 @@ function uploadFile() {
         method: 'POST',
         body: formData
     })
-    .then(response => response.text())
+    .then(response => response.json())
     .then(result => {
         hideUploadProgress();
-        appendMessage('system', result);
+        appendMessage('system', result.message);
         closeUploadModal();
+        if (result.success && result.jobId) {
+            pollIngestionJob(result.jobId);
+        }
     })
     .catch(error => {
         hideUploadProgress();
@@ -516,6 +519,34 @@ function uploadFile() {
     });
 }
 
+/**
+ * 轮询入库任务进度，任务结束后提示结果
+ * @param {string} jobId 入库任务ID
+ */
+function pollIngestionJob(jobId) {
+    fetch(`/rag/jobs/${jobId}`)
+    .then(response => response.json())
+    .then(result => {
+        if (!result.success) {
+            appendMessage('system', result.message);
+            return;
+        }
+        const job = result.data;
+        if (job.status === 'COMPLETED') {
+            appendMessage('system', `文件解析并入库成功：${job.fileName}（新增 ${job.result.addedChunks}，复用 ${job.result.reusedChunks}，删除 ${job.result.deletedChunks} 个分片）`);
+        } else if (job.status === 'FAILED') {
+            appendMessage('system', `文件处理失败：${job.fileName}，${job.error}`);
+        } else if (job.status === 'CANCELLED') {
+            appendMessage('system', `入库任务已取消：${job.fileName}`);
+        } else {
+            setTimeout(() => pollIngestionJob(jobId), 2000);
+        }
+    })
+    .catch(error => {
+        console.error('Poll job error:', error);
+    });
+}
+
 /**
  * 发送消息并处理流式响应
  */
@@ -540,10 +571,13 @@ function sendMessage() {
     const aiMessage = appendMessage('ai', '', true);
     const messageId = aiMessage.messageId;
     
-    // 根据是否启用知识库模式选择不同的API，并添加会话ID参数
-    const apiUrl = ragToggle.checked 
-        ? `/rag/ask?question=${encodeURIComponent(text)}&collectionName=${currentKnowledgeBase}&conversationId=${conversationId}` 
-        : `/text?message=${encodeURIComponent(text)}&conversationId=${conversationId}`;
+    // 知识库模式使用SSE流式接口，边生成边显示
+    if (ragToggle.checked) {
+        streamRagAnswer(text, messageId);
+        return;
+    }
+    
+    const apiUrl = `/text?message=${encodeURIComponent(text)}&conversationId=${conversationId}`;
     
     // 模拟流式输出的内容
     let simulatedResponse = "";
@@ -605,6 +639,84 @@ function sendMessage() {
     });
 }
 
+/**
+ * 知识库模式的流式问答：依次接收sources（参考文件）、token（增量文本）、done（用量和耗时）事件
+ * @param {string} text 用户问题
+ * @param {string} messageId AI消息ID
+ */
+function streamRagAnswer(text, messageId) {
+    const apiUrl = `/rag/ask/stream?question=${encodeURIComponent(text)}&collectionName=${encodeURIComponent(currentKnowledgeBase)}&conversationId=${conversationId}`;
+    const eventSource = new EventSource(apiUrl);
+    let answer = '';
+    let sources = [];
+    let finished = false;
+    
+    currentStreamingRequest = {
+        cancel: () => eventSource.close(),
+        messageId: messageId
+    };
+    
+    const finish = (content, footer) => {
+        finished = true;
+        eventSource.close();
+        updateStreamingMessage(messageId, content, true);
+        if (footer) {
+            appendMessageFooter(messageId, footer);
+        }
+        resetSendButton();
+    };
+    
+    eventSource.addEventListener('sources', event => {
+        sources = JSON.parse(event.data).fileNames || [];
+    });
+    
+    eventSource.addEventListener('token', event => {
+        answer += JSON.parse(event.data).text;
+        updateStreamingMessage(messageId, answer);
+    });
+    
+    eventSource.addEventListener('done', event => {
+        const done = JSON.parse(event.data);
+        const parts = [];
+        if (sources.length > 0) {
+            parts.push(`参考文件：${sources.join('、')}`);
+        }
+        if (done.cached) {
+            parts.push('来自缓存');
+        } else if (done.timeToFirstTokenMillis != null) {
+            parts.push(`首字 ${done.timeToFirstTokenMillis}ms`);
+        }
+        parts.push(`总耗时 ${done.totalMillis}ms`);
+        if (done.totalTokens != null) {
+            parts.push(`token ${done.totalTokens}`);
+        }
+        finish(answer, parts.join(' · '));
+    });
+    
+    // 服务端主动发送的error事件带有data，连接异常时浏览器触发的error事件没有data
+    eventSource.addEventListener('error', event => {
+        if (finished) return;
+        const message = event.data ? JSON.parse(event.data).message : '请求失败，请稍后重试。';
+        finish(answer || message, answer ? message : null);
+    });
+}
+
+/**
+ * 在消息内容下方追加一行说明（参考文件、耗时等）
+ * @param {string} messageId 消息ID
+ * @param {string} text 说明文字
+ */
+function appendMessageFooter(messageId, text) {
+    const msgDiv = document.getElementById(messageId);
+    if (!msgDiv) return;
+    const contentDiv = msgDiv.querySelector('.message-content');
+    const footer = document.createElement('div');
+    footer.className = 'message-footer';
+    footer.textContent = text;
+    contentDiv.insertAdjacentElement('afterend', footer);
+    messagesDiv.scrollTop = messagesDiv.scrollHeight;
+}
+
 /**
  * 重置发送按钮为初始状态
  */
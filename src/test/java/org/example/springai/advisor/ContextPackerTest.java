@@ -0,0 +1,78 @@
+package org.example.springai.advisor;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.springai.config.RagProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 上下文组装测试类
+ */
+class ContextPackerTest {
+
+    private final JTokkitTokenCountEstimator estimator = new JTokkitTokenCountEstimator();
+
+    @Test
+    void testAllChunksFitInRelevanceOrder() {
+        ContextPacker packer = packer(3000, 64);
+        List<Document> documents = List.of(
+                new Document("a", "意式浓缩咖啡的萃取时间一般为25到30秒。", Map.of("fileName", "espresso.txt")),
+                new Document("b", "手冲咖啡建议水温在90到96度之间。", Map.of("fileName", "pour-over.txt")));
+
+        ContextPacker.PackedContext packed = packer.pack(documents,
+                document -> "文件名：" + document.getMetadata().get("fileName") + System.lineSeparator());
+
+        assertTrue(packed.text().indexOf("espresso.txt") < packed.text().indexOf("pour-over.txt"));
+        assertEquals(List.of("a", "b"), packed.documents().stream().map(Document::getId).toList());
+        assertTrue(packed.droppedIds().isEmpty());
+        assertNull(packed.truncatedId());
+        assertTrue(packed.tokens() > 0);
+    }
+
+    @Test
+    void testLastChunkIsTruncatedAtSentenceAndRestDropped() {
+        String first = "第一段内容。".repeat(20);
+        String second = "这是第二段的一句话。".repeat(40);
+        int budget = estimator.estimate(first) + estimator.estimate(second) / 2;
+        ContextPacker packer = packer(budget, 16);
+
+        ContextPacker.PackedContext packed = packer.pack(List.of(
+                new Document("a", first, Map.of()),
+                new Document("b", second, Map.of()),
+                new Document("c", "第三段", Map.of())));
+
+        assertEquals(List.of("a", "b"), packed.documents().stream().map(Document::getId).toList());
+        assertEquals("b", packed.truncatedId());
+        assertEquals(List.of("c"), packed.droppedIds());
+        assertTrue(packed.tokens() <= budget);
+        assertTrue(packed.text().endsWith("。"), "截断后应停在句末");
+        assertTrue(packed.text().length() < first.length() + second.length());
+    }
+
+    @Test
+    void testChunkDroppedWhenRemainingBudgetTooSmall() {
+        String first = "第一段内容。".repeat(20);
+        ContextPacker packer = packer(estimator.estimate(first) + 10, 64);
+
+        ContextPacker.PackedContext packed = packer.pack(List.of(
+                new Document("a", first, Map.of()),
+                new Document("b", "这是第二段的一句话。".repeat(40), Map.of())));
+
+        assertEquals(first, packed.text());
+        assertEquals(List.of("b"), packed.droppedIds());
+        assertNull(packed.truncatedId());
+    }
+
+    private static ContextPacker packer(int maxTokens, int minTruncatedTokens) {
+        RagProperties ragProperties = new RagProperties();
+        ragProperties.getContext().setMaxTokens(maxTokens);
+        ragProperties.getContext().setMinTruncatedTokens(minTruncatedTokens);
+        return new ContextPacker(ragProperties, new SimpleMeterRegistry());
+    }
+}
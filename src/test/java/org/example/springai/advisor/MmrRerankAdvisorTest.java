@@ -0,0 +1,94 @@
+package org.example.springai.advisor;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.springai.config.RagProperties;
+import org.example.springai.embedding.CachingEmbeddingModel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MMR重排测试类
+ */
+class MmrRerankAdvisorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testLexicalFallbackRemovesNearDuplicates() {
+        RagProperties ragProperties = new RagProperties();
+        MmrRerankAdvisor advisor = new MmrRerankAdvisor(ragProperties, new AxisEmbeddingModel(new AtomicInteger()),
+                new SimpleMeterRegistry());
+
+        List<Document> candidates = List.of(
+                new Document("a", "意式浓缩咖啡的萃取时间一般为25到30秒", Map.of()),
+                new Document("b", "意式浓缩咖啡的萃取时间一般为25到30秒。", Map.of()),
+                new Document("c", "手冲咖啡建议水温在90到96度之间", Map.of()),
+                new Document("d", "冷萃咖啡需要浸泡12小时以上", Map.of()));
+        List<Document> selected = advisor.rerank("浓缩咖啡萃取多久", candidates, 3);
+        assertEquals(List.of("a", "c", "d"), selected.stream().map(Document::getId).toList());
+    }
+
+    @Test
+    void testCachedVectorsAreReusedWithoutModelCalls() {
+        AtomicInteger calls = new AtomicInteger();
+        CachingEmbeddingModel embeddingModel = new CachingEmbeddingModel(new AxisEmbeddingModel(calls), "test",
+                tempDir, 100, 1 << 20, 2, new SimpleMeterRegistry());
+        RagProperties ragProperties = new RagProperties();
+        ragProperties.getRerank().setLambda(0.5);
+        MmrRerankAdvisor advisor = new MmrRerankAdvisor(ragProperties, embeddingModel, new SimpleMeterRegistry());
+
+        // x轴方向的两段内容文本不同但向量相同，y轴方向的内容相关度略低但提供新信息
+        List<Document> candidates = List.of(
+                new Document("a", "x 第一段", Map.of()),
+                new Document("b", "x 换个说法的第一段", Map.of()),
+                new Document("c", "xy 第二段", Map.of()));
+        embeddingModel.embed(List.of("x 问题", "x 第一段", "x 换个说法的第一段", "xy 第二段"));
+        int callsBefore = calls.get();
+
+        List<Document> selected = advisor.rerank("x 问题", candidates, 2);
+        assertEquals(List.of("a", "c"), selected.stream().map(Document::getId).toList());
+        assertEquals(callsBefore, calls.get());
+    }
+
+    /**
+     * 文本以x开头的向量指向x轴，以xy开头的指向x、y之间
+     */
+    private static class AxisEmbeddingModel implements EmbeddingModel {
+
+        private final AtomicInteger calls;
+
+        AxisEmbeddingModel(AtomicInteger calls) {
+            this.calls = calls;
+        }
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            calls.incrementAndGet();
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions()) {
+                float[] vector = text.startsWith("xy") ? new float[]{0.6f, 0.8f, 0} : new float[]{1, 0, 0};
+                embeddings.add(new Embedding(vector, embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+    }
+}
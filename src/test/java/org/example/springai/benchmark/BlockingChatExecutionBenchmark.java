@@ -0,0 +1,95 @@
+package org.example.springai.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.springai.config.RagProperties;
+import org.example.springai.execution.BlockingCallExecutor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 阻塞式对话调用基准测试：1000个并发请求经ChatClient.call()调用一个固定延迟的桩模型，
+ * 对比平台线程池（200个线程，与Tomcat默认最大线程数相同）和虚拟线程全部完成所需的时间
+ * 虚拟线程需要在Java 21+上运行，低版本JVM上virtual会回退到平台线程池，setUp时打印实际的执行方式
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BlockingChatExecutionBenchmark {
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    public RagProperties.ExecutionMode mode;
+
+    @Param({"1000"})
+    public int concurrency;
+
+    @Param({"200"})
+    public int modelLatencyMillis;
+
+    private BlockingCallExecutor executor;
+    private ChatClient chatClient;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        RagProperties ragProperties = new RagProperties();
+        RagProperties.Execution execution = ragProperties.getExecution();
+        execution.setMode(mode);
+        execution.setPlatformThreads(200);
+        execution.setPlatformQueueCapacity(concurrency);
+        // 模型并发限制不作为瓶颈，只比较线程模型
+        execution.getDefaultLimit().setMaxConcurrentCalls(concurrency);
+        execution.getDefaultLimit().setMaxQueued(concurrency);
+        executor = new BlockingCallExecutor(ragProperties, new SimpleMeterRegistry(), "stub");
+        chatClient = ChatClient.create(new SlowChatModel(modelLatencyMillis));
+        System.out.println("mode=" + mode + ", virtualThreads=" + executor.isVirtualThreads());
+    }
+
+    @Benchmark
+    public int concurrentCalls() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            String question = "question-" + i;
+            futures[i] = executor.submit(() -> chatClient.prompt().user(question).call().content());
+        }
+        CompletableFuture.allOf(futures).join();
+        return futures.length;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.destroy();
+    }
+
+    /**
+     * 阻塞固定时长后返回的模型，模拟大模型接口的等待时间
+     */
+    private record SlowChatModel(long latencyMillis) implements ChatModel {
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new ChatResponse(List.of(new Generation(new AssistantMessage("ok"))));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(BlockingChatExecutionBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,229 @@
+package org.example.springai.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.example.springai.config.ChromaVectorStoreFactory;
+import org.example.springai.config.RagProperties;
+import org.example.springai.ingest.BulkIngestionService;
+import org.example.springai.ingest.ContentHashIndex;
+import org.example.springai.ingest.DocumentIngestionPipeline;
+import org.example.springai.ingest.IngestionProgress;
+import org.example.springai.ingest.StreamingUploadIngestor;
+import org.example.springai.model.BulkIngestionResult;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * 批量入库基准测试：按解析线程数对比TXT/DOCX/PDF混合语料的吞吐（files/min）
+ * 向量库和EmbeddingModel替换为本地桩实现，只衡量解析、分片、合批和调度的开销
+ * 使用真实语料：-Dbench.corpus=/path/to/dir
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BulkIngestionBenchmark {
+
+    private static final String SENTENCE = "Espresso extraction depends on grind size, dose, water temperature and pressure. "
+            + "意式浓缩的萃取受研磨度、粉量、水温和压力共同影响。";
+
+    @Param({"200"})
+    public int fileCount;
+
+    @Param({"1", "4", "8"})
+    public int poolSize;
+
+    private Path workDir;
+    private Path corpusDir;
+    private BulkIngestionService bulkIngestionService;
+    private final AtomicInteger invocation = new AtomicInteger();
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class FileCounter {
+        public long files;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDir = Files.createTempDirectory("rag-bench-");
+        String corpus = System.getProperty("bench.corpus");
+        corpusDir = corpus != null ? Path.of(corpus) : generateCorpus(workDir.resolve("corpus"), fileCount);
+
+        RagProperties ragProperties = new RagProperties();
+        ragProperties.setDataDir(workDir.resolve("data").toString());
+        ragProperties.getIngestion().setTempDir(workDir.resolve("tmp").toString());
+        ragProperties.getIngestion().getBulk().setParseParallelism(poolSize);
+        ragProperties.getIngestion().getBulk().setAllowedRoots(List.of(corpusDir.toString()));
+
+        DocumentIngestionPipeline pipeline = new DocumentIngestionPipeline(new StubVectorStoreFactory(ragProperties),
+                ragProperties, new SimpleMeterRegistry(), new ContentHashIndex(ragProperties), event -> { });
+        bulkIngestionService = new BulkIngestionService(pipeline,
+                new StreamingUploadIngestor(pipeline, ragProperties), ragProperties);
+    }
+
+    @Benchmark
+    public BulkIngestionResult ingestDirectory(FileCounter counter) throws IOException {
+        // 每次使用新的知识库名，避免内容哈希复用跳过向量化
+        BulkIngestionResult result = bulkIngestionService.ingestDirectory(corpusDir, Map.of(),
+                "bench_" + invocation.incrementAndGet(), IngestionProgress.NONE);
+        counter.files += result.getFiles();
+        return result;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        bulkIngestionService.shutdown();
+        try (Stream<Path> walk = Files.walk(workDir)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static Path generateCorpus(Path dir, int fileCount) throws IOException {
+        Files.createDirectories(dir);
+        for (int i = 0; i < fileCount; i++) {
+            int paragraphs = 20 + i % 30;
+            switch (i % 3) {
+                case 0 -> Files.writeString(dir.resolve("doc-" + i + ".txt"), SENTENCE.repeat(paragraphs * 4));
+                case 1 -> writeDocx(dir.resolve("doc-" + i + ".docx"), paragraphs);
+                default -> writePdf(dir.resolve("doc-" + i + ".pdf"), paragraphs);
+            }
+        }
+        return dir;
+    }
+
+    private static void writeDocx(Path file, int paragraphs) throws IOException {
+        try (XWPFDocument document = new XWPFDocument(); OutputStream out = Files.newOutputStream(file)) {
+            for (int p = 0; p < paragraphs; p++) {
+                document.createParagraph().createRun().setText(SENTENCE.repeat(4));
+            }
+            document.write(out);
+        }
+    }
+
+    private static void writePdf(Path file, int paragraphs) throws IOException {
+        // PDF标准字体不含中文，只写英文部分
+        String line = SENTENCE.substring(0, SENTENCE.indexOf('意')).strip();
+        try (PDDocument document = new PDDocument()) {
+            PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+            for (int p = 0; p < paragraphs; p += 10) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(font, 9);
+                    content.newLineAtOffset(40, 750);
+                    for (int l = 0; l < 40; l++) {
+                        content.showText(line);
+                        content.newLineAtOffset(0, -16);
+                    }
+                    content.endText();
+                }
+            }
+            document.save(file.toFile());
+        }
+    }
+
+    /**
+     * 不连接Chroma的工厂，所有知识库共用一个只计算本地伪向量的向量库
+     */
+    private static class StubVectorStoreFactory extends ChromaVectorStoreFactory {
+
+        private final VectorStore vectorStore;
+
+        StubVectorStoreFactory(RagProperties ragProperties) {
+            this(new HashingEmbeddingModel(), ragProperties);
+        }
+
+        private StubVectorStoreFactory(EmbeddingModel embeddingModel, RagProperties ragProperties) {
+            super(null, embeddingModel, ragProperties);
+            this.vectorStore = new StubVectorStore(embeddingModel);
+        }
+
+        @Override
+        public VectorStore getVectorStore(String collectionName) {
+            return vectorStore;
+        }
+    }
+
+    private record StubVectorStore(EmbeddingModel embeddingModel) implements VectorStore {
+
+        @Override
+        public void add(List<Document> documents) {
+            embeddingModel.embed(documents.stream().map(Document::getText).toList());
+        }
+
+        @Override
+        public void delete(List<String> idList) {
+        }
+
+        @Override
+        public void delete(Filter.Expression filterExpression) {
+        }
+
+        @Override
+        public List<Document> similaritySearch(SearchRequest request) {
+            return List.of();
+        }
+    }
+
+    private static class HashingEmbeddingModel implements EmbeddingModel {
+
+        private static final int DIMENSIONS = 256;
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions()) {
+                float[] vector = new float[DIMENSIONS];
+                for (int i = 0; i < text.length(); i++) {
+                    vector[(text.charAt(i) * 31 + i) % DIMENSIONS] += 1f;
+                }
+                embeddings.add(new Embedding(vector, embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return call(new EmbeddingRequest(List.of(document.getText()), null)).getResults().get(0).getOutput();
+        }
+
+        @Override
+        public int dimensions() {
+            return DIMENSIONS;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(BulkIngestionBenchmark.class.getSimpleName()).build()).run();
+    }
+}
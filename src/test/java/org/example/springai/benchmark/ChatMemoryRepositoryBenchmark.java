@@ -0,0 +1,142 @@
+package org.example.springai.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.springai.config.RagProperties;
+import org.example.springai.mapper.ChatMemoryMapper;
+import org.example.springai.memory.TieredChatMemoryRepository;
+import org.mybatis.spring.SqlSessionFactoryBean;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.memory.InMemoryChatMemoryRepository;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 会话记忆存储基准测试：
+ * saveAll吞吐量对比后台批量写入（writeBehind）和每次修改立即写库（writeThrough，每次saveAll后flush），数据库为H2内嵌数据库；
+ * main方法最后打印每个会话（20条消息）的堆占用，对比InMemoryChatMemoryRepository和TieredChatMemoryRepository的内存层
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChatMemoryRepositoryBenchmark {
+
+    private static final int MESSAGES_PER_CONVERSATION = 20;
+
+    @Param({"writeBehind", "writeThrough"})
+    public String writeMode;
+
+    @Param({"1000"})
+    public int conversations;
+
+    private EmbeddedDatabase dataSource;
+    private TieredChatMemoryRepository repository;
+    private List<Message> window;
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName("memory-benchmark-" + UUID.randomUUID())
+                .build();
+        new JdbcTemplate(dataSource).execute("CREATE TABLE chat_memory_message (conversation_id VARCHAR(64) NOT NULL, "
+                + "seq INT NOT NULL, message_type VARCHAR(16) NOT NULL, content CLOB NOT NULL, "
+                + "updated_at BIGINT NOT NULL, PRIMARY KEY (conversation_id, seq))");
+        SqlSessionFactoryBean factoryBean = new SqlSessionFactoryBean();
+        factoryBean.setDataSource(dataSource);
+        factoryBean.setMapperLocations(new ClassPathResource("mapper/ChatMemoryMapper.xml"));
+        ChatMemoryMapper mapper = new SqlSessionTemplate(factoryBean.getObject()).getMapper(ChatMemoryMapper.class);
+
+        RagProperties ragProperties = new RagProperties();
+        ragProperties.getMemory().setFlushInterval(Duration.ofMillis(200));
+        repository = new TieredChatMemoryRepository(mapper, new DataSourceTransactionManager(dataSource),
+                ragProperties, new SimpleMeterRegistry());
+        window = conversation(0);
+    }
+
+    /**
+     * 每次调用写入一个会话的完整窗口（MessageWindowChatMemory每轮对话都整体saveAll）
+     */
+    @Benchmark
+    public void saveAll() {
+        repository.saveAll("c" + next.getAndIncrement() % conversations, window);
+        if ("writeThrough".equals(writeMode)) {
+            repository.flush();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        repository.destroy();
+        dataSource.shutdown();
+    }
+
+    /**
+     * 写入count个会话后按GC前后的已用堆估算每个会话的占用
+     */
+    static long heapBytesPerConversation(ChatMemoryRepository repository, int count) {
+        System.gc();
+        long before = usedHeap();
+        for (int i = 0; i < count; i++) {
+            repository.saveAll("c" + i, conversation(i));
+        }
+        System.gc();
+        long after = usedHeap();
+        // 保持repository可达，避免被提前回收
+        if (repository.findByConversationId("c0").isEmpty()) {
+            throw new IllegalStateException();
+        }
+        return (after - before) / count;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static List<Message> conversation(int index) {
+        List<Message> messages = new ArrayList<>(MESSAGES_PER_CONVERSATION);
+        for (int i = 0; i < MESSAGES_PER_CONVERSATION / 2; i++) {
+            messages.add(new UserMessage("会话" + index + "的第" + i + "个问题：拿铁和卡布奇诺的区别是什么？"));
+            messages.add(new AssistantMessage("会话" + index + "的第" + i + "个回答：卡布奇诺奶泡更厚，咖啡味更明显。"));
+        }
+        return messages;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(ChatMemoryRepositoryBenchmark.class.getSimpleName()).build()).run();
+
+        int count = 20000;
+        RagProperties ragProperties = new RagProperties();
+        ragProperties.getMemory().setPersistent(false);
+        ragProperties.getMemory().setMaxConversations(count);
+        TieredChatMemoryRepository tiered = new TieredChatMemoryRepository(null, null, ragProperties,
+                new SimpleMeterRegistry());
+        System.out.println("InMemoryChatMemoryRepository: "
+                + heapBytesPerConversation(new InMemoryChatMemoryRepository(), count) + " bytes/conversation");
+        System.out.println("TieredChatMemoryRepository: "
+                + heapBytesPerConversation(tiered, count) + " bytes/conversation");
+        tiered.destroy();
+    }
+}
@@ -0,0 +1,175 @@
+package org.example.springai.benchmark;
+
+import org.example.springai.config.RagProperties;
+import org.example.springai.vectorstore.FlatVectorStore;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.chroma.vectorstore.ChromaApi;
+import org.springframework.ai.chroma.vectorstore.ChromaVectorStore;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 向量检索基准测试：进程内平铺索引（内存映射 + SIMD精确扫描） vs Chroma HTTP检索
+ * 向量由文本种子确定生成，不调用远程EmbeddingModel；Chroma需要在 -Dbench.chroma.url（默认http://127.0.0.1:8000）可用，
+ * 不可用时只有Chroma的用例失败
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Xmx2g"})
+public class VectorSearchBenchmark {
+
+    private static final int LOAD_BATCH = 1000;
+
+    @State(Scope.Benchmark)
+    public static class Corpus {
+        @Param({"10000", "100000", "1000000"})
+        public int vectorCount;
+
+        @Param({"1024"})
+        public int dimensions;
+
+        SeededEmbeddingModel embeddingModel;
+        int query;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            embeddingModel = new SeededEmbeddingModel(dimensions);
+        }
+
+        SearchRequest nextRequest() {
+            return SearchRequest.builder().query("query-" + (query++ % 100)).topK(10).build();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class FlatState {
+        Path directory;
+        FlatVectorStore store;
+
+        @Setup(Level.Trial)
+        public void setUp(Corpus corpus) throws IOException {
+            directory = Files.createTempDirectory("rag-flat-bench-");
+            store = new FlatVectorStore("bench", corpus.embeddingModel, new RagProperties.Flat(),
+                    RagProperties.Quantization.NONE, directory);
+            load(corpus.vectorCount, store::add);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            store.drop();
+            try (Stream<Path> walk = Files.walk(directory)) {
+                walk.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ChromaState {
+        ChromaApi chromaApi;
+        ChromaVectorStore store;
+        String collectionName;
+
+        @Setup(Level.Trial)
+        public void setUp(Corpus corpus) throws Exception {
+            chromaApi = ChromaApi.builder().baseUrl(System.getProperty("bench.chroma.url", "http://127.0.0.1:8000")).build();
+            collectionName = "bench_" + corpus.vectorCount + "_" + System.currentTimeMillis();
+            store = ChromaVectorStore.builder(chromaApi, corpus.embeddingModel)
+                    .tenantName("default_tenant")
+                    .databaseName("default_database")
+                    .collectionName(collectionName)
+                    .initializeSchema(true)
+                    .build();
+            store.afterPropertiesSet();
+            load(corpus.vectorCount, store::add);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            chromaApi.deleteCollection("default_tenant", "default_database", collectionName);
+        }
+    }
+
+    @Benchmark
+    public List<Document> flatSearch(Corpus corpus, FlatState flat) {
+        return flat.store.similaritySearch(corpus.nextRequest());
+    }
+
+    @Benchmark
+    public List<Document> chromaSearch(Corpus corpus, ChromaState chroma) {
+        return chroma.store.similaritySearch(corpus.nextRequest());
+    }
+
+    private static void load(int vectorCount, Consumer<List<Document>> writer) {
+        List<Document> batch = new ArrayList<>(LOAD_BATCH);
+        for (int i = 0; i < vectorCount; i++) {
+            batch.add(new Document("doc-" + i, "doc-" + i, Map.of("group", i % 10)));
+            if (batch.size() == LOAD_BATCH) {
+                writer.accept(batch);
+                batch = new ArrayList<>(LOAD_BATCH);
+            }
+        }
+        if (!batch.isEmpty()) {
+            writer.accept(batch);
+        }
+    }
+
+    /**
+     * 以文本为种子生成确定的随机向量
+     */
+    static class SeededEmbeddingModel implements EmbeddingModel {
+
+        private final int dimensions;
+
+        SeededEmbeddingModel(int dimensions) {
+            this.dimensions = dimensions;
+        }
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>(request.getInstructions().size());
+            for (String text : request.getInstructions()) {
+                Random random = new Random(text.hashCode());
+                float[] vector = new float[dimensions];
+                for (int i = 0; i < dimensions; i++) {
+                    vector[i] = (float) random.nextGaussian();
+                }
+                embeddings.add(new Embedding(vector, embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+
+        @Override
+        public int dimensions() {
+            return dimensions;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(VectorSearchBenchmark.class.getSimpleName()).build()).run();
+    }
+}
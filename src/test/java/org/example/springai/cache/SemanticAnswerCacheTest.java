@@ -0,0 +1,98 @@
+package org.example.springai.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.springai.config.RagProperties;
+import org.example.springai.ingest.CollectionChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 语义答案缓存测试类
+ */
+class SemanticAnswerCacheTest {
+
+    private RagProperties.AnswerCache settings;
+    private MutableClock clock;
+    private SemanticAnswerCache cache;
+
+    @BeforeEach
+    void setUp() {
+        settings = new RagProperties.AnswerCache();
+        settings.setSimilarityThreshold(0.9);
+        settings.setMaxEntriesPerCollection(2);
+        settings.setTtl(Duration.ofMinutes(10));
+        clock = new MutableClock();
+        cache = new SemanticAnswerCache(settings, new SimpleMeterRegistry(), clock);
+    }
+
+    @Test
+    void testSimilarQuestionHitsAndDissimilarMisses() {
+        cache.put("kb", cache.generation("kb"), "如何做拿铁", new float[]{1f, 0f, 0f}, "答案A", List.of("d1"));
+
+        SemanticAnswerCache.CachedAnswer hit = cache.lookup("kb", new float[]{0.98f, 0.1f, 0f}).orElseThrow();
+        assertEquals("答案A", hit.answer());
+        assertEquals(List.of("d1"), hit.sourceDocumentIds());
+        assertTrue(cache.lookup("kb", new float[]{0f, 1f, 0f}).isEmpty());
+        // 不同知识库互不影响
+        assertTrue(cache.lookup("other", new float[]{1f, 0f, 0f}).isEmpty());
+    }
+
+    @Test
+    void testCollectionChangeInvalidatesAndRejectsStalePut() {
+        long generation = cache.generation("kb");
+        cache.put("kb", generation, "q1", new float[]{1f, 0f}, "a1", List.of("d1"));
+
+        cache.onCollectionChanged(new CollectionChangedEvent("kb"));
+
+        assertTrue(cache.lookup("kb", new float[]{1f, 0f}).isEmpty());
+        // 变更前开始的回答不能再写入
+        cache.put("kb", generation, "q1", new float[]{1f, 0f}, "a1", List.of("d1"));
+        assertTrue(cache.lookup("kb", new float[]{1f, 0f}).isEmpty());
+    }
+
+    @Test
+    void testLruAndTtlEviction() {
+        long generation = cache.generation("kb");
+        cache.put("kb", generation, "q1", new float[]{1f, 0f, 0f}, "a1", List.of("d1"));
+        cache.put("kb", generation, "q2", new float[]{0f, 1f, 0f}, "a2", List.of("d2"));
+        // 访问q1后写入q3，淘汰最久未访问的q2
+        assertTrue(cache.lookup("kb", new float[]{1f, 0f, 0f}).isPresent());
+        cache.put("kb", generation, "q3", new float[]{0f, 0f, 1f}, "a3", List.of("d3"));
+        assertTrue(cache.lookup("kb", new float[]{0f, 1f, 0f}).isEmpty());
+        assertTrue(cache.lookup("kb", new float[]{0f, 0f, 1f}).isPresent());
+
+        clock.advance(Duration.ofMinutes(11));
+        assertTrue(cache.lookup("kb", new float[]{1f, 0f, 0f}).isEmpty());
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2025-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.example.springai.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 向量库注册表测试类
+ */
+class ChromaVectorStoreFactoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ChromaVectorStoreFactory factory;
+
+    @AfterEach
+    void tearDown() {
+        if (factory != null) {
+            factory.destroy();
+        }
+    }
+
+    @Test
+    void testConcurrentFirstAccessCreatesOneInstance() throws Exception {
+        factory = new ChromaVectorStoreFactory(null, new KeywordEmbeddingModel(), localProperties(4));
+        Set<VectorStore> instances = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return instances.add(factory.withVectorStore("coffee", store -> store));
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, instances.size());
+    }
+
+    @Test
+    void testEvictedStoreIsRestoredFromSnapshot() {
+        factory = new ChromaVectorStoreFactory(null, new KeywordEmbeddingModel(), localProperties(1));
+        VectorStore first = factory.getVectorStore("kb_a");
+        first.add(List.of(new Document("1", "latte milk", Map.of()), new Document("2", "green tea", Map.of())));
+        VectorStore firstInstance = factory.withVectorStore("kb_a", store -> store);
+
+        // 第二个知识库超出上限，淘汰最久未使用的kb_a（淘汰前写出快照）
+        factory.getVectorStore("kb_b").add(List.of(new Document("3", "espresso", Map.of())));
+        assertNotSame(firstInstance, factory.withVectorStore("kb_a", store -> store));
+
+        // 之前拿到的句柄仍然可用，转发到从快照恢复的新实例
+        List<Document> results = first.similaritySearch(SearchRequest.builder().query("latte").topK(1).build());
+        assertEquals("1", results.get(0).getId());
+    }
+
+    @Test
+    void testInvalidCollectionNameIsRejectedBeforeDiskAccess() throws Exception {
+        factory = new ChromaVectorStoreFactory(null, new KeywordEmbeddingModel(), localProperties(4));
+        Path outside = Files.createDirectories(tempDir.resolve("outside"));
+        Files.writeString(outside.resolve("keep.txt"), "keep");
+
+        for (String name : List.of("../outside", "..", "a", "kb/../x", "咖啡知识库", "x".repeat(64))) {
+            assertThrows(IllegalArgumentException.class, () -> factory.getVectorStore(name), name);
+            assertThrows(IllegalArgumentException.class, () -> factory.dropCollection(name), name);
+        }
+        assertTrue(Files.exists(outside.resolve("keep.txt")));
+    }
+
+    private RagProperties localProperties(int maxCachedCollections) {
+        RagProperties ragProperties = new RagProperties();
+        ragProperties.setDataDir(tempDir.toString());
+        ragProperties.getVectorStore().setDefaultBackend(RagProperties.Backend.HNSW);
+        ragProperties.getVectorStore().setMaxCachedCollections(maxCachedCollections);
+        ragProperties.getHybridSearch().setEnabled(false);
+        return ragProperties;
+    }
+
+    /**
+     * 按关键词出现次数生成向量
+     */
+    private static class KeywordEmbeddingModel implements EmbeddingModel {
+
+        private static final List<String> KEYWORDS = List.of("latte", "milk", "espresso", "green", "tea");
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions()) {
+                float[] vector = new float[KEYWORDS.size()];
+                for (int i = 0; i < KEYWORDS.size(); i++) {
+                    vector[i] = text.contains(KEYWORDS.get(i)) ? 1f : 0.01f;
+                }
+                embeddings.add(new Embedding(vector, embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+    }
+}
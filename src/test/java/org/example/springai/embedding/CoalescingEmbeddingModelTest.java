@@ -0,0 +1,89 @@
+package org.example.springai.embedding;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 向量化请求合并测试类
+ */
+class CoalescingEmbeddingModelTest {
+
+    @Test
+    void testConcurrentCallsAreMergedAndSplitBack() throws Exception {
+        RecordingEmbeddingModel delegate = new RecordingEmbeddingModel();
+        CoalescingEmbeddingModel model = new CoalescingEmbeddingModel(delegate, Duration.ofMillis(200), 4,
+                new SimpleMeterRegistry());
+
+        List<CompletableFuture<float[]>> futures = IntStream.range(0, 4)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> model.embed("text-" + i)))
+                .toList();
+        for (int i = 0; i < 4; i++) {
+            assertEquals(("text-" + i).length(), futures.get(i).get()[0]);
+        }
+        // 攒够4条后立即发出，只调用一次远程模型
+        assertEquals(List.of(4), delegate.batchSizes);
+        model.destroy();
+    }
+
+    @Test
+    void testLargeRequestsBypassCoalescing() {
+        RecordingEmbeddingModel delegate = new RecordingEmbeddingModel();
+        CoalescingEmbeddingModel model = new CoalescingEmbeddingModel(delegate, Duration.ofSeconds(10), 2,
+                new SimpleMeterRegistry());
+
+        List<float[]> vectors = model.embed(List.of("a", "bb", "ccc"));
+
+        assertEquals(3, vectors.size());
+        assertEquals(3, vectors.get(2)[0]);
+        assertEquals(List.of(3), delegate.batchSizes);
+        model.destroy();
+    }
+
+    @Test
+    void testWindowFlushesPartialBatch() {
+        RecordingEmbeddingModel delegate = new RecordingEmbeddingModel();
+        CoalescingEmbeddingModel model = new CoalescingEmbeddingModel(delegate, Duration.ofMillis(5), 10,
+                new SimpleMeterRegistry());
+
+        assertEquals(5, model.embed("hello")[0]);
+        assertEquals(List.of(1), delegate.batchSizes);
+        model.destroy();
+    }
+
+    /**
+     * 以文本长度作为向量，记录每次调用的条数
+     */
+    private static class RecordingEmbeddingModel implements EmbeddingModel {
+
+        private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            batchSizes.add(request.getInstructions().size());
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions()) {
+                embeddings.add(new Embedding(new float[]{text.length()}, embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.example.springai.embedding;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 向量磁盘缓存测试类
+ */
+class MappedEmbeddingStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testVectorsSurviveReopen() throws Exception {
+        MappedEmbeddingStore store = new MappedEmbeddingStore(tempDir, 4096, 4, () -> { });
+        store.put(key(1), new float[]{0.1f, 0.2f, 0.3f});
+        store.put(key(2), new float[]{1f, 2f, 3f});
+        store.close();
+
+        MappedEmbeddingStore reopened = new MappedEmbeddingStore(tempDir, 4096, 4, () -> { });
+        assertEquals(2, reopened.size());
+        assertArrayEquals(new float[]{0.1f, 0.2f, 0.3f}, reopened.get(key(1)));
+        assertArrayEquals(new float[]{1f, 2f, 3f}, reopened.get(key(2)));
+        assertNull(reopened.get(key(3)));
+    }
+
+    @Test
+    void testOldestSegmentIsRecycled() throws Exception {
+        AtomicInteger evictions = new AtomicInteger();
+        // 每条记录 32 + 4 * 4 = 48 字节，每个段可以放 (200 - 24) / 48 = 3 条
+        MappedEmbeddingStore store = new MappedEmbeddingStore(tempDir, 200, 2, evictions::incrementAndGet);
+        for (int i = 0; i < 7; i++) {
+            store.put(key(i), new float[]{i, i, i, i});
+        }
+
+        assertEquals(3, evictions.get());
+        assertNull(store.get(key(0)));
+        assertArrayEquals(new float[]{6, 6, 6, 6}, store.get(key(6)));
+        assertEquals(4, store.size());
+    }
+
+    private static byte[] key(int value) {
+        byte[] key = new byte[32];
+        key[0] = (byte) value;
+        key[31] = 1;
+        return key;
+    }
+}
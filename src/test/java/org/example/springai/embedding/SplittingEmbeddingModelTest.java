@@ -0,0 +1,68 @@
+package org.example.springai.embedding;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 向量化请求按条数上限拆分测试类
+ */
+class SplittingEmbeddingModelTest {
+
+    @Test
+    void testLargeRequestIsSplitAtProviderLimit() {
+        RecordingEmbeddingModel delegate = new RecordingEmbeddingModel();
+        SplittingEmbeddingModel model = new SplittingEmbeddingModel(delegate, 10);
+
+        List<String> texts = IntStream.range(0, 32).mapToObj("x"::repeat).toList();
+        List<float[]> vectors = model.embed(texts);
+
+        assertEquals(List.of(10, 10, 10, 2), delegate.batchSizes);
+        assertEquals(32, vectors.size());
+        for (int i = 0; i < texts.size(); i++) {
+            assertEquals(i, vectors.get(i)[0]);
+        }
+    }
+
+    @Test
+    void testSmallRequestIsPassedThrough() {
+        RecordingEmbeddingModel delegate = new RecordingEmbeddingModel();
+        SplittingEmbeddingModel model = new SplittingEmbeddingModel(delegate, 10);
+
+        model.embed(List.of("a", "bb"));
+
+        assertEquals(List.of(2), delegate.batchSizes);
+    }
+
+    /**
+     * 以文本长度作为向量，记录每次调用的条数
+     */
+    private static class RecordingEmbeddingModel implements EmbeddingModel {
+
+        private final List<Integer> batchSizes = new ArrayList<>();
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            batchSizes.add(request.getInstructions().size());
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions()) {
+                embeddings.add(new Embedding(new float[]{text.length()}, embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.example.springai.execution;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.springai.config.RagProperties;
+import org.example.springai.http.DependencyUnavailableException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 准入控制测试类
+ */
+class AdmissionControllerTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private RagProperties.Admission settings;
+    private AdmissionController admissionController;
+
+    @BeforeEach
+    void setUp() {
+        settings = new RagProperties.Admission();
+        settings.setDefaultModel(new RagProperties.BucketSettings(1000, 1000));
+        settings.setConversation(new RagProperties.BucketSettings(100, 1));
+        settings.setInteractiveMaxWait(Duration.ofSeconds(10));
+        admissionController = new AdmissionController(settings, meterRegistry, "chat", 3000, now::get);
+    }
+
+    @AfterEach
+    void tearDown() {
+        admissionController.destroy();
+    }
+
+    @Test
+    void testInteractiveServedBeforeBulk() {
+        assertTrue(admissionController.admit("embedding", 1000, AdmissionController.Priority.BULK, List.of()).isDone());
+
+        CompletableFuture<Void> bulk = admissionController.admit("embedding", 500, AdmissionController.Priority.BULK, List.of());
+        CompletableFuture<Void> interactive = admissionController.admit("embedding", 500,
+                AdmissionController.Priority.INTERACTIVE, List.of());
+        assertEquals(2, admissionController.queueDepth("embedding"));
+
+        // 补充的500个令牌先给后到的交互式请求
+        now.addAndGet(Duration.ofMillis(500).toNanos());
+        admissionController.dispatchAll();
+        assertTrue(interactive.isDone());
+        assertFalse(bulk.isDone());
+
+        now.addAndGet(Duration.ofMillis(500).toNanos());
+        admissionController.dispatchAll();
+        assertTrue(bulk.isDone());
+        assertEquals(0, admissionController.queueDepth("embedding"));
+    }
+
+    @Test
+    void testRejectsClientOverRate() {
+        List<String> client = List.of("conversation:a");
+        assertTrue(admissionController.admit("chat", 100, AdmissionController.Priority.INTERACTIVE, client).isDone());
+
+        // 会话桶每秒补充1个令牌，等待100秒超过10秒上限，直接拒绝
+        CompletableFuture<Void> rejected = admissionController.admit("chat", 100, AdmissionController.Priority.INTERACTIVE, client);
+        ExecutionException e = assertThrows(ExecutionException.class, rejected::get);
+        assertInstanceOf(RateLimitedException.class, e.getCause());
+        assertEquals(1.0, meterRegistry.counter("rag.admission.rejected", "model", "chat", "reason", "client_rate").count());
+
+        // 其他会话不受影响
+        assertTrue(admissionController.admit("chat", 100, AdmissionController.Priority.INTERACTIVE,
+                List.of("conversation:b")).isDone());
+    }
+
+    @Test
+    void testClientBucketsStayWithinLimit() throws Exception {
+        settings.setMaxClients(4);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String client = "conversation:" + i;
+                futures.add(executor.submit(() -> admissionController.admit("chat", 10,
+                        AdmissionController.Priority.INTERACTIVE, List.of(client))));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(admissionController.clientCount() <= 4);
+    }
+
+    @Test
+    void testRefundRagReturnsModelTokens() {
+        settings.setDefaultModel(new RagProperties.BucketSettings(5000, 1));
+        assertTrue(admissionController.admitRag(null, null, "拿铁是什么").isDone());
+        CompletableFuture<Void> queued = admissionController.admitRag(null, null, "拿铁是什么");
+        assertFalse(queued.isDone());
+
+        // 第一个请求命中缓存没有调用模型，归还的令牌发给排队的请求
+        admissionController.refundRag("拿铁是什么");
+        assertTrue(queued.isDone());
+        assertEquals(0, admissionController.queueDepth("chat"));
+    }
+
+    @Test
+    void testRejectsWhenQueueIsFull() {
+        settings.setMaxQueuedPerModel(1);
+        assertTrue(admissionController.admit("chat", 1000, AdmissionController.Priority.INTERACTIVE, List.of()).isDone());
+        assertFalse(admissionController.admit("chat", 10, AdmissionController.Priority.INTERACTIVE, List.of()).isDone());
+
+        CompletableFuture<Void> rejected = admissionController.admit("chat", 10, AdmissionController.Priority.INTERACTIVE, List.of());
+        ExecutionException e = assertThrows(ExecutionException.class, rejected::get);
+        assertInstanceOf(DependencyUnavailableException.class, e.getCause());
+    }
+}
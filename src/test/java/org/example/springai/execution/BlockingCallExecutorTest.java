@@ -0,0 +1,100 @@
+package org.example.springai.execution;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.springai.config.RagProperties;
+import org.example.springai.http.DependencyUnavailableException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 阻塞调用执行器测试类
+ */
+class BlockingCallExecutorTest {
+
+    private BlockingCallExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        executor.destroy();
+    }
+
+    @Test
+    void testRejectsWhenQueueIsFull() throws Exception {
+        executor = newExecutor(2, 1, Duration.ofSeconds(5));
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        // 2个执行 + 1个排队
+        for (int i = 0; i < 3; i++) {
+            futures.add(executor.submit("slow", () -> await(release)));
+        }
+        waitUntil(() -> executor.limit("slow").activeCalls() == 2);
+        assertEquals(1, executor.limit("slow").queuedCalls());
+
+        assertThrows(DependencyUnavailableException.class, () -> executor.submit("slow", () -> "rejected"));
+        assertEquals(1, executor.limit("slow").rejectedCalls());
+        // 其他模型不受影响
+        assertEquals("other", executor.submit("other", () -> "other").get(5, TimeUnit.SECONDS));
+
+        release.countDown();
+        for (CompletableFuture<String> future : futures) {
+            assertEquals("done", future.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(0, executor.limit("slow").activeCalls());
+        assertEquals(0, executor.limit("slow").queuedCalls());
+    }
+
+    @Test
+    void testRejectsAfterMaxWait() throws Exception {
+        executor = newExecutor(1, 10, Duration.ofMillis(50));
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> running = executor.submit("slow", () -> await(release));
+        waitUntil(() -> executor.limit("slow").activeCalls() == 1);
+
+        CompletableFuture<String> waiting = executor.submit("slow", () -> "late");
+        ExecutionException e = assertThrows(ExecutionException.class, () -> waiting.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(DependencyUnavailableException.class, e.getCause());
+
+        release.countDown();
+        assertEquals("done", running.get(5, TimeUnit.SECONDS));
+        assertEquals(0, executor.limit("slow").queuedCalls());
+    }
+
+    private static BlockingCallExecutor newExecutor(int maxConcurrentCalls, int maxQueued, Duration maxWait) {
+        RagProperties ragProperties = new RagProperties();
+        ragProperties.getExecution().setMode(RagProperties.ExecutionMode.PLATFORM);
+        ragProperties.getExecution().setPlatformThreads(8);
+        RagProperties.ModelLimit limit = ragProperties.getExecution().getDefaultLimit();
+        limit.setMaxConcurrentCalls(maxConcurrentCalls);
+        limit.setMaxQueued(maxQueued);
+        limit.setMaxWait(maxWait);
+        return new BlockingCallExecutor(ragProperties, new SimpleMeterRegistry(), "default");
+    }
+
+    private static String await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "done";
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "等待超时");
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.example.springai.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 熔断器测试类
+ */
+class CircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void testOpensAtFailureRateAndRecoversThroughHalfOpen() {
+        CircuitBreaker breaker = new CircuitBreaker(0.5, 10, 4, Duration.ofSeconds(30).toNanos(), 2, now::get);
+
+        // 调用数不足minimumCalls时不打开
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onFailure();
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire());
+
+        // 打开时长过后放行2次试探调用，第3次拒绝
+        now.addAndGet(Duration.ofSeconds(31).toNanos());
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        breaker.onSuccess();
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(0.0, breaker.failureRate());
+    }
+
+    @Test
+    void testHalfOpenFailureReopensAndCancelReturnsPermit() {
+        CircuitBreaker breaker = new CircuitBreaker(0.5, 4, 2, 1000, 1, now::get);
+        breaker.tryAcquire();
+        breaker.onFailure();
+        breaker.tryAcquire();
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+
+        now.addAndGet(1000);
+        assertTrue(breaker.tryAcquire());
+        breaker.onIgnored();
+        assertTrue(breaker.tryAcquire(), "取消的试探调用应归还名额");
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(2, breaker.openCount());
+    }
+
+    @Test
+    void testSlidingWindowForgetsOldFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(0.5, 4, 4, 1000, 1, now::get);
+        breaker.tryAcquire();
+        breaker.onFailure();
+        for (int i = 0; i < 4; i++) {
+            breaker.tryAcquire();
+            breaker.onSuccess();
+        }
+        assertEquals(0.0, breaker.failureRate());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void testBulkheadRejectsWhenFull() {
+        Bulkhead bulkhead = new Bulkhead(1, Duration.ZERO);
+        assertTrue(bulkhead.tryAcquire());
+        assertFalse(bulkhead.tryAcquire());
+        assertEquals(1, bulkhead.rejectedCalls());
+        bulkhead.release();
+        assertTrue(bulkhead.tryAcquire());
+    }
+}
@@ -0,0 +1,59 @@
+package org.example.springai.ingest;
+
+import org.example.springai.config.RagProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 分片哈希索引测试类
+ */
+class ContentHashIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testHashIgnoresWhitespaceDifferences() {
+        assertEquals(ContentHashIndex.hash("咖啡豆  需要\n避光保存。"), ContentHashIndex.hash(" 咖啡豆 需要 避光保存。 "));
+        assertNotEquals(ContentHashIndex.hash("咖啡豆需要避光保存。"), ContentHashIndex.hash("咖啡豆需要冷藏保存。"));
+    }
+
+    @Test
+    void testDocumentIdIsDeterministic() {
+        String hash = ContentHashIndex.hash("内容");
+        assertEquals(ContentHashIndex.documentId("coffee", "a.pdf", hash), ContentHashIndex.documentId("coffee", "a.pdf", hash));
+        assertNotEquals(ContentHashIndex.documentId("coffee", "a.pdf", hash), ContentHashIndex.documentId("coffee", "b.pdf", hash));
+    }
+
+    @Test
+    void testHashesArePersistedPerCollection() {
+        RagProperties properties = new RagProperties();
+        properties.setDataDir(tempDir.toString());
+
+        ContentHashIndex index = new ContentHashIndex(properties);
+        index.putHashes("coffee", "a.pdf", Set.of("h1", "h2"));
+
+        // 重新创建索引，模拟应用重启
+        ContentHashIndex reloaded = new ContentHashIndex(properties);
+        assertEquals(Set.of("h1", "h2"), reloaded.getHashes("coffee", "a.pdf"));
+        assertTrue(reloaded.getHashes("other", "a.pdf").isEmpty());
+
+        reloaded.dropCollection("coffee");
+        assertTrue(new ContentHashIndex(properties).getHashes("coffee", "a.pdf").isEmpty());
+    }
+
+    @Test
+    void testInvalidCollectionNameIsRejected() {
+        RagProperties properties = new RagProperties();
+        properties.setDataDir(tempDir.toString());
+        ContentHashIndex index = new ContentHashIndex(properties);
+
+        assertThrows(IllegalArgumentException.class, () -> index.putHashes("../coffee", "a.pdf", Set.of("h1")));
+        assertThrows(IllegalArgumentException.class, () -> index.dropCollection("../../etc/passwd"));
+    }
+}
@@ -0,0 +1,108 @@
+package org.example.springai.ingest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.springai.config.ChromaVectorStoreFactory;
+import org.example.springai.config.RagProperties;
+import org.example.springai.model.IngestionResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 文档入库流水线测试类
+ */
+class DocumentIngestionPipelineTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final RecordingVectorStore vectorStore = new RecordingVectorStore();
+    private ChromaVectorStoreFactory factory;
+    private DocumentIngestionPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        RagProperties ragProperties = new RagProperties();
+        ragProperties.setDataDir(tempDir.toString());
+        factory = new ChromaVectorStoreFactory(null, null, ragProperties) {
+            @Override
+            public VectorStore getVectorStore(String collectionName) {
+                return vectorStore;
+            }
+        };
+        pipeline = new DocumentIngestionPipeline(factory, ragProperties, new SimpleMeterRegistry(),
+                new ContentHashIndex(ragProperties), event -> { });
+    }
+
+    @AfterEach
+    void tearDown() {
+        factory.destroy();
+    }
+
+    @Test
+    void testDocumentsWithoutIdAreOnlyAppended() {
+        pipeline.ingestText("拿铁是意式浓缩加牛奶", "默认标题", Map.of("title", "默认标题"), "coffee");
+        IngestionResult second = pipeline.ingestText("美式是意式浓缩加水", "默认标题", Map.of("title", "默认标题"), "coffee");
+
+        // 标题相同的两次入库是不同的文档，第二次不会删除第一次的分片
+        assertEquals(0, second.getDeletedChunks());
+        assertTrue(vectorStore.deleted.isEmpty());
+        assertEquals(2, vectorStore.stored.size());
+    }
+
+    @Test
+    void testDocumentIdReplacesPreviousChunks() {
+        Map<String, Object> metadata = Map.of(DocumentIngestionPipeline.DOCUMENT_ID, "menu");
+        pipeline.ingestText("拿铁是意式浓缩加牛奶", "菜单", metadata, "coffee");
+        IngestionResult unchanged = pipeline.ingestText("拿铁是意式浓缩加牛奶", "菜单", metadata, "coffee");
+        assertEquals(1, unchanged.getReusedChunks());
+        assertEquals(0, unchanged.getAddedChunks());
+
+        IngestionResult replaced = pipeline.ingestText("美式是意式浓缩加水", "菜单", metadata, "coffee");
+        assertEquals(1, replaced.getAddedChunks());
+        assertEquals(1, replaced.getDeletedChunks());
+        assertEquals(1, vectorStore.stored.size());
+    }
+
+    /**
+     * 只记录写入和删除的向量库
+     */
+    private static class RecordingVectorStore implements VectorStore {
+
+        private final Map<String, Document> stored = new ConcurrentHashMap<>();
+        private final Set<String> deleted = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public void add(List<Document> documents) {
+            documents.forEach(document -> stored.put(document.getId(), document));
+        }
+
+        @Override
+        public void delete(List<String> idList) {
+            idList.forEach(stored::remove);
+            deleted.addAll(idList);
+        }
+
+        @Override
+        public void delete(Filter.Expression filterExpression) {
+        }
+
+        @Override
+        public List<Document> similaritySearch(SearchRequest request) {
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.example.springai.ingest;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 流式分片器测试类
+ */
+class TextChunkerTest {
+
+    private final TokenCountEstimator estimator = new JTokkitTokenCountEstimator();
+
+    @Test
+    void testShortTextProducesSingleChunk() {
+        List<String> chunks = new ArrayList<>();
+        TextChunker chunker = new TextChunker(100, 10, estimator, chunks::add);
+        chunker.append("咖啡豆需要避光保存。开封后尽快饮用。");
+        chunker.finish();
+
+        assertEquals(1, chunks.size());
+        assertEquals("咖啡豆需要避光保存。开封后尽快饮用。", chunks.get(0));
+    }
+
+    @Test
+    void testLongTextRespectsChunkSizeAndOverlap() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("第").append(i).append("句话描述了咖啡的烘焙程度和风味特点。");
+        }
+        List<String> chunks = new ArrayList<>();
+        TextChunker chunker = new TextChunker(128, 48, estimator, chunks::add);
+        // 模拟Tika分多次回调写入
+        char[] chars = text.toString().toCharArray();
+        for (int i = 0; i < chars.length; i += 37) {
+            chunker.append(chars, i, Math.min(37, chars.length - i));
+        }
+        chunker.finish();
+
+        assertTrue(chunks.size() > 1);
+        for (String chunk : chunks) {
+            assertTrue(estimator.estimate(chunk) <= 128, "分片超过token上限：" + chunk);
+        }
+        // 相邻分片有重叠：后一个分片以前一个分片的最后一句开头
+        for (int i = 1; i < chunks.size(); i++) {
+            String previous = chunks.get(i - 1);
+            String lastSentence = previous.substring(previous.lastIndexOf('第'));
+            assertTrue(chunks.get(i).startsWith(lastSentence));
+        }
+        // 所有句子都被输出
+        assertTrue(chunks.get(chunks.size() - 1).endsWith("第199句话描述了咖啡的烘焙程度和风味特点。"));
+    }
+
+    @Test
+    void testOversizedSentenceIsSplit() {
+        String longSentence = "咖啡".repeat(500);
+        List<String> chunks = new ArrayList<>();
+        TextChunker chunker = new TextChunker(50, 0, estimator, chunks::add);
+        chunker.append(longSentence);
+        chunker.finish();
+
+        assertTrue(chunks.size() > 1);
+        assertEquals(longSentence, String.join("", chunks));
+    }
+
+    @Test
+    void testInvalidOverlapRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new TextChunker(10, 10, estimator, chunk -> { }));
+    }
+}
@@ -0,0 +1,221 @@
+package org.example.springai.memory;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.springai.config.RagProperties;
+import org.example.springai.execution.AdmissionController;
+import org.example.springai.execution.BlockingCallExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.advisor.PromptChatMemoryAdvisor;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.InMemoryChatMemoryRepository;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 滚动摘要会话记忆测试类
+ */
+class CompactingChatMemoryTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger summarizeCalls = new AtomicInteger();
+    private BlockingCallExecutor executor;
+    private AdmissionController admissionController;
+    private CompactingChatMemory chatMemory;
+
+    @BeforeEach
+    void setUp() {
+        RagProperties ragProperties = new RagProperties();
+        ragProperties.getAdmission().setEnabled(false);
+        RagProperties.Compaction compaction = ragProperties.getMemory().getCompaction();
+        compaction.setEnabled(true);
+        compaction.setTriggerTokens(200);
+        compaction.setKeepRecentMessages(4);
+        executor = new BlockingCallExecutor(ragProperties, meterRegistry, "stub");
+        admissionController = new AdmissionController(ragProperties, meterRegistry, "stub");
+        chatMemory = new CompactingChatMemory(new InMemoryChatMemoryRepository(), summarizer(), executor,
+                admissionController, "stub", ragProperties.getMemory(), meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.destroy();
+        admissionController.destroy();
+    }
+
+    @Test
+    void testShortHistoryIsNotCompacted() {
+        chatMemory.add("c1", List.of(new UserMessage("你好"), new AssistantMessage("你好，有什么可以帮你？")));
+        assertEquals(2, chatMemory.get("c1").size());
+        assertEquals(0, summarizeCalls.get());
+    }
+
+    @Test
+    void testCompactionRunsInBackgroundAndKeepsRecentTurns() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            chatMemory.add("c1", List.of(new UserMessage(longText("问题" + i))));
+            chatMemory.add("c1", List.of(new AssistantMessage(longText("回答" + i))));
+        }
+        // 第6条消息后超过阈值开始压缩前两条；摘要未完成时请求不等待，仍读到完整历史
+        awaitSummarizeCall();
+        assertEquals(10, chatMemory.get("c1").size());
+        assertEquals(1, summarizeCalls.get(), "同一会话同时只进行一次压缩");
+
+        // 压缩期间新增的消息不会被摘要覆盖
+        chatMemory.add("c1", List.of(new UserMessage("最后一个问题")));
+        release.countDown();
+        awaitCompactions(1);
+
+        List<Message> history = chatMemory.get("c1");
+        assertEquals(MessageType.SYSTEM, history.get(0).getMessageType());
+        assertTrue(history.get(0).getText().startsWith(CompactingChatMemory.SUMMARY_PREFIX));
+        assertEquals(10, history.size());
+        assertEquals(longText("问题1"), history.get(1).getText());
+        assertEquals("最后一个问题", history.get(9).getText());
+
+        double before = meterRegistry.summary("rag.memory.compaction.tokens", "stage", "before").totalAmount();
+        double after = meterRegistry.summary("rag.memory.compaction.tokens", "stage", "after").totalAmount();
+        assertTrue(after < before);
+        // 读取历史不记录发送量，只在构建prompt时记录
+        assertEquals(0, meterRegistry.summary("rag.memory.history.tokens", "stage", "sent").count());
+    }
+
+    @Test
+    void testSummaryReachesPromptThroughMemoryAdvisor() throws Exception {
+        release.countDown();
+        for (int i = 0; i < 3; i++) {
+            chatMemory.add("c1", List.of(new UserMessage(longText("问题" + i)), new AssistantMessage(longText("回答" + i))));
+        }
+        awaitCompactions(1);
+
+        AtomicReference<Prompt> captured = new AtomicReference<>();
+        ChatModel chatModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                captured.set(prompt);
+                return new ChatResponse(List.of(new Generation(new AssistantMessage("好的"))));
+            }
+        };
+        ChatClient.builder(chatModel)
+                .defaultSystem("你是咖啡助手")
+                .defaultAdvisors(PromptChatMemoryAdvisor.builder(chatMemory).build(),
+                        new ConversationSummaryAdvisor(chatMemory))
+                .build()
+                .prompt()
+                .user("还有别的区别吗")
+                .advisors(advisor -> advisor.param(ChatMemory.CONVERSATION_ID, "c1"))
+                .call()
+                .content();
+
+        String system = captured.get().getSystemMessage().getText();
+        assertTrue(system.contains("你是咖啡助手"));
+        assertTrue(system.contains(CompactingChatMemory.SUMMARY_PREFIX + "用户在比较拿铁和卡布奇诺"));
+        assertTrue(system.contains(longText("问题2")), "最近的对话仍由记忆advisor渲染");
+        assertFalse(system.contains(longText("问题0")), "被总结的对话不再发送");
+
+        // 每次请求记录一次，发送量包含摘要
+        assertEquals(1, meterRegistry.summary("rag.memory.history.tokens", "stage", "sent").count());
+        double sent = meterRegistry.summary("rag.memory.history.tokens", "stage", "sent").max();
+        double uncompacted = meterRegistry.summary("rag.memory.history.tokens", "stage", "uncompacted").max();
+        assertTrue(sent < uncompacted);
+    }
+
+    @Test
+    void testZeroKeepRecentMessagesKeepsLastQuestion() {
+        release.countDown();
+        RagProperties ragProperties = new RagProperties();
+        ragProperties.getMemory().getCompaction().setTriggerTokens(10);
+        ragProperties.getMemory().getCompaction().setKeepRecentMessages(0);
+        InMemoryChatMemoryRepository repository = new InMemoryChatMemoryRepository();
+        CompactingChatMemory memory = new CompactingChatMemory(repository, summarizer(), executor,
+                admissionController, "stub", ragProperties.getMemory(), meterRegistry);
+        List<Message> history = List.of(new UserMessage(longText("问题")), new AssistantMessage(longText("回答")),
+                new UserMessage("追问"));
+        repository.saveAll("c1", history);
+
+        memory.maybeCompact("c1", history).join();
+
+        List<Message> compacted = memory.get("c1");
+        assertEquals(2, compacted.size());
+        assertEquals(MessageType.SYSTEM, compacted.get(0).getMessageType());
+        assertEquals("追问", compacted.get(1).getText());
+    }
+
+    @Test
+    void testFailedSummaryKeepsHistory() {
+        ChatModel failing = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                throw new IllegalStateException("模型不可用");
+            }
+        };
+        RagProperties ragProperties = new RagProperties();
+        ragProperties.getMemory().getCompaction().setTriggerTokens(10);
+        ragProperties.getMemory().getCompaction().setKeepRecentMessages(1);
+        CompactingChatMemory memory = new CompactingChatMemory(new InMemoryChatMemoryRepository(), failing, executor,
+                admissionController, "stub", ragProperties.getMemory(), meterRegistry);
+        memory.add("c1", List.of(new UserMessage(longText("问题")), new AssistantMessage(longText("回答"))));
+        CompletableFuture<Void> compaction = memory.maybeCompact("c1", List.of(new UserMessage(longText("问题")),
+                new AssistantMessage(longText("回答")), new UserMessage("追问")));
+        compaction.join();
+        assertEquals(2, memory.get("c1").size());
+        assertTrue(meterRegistry.counter("rag.memory.compactions", "result", "failure").count() >= 1);
+    }
+
+    /**
+     * 摘要模型等待release后才返回，模拟较慢的摘要调用
+     */
+    private ChatModel summarizer() {
+        return new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                summarizeCalls.incrementAndGet();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new ChatResponse(List.of(new Generation(new AssistantMessage("用户在比较拿铁和卡布奇诺"))));
+            }
+        };
+    }
+
+    private void awaitSummarizeCall() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (summarizeCalls.get() == 0) {
+            assertTrue(System.nanoTime() < deadline, "等待超时");
+            Thread.sleep(5);
+        }
+    }
+
+    private void awaitCompactions(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meterRegistry.counter("rag.memory.compactions", "result", "success").count() < count) {
+            assertTrue(System.nanoTime() < deadline, "等待超时");
+            Thread.sleep(5);
+        }
+    }
+
+    private static String longText(String prefix) {
+        return prefix + "：拿铁和卡布奇诺都是意式浓缩加牛奶，区别在于奶泡的厚度和牛奶的比例。".repeat(3);
+    }
+}
@@ -0,0 +1,196 @@
+package org.example.springai.memory;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.example.springai.config.RagProperties;
+import org.example.springai.mapper.ChatMemoryMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.SqlSessionFactoryBean;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 两层会话记忆存储测试类（H2内嵌数据库）
+ */
+class TieredChatMemoryRepositoryTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private EmbeddedDatabase dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TieredChatMemoryRepository repository;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName("memory-" + UUID.randomUUID())
+                .build();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE chat_memory_message (conversation_id VARCHAR(64) NOT NULL, seq INT NOT NULL, "
+                + "message_type VARCHAR(16) NOT NULL, content CLOB NOT NULL, updated_at BIGINT NOT NULL, "
+                + "PRIMARY KEY (conversation_id, seq))");
+
+        RagProperties ragProperties = new RagProperties();
+        // 测试中手动flush，淘汰由上限触发
+        ragProperties.getMemory().setFlushInterval(Duration.ofHours(1));
+        ragProperties.getMemory().setFlushBatchSize(1000);
+        ragProperties.getMemory().setMaxConversations(10);
+        repository = new TieredChatMemoryRepository(mapper(), new DataSourceTransactionManager(dataSource),
+                ragProperties, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.destroy();
+        dataSource.shutdown();
+    }
+
+    @Test
+    void testWriteBehindKeepsOnlyLatestSnapshot() {
+        repository.saveAll("c1", List.of(new UserMessage("你好")));
+        repository.saveAll("c1", List.of(new UserMessage("你好"), new AssistantMessage("你好，有什么可以帮你？")));
+        assertEquals(0, rowCount("c1"));
+        assertEquals(1, repository.pendingConversations());
+
+        repository.flush();
+        assertEquals(2, rowCount("c1"));
+        assertEquals(0, repository.pendingConversations());
+        assertEquals(List.of("c1"), repository.findConversationIds());
+    }
+
+    @Test
+    void testEvictedConversationIsLoadedFromDatabase() {
+        for (int i = 0; i < 20; i++) {
+            repository.saveAll("c" + i, List.of(new UserMessage("问题" + i), new AssistantMessage("回答" + i)));
+        }
+        assertTrue(repository.hotConversations() <= 10);
+
+        // 未写入的会话淘汰后从待写入队列读取
+        List<Message> beforeFlush = repository.findByConversationId("c0");
+        assertEquals("回答0", beforeFlush.get(1).getText());
+
+        repository.flush();
+        for (int i = 20; i < 40; i++) {
+            repository.saveAll("c" + i, List.of(new UserMessage("问题" + i)));
+        }
+        double loadsBefore = meterRegistry.counter("rag.memory.loads").count();
+        List<Message> reloaded = repository.findByConversationId("c1");
+        assertEquals(2, reloaded.size());
+        assertEquals("问题1", reloaded.get(0).getText());
+        assertInstanceOf(AssistantMessage.class, reloaded.get(1));
+        assertEquals(loadsBefore + 1, meterRegistry.counter("rag.memory.loads").count());
+        // 会话列表合并数据库和待写入的会话
+        assertEquals(40, repository.findConversationIds().size());
+    }
+
+    @Test
+    void testDeleteRemovesPersistedMessages() {
+        repository.saveAll("c1", List.of(new UserMessage("你好")));
+        repository.flush();
+        assertEquals(1, rowCount("c1"));
+
+        repository.deleteByConversationId("c1");
+        assertTrue(repository.findByConversationId("c1").isEmpty());
+        assertFalse(repository.findConversationIds().contains("c1"));
+
+        repository.flush();
+        assertEquals(0, rowCount("c1"));
+        assertTrue(repository.findConversationIds().isEmpty());
+    }
+
+    @Test
+    void testDatabaseFailureFallsBackToEmptyHistory() {
+        jdbcTemplate.execute("DROP TABLE chat_memory_message");
+
+        assertTrue(repository.findByConversationId("c1").isEmpty());
+        assertEquals(1.0, meterRegistry.counter("rag.memory.load.failures").count());
+        // 失败后以未加载的空会话放入内存层，重试间隔内的读写不再访问数据库，也不写库
+        repository.saveAll("c1", List.of(new UserMessage("你好")));
+        assertEquals(1, repository.findByConversationId("c1").size());
+        assertEquals(List.of("c1"), repository.findConversationIds());
+        assertEquals(1.0, meterRegistry.counter("rag.memory.loads").count());
+        assertEquals(0, repository.pendingConversations());
+    }
+
+    @Test
+    void testFailedLoadDoesNotOverwriteStoredHistory() throws Exception {
+        repository.saveAll("c1", List.of(new UserMessage("问题"), new AssistantMessage("回答")));
+        repository.flush();
+
+        RagProperties ragProperties = new RagProperties();
+        ragProperties.getMemory().setFlushInterval(Duration.ofMillis(50));
+        TieredChatMemoryRepository restarted = new TieredChatMemoryRepository(mapper(),
+                new DataSourceTransactionManager(dataSource), ragProperties, meterRegistry);
+        try {
+            jdbcTemplate.execute("ALTER TABLE chat_memory_message RENAME TO chat_memory_message_bak");
+            assertTrue(restarted.findByConversationId("c1").isEmpty());
+            restarted.saveAll("c1", List.of(new UserMessage("新问题")));
+            assertEquals(0, restarted.pendingConversations());
+
+            // 数据库恢复后重新读取，加载失败期间新增的消息接在已有历史之后
+            jdbcTemplate.execute("ALTER TABLE chat_memory_message_bak RENAME TO chat_memory_message");
+            Thread.sleep(100);
+            List<Message> history = restarted.findByConversationId("c1");
+            assertEquals(3, history.size());
+            assertEquals("问题", history.get(0).getText());
+            assertEquals("新问题", history.get(2).getText());
+
+            restarted.flush();
+            assertEquals(3, rowCount("c1"));
+        } finally {
+            restarted.destroy();
+        }
+    }
+
+    @Test
+    void testPendingQueueIsBounded() throws Exception {
+        RagProperties ragProperties = new RagProperties();
+        ragProperties.getMemory().setFlushInterval(Duration.ofHours(1));
+        ragProperties.getMemory().setFlushBatchSize(1000);
+        ragProperties.getMemory().setMaxPending(5);
+        TieredChatMemoryRepository bounded = new TieredChatMemoryRepository(mapper(),
+                new DataSourceTransactionManager(dataSource), ragProperties, meterRegistry);
+        try {
+            for (int i = 0; i < 8; i++) {
+                bounded.saveAll("c" + i, List.of(new UserMessage("问题" + i)));
+            }
+            assertEquals(5, bounded.pendingConversations());
+            assertEquals(3.0, meterRegistry.counter("rag.memory.pending.dropped").count());
+            // 已排队的会话仍可更新，超出的会话保留在内存层
+            bounded.saveAll("c0", List.of(new UserMessage("问题0"), new AssistantMessage("回答0")));
+            assertEquals(5, bounded.pendingConversations());
+            assertEquals(1, bounded.findByConversationId("c7").size());
+        } finally {
+            bounded.destroy();
+        }
+    }
+
+    private ChatMemoryMapper mapper() throws Exception {
+        SqlSessionFactoryBean factoryBean = new SqlSessionFactoryBean();
+        factoryBean.setDataSource(dataSource);
+        factoryBean.setMapperLocations(new ClassPathResource("mapper/ChatMemoryMapper.xml"));
+        SqlSessionFactory sqlSessionFactory = factoryBean.getObject();
+        return new SqlSessionTemplate(sqlSessionFactory).getMapper(ChatMemoryMapper.class);
+    }
+
+    private int rowCount(String conversationId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM chat_memory_message WHERE conversation_id = ?",
+                Integer.class, conversationId);
+    }
+}
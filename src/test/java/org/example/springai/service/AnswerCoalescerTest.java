@@ -0,0 +1,170 @@
+package org.example.springai.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.springai.config.RagProperties;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 问答请求合并测试类
+ */
+class AnswerCoalescerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AnswerCoalescer coalescer = new AnswerCoalescer(new RagProperties(), meterRegistry);
+
+    @Test
+    void testKeyNormalizesQuestion() {
+        assertEquals(AnswerCoalescer.key("advisor", "kb", "如何 冲泡  拿铁？"),
+                AnswerCoalescer.key("advisor", "kb", "  如何 冲泡 拿铁 "));
+        assertEquals(AnswerCoalescer.key("advisor", "kb", "What is Espresso?"),
+                AnswerCoalescer.key("advisor", "kb", "what is espresso"));
+        assertNotEquals(AnswerCoalescer.key("advisor", "kb", "拿铁"), AnswerCoalescer.key("advisor", "other", "拿铁"));
+        assertNotEquals(AnswerCoalescer.key("advisor", "kb", "拿铁"), AnswerCoalescer.key("stream", "kb", "拿铁"));
+    }
+
+    @Test
+    void testConcurrentCallsShareOneInvocation() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger invocations = new AtomicInteger();
+        String key = AnswerCoalescer.key("advisor", "kb", "拿铁");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> coalescer.call(key, () -> {
+                invocations.incrementAndGet();
+                started.countDown();
+                await(release);
+                return "answer";
+            }), executor);
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            List<CompletableFuture<String>> followers = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                followers.add(CompletableFuture.supplyAsync(() -> coalescer.call(key, () -> {
+                    invocations.incrementAndGet();
+                    return "duplicate";
+                }), executor));
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (meterRegistry.counter("rag.answer.coalesced", "mode", "call").count() < 5) {
+                assertTrue(System.nanoTime() < deadline, "等待超时");
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            assertEquals("answer", leader.get(5, TimeUnit.SECONDS));
+            for (CompletableFuture<String> follower : followers) {
+                assertEquals("answer", follower.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, invocations.get());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // 调用结束后不保留结果
+        assertEquals("next", coalescer.call(key, () -> "next"));
+    }
+
+    @Test
+    void testOnlyFollowersAreNotified() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> joined = new CopyOnWriteArrayList<>();
+        String key = AnswerCoalescer.key("advisor", "kb", "拿铁");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> coalescer.call(key, () -> {
+                started.countDown();
+                await(release);
+                return "answer";
+            }, answer -> joined.add("leader:" + answer)), executor);
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            CompletableFuture<String> follower = CompletableFuture.supplyAsync(
+                    () -> coalescer.call(key, () -> "duplicate", answer -> joined.add("follower:" + answer)), executor);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (meterRegistry.counter("rag.answer.coalesced", "mode", "call").count() < 1) {
+                assertTrue(System.nanoTime() < deadline, "等待超时");
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            assertEquals("answer", leader.get(5, TimeUnit.SECONDS));
+            assertEquals("answer", follower.get(5, TimeUnit.SECONDS));
+            // 发起调用的请求由advisor写入会话记忆，只有后加入的请求需要回调
+            assertEquals(List.of("follower:answer"), joined);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Sinks.Many<String> tokens = Sinks.many().unicast().onBackpressureBuffer();
+        String streamKey = AnswerCoalescer.key("stream", "kb", "拿铁");
+        List<String> firstTokens = new ArrayList<>();
+        List<String> secondTokens = new ArrayList<>();
+        coalescer.stream(streamKey, tokens::asFlux, shared -> shared.map(token -> "joined:" + token))
+                .subscribe(firstTokens::add);
+        coalescer.stream(streamKey, () -> Flux.just("duplicate"), shared -> shared.map(token -> "joined:" + token))
+                .subscribe(secondTokens::add);
+        tokens.tryEmitNext("你");
+        tokens.tryEmitComplete();
+
+        assertEquals(List.of("你"), firstTokens);
+        assertEquals(List.of("joined:你"), secondTokens);
+    }
+
+    @Test
+    void testFailureIsSharedAndNotRetained() {
+        String key = AnswerCoalescer.key("answer", "kb", "拿铁");
+        assertThrows(IllegalArgumentException.class, () -> coalescer.call(key, () -> {
+            throw new IllegalArgumentException("topK必须大于0");
+        }));
+        assertEquals("ok", coalescer.call(key, () -> "ok"));
+    }
+
+    @Test
+    void testStreamSubscribersShareOneUpstream() {
+        Sinks.Many<String> tokens = Sinks.many().unicast().onBackpressureBuffer();
+        AtomicInteger subscriptions = new AtomicInteger();
+        String key = AnswerCoalescer.key("stream", "kb", "拿铁");
+        Flux<String> first = coalescer.stream(key, () -> tokens.asFlux().doOnSubscribe(s -> subscriptions.incrementAndGet()));
+        Flux<String> second = coalescer.stream(key, () -> Flux.just("duplicate"));
+
+        List<String> firstTokens = new ArrayList<>();
+        List<String> secondTokens = new ArrayList<>();
+        first.subscribe(firstTokens::add);
+        tokens.tryEmitNext("你");
+        // 后加入的订阅者先收到已生成的部分
+        second.subscribe(secondTokens::add);
+        tokens.tryEmitNext("好");
+        tokens.tryEmitComplete();
+
+        assertEquals(List.of("你", "好"), firstTokens);
+        assertEquals(List.of("你", "好"), secondTokens);
+        assertEquals(1, subscriptions.get());
+        assertEquals(1.0, meterRegistry.counter("rag.answer.coalesced", "mode", "stream").count());
+
+        // 上游结束后新的请求重新调用
+        assertEquals(List.of("next"), coalescer.stream(key, () -> Flux.just("next")).collectList().block());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.example.springai.service;
+
+import org.example.springai.config.RagProperties;
+import org.example.springai.model.FederatedSearchResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 跨知识库检索测试类
+ */
+class FederatedRetrieverTest {
+
+    private FederatedRetriever retriever;
+
+    @AfterEach
+    void tearDown() {
+        if (retriever != null) {
+            retriever.destroy();
+        }
+    }
+
+    @Test
+    void testScoresAreNormalizedPerCollectionBeforeMerge() {
+        // hybrid知识库是RRF得分（量级很小），vector知识库是余弦相似度
+        Map<String, List<Document>> results = new LinkedHashMap<>();
+        results.put("hybrid", List.of(document("h1", 0.032), document("h2", 0.016)));
+        results.put("vector", List.of(document("v1", 0.9), document("v2", 0.6), document("v3", 0.3)));
+
+        List<Document> merged = FederatedRetriever.merge(results, 4);
+
+        assertEquals(List.of("v1", "h1", "v2", "v3"), merged.stream().map(Document::getId).toList());
+        assertEquals(1.0, merged.get(0).getScore(), 1e-9);
+        assertEquals(0.5, merged.get(2).getScore(), 1e-9);
+    }
+
+    @Test
+    void testSlowCollectionIsSkippedAtDeadline() {
+        RagProperties ragProperties = new RagProperties();
+        ragProperties.getFederation().setCollectionDeadline(Duration.ofMillis(200));
+        retriever = new FederatedRetriever(null, ragProperties);
+        Map<String, VectorStore> stores = Map.of(
+                "fast", new DelayedVectorStore(0, List.of(document("f1", 0.8))),
+                "slow", new DelayedVectorStore(5000, List.of(document("s1", 0.99))));
+        Map<String, SearchRequest> requests = new LinkedHashMap<>();
+        requests.put("fast", SearchRequest.builder().query("q").build());
+        requests.put("slow", SearchRequest.builder().query("q").build());
+
+        long start = System.nanoTime();
+        FederatedSearchResult result = retriever.search(requests, stores::get, 4);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(elapsedMillis < 2000, "超时的知识库不应拖住整个请求");
+        assertEquals(List.of("fast"), result.getSearchedCollections());
+        assertEquals(List.of("slow"), List.copyOf(result.getSkippedCollections().keySet()));
+        assertEquals(List.of("f1"), result.getDocuments().stream().map(Document::getId).toList());
+    }
+
+    private static Document document(String id, double score) {
+        return Document.builder().id(id).text(id).score(score).build();
+    }
+
+    private record DelayedVectorStore(long delayMillis, List<Document> results) implements VectorStore {
+
+        @Override
+        public void add(List<Document> documents) {
+        }
+
+        @Override
+        public void delete(List<String> idList) {
+        }
+
+        @Override
+        public void delete(Filter.Expression filterExpression) {
+        }
+
+        @Override
+        public List<Document> similaritySearch(SearchRequest request) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return results;
+        }
+    }
+}
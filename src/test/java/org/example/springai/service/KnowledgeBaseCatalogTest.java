@@ -0,0 +1,108 @@
+package org.example.springai.service;
+
+import org.example.springai.config.RagProperties;
+import org.example.springai.ingest.CollectionChangedEvent;
+import org.example.springai.ingest.ContentHashIndex;
+import org.example.springai.model.KnowledgeBaseInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chroma.vectorstore.ChromaApi;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 知识库目录测试类
+ */
+class KnowledgeBaseCatalogTest {
+
+    @TempDir
+    Path tempDir;
+
+    private KnowledgeBaseCatalog catalog;
+
+    @AfterEach
+    void tearDown() {
+        if (catalog != null) {
+            catalog.destroy();
+        }
+    }
+
+    @Test
+    void testCatalogIsServedFromMemoryAndUpdatedIncrementally() {
+        RagProperties ragProperties = new RagProperties();
+        ragProperties.setDataDir(tempDir.toString());
+        ContentHashIndex contentHashIndex = new ContentHashIndex(ragProperties);
+        contentHashIndex.putHashes("coffee", "a.pdf", Set.of("h1", "h2"));
+
+        ChromaApi chromaApi = mock(ChromaApi.class);
+        ChromaApi.Collection collection = mock(ChromaApi.Collection.class);
+        when(collection.name()).thenReturn("coffee");
+        when(collection.metadata()).thenReturn(Map.of("description", "咖啡"));
+        when(chromaApi.listCollections(any(), any())).thenReturn(List.of(collection));
+        EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
+        when(embeddingModel.dimensions()).thenReturn(8);
+
+        catalog = new KnowledgeBaseCatalog(chromaApi, contentHashIndex, embeddingModel, ragProperties);
+        KnowledgeBaseCatalog.Catalog first = catalog.catalog();
+        KnowledgeBaseCatalog.Catalog second = catalog.catalog();
+        verify(chromaApi, times(1)).listCollections(any(), any());
+        assertSame(first, second);
+        KnowledgeBaseInfo info = first.knowledgeBases().get(0);
+        assertEquals("coffee", info.getId());
+        assertEquals(1, info.getDocumentCount());
+        assertEquals(2L, info.getChunkCount());
+        assertEquals(2L * 8 * 4, info.getVectorMemoryBytes());
+
+        // 入库完成后只重算该知识库，内容变化时ETag变化
+        contentHashIndex.putHashes("coffee", "b.pdf", Set.of("h3"));
+        catalog.onCollectionChanged(new CollectionChangedEvent("coffee"));
+        KnowledgeBaseCatalog.Catalog updated = catalog.catalog();
+        assertEquals(3L, updated.knowledgeBases().get(0).getChunkCount());
+        assertNotEquals(first.etag(), updated.etag());
+        verify(chromaApi, times(1)).listCollections(any(), any());
+
+        catalog.onCreated("tea", "茶");
+        assertEquals(List.of("coffee", "tea"), catalog.catalog().knowledgeBases().stream().map(KnowledgeBaseInfo::getId).toList());
+        catalog.onDeleted("tea");
+        assertEquals(updated.etag(), catalog.catalog().etag());
+    }
+
+    @Test
+    void testChangeOfUnknownCollectionRefreshesCatalog() throws Exception {
+        RagProperties ragProperties = new RagProperties();
+        ragProperties.setDataDir(tempDir.toString());
+        ContentHashIndex contentHashIndex = new ContentHashIndex(ragProperties);
+
+        ChromaApi chromaApi = mock(ChromaApi.class);
+        ChromaApi.Collection kb = mock(ChromaApi.Collection.class);
+        when(kb.name()).thenReturn("coffee");
+        ChromaApi.Collection tea = mock(ChromaApi.Collection.class);
+        when(tea.name()).thenReturn("tea");
+        when(chromaApi.listCollections(any(), any())).thenReturn(List.of(kb), List.of(kb, tea));
+
+        catalog = new KnowledgeBaseCatalog(chromaApi, contentHashIndex, mock(EmbeddingModel.class), ragProperties);
+        assertEquals(List.of("coffee"), catalog.catalog().knowledgeBases().stream().map(KnowledgeBaseInfo::getId).toList());
+
+        // 入库时自动创建的知识库不在目录中，触发一次刷新后出现
+        contentHashIndex.putHashes("tea", "a.pdf", Set.of("h1"));
+        catalog.onCollectionChanged(new CollectionChangedEvent("tea"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (catalog.catalog().knowledgeBases().size() < 2) {
+            assertTrue(System.nanoTime() < deadline, "等待超时");
+            Thread.sleep(5);
+        }
+        KnowledgeBaseInfo info = catalog.catalog().knowledgeBases().get(1);
+        assertEquals("tea", info.getId());
+        assertEquals(1L, info.getChunkCount());
+    }
+}
@@ -0,0 +1,108 @@
+package org.example.springai.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.springai.cache.SemanticAnswerCache;
+import org.example.springai.config.RagProperties;
+import org.example.springai.memory.TieredChatMemoryRepository;
+import org.example.springai.model.RetrievalOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 问答请求合并和语义缓存条件测试类
+ */
+class RagServiceCoalescingTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private TieredChatMemoryRepository repository;
+    private ChatMemory chatMemory;
+    private RagService ragService;
+
+    @BeforeEach
+    void setUp() {
+        RagProperties ragProperties = new RagProperties();
+        ragProperties.getMemory().setPersistent(false);
+        repository = new TieredChatMemoryRepository(null, null, ragProperties, meterRegistry);
+        chatMemory = MessageWindowChatMemory.builder().chatMemoryRepository(repository).build();
+        ragService = new RagService(null, null, null, new SemanticAnswerCache(ragProperties, meterRegistry),
+                null, null, null, null, new AnswerCoalescer(ragProperties, meterRegistry), chatMemory, repository,
+                null, meterRegistry, null, null, null, null, null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.destroy();
+    }
+
+    @Test
+    void testExistingHistoryBlocksCoalescing() {
+        assertTrue(ragService.isCoalescable("c1", new RetrievalOptions()));
+
+        chatMemory.add("c1", List.of(new UserMessage("拿铁是什么"), new AssistantMessage("意式浓缩加牛奶")));
+        assertFalse(ragService.isCoalescable("c1", new RetrievalOptions()));
+        // 其他会话不受影响
+        assertTrue(ragService.isCoalescable("c2", new RetrievalOptions()));
+    }
+
+    @Test
+    void testRequestsWithoutConversationIdUseDefaultConversation() {
+        assertTrue(ragService.isCoalescable(null, new RetrievalOptions()));
+
+        chatMemory.add(ChatMemory.DEFAULT_CONVERSATION_ID, List.of(new UserMessage("拿铁是什么")));
+        assertFalse(ragService.isCoalescable(null, new RetrievalOptions()));
+        assertFalse(ragService.isCoalescable(" ", new RetrievalOptions()));
+    }
+
+    @Test
+    void testExistingHistoryBypassesSemanticCache() {
+        assertTrue(ragService.isCacheable("c1", new RetrievalOptions()));
+
+        chatMemory.add("c1", List.of(new UserMessage("拿铁是什么"), new AssistantMessage("意式浓缩加牛奶")));
+        assertFalse(ragService.isCacheable("c1", new RetrievalOptions()));
+        assertTrue(ragService.isCacheable("c2", new RetrievalOptions()));
+        assertFalse(ragService.isCacheable("c2", new RetrievalOptions(3, null, null, null, null, null)));
+    }
+
+    @Test
+    void testJoinedStreamIsWrittenToOwnConversation() {
+        Flux<ServerSentEvent<Object>> shared = Flux.just(
+                ServerSentEvent.builder((Object) Map.of("fileNames", List.of("menu.txt"))).event("sources").build(),
+                ServerSentEvent.builder((Object) Map.of("text", "意式浓缩")).event("token").build(),
+                ServerSentEvent.builder((Object) Map.of("text", "加牛奶")).event("token").build(),
+                ServerSentEvent.builder((Object) Map.of("cached", false)).event("done").build());
+
+        assertEquals(4, ragService.rememberStreamed(shared, "c1", "拿铁是什么").count().block());
+        List<Message> messages = chatMemory.get("c1");
+        assertEquals(2, messages.size());
+        assertEquals("拿铁是什么", messages.get(0).getText());
+        assertEquals("意式浓缩加牛奶", messages.get(1).getText());
+    }
+
+    @Test
+    void testFailedJoinedStreamIsNotWritten() {
+        Flux<ServerSentEvent<Object>> shared = Flux.just(
+                ServerSentEvent.builder((Object) Map.of("text", "意式")).event("token").build(),
+                ServerSentEvent.builder((Object) Map.of("message", "timeout")).event("error").build());
+
+        ragService.rememberStreamed(shared, "c1", "拿铁是什么").blockLast();
+        assertTrue(chatMemory.get("c1").isEmpty());
+    }
+
+    @Test
+    void testRetrievalOptionsBlockCoalescing() {
+        assertFalse(ragService.isCoalescable("c1", new RetrievalOptions(3, null, null, null, null, null)));
+    }
+}
@@ -0,0 +1,90 @@
+package org.example.springai.service;
+
+import org.example.springai.config.RagProperties;
+import org.example.springai.model.RetrievalOptions;
+import org.example.springai.vectorstore.FlatVectorStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 检索参数下推测试类
+ */
+class RagServiceRetrievalTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testFiltersArePushedDownToVectorStore() {
+        FlatVectorStore store = new FlatVectorStore("kb", new ConstantEmbeddingModel(), new RagProperties.Flat(),
+                RagProperties.Quantization.NONE, tempDir);
+        long day1 = LocalDate.of(2025, 3, 1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long day2 = LocalDate.of(2025, 3, 2).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli() + 3600_000;
+        store.add(List.of(
+                document("a", "kb", "手册", "a.pdf", day1),
+                document("b", "kb", "手册", "b.pdf", day2),
+                document("c", "kb", "公告", "b.pdf", day2),
+                document("d", "other", "手册", "b.pdf", day2)));
+
+        assertEquals(List.of("a", "b", "c"), ids(store, new RetrievalOptions()));
+        assertEquals(List.of("b"), ids(store, new RetrievalOptions(null, null, "手册", "b.pdf", null, null)));
+        assertEquals(List.of("b", "c"), ids(store, new RetrievalOptions(null, null, null, null,
+                LocalDate.of(2025, 3, 2), LocalDate.of(2025, 3, 2))));
+        assertEquals(List.of("a"), ids(store, new RetrievalOptions(1, null, null, null, null, LocalDate.of(2025, 3, 1))));
+    }
+
+    @Test
+    void testInvalidOptionsAreRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> RagService.searchRequest("kb", new RetrievalOptions(0, null, null, null, null, null), null));
+        assertThrows(IllegalArgumentException.class,
+                () -> RagService.searchRequest("kb", new RetrievalOptions(null, 1.5, null, null, null, null), null));
+        assertThrows(IllegalArgumentException.class, () -> RagService.searchRequest("kb",
+                new RetrievalOptions(null, null, null, null, LocalDate.of(2025, 3, 2), LocalDate.of(2025, 3, 1)), null));
+    }
+
+    private static List<String> ids(FlatVectorStore store, RetrievalOptions options) {
+        SearchRequest request = RagService.searchRequest("kb", options, null).query("问题").build();
+        return store.similaritySearch(request).stream().map(Document::getId).sorted().toList();
+    }
+
+    private static Document document(String id, String collectionName, String tag, String fileName, long ingestedAt) {
+        return new Document(id, "内容" + id, Map.of("collectionName", collectionName, "tag", tag,
+                "fileName", fileName, "ingestedAt", ingestedAt));
+    }
+
+    /**
+     * 所有文本返回同一个向量，检索结果只由过滤条件决定
+     */
+    private static class ConstantEmbeddingModel implements EmbeddingModel {
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < request.getInstructions().size(); i++) {
+                embeddings.add(new Embedding(new float[]{1, 0}, i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package org.example.springai.vectorstore;
+
+import org.example.springai.config.RagProperties;
+import org.example.springai.model.QuantizationReport;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 平铺向量库测试类
+ */
+class FlatVectorStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testScanMatchesBruteForceOrder() {
+        RandomEmbeddingModel model = new RandomEmbeddingModel(48);
+        FlatVectorStore store = new FlatVectorStore("kb", model, new RagProperties.Flat(),
+                RagProperties.Quantization.NONE, tempDir);
+        List<Document> documents = IntStream.range(0, 500)
+                .mapToObj(i -> new Document("doc-" + i, "text-" + i, Map.of("group", i % 5)))
+                .toList();
+        store.add(documents);
+
+        float[] query = VectorMath.normalize(model.vector("query"));
+        List<String> expected = documents.stream()
+                .filter(document -> ((Integer) document.getMetadata().get("group")) == 3)
+                .sorted(Comparator.comparingDouble((Document document) ->
+                        dot(query, VectorMath.normalize(model.vector(document.getText())))).reversed())
+                .limit(10)
+                .map(Document::getId)
+                .toList();
+
+        List<Document> results = store.similaritySearch(SearchRequest.builder()
+                .query("query").topK(10).filterExpression("group == 3").build());
+        assertEquals(expected, results.stream().map(Document::getId).toList());
+        for (int i = 1; i < results.size(); i++) {
+            assertTrue(results.get(i - 1).getScore() >= results.get(i).getScore());
+        }
+    }
+
+    @Test
+    void testSnapshotReloadAndCompaction() {
+        RandomEmbeddingModel model = new RandomEmbeddingModel(16);
+        FlatVectorStore store = new FlatVectorStore("kb", model, new RagProperties.Flat(),
+                RagProperties.Quantization.NONE, tempDir);
+        store.add(IntStream.range(0, 20).mapToObj(i -> new Document("doc-" + i, "text-" + i, Map.of())).toList());
+        // 删除一半，超过重写比例
+        store.delete(IntStream.range(0, 10).mapToObj(i -> "doc-" + i).toList());
+        store.snapshot();
+
+        FlatVectorStore reloaded = new FlatVectorStore("kb", model, new RagProperties.Flat(),
+                RagProperties.Quantization.NONE, tempDir);
+        assertEquals(10, reloaded.size());
+        List<Document> results = reloaded.similaritySearch(SearchRequest.builder().query("text-15").topK(1).build());
+        assertEquals("doc-15", results.get(0).getId());
+        assertEquals(1.0, results.get(0).getScore(), 1e-5);
+    }
+
+    @Test
+    void testQuantizedSearchSnapshotAndReport() {
+        RandomEmbeddingModel model = new RandomEmbeddingModel(64);
+        RagProperties.Flat settings = new RagProperties.Flat();
+        settings.setMinTrainingVectors(100);
+        settings.setPqSubspaces(16);
+        for (RagProperties.Quantization quantization : List.of(RagProperties.Quantization.INT8, RagProperties.Quantization.PQ)) {
+            Path directory = tempDir.resolve(quantization.name());
+            FlatVectorStore store = new FlatVectorStore("kb", model, settings, quantization, directory);
+            store.add(IntStream.range(0, 600).mapToObj(i -> new Document("doc-" + i, "text-" + i, Map.of())).toList());
+            // 快照时训练量化器，之后写入的行直接编码
+            store.snapshot();
+            store.add(List.of(new Document("doc-new", "text-new", Map.of())));
+            store.snapshot();
+
+            FlatVectorStore reloaded = new FlatVectorStore("kb", model, settings, quantization, directory);
+            for (String id : List.of("doc-7", "doc-321", "doc-new")) {
+                List<Document> results = reloaded.similaritySearch(SearchRequest.builder()
+                        .query("text-" + id.substring(4)).topK(3).build());
+                // 精排使用原始向量，得分与精确检索一致
+                assertEquals(id, results.get(0).getId());
+                assertEquals(1.0, results.get(0).getScore(), 1e-5);
+            }
+        }
+
+        FlatVectorStore store = new FlatVectorStore("kb", model, settings, RagProperties.Quantization.INT8,
+                tempDir.resolve("INT8"));
+        List<QuantizationReport> reports = store.quantizationReport(10, 20);
+        assertEquals(List.of("NONE", "INT8", "PQ"), reports.stream().map(QuantizationReport::getQuantization).toList());
+        assertEquals(1.0, reports.get(0).getRecallAtK());
+        assertTrue(reports.get(1).getRecallAtK() >= 0.9);
+        assertTrue(reports.get(1).getCompressionRatio() > 3);
+        // 压缩比只按每个向量的编码计算，PQ码本单独统计（向量较少时码本比编码本身更大）
+        assertTrue(reports.get(2).getCompressionRatio() > reports.get(1).getCompressionRatio());
+        assertTrue(reports.get(2).getParameterBytes() > 0);
+        // 使用已训练的int8量化器，不需要重新训练
+        assertEquals(0L, reports.get(1).getTrainingMillis());
+    }
+
+    @Test
+    void testDotProductImplementationsAgree() {
+        Random random = new Random(3);
+        float[] row = new float[37];
+        float[] query = new float[37];
+        ByteBuffer buffer = ByteBuffer.allocate(8 + row.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < row.length; i++) {
+            row[i] = random.nextFloat();
+            query[i] = random.nextFloat();
+            buffer.putFloat(8 + i * Float.BYTES, row[i]);
+        }
+        float expected = dot(row, query);
+        assertEquals(expected, new DotProduct.Scalar().dot(buffer, 8, query), 1e-4);
+        assertEquals(expected, DotProduct.INSTANCE.dot(buffer, 8, query), 1e-4);
+    }
+
+    private static float dot(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * 以文本为种子生成确定的随机向量
+     */
+    private static class RandomEmbeddingModel implements EmbeddingModel {
+
+        private final int dimensions;
+
+        RandomEmbeddingModel(int dimensions) {
+            this.dimensions = dimensions;
+        }
+
+        float[] vector(String text) {
+            Random random = new Random(text.hashCode());
+            float[] vector = new float[dimensions];
+            for (int i = 0; i < dimensions; i++) {
+                vector[i] = (float) random.nextGaussian();
+            }
+            return vector;
+        }
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions()) {
+                embeddings.add(new Embedding(vector(text), embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+    }
+}
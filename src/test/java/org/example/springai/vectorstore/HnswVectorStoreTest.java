@@ -0,0 +1,112 @@
+package org.example.springai.vectorstore;
+
+import org.example.springai.config.RagProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 进程内HNSW向量库测试类
+ */
+class HnswVectorStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRecallAgainstExactSearch() {
+        Random random = new Random(7);
+        HnswIndex index = new HnswIndex(32, 16, 200);
+        for (int i = 0; i < 2000; i++) {
+            index.add(new Document("doc-" + i, "text", Map.of()), VectorMath.normalize(randomVector(random, 32)));
+        }
+
+        int hits = 0;
+        int queries = 50;
+        for (int q = 0; q < queries; q++) {
+            float[] query = VectorMath.normalize(randomVector(random, 32));
+            Set<Integer> expected = new HashSet<>();
+            index.exactSearch(query, 10, document -> true).forEach(candidate -> expected.add(candidate.node()));
+            for (HnswIndex.Candidate candidate : index.search(query, 10, 64, document -> true)) {
+                if (expected.contains(candidate.node())) {
+                    hits++;
+                }
+            }
+        }
+        double recall = hits / (queries * 10.0);
+        assertTrue(recall > 0.9, "recall@10 = " + recall);
+    }
+
+    @Test
+    void testFilterDeleteAndSnapshotReload() {
+        RagProperties.Hnsw settings = new RagProperties.Hnsw();
+        HnswVectorStore store = new HnswVectorStore("kb", new KeywordEmbeddingModel(), settings, tempDir);
+        store.add(List.of(
+                new Document("1", "latte milk", Map.of("tag", "咖啡", "year", 2023)),
+                new Document("2", "latte espresso", Map.of("tag", "咖啡", "year", 2024)),
+                new Document("3", "green tea", Map.of("tag", "茶", "year", 2024))));
+
+        List<Document> results = store.similaritySearch(SearchRequest.builder()
+                .query("latte").topK(3).filterExpression("tag == '咖啡' && year >= 2024").build());
+        assertEquals(List.of("2"), results.stream().map(Document::getId).toList());
+        assertNotNull(results.get(0).getScore());
+
+        store.delete(List.of("2"));
+        store.snapshot();
+
+        HnswVectorStore reloaded = new HnswVectorStore("kb", new KeywordEmbeddingModel(), settings, tempDir);
+        assertEquals(2, reloaded.size());
+        List<Document> afterReload = reloaded.similaritySearch(SearchRequest.builder().query("latte").topK(1).build());
+        assertEquals("1", afterReload.get(0).getId());
+        assertEquals("咖啡", afterReload.get(0).getMetadata().get("tag"));
+    }
+
+    private static float[] randomVector(Random random, int dimensions) {
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    /**
+     * 按关键词出现次数生成向量
+     */
+    private static class KeywordEmbeddingModel implements EmbeddingModel {
+
+        private static final List<String> KEYWORDS = List.of("latte", "milk", "espresso", "green", "tea");
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions()) {
+                float[] vector = new float[KEYWORDS.size()];
+                for (int i = 0; i < KEYWORDS.size(); i++) {
+                    vector[i] = text.contains(KEYWORDS.get(i)) ? 1f : 0.01f;
+                }
+                embeddings.add(new Embedding(vector, embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package org.example.springai.vectorstore;
+
+import org.example.springai.config.RagProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 混合检索测试类
+ */
+class HybridVectorStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testTokenizer() {
+        assertEquals(List.of("咖啡", "啡豆", "err-1024", "err", "1024", "烘", "v2.3", "v2", "3"),
+                CjkTokenizer.tokenize("咖啡豆 ERR-1024，烘 Ｖ2.3。"));
+    }
+
+    @Test
+    void testKeywordHitIsFusedWithVectorResults() {
+        FixedVectorStore vectorStore = new FixedVectorStore(List.of("a", "b", "c"));
+        HybridVectorStore store = new HybridVectorStore("kb", vectorStore, new RagProperties.HybridSearch(),
+                tempDir, Runnable::run);
+        store.add(List.of(
+                new Document("a", "拿铁的做法", Map.of()),
+                new Document("b", "美式咖啡的做法", Map.of()),
+                new Document("c", "卡布奇诺", Map.of()),
+                new Document("d", "故障码 E-4107 表示磨豆机堵塞", Map.of())));
+
+        List<Document> results = store.similaritySearch(SearchRequest.builder().query("E-4107 是什么").topK(3).build());
+        // 向量检索没有召回d，关键词检索排第一，融合后排在向量检索第二名之前
+        assertEquals(List.of("a", "d", "b"), results.stream().map(Document::getId).toList());
+        assertTrue(results.get(1).getScore() > results.get(2).getScore());
+
+        // 删除同步到BM25索引，快照重新加载后仍然一致
+        store.delete(List.of("d"));
+        store.snapshot();
+        HybridVectorStore reloaded = new HybridVectorStore("kb", vectorStore, new RagProperties.HybridSearch(),
+                tempDir, Runnable::run);
+        assertFalse(reloaded.similaritySearch(SearchRequest.builder().query("E-4107").topK(4).build())
+                .stream().anyMatch(document -> document.getId().equals("d")));
+    }
+
+    @Test
+    void testKeywordWeightChangesRanking() {
+        RagProperties.HybridSearch settings = new RagProperties.HybridSearch();
+        settings.setKeywordWeight(3.0);
+        HybridVectorStore store = new HybridVectorStore("kb", new FixedVectorStore(List.of("a", "b")), settings,
+                tempDir, Runnable::run);
+        store.add(List.of(new Document("a", "拿铁", Map.of()), new Document("b", "SKU-778 手冲壶", Map.of())));
+
+        List<Document> results = store.similaritySearch(SearchRequest.builder().query("sku-778").topK(2).build());
+        assertEquals(List.of("b", "a"), results.stream().map(Document::getId).toList());
+    }
+
+    /**
+     * 按固定顺序返回文档的向量库
+     */
+    private static class FixedVectorStore implements VectorStore {
+
+        private final List<String> order;
+        private final Map<String, Document> documents = new HashMap<>();
+
+        FixedVectorStore(List<String> order) {
+            this.order = order;
+        }
+
+        @Override
+        public void add(List<Document> batch) {
+            batch.forEach(document -> documents.put(document.getId(), document));
+        }
+
+        @Override
+        public void delete(List<String> idList) {
+            idList.forEach(documents::remove);
+        }
+
+        @Override
+        public void delete(Filter.Expression filterExpression) {
+        }
+
+        @Override
+        public List<Document> similaritySearch(SearchRequest request) {
+            List<Document> results = new ArrayList<>();
+            for (String id : order) {
+                if (documents.containsKey(id) && results.size() < request.getTopK()) {
+                    results.add(documents.get(id));
+                }
+            }
+            return results;
+        }
+    }
+}